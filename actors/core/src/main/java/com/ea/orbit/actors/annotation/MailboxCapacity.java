@@ -0,0 +1,71 @@
+/*
+Copyright (C) 2015 Electronic Arts Inc.  All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions
+are met:
+
+1.  Redistributions of source code must retain the above copyright
+    notice, this list of conditions and the following disclaimer.
+2.  Redistributions in binary form must reproduce the above copyright
+    notice, this list of conditions and the following disclaimer in the
+    documentation and/or other materials provided with the distribution.
+3.  Neither the name of Electronic Arts, Inc. ("EA") nor the names of
+    its contributors may be used to endorse or promote products derived
+    from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY ELECTRONIC ARTS AND ITS CONTRIBUTORS "AS IS" AND ANY
+EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL ELECTRONIC ARTS OR ITS CONTRIBUTORS BE LIABLE FOR ANY
+DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package com.ea.orbit.actors.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Sets how many messages can be waiting in the mailbox of each activation of an actor,
+ * and what happens when a message arrives to a full mailbox. The default capacity is 1000.
+ * <p><pre>
+ * {@literal@}MailboxCapacity(value = 100, overflow = MailboxCapacity.OverflowPolicy.DROP_OLDEST)
+ * public class PositionTracker extends AbstractActor implements Tracker
+ * {
+ * }</pre>
+ * </p>
+ * <p>
+ * Rejected messages fail with a {@code MailboxFullException}, remote callers are told that the actor is busy
+ * and receive the same exception, so they can back off and retry later.
+ * </p>
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface MailboxCapacity
+{
+    int value();
+
+    OverflowPolicy overflow() default OverflowPolicy.REJECT;
+
+    enum OverflowPolicy
+    {
+        /**
+         * Rejects the new message.
+         */
+        REJECT,
+        /**
+         * Makes room for one way messages by discarding the oldest one way message in the mailbox,
+         * requests and high priority messages are never discarded.
+         * Requests are still rejected, and so are one way messages if there is no one way message to discard.
+         */
+        DROP_OLDEST
+    }
+}
@@ -29,12 +29,33 @@
 package com.ea.orbit.actors.extensions;
 
 import com.ea.orbit.actors.runtime.RemoteReference;
+import com.ea.orbit.concurrent.Task;
+import com.ea.orbit.exception.UncheckedException;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 
 public abstract class AbstractStorageExtension implements StorageExtension
 {
 
     protected String name = "default";
 
+    private int ioThreads = 8;
+    private int ioQueueSize = 1000;
+    private Executor completionExecutor;
+    private volatile ThreadPoolExecutor ioExecutor;
+
+    private final LongAdder ioCompleted = new LongAdder();
+    private final LongAdder ioRejected = new LongAdder();
+    private final LongAdder ioQueueNanos = new LongAdder();
+    private final LongAdder ioServiceNanos = new LongAdder();
+
     public void setName(String name)
     {
         this.name = name;
@@ -50,4 +71,233 @@ public abstract class AbstractStorageExtension implements StorageExtension
         return String.valueOf(RemoteReference.getId(reference));
     }
 
+    /**
+     * Runs a blocking storage call on this extension's own I/O pool.
+     * <p>
+     * The pool is the bulkhead between the storage and the stage: at most {@link #getIoThreads()}
+     * calls run at once and at most {@link #getIoQueueSize()} wait for a thread. Calls beyond that
+     * fail immediately instead of piling up, so a slow database only delays the actors
+     * that use it. With zero I/O threads the call runs on the caller's thread.
+     * </p>
+     */
+    protected <T> Task<T> executeBlocking(final Callable<T> call)
+    {
+        final ThreadPoolExecutor executor = getIoExecutor();
+        if (executor == null)
+        {
+            // failing the task, like the pooled calls do
+            try
+            {
+                return Task.fromValue(call.call());
+            }
+            catch (RuntimeException e)
+            {
+                return Task.fromException(e);
+            }
+            catch (Exception e)
+            {
+                return Task.fromException(new UncheckedException(e));
+            }
+        }
+        final Task<T> task = new Task<>();
+        final long queuedAt = System.nanoTime();
+        try
+        {
+            executor.execute(() -> {
+                final long startedAt = System.nanoTime();
+                ioQueueNanos.add(startedAt - queuedAt);
+                T result = null;
+                Throwable error = null;
+                try
+                {
+                    result = call.call();
+                }
+                catch (Throwable e)
+                {
+                    error = e instanceof RuntimeException || e instanceof Error ? e : new UncheckedException(e);
+                }
+                ioServiceNanos.add(System.nanoTime() - startedAt);
+                ioCompleted.increment();
+                complete(task, result, error);
+            });
+        }
+        catch (RejectedExecutionException e)
+        {
+            ioRejected.increment();
+            return Task.fromException(new UncheckedException("Storage extension '" + name + "' is saturated", e));
+        }
+        return task;
+    }
+
+    /**
+     * Completes the task through the completion executor, for extensions with their own I/O threads.
+     */
+    protected <T> void complete(final Task<T> task, final T result, final Throwable error)
+    {
+        // continuations must not hold the I/O threads
+        final Runnable completion = () -> {
+            if (error == null)
+            {
+                task.complete(result);
+            }
+            else
+            {
+                task.completeExceptionally(error);
+            }
+        };
+        final Executor executor = completionExecutor;
+        if (executor == null)
+        {
+            completion.run();
+            return;
+        }
+        try
+        {
+            executor.execute(completion);
+        }
+        catch (RejectedExecutionException e)
+        {
+            completion.run();
+        }
+    }
+
+    private ThreadPoolExecutor getIoExecutor()
+    {
+        ThreadPoolExecutor executor = ioExecutor;
+        if (executor == null && ioThreads > 0)
+        {
+            synchronized (this)
+            {
+                executor = ioExecutor;
+                if (executor == null)
+                {
+                    final AtomicInteger threadCount = new AtomicInteger();
+                    executor = new ThreadPoolExecutor(ioThreads, ioThreads, 60, TimeUnit.SECONDS,
+                            new ArrayBlockingQueue<>(ioQueueSize),
+                            r -> {
+                                final Thread thread = new Thread(r, "orbit-storage-" + name + "-" + threadCount.incrementAndGet());
+                                thread.setDaemon(true);
+                                return thread;
+                            });
+                    executor.allowCoreThreadTimeOut(true);
+                    ioExecutor = executor;
+                }
+            }
+        }
+        return executor;
+    }
+
+    /**
+     * Waits for the pending blocking calls and stops the I/O pool, call before closing the storage client.
+     * A later call to {@link #executeBlocking(Callable)} creates a new pool.
+     */
+    protected void shutdownIoExecutor()
+    {
+        final ThreadPoolExecutor executor;
+        synchronized (this)
+        {
+            executor = ioExecutor;
+            ioExecutor = null;
+        }
+        if (executor != null)
+        {
+            executor.shutdown();
+            try
+            {
+                executor.awaitTermination(30, TimeUnit.SECONDS);
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    public int getIoThreads()
+    {
+        return ioThreads;
+    }
+
+    /**
+     * Sets how many blocking storage calls may run at once, zero runs them on the caller's thread.
+     */
+    public void setIoThreads(final int ioThreads)
+    {
+        this.ioThreads = ioThreads;
+    }
+
+    public int getIoQueueSize()
+    {
+        return ioQueueSize;
+    }
+
+    /**
+     * Sets how many blocking storage calls may wait for an I/O thread before new ones are rejected.
+     */
+    public void setIoQueueSize(final int ioQueueSize)
+    {
+        this.ioQueueSize = ioQueueSize;
+    }
+
+    public Executor getCompletionExecutor()
+    {
+        return completionExecutor;
+    }
+
+    /**
+     * Sets the executor that completes the tasks of the blocking calls, the stage sets its execution pool.
+     * When null the tasks complete on the I/O threads.
+     */
+    public void setCompletionExecutor(final Executor completionExecutor)
+    {
+        this.completionExecutor = completionExecutor;
+    }
+
+    /**
+     * Number of blocking calls waiting for an I/O thread.
+     */
+    public int getIoQueueLength()
+    {
+        final ThreadPoolExecutor executor = ioExecutor;
+        return executor != null ? executor.getQueue().size() : 0;
+    }
+
+    /**
+     * Number of blocking calls running.
+     */
+    public int getIoActive()
+    {
+        final ThreadPoolExecutor executor = ioExecutor;
+        return executor != null ? executor.getActiveCount() : 0;
+    }
+
+    public long getIoCompleted()
+    {
+        return ioCompleted.sum();
+    }
+
+    /**
+     * Number of blocking calls refused because the I/O pool and its queue were full.
+     */
+    public long getIoRejected()
+    {
+        return ioRejected.sum();
+    }
+
+    /**
+     * Total time the completed calls spent waiting for an I/O thread.
+     */
+    public long getIoQueueTimeMillis()
+    {
+        return TimeUnit.NANOSECONDS.toMillis(ioQueueNanos.sum());
+    }
+
+    /**
+     * Total time the completed calls spent running.
+     */
+    public long getIoServiceTimeMillis()
+    {
+        return TimeUnit.NANOSECONDS.toMillis(ioServiceNanos.sum());
+    }
+
 }
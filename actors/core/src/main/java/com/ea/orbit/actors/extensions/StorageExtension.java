@@ -31,6 +31,11 @@ package com.ea.orbit.actors.extensions;
 import com.ea.orbit.actors.runtime.RemoteReference;
 import com.ea.orbit.concurrent.Task;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
 /**
  * Storage extensions are used by the orbit actors framework to load and store actor states.
  */
@@ -66,4 +71,42 @@ public interface StorageExtension extends ActorExtension
      * @return a completion promise
      */
     Task<Void> writeState(RemoteReference<?> reference, Object state);
+
+    /**
+     * Asynchronously reads the states of several actors, possibly of different types.
+     * <p>
+     * The default implementation reads them one by one, storage extensions should override it
+     * when the database is able to fetch many entries in a single round trip.
+     * </p>
+     * @param references the actor references
+     * @param states the state objects, in the same order as the references, modified by the storage provider implementation
+     * @return the completion promise of whether or not each state was modified, in the same order as the references
+     */
+    default Task<List<Boolean>> readStates(List<RemoteReference<?>> references, List<Object> states)
+    {
+        if (references.size() != states.size())
+        {
+            throw new IllegalArgumentException("Expecting one state per reference");
+        }
+        final List<Task<Boolean>> reads = new ArrayList<>(references.size());
+        for (int i = 0; i < references.size(); i++)
+        {
+            reads.add(readState(references.get(i), states.get(i)));
+        }
+        return Task.allOf(reads).thenApply(v -> reads.stream().map(Task::join).collect(Collectors.toList()));
+    }
+
+    /**
+     * Asynchronously writes the states of several actors, possibly of different types.
+     * <p>
+     * The default implementation writes them one by one, storage extensions should override it
+     * when the database is able to store many entries in a single round trip.
+     * </p>
+     * @param states the state objects by actor reference, not modified by the call
+     * @return a completion promise
+     */
+    default Task<Void> writeStates(Map<RemoteReference<?>, Object> states)
+    {
+        return Task.allOf(states.entrySet().stream().map(e -> writeState(e.getKey(), e.getValue())));
+    }
 }
@@ -126,6 +126,10 @@ public abstract class AbstractActor<T>
 
     /**
      * Asynchronously writes the actor's state.
+     * <p>
+     * If the actor class is annotated with {@link com.ea.orbit.actors.annotation.WriteBehind}
+     * the state is only marked as dirty, and written later.
+     * </p>
      *
      * @return a completion promise
      */
@@ -135,9 +139,23 @@ public abstract class AbstractActor<T>
         {
             throw new IllegalStateException("Storage extension not available");
         }
+        if (runtime != null && runtime.deferStateWrite(this))
+        {
+            return Task.done();
+        }
         return stateExtension.writeState(reference, state);
     }
 
+    /**
+     * Immediately writes the state changes deferred by {@link com.ea.orbit.actors.annotation.WriteBehind}, if any.
+     *
+     * @return a completion promise
+     */
+    protected Task<Void> flushState()
+    {
+        return runtime != null ? runtime.flushState(this) : Task.done();
+    }
+
     /**
      * Asynchronously reads the actor's state.
      *
@@ -163,7 +181,8 @@ public abstract class AbstractActor<T>
         {
             throw new IllegalStateException("Storage extension not available");
         }
-        return stateExtension.clearState(reference, state).thenRun(this::createDefaultState);
+        // the pending deferred write must not recreate the state after it's cleared
+        return flushState().thenCompose(() -> stateExtension.clearState(reference, state)).thenRun(this::createDefaultState);
     }
 
     /**
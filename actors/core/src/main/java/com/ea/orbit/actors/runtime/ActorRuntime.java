@@ -81,6 +81,30 @@ public interface ActorRuntime extends BasicRuntime
      */
     Task<?> unregisterReminder(Remindable actor, String reminderName);
 
+    /**
+     * Called by {@link AbstractActor#writeState()}, defers the write if the actor uses
+     * {@link com.ea.orbit.actors.annotation.WriteBehind}.
+     *
+     * @param actor the actor whose state changed
+     * @return true if the write was deferred, false if the state must be written now
+     */
+    default boolean deferStateWrite(AbstractActor<?> actor)
+    {
+        return false;
+    }
+
+    /**
+     * Writes the state changes deferred by {@link #deferStateWrite(AbstractActor)}, if any.
+     * Must be called from the actor context.
+     *
+     * @param actor the actor whose state will be written
+     * @return completion promise for the write
+     */
+    default Task<Void> flushState(AbstractActor<?> actor)
+    {
+        return Task.done();
+    }
+
 
     /**
      * Locates the node address of an actor.
@@ -30,10 +30,13 @@ package com.ea.orbit.actors.runtime;
 
 import com.ea.orbit.concurrent.TaskContext;
 
+import java.util.concurrent.TimeUnit;
+
 public class ActorTaskContext extends TaskContext
 {
     private AbstractActor<?> actor;
     private ActorRuntime runtime;
+    private long responseTimeoutMillis;
 
     /**
      * Creates a new actor task context and pushes it to the current thread context stack.
@@ -97,11 +100,32 @@ public class ActorTaskContext extends TaskContext
         return runtime;
     }
 
+    /**
+     * Sets the response timeout of the invocations made while this context is active,
+     * overriding the default and the {@link com.ea.orbit.actors.annotation.Timeout} timeouts.
+     *
+     * @param timeout  the timeout, zero to remove the override
+     * @param timeUnit the timeout unit
+     */
+    public void setResponseTimeout(final long timeout, final TimeUnit timeUnit)
+    {
+        this.responseTimeoutMillis = timeUnit.toMillis(timeout);
+    }
+
+    /**
+     * @return the response timeout override in milliseconds, or zero if there is none.
+     */
+    public long getResponseTimeoutMillis()
+    {
+        return responseTimeoutMillis;
+    }
+
     public ActorTaskContext cloneContext()
     {
         ActorTaskContext tc = new ActorTaskContext();
         tc.actor = actor;
         tc.runtime = runtime;
+        tc.responseTimeoutMillis = responseTimeoutMillis;
         tc.properties().putAll(properties());
         return tc;
     }
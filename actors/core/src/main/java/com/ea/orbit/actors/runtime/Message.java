@@ -2,6 +2,7 @@ package com.ea.orbit.actors.runtime;
 
 import com.ea.orbit.actors.cluster.NodeAddress;
 
+import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.Map;
 
@@ -29,6 +30,9 @@ public class Message
     // method fields
     private int methodId;
     private Object payload;
+    private transient SerializedPayload serializedPayload;
+    // response deadline in the local clock, the serializers send the remaining time
+    private transient long timeoutAt;
 
 
     public Message()
@@ -106,7 +110,7 @@ public class Message
 
     public void setHeader(Object key, Object value)
     {
-        if (headers == null)
+        if (headers == null || headers == Collections.emptyMap())
         {
             headers = new LinkedHashMap<>();
         }
@@ -115,7 +119,7 @@ public class Message
 
     public Message withHeader(Object key, Object value)
     {
-        if (headers == null)
+        if (headers == null || headers == Collections.emptyMap())
         {
             headers = new LinkedHashMap<>();
         }
@@ -159,19 +163,62 @@ public class Message
         this.fromNode = fromNode;
     }
 
+    /**
+     * Gets the payload, decoding it if the message serializer deferred the decoding.
+     */
     public Object getPayload()
     {
+        final SerializedPayload serialized = serializedPayload;
+        if (serialized != null)
+        {
+            payload = serialized.decode();
+            serializedPayload = null;
+        }
         return payload;
     }
 
     public void setPayload(final Object payload)
     {
         this.payload = payload;
+        this.serializedPayload = null;
     }
 
     public Message withPayload(final Object payload)
     {
-        this.payload = payload;
+        setPayload(payload);
+        return this;
+    }
+
+    /**
+     * @return the payload in its serialized form, or null if it was already decoded or was never serialized.
+     */
+    public SerializedPayload getSerializedPayload()
+    {
+        return serializedPayload;
+    }
+
+    public void setSerializedPayload(final SerializedPayload serializedPayload)
+    {
+        this.serializedPayload = serializedPayload;
+        this.payload = null;
+    }
+
+    /**
+     * @return the time, in the local clock millis, after which the caller no longer waits for the response. Zero if not set.
+     */
+    public long getTimeoutAt()
+    {
+        return timeoutAt;
+    }
+
+    public void setTimeoutAt(final long timeoutAt)
+    {
+        this.timeoutAt = timeoutAt;
+    }
+
+    public Message withTimeoutAt(final long timeoutAt)
+    {
+        this.timeoutAt = timeoutAt;
         return this;
     }
 
@@ -35,6 +35,8 @@ public class MessageDefinitions
     public static final byte RESPONSE_OK = 2;
     public static final byte RESPONSE_ERROR = 3;
     public static final byte RESPONSE_PROTOCOL_ERROR = 4;
+    // the target mailbox was full, the request was not executed
+    public static final byte RESPONSE_BUSY = 5;
 
     // COMMON HEADERS
 
@@ -28,7 +28,7 @@ THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
 
 package com.ea.orbit.actors.extensions.dynamodb;
 
-import com.ea.orbit.actors.extensions.StorageExtension;
+import com.ea.orbit.actors.extensions.AbstractStorageExtension;
 import com.ea.orbit.actors.extensions.json.ActorReferenceModule;
 import com.ea.orbit.actors.runtime.DefaultDescriptorFactory;
 import com.ea.orbit.actors.runtime.RemoteReference;
@@ -40,26 +40,45 @@ import com.amazonaws.auth.BasicAWSCredentials;
 import com.amazonaws.auth.BasicSessionCredentials;
 import com.amazonaws.auth.DefaultAWSCredentialsProviderChain;
 import com.amazonaws.services.dynamodbv2.AmazonDynamoDBAsyncClient;
+import com.amazonaws.services.dynamodbv2.document.BatchGetItemOutcome;
+import com.amazonaws.services.dynamodbv2.document.BatchWriteItemOutcome;
 import com.amazonaws.services.dynamodbv2.document.DynamoDB;
 import com.amazonaws.services.dynamodbv2.document.Item;
 import com.amazonaws.services.dynamodbv2.document.Table;
+import com.amazonaws.services.dynamodbv2.document.TableKeysAndAttributes;
+import com.amazonaws.services.dynamodbv2.document.TableWriteItems;
 import com.amazonaws.services.dynamodbv2.model.AttributeDefinition;
 import com.amazonaws.services.dynamodbv2.model.DescribeTableResult;
 import com.amazonaws.services.dynamodbv2.model.KeySchemaElement;
 import com.amazonaws.services.dynamodbv2.model.KeyType;
+import com.amazonaws.services.dynamodbv2.model.KeysAndAttributes;
 import com.amazonaws.services.dynamodbv2.model.ProvisionedThroughput;
 import com.amazonaws.services.dynamodbv2.model.ResourceNotFoundException;
 import com.amazonaws.services.dynamodbv2.model.ScalarAttributeType;
+import com.amazonaws.services.dynamodbv2.model.WriteRequest;
 import com.fasterxml.jackson.annotation.JsonAutoDetect;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 import java.io.IOException;
+import java.util.AbstractMap;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 
-public class DynamoDBStorageExtension implements StorageExtension
+public class DynamoDBStorageExtension extends AbstractStorageExtension
 {
+    // request limits of BatchGetItem and BatchWriteItem
+    private static final int MAX_BATCH_GET = 100;
+    private static final int MAX_BATCH_WRITE = 25;
+    private static final int MAX_UNPROCESSED_RETRIES = 10;
+
     public enum AmazonCredentialType
     {
         DEFAULT_PROVIDER_CHAIN,
@@ -73,7 +92,6 @@ public class DynamoDBStorageExtension implements StorageExtension
     private ConcurrentHashMap<String, Table> tableHashMap;
 
     private ObjectMapper mapper;
-    private String name = "default";
 
     private String endpoint = "http://localhost:8000/";
     private AmazonCredentialType credentialType = AmazonCredentialType.DEFAULT_PROVIDER_CHAIN;
@@ -125,22 +143,18 @@ public class DynamoDBStorageExtension implements StorageExtension
         return Task.done();
     }
 
-    @Override
-    public String getName()
-    {
-        return name;
-    }
-
     @Override
     public Task<Void> clearState(final RemoteReference<?> reference, final Object state)
     {
         return getOrCreateTable(RemoteReference.getInterfaceClass(reference).getSimpleName())
-                .thenAccept(table -> table.deleteItem("_id", String.valueOf(RemoteReference.getId(reference))));
+                .thenCompose(table -> executeBlocking(() -> table.deleteItem("_id", String.valueOf(RemoteReference.getId(reference)))))
+                .thenApply(outcome -> null);
     }
 
     @Override
     public Task<Void> stop()
     {
+        shutdownIoExecutor();
         return Task.done();
     }
 
@@ -150,7 +164,7 @@ public class DynamoDBStorageExtension implements StorageExtension
     {
 
         return getOrCreateTable(RemoteReference.getInterfaceClass(reference).getSimpleName())
-                .thenApply(table -> table.getItem("_id", String.valueOf(RemoteReference.getId(reference))))
+                .thenCompose(table -> executeBlocking(() -> table.getItem("_id", String.valueOf(RemoteReference.getId(reference)))))
                 .thenApply(item ->
                 {
                     if (item != null)
@@ -181,12 +195,153 @@ public class DynamoDBStorageExtension implements StorageExtension
             final String serializedState = mapper.writeValueAsString(state);
 
             return getOrCreateTable(RemoteReference.getInterfaceClass(reference).getSimpleName())
-                    .thenAccept(table -> table.putItem(new Item().withPrimaryKey("_id", String.valueOf(RemoteReference.getId(reference))).withJSON("_state", serializedState)));
+                    .thenCompose(table -> executeBlocking(() -> table.putItem(new Item().withPrimaryKey("_id", String.valueOf(RemoteReference.getId(reference))).withJSON("_state", serializedState))))
+                    .thenApply(outcome -> null);
+        }
+        catch (JsonProcessingException e)
+        {
+            throw new UncheckedException(e);
+        }
+    }
+
+    @Override
+    public Task<List<Boolean>> readStates(final List<RemoteReference<?>> references, final List<Object> states)
+    {
+        // the batch requests reject duplicated keys
+        final Set<Map.Entry<String, String>> keys = new LinkedHashSet<>();
+        for (RemoteReference<?> reference : references)
+        {
+            keys.add(tableKey(reference));
+        }
+        return getOrCreateTables(keys)
+                .thenCompose(v -> executeBlocking(() -> batchGetItems(new ArrayList<>(keys))))
+                .thenApply(items -> {
+                    final List<Boolean> result = new ArrayList<>(references.size());
+                    for (int i = 0; i < references.size(); i++)
+                    {
+                        final Map.Entry<String, String> key = tableKey(references.get(i));
+                        final Map<String, Item> tableItems = items.get(key.getKey());
+                        final Item item = tableItems != null ? tableItems.get(key.getValue()) : null;
+                        if (item != null)
+                        {
+                            try
+                            {
+                                mapper.readerForUpdating(states.get(i)).readValue(item.getJSON("_state"));
+                            }
+                            catch (IOException e)
+                            {
+                                throw new UncheckedException(e);
+                            }
+                        }
+                        result.add(item != null);
+                    }
+                    return result;
+                });
+    }
+
+    private Map<String, Map<String, Item>> batchGetItems(final List<Map.Entry<String, String>> keys)
+    {
+        final Map<String, Map<String, Item>> items = new HashMap<>();
+        for (int start = 0; start < keys.size(); start += MAX_BATCH_GET)
+        {
+            final Map<String, TableKeysAndAttributes> request = new LinkedHashMap<>();
+            for (Map.Entry<String, String> key : keys.subList(start, Math.min(keys.size(), start + MAX_BATCH_GET)))
+            {
+                request.computeIfAbsent(key.getKey(), TableKeysAndAttributes::new).addHashOnlyPrimaryKey("_id", key.getValue());
+            }
+            BatchGetItemOutcome outcome = dynamoDB.batchGetItem(request.values().toArray(new TableKeysAndAttributes[request.size()]));
+            for (int retry = 0; ; retry++)
+            {
+                outcome.getTableItems().forEach((table, tableItems) -> {
+                    final Map<String, Item> byId = items.computeIfAbsent(table, k -> new HashMap<>());
+                    tableItems.forEach(item -> byId.put(item.getString("_id"), item));
+                });
+                final Map<String, KeysAndAttributes> unprocessed = outcome.getUnprocessedKeys();
+                if (unprocessed == null || unprocessed.isEmpty())
+                {
+                    break;
+                }
+                backoff(retry);
+                outcome = dynamoDB.batchGetItemUnprocessed(unprocessed);
+            }
+        }
+        return items;
+    }
+
+    @Override
+    public Task<Void> writeStates(final Map<RemoteReference<?>, Object> states)
+    {
+        final List<Map.Entry<String, Item>> items = new ArrayList<>(states.size());
+        final Set<Map.Entry<String, String>> keys = new LinkedHashSet<>();
+        try
+        {
+            for (Map.Entry<RemoteReference<?>, Object> entry : states.entrySet())
+            {
+                final Map.Entry<String, String> key = tableKey(entry.getKey());
+                keys.add(key);
+                items.add(new AbstractMap.SimpleImmutableEntry<>(key.getKey(),
+                        new Item().withPrimaryKey("_id", key.getValue()).withJSON("_state", mapper.writeValueAsString(entry.getValue()))));
+            }
         }
         catch (JsonProcessingException e)
         {
             throw new UncheckedException(e);
         }
+        return getOrCreateTables(keys).thenCompose(v -> executeBlocking(() -> {
+            batchWriteItems(items);
+            return null;
+        }));
+    }
+
+    private void batchWriteItems(final List<Map.Entry<String, Item>> items)
+    {
+        for (int start = 0; start < items.size(); start += MAX_BATCH_WRITE)
+        {
+            final Map<String, TableWriteItems> request = new LinkedHashMap<>();
+            for (Map.Entry<String, Item> item : items.subList(start, Math.min(items.size(), start + MAX_BATCH_WRITE)))
+            {
+                request.computeIfAbsent(item.getKey(), TableWriteItems::new).addItemToPut(item.getValue());
+            }
+            BatchWriteItemOutcome outcome = dynamoDB.batchWriteItem(request.values().toArray(new TableWriteItems[request.size()]));
+            for (int retry = 0; ; retry++)
+            {
+                final Map<String, List<WriteRequest>> unprocessed = outcome.getUnprocessedItems();
+                if (unprocessed == null || unprocessed.isEmpty())
+                {
+                    break;
+                }
+                backoff(retry);
+                outcome = dynamoDB.batchWriteItemUnprocessed(unprocessed);
+            }
+        }
+    }
+
+    private void backoff(final int retry)
+    {
+        if (retry >= MAX_UNPROCESSED_RETRIES)
+        {
+            throw new UncheckedException("DynamoDB batch still throttled after " + retry + " retries");
+        }
+        try
+        {
+            Thread.sleep(Math.min(1000, 25L << retry));
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new UncheckedException(e);
+        }
+    }
+
+    private static Map.Entry<String, String> tableKey(final RemoteReference<?> reference)
+    {
+        return new AbstractMap.SimpleImmutableEntry<>(RemoteReference.getInterfaceClass(reference).getSimpleName(),
+                String.valueOf(RemoteReference.getId(reference)));
+    }
+
+    private Task<Void> getOrCreateTables(final Set<Map.Entry<String, String>> keys)
+    {
+        return Task.allOf(keys.stream().map(Map.Entry::getKey).distinct().map(this::getOrCreateTable));
     }
 
     private Task<Table> getOrCreateTable(final String tableName)
@@ -222,11 +377,6 @@ public class DynamoDBStorageExtension implements StorageExtension
         }
     }
 
-    public void setName(final String name)
-    {
-        this.name = name;
-    }
-
     public String getEndpoint()
     {
         return endpoint;
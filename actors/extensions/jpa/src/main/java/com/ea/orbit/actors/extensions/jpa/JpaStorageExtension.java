@@ -43,6 +43,8 @@ import javax.persistence.NoResultException;
 import javax.persistence.Persistence;
 import javax.persistence.Query;
 
+import java.io.IOException;
+
 public class JpaStorageExtension extends AbstractStorageExtension
 {
 
@@ -58,10 +60,9 @@ public class JpaStorageExtension extends AbstractStorageExtension
     }
 
     @Override
-    public synchronized Task<Void> clearState(final RemoteReference<?> reference, final Object state)
+    public Task<Void> clearState(final RemoteReference<?> reference, final Object state)
     {
-        try
-        {
+        return executeBlocking(() -> {
             String stateId = getIdentity(reference);
             EntityManager em = emf.createEntityManager();
             Query query = em.createQuery("delete from " + state.getClass().getName() + " s where s.stateId=:stateId");
@@ -70,19 +71,14 @@ public class JpaStorageExtension extends AbstractStorageExtension
             query.executeUpdate();
             em.getTransaction().commit();
             em.close();
-            return Task.done();
-        }
-        catch (Exception e)
-        {
-            throw new UncheckedException(e);
-        }
+            return null;
+        });
     }
 
     @Override
-    public synchronized Task<Boolean> readState(final RemoteReference<?> reference, Object state)
+    public Task<Boolean> readState(final RemoteReference<?> reference, Object state)
     {
-        try
-        {
+        return executeBlocking(() -> {
             boolean isJpaEntity = state.getClass().isAnnotationPresent(Entity.class);
             String stateId = getIdentity(reference);
             EntityManager em = emf.createEntityManager();
@@ -105,7 +101,7 @@ public class JpaStorageExtension extends AbstractStorageExtension
                     newState = mapper.readValue((((JpaGenericData) newState).jsonData), state.getClass());
                 }
                 mapper.readerForUpdating(state).readValue(mapper.writeValueAsString(newState));
-                return Task.fromValue(true);
+                return true;
             }
             catch (NoResultException ignore)
             {
@@ -114,44 +110,46 @@ public class JpaStorageExtension extends AbstractStorageExtension
             {
                 em.close();
             }
-            return Task.fromValue(false);
-        }
-        catch (Exception e)
-        {
-            throw new UncheckedException(e);
-        }
+            return false;
+        });
     }
 
     @Override
-    public synchronized Task<Void> writeState(final RemoteReference<?> reference, Object state)
+    public Task<Void> writeState(final RemoteReference<?> reference, final Object state)
     {
+        // the copy is taken on the caller's thread, the actor may change the state after this returns
         boolean isJpaEntity = state.getClass().isAnnotationPresent(Entity.class);
-
+        final Object entity;
         try
         {
-            if (!isJpaEntity)
+            if (isJpaEntity)
+            {
+                entity = mapper.readValue(mapper.writeValueAsString(state), state.getClass());
+            }
+            else
             {
                 JpaGenericData tmp = new JpaGenericData();
                 tmp.jsonData = mapper.writeValueAsString(state);
-                state = tmp;
+                entity = tmp;
             }
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedException(e);
+        }
 
-            String identity = getIdentity(reference);
-            JpaState jpaState = (JpaState) state;
-            jpaState.stateId = identity;
+        String identity = getIdentity(reference);
+        JpaState jpaState = (JpaState) entity;
+        jpaState.stateId = identity;
 
+        return executeBlocking(() -> {
             EntityManager em = emf.createEntityManager();
             em.getTransaction().begin();
-            em.merge(state);
+            em.merge(entity);
             em.getTransaction().commit();
-            em.detach(state);
             em.close();
-            return Task.done();
-        }
-        catch (Exception e)
-        {
-            throw new UncheckedException(e);
-        }
+            return null;
+        });
     }
 
     @Override
@@ -174,6 +172,7 @@ public class JpaStorageExtension extends AbstractStorageExtension
     {
         try
         {
+            shutdownIoExecutor();
             emf.close();
             return Task.done();
         }
@@ -70,66 +70,71 @@ public class LdapStorageExtension extends AbstractStorageExtension
     @Override
     public Task<Void> stop()
     {
+        shutdownIoExecutor();
         return Task.done();
     }
 
     @Override
     public Task<Void> clearState(final RemoteReference reference, final Object state)
     {
-        LdapConnection connection = null;
-        try
-        {
-            connection = acquireConnection();
-            connection.delete(absoluteDn(reference, entity(state)));
-        }
-        catch (Exception ignored)
-        {
-        }
-        finally
-        {
-            if (connection != null)
+        return executeBlocking(() -> {
+            LdapConnection connection = null;
+            try
             {
-                releaseConnection(connection);
+                connection = acquireConnection();
+                connection.delete(absoluteDn(reference, entity(state)));
             }
-        }
-        return Task.done();
+            catch (Exception ignored)
+            {
+            }
+            finally
+            {
+                if (connection != null)
+                {
+                    releaseConnection(connection);
+                }
+            }
+            return null;
+        });
     }
 
     @Override
     @SuppressWarnings("unchecked")
     public Task<Boolean> readState(final RemoteReference reference, final Object state)
     {
-        LdapConnection connection = null;
-        try
-        {
-            LdapEntity entity = entity(state);
-            connection = acquireConnection();
-            EntryCursor cursor = connection.search(absoluteDn(reference, entity), "(objectclass=*)", SearchScope.OBJECT, "*");
-            if (cursor.next())
+        return executeBlocking(() -> {
+            LdapConnection connection = null;
+            try
             {
-                Map<String, Field> map = getFieldAttributeMap(state.getClass());
-                for (String key : map.keySet())
+                LdapEntity entity = entity(state);
+                connection = acquireConnection();
+                EntryCursor cursor = connection.search(absoluteDn(reference, entity), "(objectclass=*)", SearchScope.OBJECT, "*");
+                if (cursor.next())
                 {
-                    map.get(key).set(state, cursor.get().get(key).get().getString());
+                    Map<String, Field> map = getFieldAttributeMap(state.getClass());
+                    for (String key : map.keySet())
+                    {
+                        map.get(key).set(state, cursor.get().get(key).get().getString());
+                    }
+                }
+                else
+                {
+                    return false;
                 }
             }
-            else
+            catch (Exception e)
             {
-                return Task.fromValue(false);
+                throw new UncheckedException(e);
             }
-        }
-        catch (Exception e)
-        {
-            throw new UncheckedException(e);
-        }
-        finally
-        {
-            if (connection != null)
+            finally
             {
-                releaseConnection(connection);
+                if (connection != null)
+                {
+                    releaseConnection(connection);
+                }
             }
-        }
-        return Task.fromValue(true);
+            return true;
+        });
     }
 
     private Map<String, Field> getFieldAttributeMap(Class clazz)
@@ -167,50 +172,62 @@ public class LdapStorageExtension extends AbstractStorageExtension
     @SuppressWarnings("unchecked")
     public Task<Void> writeState(final RemoteReference reference, final Object state)
     {
-        LdapConnection connection = null;
+        // the attributes are read on the caller's thread, the actor may change the state after this returns
+        final LdapEntity entity = entity(state);
+        final List<String> attributes = new ArrayList(Arrays.asList(entity.attributes()));
+        final Map<String, Object> values = new HashMap<>();
         try
         {
-            LdapEntity entity = entity(state);
-
-            List<String> attributes = new ArrayList(Arrays.asList(entity.attributes()));
             Map<String, Field> map = getFieldAttributeMap(state.getClass());
             for (String key : map.keySet())
             {
-                attributes.add(key + ": " + map.get(key).get(state).toString());
+                Object value = map.get(key).get(state);
+                attributes.add(key + ": " + value.toString());
+                values.put(key, value);
             }
+        }
+        catch (IllegalAccessException e)
+        {
+            throw new UncheckedException(e);
+        }
 
-            connection = acquireConnection();
-            EntryCursor cursor = connection.search(absoluteDn(reference, entity), "(objectclass=*)", SearchScope.OBJECT, "*");
-            if (cursor.next())
+        return executeBlocking(() -> {
+            LdapConnection connection = null;
+            try
             {
+                connection = acquireConnection();
+                EntryCursor cursor = connection.search(absoluteDn(reference, entity), "(objectclass=*)", SearchScope.OBJECT, "*");
+                if (cursor.next())
+                {
 
-                List<Modification> modifications = new ArrayList<>();
-                for (String tmp : map.keySet())
+                    List<Modification> modifications = new ArrayList<>();
+                    for (String tmp : values.keySet())
+                    {
+                        String value = (String) values.get(tmp);
+                        Modification mod = new DefaultModification(ModificationOperation.REPLACE_ATTRIBUTE, tmp, value);
+                        modifications.add(mod);
+                    }
+                    connection.modify(cursor.get().getDn(), modifications.toArray(new Modification[0]));
+
+                }
+                else
                 {
-                    String value = (String) map.get(tmp).get(state);
-                    Modification mod = new DefaultModification(ModificationOperation.REPLACE_ATTRIBUTE, tmp, value);
-                    modifications.add(mod);
+                    connection.add(new DefaultEntry(absoluteDn(reference, entity), attributes.toArray()));
                 }
-                connection.modify(cursor.get().getDn(), modifications.toArray(new Modification[0]));
-
             }
-            else
+            catch (Exception e)
             {
-                connection.add(new DefaultEntry(absoluteDn(reference, entity), attributes.toArray()));
+                throw new UncheckedException(e);
             }
-        }
-        catch (Exception e)
-        {
-            throw new UncheckedException(e);
-        }
-        finally
-        {
-            if (connection != null)
+            finally
             {
-                releaseConnection(connection);
+                if (connection != null)
+                {
+                    releaseConnection(connection);
+                }
             }
-        }
-        return Task.done();
+            return null;
+        });
     }
 
     private LdapConnection acquireConnection() throws LdapException, IOException
@@ -84,56 +84,64 @@ public class MemcachedStorageExtension extends AbstractStorageExtension
     @Override
     public Task<Void> clearState(final RemoteReference reference, final Object state)
     {
-        memcachedClient.delete(asKey(reference));
-        return Task.done();
+        return executeBlocking(() -> {
+            memcachedClient.delete(asKey(reference));
+            return null;
+        });
     }
 
     @Override
     public Task<Void> stop()
     {
+        shutdownIoExecutor();
         return Task.done();
     }
 
     @Override
     public Task<Boolean> readState(final RemoteReference<?> reference, final Object state)
     {
-        try
-        {
-            Object newState = memcachedClient.get(asKey(reference));
-            if (newState != null)
+        return executeBlocking(() -> {
+            try
             {
-                mapper.readerForUpdating(state).readValue(String.valueOf(newState));
+                Object newState = memcachedClient.get(asKey(reference));
+                if (newState != null)
+                {
+                    mapper.readerForUpdating(state).readValue(String.valueOf(newState));
+                }
+                return newState != null;
             }
-            return Task.fromValue(newState != null);
-        }
-        catch (RuntimeException | IOException e)
-        {
-            if (logger.isDebugEnabled()) {
-                logger.warn("Exception during cache value deserialization for key: " + asKey(reference) + " - removing entry", e);
-            } else {
-                logger.warn("Exception during cache value deserialization for key: " + asKey(reference) + " - removing entry");
+            catch (RuntimeException | IOException e)
+            {
+                if (logger.isDebugEnabled()) {
+                    logger.warn("Exception during cache value deserialization for key: " + asKey(reference) + " - removing entry", e);
+                } else {
+                    logger.warn("Exception during cache value deserialization for key: " + asKey(reference) + " - removing entry");
+                }
+
+                // Remove the entry upon error deserializing its value..
+                memcachedClient.delete(asKey(reference));
             }
-
-            // Remove the entry upon error deserializing its value..
-            memcachedClient.delete(asKey(reference));
-        }
-        return Task.fromValue(false);
+            return false;
+        });
     }
 
     @Override
     @SuppressWarnings("unchecked")
     public Task<Void> writeState(final RemoteReference reference, final Object state)
     {
+        final String serializedState;
         try
         {
-            String serializedState = mapper.writeValueAsString(state);
-            memcachedClient.set(asKey(reference), serializedState);
-            return Task.done();
+            serializedState = mapper.writeValueAsString(state);
         }
         catch (RuntimeException | IOException e)
         {
             throw new UncheckedException(e);
         }
+        return executeBlocking(() -> {
+            memcachedClient.set(asKey(reference), serializedState);
+            return null;
+        });
     }
 
     private String asKey(final RemoteReference reference)
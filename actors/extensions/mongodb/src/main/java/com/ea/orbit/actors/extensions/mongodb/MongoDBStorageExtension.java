@@ -28,7 +28,7 @@ THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
 
 package com.ea.orbit.actors.extensions.mongodb;
 
-import com.ea.orbit.actors.extensions.StorageExtension;
+import com.ea.orbit.actors.extensions.AbstractStorageExtension;
 import com.ea.orbit.actors.extensions.json.ActorReferenceModule;
 import com.ea.orbit.actors.runtime.RemoteReference;
 import com.ea.orbit.actors.runtime.DefaultDescriptorFactory;
@@ -42,16 +42,22 @@ import org.mongojack.internal.object.BsonObjectTraversingParser;
 import com.fasterxml.jackson.annotation.JsonAutoDetect;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.mongodb.BasicDBObject;
+import com.mongodb.BulkWriteOperation;
 import com.mongodb.DB;
 import com.mongodb.DBCollection;
+import com.mongodb.DBCursor;
 import com.mongodb.DBObject;
 import com.mongodb.MongoClient;
 import com.mongodb.MongoCredential;
 import com.mongodb.ServerAddress;
 
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
-public class MongoDBStorageExtension implements StorageExtension
+public class MongoDBStorageExtension extends AbstractStorageExtension
 {
 
     private MongoClient mongoClient;
@@ -62,7 +68,6 @@ public class MongoDBStorageExtension implements StorageExtension
     private String host = "localhost";
     private int port = 27017;
     private String password;
-    private String name = "default";
 
     public void setHost(final String host)
     {
@@ -112,53 +117,94 @@ public class MongoDBStorageExtension implements StorageExtension
         return Task.done();
     }
 
-    @Override
-    public String getName()
-    {
-        return name;
-    }
-
     @Override
     public Task<Void> clearState(final RemoteReference<?> reference, final Object state)
     {
-        DB db = mongoClient.getDB(database);
-        final DBCollection col = db.getCollection(RemoteReference.getInterfaceClass(reference).getSimpleName());
-        col.remove(new BasicDBObject("_id", String.valueOf(RemoteReference.getId(reference))));
-        return Task.done();
+        return executeBlocking(() -> {
+            DB db = mongoClient.getDB(database);
+            final DBCollection col = db.getCollection(RemoteReference.getInterfaceClass(reference).getSimpleName());
+            col.remove(new BasicDBObject("_id", String.valueOf(RemoteReference.getId(reference))));
+            return null;
+        });
     }
 
     @Override
     public Task<Void> stop()
     {
+        shutdownIoExecutor();
         mongoClient.close();
         return Task.done();
     }
 
     @Override
-    @SuppressWarnings("unchecked")
     public Task<Boolean> readState(final RemoteReference<?> reference, final Object state)
     {
-        DB db = mongoClient.getDB(database);
-        final DBCollection col = db.getCollection(RemoteReference.getInterfaceClass(reference).getSimpleName());
-        JacksonDBCollection<Object, String> coll = JacksonDBCollection.wrap(
-                col, (Class<Object>) state.getClass(), String.class, mapper);
+        return executeBlocking(() -> {
+            DB db = mongoClient.getDB(database);
+            final DBCollection col = db.getCollection(RemoteReference.getInterfaceClass(reference).getSimpleName());
+
+            DBObject obj = col.findOne(String.valueOf(RemoteReference.getId(reference)));
+            return parse(reference, col, obj, state);
+        });
+    }
+
+    @Override
+    public Task<List<Boolean>> readStates(final List<RemoteReference<?>> references, final List<Object> states)
+    {
+        // one $in query per collection
+        final Map<String, List<String>> idsByCollection = new LinkedHashMap<>();
+        for (RemoteReference<?> reference : references)
+        {
+            idsByCollection.computeIfAbsent(RemoteReference.getInterfaceClass(reference).getSimpleName(), k -> new ArrayList<>())
+                    .add(String.valueOf(RemoteReference.getId(reference)));
+        }
+        return executeBlocking(() -> {
+            DB db = mongoClient.getDB(database);
+            final Map<String, Map<Object, DBObject>> found = new HashMap<>();
+            for (Map.Entry<String, List<String>> entry : idsByCollection.entrySet())
+            {
+                final Map<Object, DBObject> byId = new HashMap<>();
+                try (DBCursor cursor = db.getCollection(entry.getKey()).find(new BasicDBObject("_id", new BasicDBObject("$in", entry.getValue()))))
+                {
+                    for (DBObject obj : cursor)
+                    {
+                        byId.put(obj.get("_id"), obj);
+                    }
+                }
+                found.put(entry.getKey(), byId);
+            }
+            final List<Boolean> result = new ArrayList<>(references.size());
+            for (int i = 0; i < references.size(); i++)
+            {
+                final RemoteReference<?> reference = references.get(i);
+                final String collection = RemoteReference.getInterfaceClass(reference).getSimpleName();
+                final DBObject obj = found.get(collection).get(String.valueOf(RemoteReference.getId(reference)));
+                result.add(parse(reference, db.getCollection(collection), obj, states.get(i)));
+            }
+            return result;
+        });
+    }
 
-        DBObject obj = col.findOne(String.valueOf(RemoteReference.getId(reference)));
+    @SuppressWarnings("unchecked")
+    private boolean parse(final RemoteReference<?> reference, final DBCollection col, final DBObject obj, final Object state)
+    {
         if (obj != null)
         {
+            JacksonDBCollection<Object, String> coll = JacksonDBCollection.wrap(
+                    col, (Class<Object>) state.getClass(), String.class, mapper);
             try
             {
                 obj.removeField("_id");
                 mapper.readerForUpdating(state).readValue(new BsonObjectTraversingParser(
                         coll, obj, mapper));
-                return Task.fromValue(true);
+                return true;
             }
             catch (Exception e)
             {
                 throw new UncheckedException("Error reading state of: " + reference, e);
             }
         }
-        return Task.fromValue(false);
+        return false;
     }
 
     @Override
@@ -171,17 +217,40 @@ public class MongoDBStorageExtension implements StorageExtension
                 col, (Class<Object>) state.getClass(), String.class, mapper);
         DBObject obj = coll.convertToDbObject(state);
         obj.put("_id", String.valueOf(RemoteReference.getId(reference)));
-        col.save(obj);
-        return Task.done();
+        return executeBlocking(() -> {
+            col.save(obj);
+            return null;
+        });
     }
 
-    public void setDatabase(final String database)
+    @Override
+    @SuppressWarnings("unchecked")
+    public Task<Void> writeStates(final Map<RemoteReference<?>, Object> states)
     {
-        this.database = database;
+        DB db = mongoClient.getDB(database);
+        // one unordered bulk write per collection
+        final Map<String, BulkWriteOperation> bulks = new LinkedHashMap<>();
+        for (Map.Entry<RemoteReference<?>, Object> entry : states.entrySet())
+        {
+            final RemoteReference<?> reference = entry.getKey();
+            final Object state = entry.getValue();
+            final DBCollection col = db.getCollection(RemoteReference.getInterfaceClass(reference).getSimpleName());
+            JacksonDBCollection<Object, String> coll = JacksonDBCollection.wrap(
+                    col, (Class<Object>) state.getClass(), String.class, mapper);
+            final String id = String.valueOf(RemoteReference.getId(reference));
+            DBObject obj = coll.convertToDbObject(state);
+            obj.put("_id", id);
+            bulks.computeIfAbsent(col.getName(), k -> col.initializeUnorderedBulkOperation())
+                    .find(new BasicDBObject("_id", id)).upsert().replaceOne(obj);
+        }
+        return executeBlocking(() -> {
+            bulks.values().forEach(BulkWriteOperation::execute);
+            return null;
+        });
     }
 
-    public void setName(final String name)
+    public void setDatabase(final String database)
     {
-        this.name = name;
+        this.database = database;
     }
 }
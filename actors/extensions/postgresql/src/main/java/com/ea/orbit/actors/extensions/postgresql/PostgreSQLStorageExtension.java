@@ -35,20 +35,47 @@ import com.ea.orbit.actors.runtime.DefaultDescriptorFactory;
 import com.ea.orbit.concurrent.Task;
 import com.ea.orbit.exception.UncheckedException;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import com.fasterxml.jackson.annotation.JsonAutoDetect;
-import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
-import java.io.IOException;
+import java.sql.Array;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * Stores actor states in a PostgreSQL table.
+ * <p>
+ * JDBC calls are blocking, so they run on the extension's I/O pool with one pooled
+ * connection per I/O thread, see {@link #setIoThreads(int)} and {@link #setIoQueueSize(int)}.
+ * </p>
+ * <p>
+ * New tables store the state as {@code jsonb}; tables created by older versions with a
+ * {@code text} column keep working.
+ * </p>
+ */
 public class PostgreSQLStorageExtension extends AbstractStorageExtension
 {
+    private static final Logger logger = LoggerFactory.getLogger(PostgreSQLStorageExtension.class);
+
+    // rows per multi-row upsert statement
+    private static final int WRITE_BATCH_SIZE = 500;
+    // connections idle for longer than this are checked before being used again
+    private static final long VALIDATE_AFTER_IDLE_NANOS = TimeUnit.SECONDS.toNanos(30);
 
     private String host = "localhost";
     private int port = 5432; // PostgreSQL standard port
@@ -56,11 +83,9 @@ public class PostgreSQLStorageExtension extends AbstractStorageExtension
     private String username;
     private String password;
 
-    private Connection connection;
-    private PreparedStatement insertState;
-    private PreparedStatement updateState;
-    private PreparedStatement readState;
-    private PreparedStatement clearState;
+    private BlockingQueue<PooledConnection> connections;
+    // "?::jsonb" for jsonb columns, "?" for legacy text columns
+    private String stateParameter = "?";
 
     private ObjectMapper mapper;
 
@@ -90,95 +115,172 @@ public class PostgreSQLStorageExtension extends AbstractStorageExtension
     }
 
     @Override
-    public synchronized Task<Void> clearState(final RemoteReference<?> reference, final Object state)
+    public Task<Void> clearState(final RemoteReference<?> reference, final Object state)
+    {
+        final String actor = getName(reference), identity = getIdentity(reference);
+        return execute(connection -> {
+            try (PreparedStatement clearState = connection.prepareStatement(
+                    "DELETE FROM actor_states WHERE actor = ? AND identity = ?"))
+            {
+                clearState.setString(1, actor);
+                clearState.setString(2, identity);
+                clearState.execute();
+            }
+            return null;
+        });
+    }
+
+    @Override
+    public Task<Boolean> readState(final RemoteReference<?> reference, final Object state)
+    {
+        final String actor = getName(reference), identity = getIdentity(reference);
+        return execute(connection -> {
+            try (PreparedStatement readState = connection.prepareStatement(
+                    "SELECT state FROM actor_states WHERE actor = ? AND identity = ?"))
+            {
+                readState.setString(1, actor);
+                readState.setString(2, identity);
+                try (ResultSet results = readState.executeQuery())
+                {
+                    if (results.next())
+                    {
+                        mapper.readerForUpdating(state).readValue(results.getString(1));
+                        return true;
+                    }
+                    return false;
+                }
+            }
+        });
+    }
+
+    /**
+     * Writes the state with a single upsert, requires PostgreSQL 9.5 or newer.
+     */
+    @Override
+    public Task<Void> writeState(final RemoteReference<?> reference, final Object state)
     {
+        final String actor = getName(reference), identity = getIdentity(reference);
+        final String serializedState;
         try
         {
-            clearState.setString(1, getName(reference));
-            clearState.setString(2, getIdentity(reference));
-            clearState.execute();
-            return Task.done();
+            // serialized on the caller's thread, the actor may change the state after this returns
+            serializedState = mapper.writeValueAsString(state);
         }
-        catch (SQLException e)
+        catch (Exception e)
         {
-            throw new UncheckedException(e);
+            return Task.fromException(e);
         }
+        return execute(connection -> {
+            try (PreparedStatement upsert = connection.prepareStatement(
+                    "INSERT INTO actor_states (actor, identity, state) VALUES (?, ?, " + stateParameter + ")"
+                            + " ON CONFLICT (actor, identity) DO UPDATE SET state = EXCLUDED.state"))
+            {
+                upsert.setString(1, actor);
+                upsert.setString(2, identity);
+                upsert.setString(3, serializedState);
+                upsert.executeUpdate();
+            }
+            return null;
+        });
     }
 
     @Override
-    public synchronized Task<Boolean> readState(final RemoteReference<?> reference, final Object state)
+    public Task<List<Boolean>> readStates(final List<RemoteReference<?>> references, final List<Object> states)
     {
-        String actor = getName(reference), identity = getIdentity(reference);
-        ResultSet results = null;
-        try
+        // one query per actor type
+        final Map<String, List<String>> identitiesByActor = new LinkedHashMap<>();
+        for (RemoteReference<?> reference : references)
         {
-            readState.setString(1, actor);
-            readState.setString(2, identity);
-            results = readState.executeQuery();
-            if (results.next())
-            {
-                String json = results.getString("state");
-                mapper.readerForUpdating(state).readValue(json);
-                return Task.fromValue(true);
-            }
-            else
-            {
-                return Task.fromValue(false);
-            }
+            identitiesByActor.computeIfAbsent(getName(reference), k -> new ArrayList<>()).add(getIdentity(reference));
         }
-        catch (SQLException | IOException e)
-        {
-            throw new UncheckedException(e);
-        }
-        finally
-        {
-            if (results != null)
+        return execute(connection -> {
+            final Map<String, Map<String, String>> found = new HashMap<>();
+            try (PreparedStatement readStates = connection.prepareStatement(
+                    "SELECT identity, state FROM actor_states WHERE actor = ? AND identity = ANY(?)"))
             {
-                try
+                for (Map.Entry<String, List<String>> entry : identitiesByActor.entrySet())
                 {
-                    results.close();
+                    final Map<String, String> jsonByIdentity = new HashMap<>();
+                    final Array identities = connection.createArrayOf("text", entry.getValue().toArray());
+                    readStates.setString(1, entry.getKey());
+                    readStates.setArray(2, identities);
+                    try (ResultSet results = readStates.executeQuery())
+                    {
+                        while (results.next())
+                        {
+                            jsonByIdentity.put(results.getString(1), results.getString(2));
+                        }
+                    }
+                    identities.free();
+                    found.put(entry.getKey(), jsonByIdentity);
                 }
-                catch (SQLException ignore)
+            }
+            final List<Boolean> result = new ArrayList<>(references.size());
+            for (int i = 0; i < references.size(); i++)
+            {
+                final RemoteReference<?> reference = references.get(i);
+                final String json = found.get(getName(reference)).get(getIdentity(reference));
+                if (json != null)
                 {
+                    mapper.readerForUpdating(states.get(i)).readValue(json);
                 }
+                result.add(json != null);
             }
-        }
+            return result;
+        });
     }
 
+    /**
+     * Writes the states with multi-row upserts, requires PostgreSQL 9.5 or newer.
+     */
     @Override
-    public synchronized Task<Void> writeState(final RemoteReference<?> reference, final Object state)
+    public Task<Void> writeStates(final Map<RemoteReference<?>, Object> states)
     {
-        String actor = getName(reference), identity = getIdentity(reference);
+        final List<String[]> rows = new ArrayList<>(states.size());
         try
         {
-            String serializedState = mapper.writeValueAsString(state);
-            updateState.setString(1, serializedState);
-            updateState.setString(2, actor);
-            updateState.setString(3, identity);
-            if (updateState.executeUpdate() < 1)
+            for (Map.Entry<RemoteReference<?>, Object> entry : states.entrySet())
             {
-                insertState.setString(1, actor);
-                insertState.setString(2, identity);
-                insertState.setString(3, serializedState);
-                insertState.execute();
+                rows.add(new String[]{ getName(entry.getKey()), getIdentity(entry.getKey()), mapper.writeValueAsString(entry.getValue()) });
             }
-            return Task.done();
         }
-        catch (SQLException | JsonProcessingException e)
+        catch (Exception e)
         {
-            throw new UncheckedException(e);
+            return Task.fromException(e);
+        }
+        if (rows.isEmpty())
+        {
+            return Task.done();
         }
+        return execute(connection -> {
+            for (int start = 0; start < rows.size(); start += WRITE_BATCH_SIZE)
+            {
+                final List<String[]> batch = rows.subList(start, Math.min(rows.size(), start + WRITE_BATCH_SIZE));
+                final StringBuilder sql = new StringBuilder("INSERT INTO actor_states (actor, identity, state) VALUES ");
+                for (int i = 0; i < batch.size(); i++)
+                {
+                    sql.append(i == 0 ? "(" : ", (").append("?, ?, ").append(stateParameter).append(")");
+                }
+                sql.append(" ON CONFLICT (actor, identity) DO UPDATE SET state = EXCLUDED.state");
+                try (PreparedStatement upsert = connection.prepareStatement(sql.toString()))
+                {
+                    int parameter = 1;
+                    for (String[] row : batch)
+                    {
+                        upsert.setString(parameter++, row[0]);
+                        upsert.setString(parameter++, row[1]);
+                        upsert.setString(parameter++, row[2]);
+                    }
+                    upsert.executeUpdate();
+                }
+            }
+            return null;
+        });
     }
 
     @Override
     public Task<Void> start()
     {
-        // initialize DB connection
-        loadDriver();
-        openConn();
-        prepareStatements();
-        createTableIfNotExists();
-
         // initialize JSON mapper
         mapper = new ObjectMapper();
         mapper.registerModule(new ActorReferenceModule(DefaultDescriptorFactory.get()));
@@ -189,20 +291,90 @@ public class PostgreSQLStorageExtension extends AbstractStorageExtension
                 .withSetterVisibility(JsonAutoDetect.Visibility.NONE)
                 .withCreatorVisibility(JsonAutoDetect.Visibility.NONE));
 
+        // initialize DB connections
+        loadDriver();
+        connections = new ArrayBlockingQueue<>(Math.max(1, getIoThreads()));
+        final Connection connection = openConn();
+        createTableIfNotExists(connection);
+        stateParameter = "jsonb".equals(getStateColumnType(connection)) ? "?::jsonb" : "?";
+        connections.add(new PooledConnection(connection));
         return Task.done();
     }
 
     @Override
     public Task<Void> stop()
+    {
+        // let queued writes finish before closing the connections
+        shutdownIoExecutor();
+        PooledConnection pooled;
+        while ((pooled = connections.poll()) != null)
+        {
+            close(pooled.connection);
+        }
+        return Task.done();
+    }
+
+    private <T> Task<T> execute(final JdbcWork<T> work)
+    {
+        // one connection per I/O thread, so a call never waits for a connection
+        return executeBlocking(() -> {
+            final PooledConnection pooled = borrowConnection();
+            try
+            {
+                return work.execute(pooled.connection);
+            }
+            catch (SQLException e)
+            {
+                // the connection might be broken, it's checked before its next use
+                pooled.failed = true;
+                throw e;
+            }
+            finally
+            {
+                releaseConnection(pooled);
+            }
+        });
+    }
+
+    private PooledConnection borrowConnection() throws SQLException
+    {
+        final PooledConnection pooled = connections.poll();
+        if (pooled != null)
+        {
+            // validating costs a round trip, only done when the connection is suspect
+            if (!pooled.failed && System.nanoTime() - pooled.releasedAt < VALIDATE_AFTER_IDLE_NANOS)
+            {
+                return pooled;
+            }
+            if (pooled.connection.isValid(1))
+            {
+                pooled.failed = false;
+                return pooled;
+            }
+            logger.info("Replacing broken PostgreSQL connection");
+            close(pooled.connection);
+        }
+        return new PooledConnection(openConn());
+    }
+
+    private void releaseConnection(final PooledConnection pooled)
+    {
+        pooled.releasedAt = System.nanoTime();
+        if (!connections.offer(pooled))
+        {
+            close(pooled.connection);
+        }
+    }
+
+    private void close(final Connection connection)
     {
         try
         {
-            this.connection.close();
-            return Task.done();
+            connection.close();
         }
         catch (SQLException e)
         {
-            throw new UncheckedException(e);
+            logger.debug("Error closing PostgreSQL connection", e);
         }
     }
 
@@ -218,11 +390,11 @@ public class PostgreSQLStorageExtension extends AbstractStorageExtension
         }
     }
 
-    private void openConn()
+    private Connection openConn()
     {
         try
         {
-            this.connection = DriverManager.getConnection(toConnString(), username, password);
+            return DriverManager.getConnection(toConnString(), username, password);
         }
         catch (SQLException e)
         {
@@ -230,33 +402,11 @@ public class PostgreSQLStorageExtension extends AbstractStorageExtension
         }
     }
 
-    private void createTableIfNotExists()
+    private void createTableIfNotExists(final Connection connection)
     {
-        if (!tableExists())
+        try (Statement stmt = connection.createStatement())
         {
-            try
-            {
-                Statement stmt = this.connection.createStatement();
-                stmt.execute("CREATE TABLE actor_states ( actor text NOT NULL, identity text NOT NULL, state text NOT NULL, PRIMARY KEY (actor, identity) )");
-                stmt.close();
-            }
-            catch (SQLException e)
-            {
-                throw new UncheckedException(e);
-            }
-        }
-    }
-
-    private boolean tableExists()
-    {
-        try
-        {
-            Statement stmt = this.connection.createStatement();
-            ResultSet results = stmt.executeQuery(
-                    "SELECT EXISTS (SELECT 1 FROM information_schema.tables WHERE table_name = 'actor_states')");
-            boolean exists = results.next() && results.getBoolean(1);
-            stmt.close();
-            return exists;
+            stmt.execute("CREATE TABLE IF NOT EXISTS actor_states ( actor text NOT NULL, identity text NOT NULL, state jsonb NOT NULL, PRIMARY KEY (actor, identity) )");
         }
         catch (SQLException e)
         {
@@ -264,14 +414,13 @@ public class PostgreSQLStorageExtension extends AbstractStorageExtension
         }
     }
 
-    private void prepareStatements()
+    private String getStateColumnType(final Connection connection)
     {
-        try
+        try (Statement stmt = connection.createStatement();
+             ResultSet results = stmt.executeQuery(
+                     "SELECT data_type FROM information_schema.columns WHERE table_name = 'actor_states' AND column_name = 'state'"))
         {
-            this.insertState = this.connection.prepareCall("INSERT INTO actor_states (actor, identity, state) VALUES (?, ?, ?)");
-            this.updateState = this.connection.prepareCall("UPDATE actor_states SET state = ? WHERE actor = ? AND identity = ?");
-            this.readState = this.connection.prepareCall("SELECT state AS \"state\" FROM actor_states WHERE actor = ?  AND identity = ?");
-            this.clearState = this.connection.prepareCall("DELETE FROM actor_states WHERE actor = ? AND identity = ?");
+            return results.next() ? results.getString(1) : null;
         }
         catch (SQLException e)
         {
@@ -289,4 +438,23 @@ public class PostgreSQLStorageExtension extends AbstractStorageExtension
         return RemoteReference.getInterfaceClass(reference).getSimpleName();
     }
 
+    @FunctionalInterface
+    private interface JdbcWork<T>
+    {
+        T execute(Connection connection) throws Exception;
+    }
+
+    private static class PooledConnection
+    {
+        final Connection connection;
+        // only touched by the I/O thread holding the connection
+        long releasedAt = System.nanoTime();
+        boolean failed;
+
+        PooledConnection(final Connection connection)
+        {
+            this.connection = connection;
+        }
+    }
+
 }
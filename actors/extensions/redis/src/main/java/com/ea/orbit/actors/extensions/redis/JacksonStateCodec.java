@@ -0,0 +1,93 @@
+/*
+ Copyright (C) 2015 Electronic Arts Inc.  All rights reserved.
+
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+
+ 1.  Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+ 2.  Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following disclaimer in the
+     documentation and/or other materials provided with the distribution.
+ 3.  Neither the name of Electronic Arts, Inc. ("EA") nor the names of
+     its contributors may be used to endorse or promote products derived
+     from this software without specific prior written permission.
+
+ THIS SOFTWARE IS PROVIDED BY ELECTRONIC ARTS AND ITS CONTRIBUTORS "AS IS" AND ANY
+ EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ DISCLAIMED. IN NO EVENT SHALL ELECTRONIC ARTS OR ITS CONTRIBUTORS BE LIABLE FOR ANY
+ DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package com.ea.orbit.actors.extensions.redis;
+
+import com.ea.orbit.actors.extensions.json.ActorReferenceModule;
+import com.ea.orbit.actors.runtime.DefaultDescriptorFactory;
+import com.ea.orbit.exception.UncheckedException;
+
+import com.fasterxml.jackson.annotation.JsonAutoDetect;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Jackson based codec, writes straight to bytes without an intermediate string.
+ * <p>
+ * The default mapper writes JSON. For a binary format pass a mapper built on another
+ * factory, for instance {@code new ObjectMapper(new SmileFactory())}.
+ * The actor reference module and the field visibility rules are added to the given mapper.
+ * </p>
+ */
+public class JacksonStateCodec implements RedisStateCodec
+{
+    private final ObjectMapper mapper;
+
+    public JacksonStateCodec()
+    {
+        this(new ObjectMapper());
+    }
+
+    public JacksonStateCodec(final ObjectMapper mapper)
+    {
+        this.mapper = mapper;
+        mapper.registerModule(new ActorReferenceModule(DefaultDescriptorFactory.get()));
+        mapper.setVisibility(mapper.getSerializationConfig().getDefaultVisibilityChecker()
+                .withFieldVisibility(JsonAutoDetect.Visibility.ANY)
+                .withGetterVisibility(JsonAutoDetect.Visibility.NONE)
+                .withIsGetterVisibility(JsonAutoDetect.Visibility.NONE)
+                .withSetterVisibility(JsonAutoDetect.Visibility.NONE)
+                .withCreatorVisibility(JsonAutoDetect.Visibility.NONE));
+    }
+
+    @Override
+    public byte[] encode(final Object state)
+    {
+        try
+        {
+            return mapper.writeValueAsBytes(state);
+        }
+        catch (Exception e)
+        {
+            throw new UncheckedException(e);
+        }
+    }
+
+    @Override
+    public void decode(final byte[] data, final Object state)
+    {
+        try
+        {
+            mapper.readerForUpdating(state).readValue(data);
+        }
+        catch (Exception e)
+        {
+            throw new UncheckedException("Error parsing redis state", e);
+        }
+    }
+}
@@ -0,0 +1,484 @@
+/*
+ Copyright (C) 2015 Electronic Arts Inc.  All rights reserved.
+
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+
+ 1.  Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+ 2.  Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following disclaimer in the
+     documentation and/or other materials provided with the distribution.
+ 3.  Neither the name of Electronic Arts, Inc. ("EA") nor the names of
+     its contributors may be used to endorse or promote products derived
+     from this software without specific prior written permission.
+
+ THIS SOFTWARE IS PROVIDED BY ELECTRONIC ARTS AND ITS CONTRIBUTORS "AS IS" AND ANY
+ EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ DISCLAIMED. IN NO EVENT SHALL ELECTRONIC ARTS OR ITS CONTRIBUTORS BE LIABLE FOR ANY
+ DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package com.ea.orbit.actors.extensions.redis;
+
+import com.ea.orbit.actors.extensions.AbstractStorageExtension;
+import com.ea.orbit.actors.runtime.RemoteReference;
+import com.ea.orbit.concurrent.Task;
+import com.ea.orbit.exception.UncheckedException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Redis storage that never blocks the calling thread.
+ * <p>
+ * Operations are queued and a few connection threads send whatever has accumulated as one
+ * pipeline, so concurrent reads and writes share round trips instead of each holding an
+ * execution thread for a full round trip. States are stored as bytes through a
+ * {@link RedisStateCodec}, JSON by default.
+ * </p>
+ * <p>
+ * With {@link #setUseHashes(boolean)} the states of each actor type are kept as fields of
+ * one redis hash instead of one key per actor, which saves per-key memory on large
+ * populations. The two layouts are not compatible with each other.
+ * </p>
+ */
+public class PipelinedRedisStorageExtension extends AbstractStorageExtension
+{
+    private static final Logger logger = LoggerFactory.getLogger(PipelinedRedisStorageExtension.class);
+
+    private String host = "localhost";
+    private int port = 6379;
+    private String databaseName;
+    private int timeout = 10000;
+    private int connections = 2;
+    private int maxPipelineSize = 1000;
+    private int queueSize = 10000;
+    private boolean useHashes;
+    private RedisStateCodec codec;
+
+    private final ConcurrentHashMap<Class<?>, byte[]> prefixes = new ConcurrentHashMap<>();
+    private BlockingQueue<Command<?>> queue;
+    private List<Thread> threads;
+    private volatile boolean stopping;
+
+    private final LongAdder pipelines = new LongAdder();
+    private final LongAdder pipelinedCommands = new LongAdder();
+
+    @Override
+    public Task<Void> start()
+    {
+        if (codec == null)
+        {
+            codec = new JacksonStateCodec();
+        }
+        stopping = false;
+        queue = new ArrayBlockingQueue<>(queueSize);
+        threads = new ArrayList<>(connections);
+        for (int i = 0; i < connections; i++)
+        {
+            final Thread thread = new Thread(this::sendCommands, "orbit-redis-" + getName() + "-" + (i + 1));
+            thread.setDaemon(true);
+            thread.start();
+            threads.add(thread);
+        }
+        return Task.done();
+    }
+
+    @Override
+    public Task<Void> stop()
+    {
+        if (threads == null)
+        {
+            // never started
+            return Task.done();
+        }
+        // the connection threads exit once the queue is empty
+        stopping = true;
+        for (Thread thread : threads)
+        {
+            try
+            {
+                thread.join(timeout);
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        return Task.done();
+    }
+
+    @Override
+    public Task<Void> clearState(final RemoteReference<?> reference, final Object state)
+    {
+        final byte[] prefix = prefix(reference), id = id(reference);
+        final Task<Long> deleted = useHashes
+                ? submit(pipeline -> pipeline.hdel(prefix, id))
+                : submit(pipeline -> pipeline.del(key(prefix, id)));
+        return deleted.thenApply(r -> null);
+    }
+
+    @Override
+    public Task<Boolean> readState(final RemoteReference<?> reference, final Object state)
+    {
+        final byte[] prefix = prefix(reference), id = id(reference);
+        final Task<byte[]> data = useHashes
+                ? submit(pipeline -> pipeline.hget(prefix, id))
+                : submit(pipeline -> pipeline.get(key(prefix, id)));
+        return data.thenApply(bytes -> decode(bytes, state));
+    }
+
+    @Override
+    public Task<List<Boolean>> readStates(final List<RemoteReference<?>> references, final List<Object> states)
+    {
+        if (references.isEmpty())
+        {
+            return Task.fromValue(new ArrayList<>());
+        }
+        if (useHashes)
+        {
+            // the reads end up in the same pipeline anyway
+            final List<Task<Boolean>> reads = new ArrayList<>(references.size());
+            for (int i = 0; i < references.size(); i++)
+            {
+                reads.add(readState(references.get(i), states.get(i)));
+            }
+            return Task.allOf(reads).thenApply(r -> {
+                final List<Boolean> found = new ArrayList<>(reads.size());
+                reads.forEach(read -> found.add(read.join()));
+                return found;
+            });
+        }
+        final byte[][] keys = new byte[references.size()][];
+        for (int i = 0; i < keys.length; i++)
+        {
+            keys[i] = key(prefix(references.get(i)), id(references.get(i)));
+        }
+        return submit(pipeline -> pipeline.mget(keys)).thenApply(values -> {
+            final List<Boolean> found = new ArrayList<>(values.size());
+            for (int i = 0; i < values.size(); i++)
+            {
+                found.add(decode(values.get(i), states.get(i)));
+            }
+            return found;
+        });
+    }
+
+    @Override
+    public Task<Void> writeState(final RemoteReference<?> reference, final Object state)
+    {
+        final byte[] data;
+        try
+        {
+            // encoded on the caller's thread, the actor may change the state after this returns
+            data = codec.encode(state);
+        }
+        catch (Exception e)
+        {
+            return Task.fromException(e);
+        }
+        final byte[] prefix = prefix(reference), id = id(reference);
+        final Task<?> written = useHashes
+                ? submit(pipeline -> pipeline.hset(prefix, id, data))
+                : submit(pipeline -> pipeline.set(key(prefix, id), data));
+        return written.thenApply(r -> null);
+    }
+
+    @Override
+    public Task<Void> writeStates(final Map<RemoteReference<?>, Object> states)
+    {
+        final List<Task<Void>> writes = new ArrayList<>(states.size());
+        for (Map.Entry<RemoteReference<?>, Object> entry : states.entrySet())
+        {
+            writes.add(writeState(entry.getKey(), entry.getValue()));
+        }
+        return Task.allOf(writes);
+    }
+
+    private boolean decode(final byte[] data, final Object state)
+    {
+        if (data == null)
+        {
+            return false;
+        }
+        codec.decode(data, state);
+        return true;
+    }
+
+    private <T> Task<T> submit(final Function<Pipeline, Response<T>> request)
+    {
+        final Command<T> command = new Command<>(request);
+        if (stopping)
+        {
+            return Task.fromException(new UncheckedException("Redis storage is stopped"));
+        }
+        if (!queue.offer(command))
+        {
+            return Task.fromException(new UncheckedException("Redis storage queue is full"));
+        }
+        return command.task;
+    }
+
+    private void sendCommands()
+    {
+        Jedis redis = null;
+        final List<Command<?>> batch = new ArrayList<>();
+        try
+        {
+            while (true)
+            {
+                final Command<?> first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null)
+                {
+                    if (stopping)
+                    {
+                        return;
+                    }
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, maxPipelineSize - 1);
+                try
+                {
+                    if (redis == null)
+                    {
+                        redis = new Jedis(host, port, timeout);
+                    }
+                    final Pipeline pipeline = redis.pipelined();
+                    for (Command<?> command : batch)
+                    {
+                        command.send(pipeline);
+                    }
+                    pipeline.sync();
+                    pipelines.increment();
+                    pipelinedCommands.add(batch.size());
+                    batch.forEach(this::complete);
+                }
+                catch (Exception e)
+                {
+                    // the connection state is unknown, start over with a new one
+                    logger.warn("Redis pipeline failed", e);
+                    batch.forEach(command -> complete(command.task, null, e));
+                    close(redis);
+                    redis = null;
+                }
+                batch.clear();
+            }
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+        finally
+        {
+            close(redis);
+        }
+    }
+
+    private <T> void complete(final Command<T> command)
+    {
+        T result = null;
+        Throwable error = null;
+        try
+        {
+            result = command.response.get();
+        }
+        catch (Exception e)
+        {
+            error = e;
+        }
+        // the continuations run on the completion executor, not on the connection thread
+        complete(command.task, result, error);
+    }
+
+    private void close(final Jedis redis)
+    {
+        if (redis != null)
+        {
+            try
+            {
+                redis.close();
+            }
+            catch (Exception e)
+            {
+                logger.debug("Error closing redis connection", e);
+            }
+        }
+    }
+
+    /**
+     * The key of the actor type, or the name of its hash when using hashes.
+     */
+    private byte[] prefix(final RemoteReference<?> reference)
+    {
+        return prefixes.computeIfAbsent(RemoteReference.getInterfaceClass(reference),
+                clazz -> (databaseName + "_" + clazz.getName() + (useHashes ? "" : "_")).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private byte[] id(final RemoteReference<?> reference)
+    {
+        return String.valueOf(RemoteReference.getId(reference)).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private byte[] key(final byte[] prefix, final byte[] id)
+    {
+        final byte[] key = new byte[prefix.length + id.length];
+        System.arraycopy(prefix, 0, key, 0, prefix.length);
+        System.arraycopy(id, 0, key, prefix.length, id.length);
+        return key;
+    }
+
+    /**
+     * Number of pipelines sent to redis.
+     */
+    public long getPipelines()
+    {
+        return pipelines.sum();
+    }
+
+    /**
+     * Number of commands sent, divided by {@link #getPipelines()} this is the average pipeline depth.
+     */
+    public long getPipelinedCommands()
+    {
+        return pipelinedCommands.sum();
+    }
+
+    public String getHost()
+    {
+        return host;
+    }
+
+    public void setHost(final String host)
+    {
+        this.host = host;
+    }
+
+    public int getPort()
+    {
+        return port;
+    }
+
+    public void setPort(final int port)
+    {
+        this.port = port;
+    }
+
+    public String getDatabaseName()
+    {
+        return databaseName;
+    }
+
+    public void setDatabaseName(final String databaseName)
+    {
+        this.databaseName = databaseName;
+    }
+
+    public int getTimeout()
+    {
+        return timeout;
+    }
+
+    public void setTimeout(final int timeout)
+    {
+        this.timeout = timeout;
+    }
+
+    public int getConnections()
+    {
+        return connections;
+    }
+
+    /**
+     * Sets the number of redis connections, each one with its own thread.
+     */
+    public void setConnections(final int connections)
+    {
+        this.connections = connections;
+    }
+
+    public int getMaxPipelineSize()
+    {
+        return maxPipelineSize;
+    }
+
+    public void setMaxPipelineSize(final int maxPipelineSize)
+    {
+        this.maxPipelineSize = maxPipelineSize;
+    }
+
+    public int getQueueSize()
+    {
+        return queueSize;
+    }
+
+    /**
+     * Sets how many operations may wait for a connection before new ones are rejected.
+     */
+    public void setQueueSize(final int queueSize)
+    {
+        this.queueSize = queueSize;
+    }
+
+    public boolean isUseHashes()
+    {
+        return useHashes;
+    }
+
+    public void setUseHashes(final boolean useHashes)
+    {
+        this.useHashes = useHashes;
+    }
+
+    public RedisStateCodec getCodec()
+    {
+        return codec;
+    }
+
+    public void setCodec(final RedisStateCodec codec)
+    {
+        this.codec = codec;
+    }
+
+    private static class Command<T>
+    {
+        private final Function<Pipeline, Response<T>> request;
+        private final Task<T> task = new Task<>();
+        private Response<T> response;
+
+        Command(final Function<Pipeline, Response<T>> request)
+        {
+            this.request = request;
+        }
+
+        void send(final Pipeline pipeline)
+        {
+            response = request.apply(pipeline);
+        }
+    }
+}
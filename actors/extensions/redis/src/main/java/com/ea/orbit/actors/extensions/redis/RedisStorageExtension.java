@@ -42,6 +42,11 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import redis.clients.jedis.Jedis;
 import redis.clients.jedis.JedisPool;
 import redis.clients.jedis.JedisPoolConfig;
+import redis.clients.jedis.Pipeline;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 
 public class RedisStorageExtension extends AbstractStorageExtension
 {
@@ -80,16 +85,19 @@ public class RedisStorageExtension extends AbstractStorageExtension
     @Override
     public Task<Void> clearState(final RemoteReference reference, final Object state)
     {
-        try (Jedis redis = pool.getResource())
-        {
-            redis.del(asKey(reference));
-        }
-        return Task.done();
+        return executeBlocking(() -> {
+            try (Jedis redis = pool.getResource())
+            {
+                redis.del(asKey(reference));
+            }
+            return null;
+        });
     }
 
     @Override
     public Task<Void> stop()
     {
+        shutdownIoExecutor();
         pool.close();
         return Task.done();
     }
@@ -98,31 +106,65 @@ public class RedisStorageExtension extends AbstractStorageExtension
     @SuppressWarnings("unchecked")
     public Task<Boolean> readState(final RemoteReference reference, final Object state)
     {
-        String data;
-        try (Jedis redis = pool.getResource())
+        return executeBlocking(() -> {
+            String data;
+            try (Jedis redis = pool.getResource())
+            {
+                data = redis.get(asKey(reference));
+            }
+            return parse(data, state);
+        });
+    }
+
+    @Override
+    public Task<List<Boolean>> readStates(final List<RemoteReference<?>> references, final List<Object> states)
+    {
+        if (references.isEmpty())
         {
-            data = redis.get(asKey(reference));
+            return Task.fromValue(new ArrayList<>());
         }
+        final String[] keys = new String[references.size()];
+        for (int i = 0; i < keys.length; i++)
+        {
+            keys[i] = asKey(references.get(i));
+        }
+        return executeBlocking(() -> {
+            final List<String> values;
+            try (Jedis redis = pool.getResource())
+            {
+                values = redis.mget(keys);
+            }
+            final List<Boolean> found = new ArrayList<>(values.size());
+            for (int i = 0; i < values.size(); i++)
+            {
+                found.add(parse(values.get(i), states.get(i)));
+            }
+            return found;
+        });
+    }
+
+    private boolean parse(final String data, final Object state)
+    {
         if (data != null)
         {
             try
             {
                 mapper.readerForUpdating(state).readValue(data);
-                return Task.fromValue(true);
+                return true;
             }
             catch (Exception e)
             {
                 throw new UncheckedException("Error parsing redis response: " + data, e);
             }
         }
-        return Task.fromValue(false);
+        return false;
     }
 
     @Override
     @SuppressWarnings("unchecked")
     public Task<Void> writeState(final RemoteReference reference, final Object state)
     {
-        String data;
+        final String data;
         try
         {
             data = mapper.writeValueAsString(state);
@@ -131,11 +173,49 @@ public class RedisStorageExtension extends AbstractStorageExtension
         {
             throw new UncheckedException(e);
         }
-        try (Jedis redis = pool.getResource())
+        return executeBlocking(() -> {
+            try (Jedis redis = pool.getResource())
+            {
+                redis.set(asKey(reference), data);
+            }
+            return null;
+        });
+    }
+
+    @Override
+    public Task<Void> writeStates(final Map<RemoteReference<?>, Object> states)
+    {
+        if (states.isEmpty())
         {
-            redis.set(asKey(reference), data);
+            return Task.done();
         }
-        return Task.done();
+        final List<String> keys = new ArrayList<>(states.size());
+        final List<String> values = new ArrayList<>(states.size());
+        try
+        {
+            for (Map.Entry<RemoteReference<?>, Object> entry : states.entrySet())
+            {
+                keys.add(asKey(entry.getKey()));
+                values.add(mapper.writeValueAsString(entry.getValue()));
+            }
+        }
+        catch (JsonProcessingException e)
+        {
+            throw new UncheckedException(e);
+        }
+        return executeBlocking(() -> {
+            try (Jedis redis = pool.getResource())
+            {
+                // one round trip, the sets are sent together and the replies read at the end
+                final Pipeline pipeline = redis.pipelined();
+                for (int i = 0; i < keys.size(); i++)
+                {
+                    pipeline.set(keys.get(i), values.get(i));
+                }
+                pipeline.sync();
+            }
+            return null;
+        });
     }
 
     public String getHost()
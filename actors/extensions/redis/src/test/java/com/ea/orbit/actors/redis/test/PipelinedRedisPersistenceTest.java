@@ -0,0 +1,125 @@
+/*
+Copyright (C) 2015 Electronic Arts Inc.  All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions
+are met:
+
+1.  Redistributions of source code must retain the above copyright
+    notice, this list of conditions and the following disclaimer.
+2.  Redistributions in binary form must reproduce the above copyright
+    notice, this list of conditions and the following disclaimer in the
+    documentation and/or other materials provided with the distribution.
+3.  Neither the name of Electronic Arts, Inc. ("EA") nor the names of
+    its contributors may be used to endorse or promote products derived
+    from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY ELECTRONIC ARTS AND ITS CONTRIBUTORS "AS IS" AND ANY
+EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL ELECTRONIC ARTS OR ITS CONTRIBUTORS BE LIABLE FOR ANY
+DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.ea.orbit.actors.redis.test;
+
+import com.ea.orbit.actors.extensions.ActorExtension;
+import com.ea.orbit.actors.extensions.json.ActorReferenceModule;
+import com.ea.orbit.actors.extensions.redis.PipelinedRedisStorageExtension;
+import com.ea.orbit.actors.runtime.DefaultDescriptorFactory;
+import com.ea.orbit.actors.test.StorageBaseTest;
+import com.ea.orbit.actors.test.StorageTest;
+import com.ea.orbit.actors.test.StorageTestState;
+import com.ea.orbit.exception.UncheckedException;
+
+import com.fasterxml.jackson.annotation.JsonAutoDetect;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import redis.clients.jedis.Jedis;
+
+public class PipelinedRedisPersistenceTest extends StorageBaseTest
+{
+
+    private Jedis database;
+    private String databaseName;
+    private ObjectMapper mapper;
+
+    @Override
+    public Class<? extends StorageTest> getActorInterfaceClass()
+    {
+        return Hello.class;
+    }
+
+    @Override
+    public ActorExtension getStorageExtension()
+    {
+        final PipelinedRedisStorageExtension storageExtension = new PipelinedRedisStorageExtension();
+        storageExtension.setTimeout(60000);
+        storageExtension.setDatabaseName(databaseName);
+        storageExtension.setUseHashes(true);
+        return storageExtension;
+    }
+
+    @Override
+    public void initStorage()
+    {
+        mapper = new ObjectMapper();
+        mapper.registerModule(new ActorReferenceModule(DefaultDescriptorFactory.get()));
+        mapper.setVisibility(mapper.getSerializationConfig().getDefaultVisibilityChecker()
+                .withFieldVisibility(JsonAutoDetect.Visibility.ANY)
+                .withGetterVisibility(JsonAutoDetect.Visibility.NONE)
+                .withIsGetterVisibility(JsonAutoDetect.Visibility.NONE)
+                .withSetterVisibility(JsonAutoDetect.Visibility.NONE)
+                .withCreatorVisibility(JsonAutoDetect.Visibility.NONE));
+
+        databaseName = "" + (int) (Math.random() * Integer.MAX_VALUE);
+        database = new Jedis("localhost", 6379);
+    }
+
+    @Override
+    public void closeStorage()
+    {
+        database.flushDB();
+    }
+
+    private String hashName()
+    {
+        return databaseName + "_" + Hello.class.getName();
+    }
+
+    @Override
+    public long count()
+    {
+        return database.hlen(hashName());
+    }
+
+    @Override
+    public StorageTestState readState(final String identity)
+    {
+        String data = database.hget(hashName(), identity);
+        if (data != null)
+        {
+            try
+            {
+                return mapper.readValue(data, HelloState.class);
+            }
+            catch (Exception e)
+            {
+                throw new UncheckedException(e);
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public int heavyTestSize()
+    {
+        return 100;
+    }
+
+}
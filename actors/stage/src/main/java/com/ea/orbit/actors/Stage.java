@@ -28,12 +28,16 @@ THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
 
 package com.ea.orbit.actors;
 
+import com.ea.orbit.actors.annotation.Priority;
 import com.ea.orbit.actors.annotation.StatelessWorker;
 import com.ea.orbit.actors.cluster.ClusterPeer;
 import com.ea.orbit.actors.cluster.JGroupsClusterPeer;
 import com.ea.orbit.actors.cluster.NodeAddress;
 import com.ea.orbit.actors.concurrent.MultiExecutionSerializer;
+import com.ea.orbit.actors.concurrent.TimingWheel;
+import com.ea.orbit.actors.concurrent.WaitFreeExecutionSerializer;
 import com.ea.orbit.actors.concurrent.WaitFreeMultiExecutionSerializer;
+import com.ea.orbit.actors.extensions.AbstractStorageExtension;
 import com.ea.orbit.actors.extensions.ActorClassFinder;
 import com.ea.orbit.actors.extensions.ActorExtension;
 import com.ea.orbit.actors.extensions.DefaultLoggerExtension;
@@ -50,6 +54,7 @@ import com.ea.orbit.actors.runtime.ActorEntry;
 import com.ea.orbit.actors.runtime.ActorRuntime;
 import com.ea.orbit.actors.runtime.ActorTaskContext;
 import com.ea.orbit.actors.runtime.AsyncStreamReference;
+import com.ea.orbit.actors.runtime.BatchingStorageExtension;
 import com.ea.orbit.actors.runtime.BasicRuntime;
 import com.ea.orbit.actors.runtime.ClusterHandler;
 import com.ea.orbit.actors.runtime.DefaultActorClassFinder;
@@ -57,20 +62,25 @@ import com.ea.orbit.actors.runtime.DefaultDescriptorFactory;
 import com.ea.orbit.actors.runtime.DefaultHandlers;
 import com.ea.orbit.actors.runtime.Execution;
 import com.ea.orbit.actors.runtime.Hosting;
+import com.ea.orbit.actors.runtime.IdleIndex;
+import com.ea.orbit.actors.runtime.InboundDispatcher;
 import com.ea.orbit.actors.runtime.InternalUtils;
 import com.ea.orbit.actors.runtime.Invocation;
 import com.ea.orbit.actors.runtime.JavaMessageSerializer;
 import com.ea.orbit.actors.runtime.LocalObjects;
+import com.ea.orbit.actors.runtime.MemoryGovernor;
 import com.ea.orbit.actors.runtime.MessageLoopback;
 import com.ea.orbit.actors.runtime.Messaging;
 import com.ea.orbit.actors.runtime.NodeCapabilities;
 import com.ea.orbit.actors.runtime.ObserverEntry;
 import com.ea.orbit.actors.runtime.Registration;
 import com.ea.orbit.actors.runtime.ReminderController;
+import com.ea.orbit.actors.runtime.ReminderControllerActor;
 import com.ea.orbit.actors.runtime.RemoteReference;
 import com.ea.orbit.actors.runtime.ResponseCaching;
 import com.ea.orbit.actors.runtime.SerializationHandler;
 import com.ea.orbit.actors.runtime.StatelessActorEntry;
+import com.ea.orbit.actors.runtime.WriteBehindFlusher;
 import com.ea.orbit.actors.runtime.cloner.ExecutionObjectCloner;
 import com.ea.orbit.actors.runtime.cloner.KryoCloner;
 import com.ea.orbit.actors.streams.AsyncObserver;
@@ -110,15 +120,20 @@ import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.PriorityQueue;
 import java.util.Set;
 import java.util.Timer;
 import java.util.TimerTask;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.ForkJoinTask;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static com.ea.orbit.async.Await.await;
 
@@ -128,6 +143,10 @@ public class Stage implements Startable, ActorRuntime
     private Logger logger = LoggerFactory.getLogger(Stage.class);
 
     private static final int DEFAULT_EXECUTION_POOL_SIZE = 128;
+    private static final int DEFAULT_REMINDER_SHARDS = 16;
+    private static final int DEFAULT_STATE_READ_BATCH_SIZE = 100;
+    // how often the deferred state writes are checked, the effective write delay is rounded up to it
+    private static final long WRITE_BEHIND_CHECK_MILLIS = 100;
 
     LocalObjects objects = new LocalObjects()
     {
@@ -136,7 +155,27 @@ public class Stage implements Startable, ActorRuntime
         {
             return Stage.this.createLocalObjectEntry(reference, object);
         }
+
+        @Override
+        protected void onEntryRegistered(final Object key, final LocalObjectEntry entry)
+        {
+            final IdleIndex index = idleIndex;
+            if (index != null && entry instanceof ActorBaseEntry)
+            {
+                final ActorBaseEntry<?> actorEntry = (ActorBaseEntry<?>) entry;
+                index.add(actorEntry, IdleIndex.expiresAt(actorEntry.getLastAccess(), getTtlMillis(actorEntry)));
+            }
+        }
     };
+    private volatile IdleIndex idleIndex;
+    private volatile MemoryGovernor memoryGovernor;
+    private final WriteBehindFlusher writeBehindFlusher = new WriteBehindFlusher();
+    private final Map<com.ea.orbit.actors.extensions.StorageExtension, BatchingStorageExtension> batchingStorageExtensions = new ConcurrentHashMap<>();
+    private final AtomicBoolean governingMemory = new AtomicBoolean();
+    private final LongAdder shedActors = new LongAdder();
+    private final LongAdder deactivatedActors = new LongAdder();
+    private volatile long lastSweepMillis;
+    private volatile int lastSweepSize;
 
     @Config("orbit.actors.clusterName")
     private String clusterName;
@@ -160,6 +199,7 @@ public class Stage implements Startable, ActorRuntime
     private long cleanupIntervalMillis = TimeUnit.SECONDS.toMillis(10);
 
     private Timer timer = new Timer("Orbit stage timer");
+    private TimingWheel timerWheel;
 
     @Wired
     private Container container;
@@ -168,6 +208,7 @@ public class Stage implements Startable, ActorRuntime
     private final String runtimeIdentity = "Orbit[" + IdUtils.urlSafeString(128) + "]";
 
     private ResponseCaching cacheManager;
+    private InboundDispatcher inboundDispatcher;
 
     private MultiExecutionSerializer<Object> executionSerializer;
     private ActorClassFinder finder;
@@ -179,8 +220,25 @@ public class Stage implements Startable, ActorRuntime
     private long defaultActorTTL = TimeUnit.MINUTES.toMillis(10);
     @Config("orbit.actors.deactivationTimeoutMillis")
     private long deactivationTimeoutMillis = TimeUnit.MINUTES.toMillis(2);
+    @Config("orbit.actors.inboundQueueSize")
+    private int inboundQueueSize = 10_000;
+    @Config("orbit.actors.executionBatchSize")
+    private int executionBatchSize = WaitFreeExecutionSerializer.DEFAULT_BATCH_SIZE;
+    @Config("orbit.actors.timerTickMillis")
+    private long timerTickMillis = TimingWheel.DEFAULT_TICK_MILLIS;
+    @Config("orbit.actors.reminderShards")
+    private int reminderShards = DEFAULT_REMINDER_SHARDS;
+    @Config("orbit.actors.stateReadBatchSize")
+    private int stateReadBatchSize = DEFAULT_STATE_READ_BATCH_SIZE;
+    @Config("orbit.actors.memoryHighWatermark")
+    private double memoryHighWatermark = 0.85;
+    @Config("orbit.actors.memoryLowWatermark")
+    private double memoryLowWatermark = 0.70;
+    @Config("orbit.actors.maxActivations")
+    private int maxActivations;
 
     private Task<Void> startPromise = new Task<>();
+    private volatile Task<Void> reminderControllersStarted = Task.done();
 
     public enum StageMode
     {
@@ -335,6 +393,11 @@ public class Stage implements Startable, ActorRuntime
         this.messaging = messaging;
     }
 
+    public Messaging getMessaging()
+    {
+        return messaging;
+    }
+
     public void setExecutionPool(final ExecutorService executionPool)
     {
         this.executionPool = executionPool;
@@ -365,6 +428,122 @@ public class Stage implements Startable, ActorRuntime
         this.executionPoolSize = defaultPoolSize;
     }
 
+    public int getInboundQueueSize()
+    {
+        return inboundQueueSize;
+    }
+
+    /**
+     * Sets the maximum number of received messages waiting to be processed by the messaging pool.
+     * Zero disables the inbound queue, the messages are then processed by the network threads.
+     */
+    public void setInboundQueueSize(final int inboundQueueSize)
+    {
+        this.inboundQueueSize = inboundQueueSize;
+    }
+
+    public int getExecutionBatchSize()
+    {
+        return executionBatchSize;
+    }
+
+    /**
+     * Sets how many messages an actor may process in one go, before giving the thread to other actors.
+     */
+    public void setExecutionBatchSize(final int executionBatchSize)
+    {
+        this.executionBatchSize = executionBatchSize;
+    }
+
+    public long getTimerTickMillis()
+    {
+        return timerTickMillis;
+    }
+
+    /**
+     * Resolution of the actor timers, must be set before the stage is started.
+     */
+    public void setTimerTickMillis(final long timerTickMillis)
+    {
+        this.timerTickMillis = timerTickMillis;
+    }
+
+    public int getReminderShards()
+    {
+        return reminderShards;
+    }
+
+    /**
+     * Number of reminder controllers the reminders are split across, must be the same in all the cluster nodes.
+     */
+    public void setReminderShards(final int reminderShards)
+    {
+        this.reminderShards = reminderShards;
+    }
+
+    public int getStateReadBatchSize()
+    {
+        return stateReadBatchSize;
+    }
+
+    /**
+     * Maximum number of concurrent actor state reads sent together to the storage extension, 1 disables the batching.
+     */
+    public void setStateReadBatchSize(final int stateReadBatchSize)
+    {
+        this.stateReadBatchSize = stateReadBatchSize;
+    }
+
+    public double getMemoryHighWatermark()
+    {
+        return memoryHighWatermark;
+    }
+
+    /**
+     * Fraction of the heap, measured after the garbage collections, above which this node
+     * starts deactivating its least recently used actors and asks the others not to place new actors here.
+     * Must be set before the stage is started.
+     */
+    public void setMemoryHighWatermark(final double memoryHighWatermark)
+    {
+        this.memoryHighWatermark = memoryHighWatermark;
+    }
+
+    public double getMemoryLowWatermark()
+    {
+        return memoryLowWatermark;
+    }
+
+    /**
+     * Fraction of the heap below which this node accepts new placements again.
+     */
+    public void setMemoryLowWatermark(final double memoryLowWatermark)
+    {
+        this.memoryLowWatermark = memoryLowWatermark;
+    }
+
+    public int getMaxActivations()
+    {
+        return maxActivations;
+    }
+
+    /**
+     * Maximum number of local objects, the least recently used actors are deactivated above it. Zero for no limit.
+     */
+    public void setMaxActivations(final int maxActivations)
+    {
+        this.maxActivations = maxActivations;
+        if (memoryGovernor != null)
+        {
+            memoryGovernor.setMaxActivations(maxActivations);
+        }
+    }
+
+    public InboundDispatcher getInboundDispatcher()
+    {
+        return inboundDispatcher;
+    }
+
     public ExecutionObjectCloner getObjectCloner()
     {
         return objectCloner;
@@ -470,7 +649,31 @@ public class Stage implements Startable, ActorRuntime
                 messagingPool = newService;
             }
         }
-        executionSerializer = new WaitFreeMultiExecutionSerializer<>(executionPool);
+        final WaitFreeMultiExecutionSerializer<Object> executionSerializer = new WaitFreeMultiExecutionSerializer<>(executionPool);
+        executionSerializer.setBatchSize(executionBatchSize);
+        this.executionSerializer = executionSerializer;
+
+        idleIndex = new IdleIndex(cleanupIntervalMillis);
+
+        memoryGovernor = new MemoryGovernor();
+        memoryGovernor.setHighWatermark(memoryHighWatermark);
+        memoryGovernor.setLowWatermark(memoryLowWatermark);
+        memoryGovernor.setMaxActivations(maxActivations);
+        if (mode == StageMode.HOST)
+        {
+            memoryGovernor.start(() -> {
+                if (state == NodeCapabilities.NodeState.RUNNING)
+                {
+                    ForkJoinTask.adapt(() -> governMemory().join()).fork();
+                }
+            });
+        }
+
+        // the expired actor timers are handed in batches to the execution pool, which queues them in the actor mailboxes
+        timerWheel = new TimingWheel("Orbit actor timers", timerTickMillis, executionPool);
+        timerWheel.start();
+        timerWheel.schedule(() -> writeBehindFlusher.flushDue(clock.millis()),
+                WRITE_BEHIND_CHECK_MILLIS, WRITE_BEHIND_CHECK_MILLIS, TimeUnit.MILLISECONDS);
 
         if (hosting == null)
         {
@@ -537,6 +740,7 @@ public class Stage implements Startable, ActorRuntime
         cacheManager.setMessageSerializer(messageSerializer);
 
         messaging.setRuntime(this);
+        messaging.setExecutor(executionPool);
 
         hosting.setStage(this);
         hosting.setClusterPeer(clusterPeer);
@@ -563,7 +767,13 @@ public class Stage implements Startable, ActorRuntime
         pipeline.addLast(DefaultHandlers.SERIALIZATION, new SerializationHandler(this, messageSerializer));
 
         // cluster peer handler
-        pipeline.addLast(DefaultHandlers.NETWORK, new ClusterHandler(clusterPeer, clusterName, nodeName));
+        final ClusterHandler clusterHandler = new ClusterHandler(clusterPeer, clusterName, nodeName);
+        if (inboundQueueSize > 0)
+        {
+            inboundDispatcher = new InboundDispatcher(messagingPool, inboundQueueSize);
+            clusterHandler.setInboundDispatcher(inboundDispatcher);
+        }
+        pipeline.addLast(DefaultHandlers.NETWORK, clusterHandler);
 
         extensions.stream().filter(extension -> extension instanceof PipelineExtension)
                 .map(extension -> (PipelineExtension) extension)
@@ -598,6 +808,11 @@ public class Stage implements Startable, ActorRuntime
         hosting.start();
         execution.start();
 
+        // blocking storage calls run on the extensions' own pools, their results come back to the execution pool
+        getStorageExtensions()
+                .filter(extension -> extension.getCompletionExecutor() == null)
+                .forEach(extension -> extension.setCompletionExecutor(executionPool));
+
         await(Task.allOf(extensions.stream().map(Startable::start)));
 
         Task<Void> future = pipeline.connect(null);
@@ -605,7 +820,12 @@ public class Stage implements Startable, ActorRuntime
         {
             future = future.thenRun(() -> {
                 this.bind();
-                getReference(ReminderController.class, "0").ensureStart();
+                final List<Task<Void>> starts = new ArrayList<>(reminderShards);
+                for (int i = 0; i < reminderShards; i++)
+                {
+                    starts.add(getReference(ReminderController.class, String.valueOf(i)).ensureStart());
+                }
+                reminderControllersStarted = Task.allOf(starts);
             });
         }
 
@@ -705,6 +925,9 @@ public class Stage implements Startable, ActorRuntime
         logger.debug("start stopping pipeline");
         await(pipeline.write(NodeCapabilities.NodeState.STOPPING));
 
+        // the reminder controllers still activating would otherwise outlive the stage
+        await(reminderControllersStarted.handle((r, e) -> null));
+
         logger.debug("stopping actors");
         await(stopActors());
         logger.debug("stopping timers");
@@ -731,8 +954,8 @@ public class Stage implements Startable, ActorRuntime
     {
         for (int passes = 0; passes < 2; passes++)
         {
-            // using negative age meaning all actors, regardless of age
-            cleanupActors(Long.MIN_VALUE);
+            // deactivating all actors, regardless of age
+            deactivateActors(localActorEntries().iterator(), true);
         }
         return Task.done();
     }
@@ -740,7 +963,7 @@ public class Stage implements Startable, ActorRuntime
     @Deprecated
     public Task<Void> cleanupActors()
     {
-        return cleanupActors(defaultActorTTL);
+        return sweepIdleActors();
     }
 
 
@@ -752,56 +975,142 @@ public class Stage implements Startable, ActorRuntime
         return Task.done();
     }
 
-    private Task<Void> cleanupActors(long maxAge)
+    private List<ActorBaseEntry<?>> localActorEntries()
+    {
+        return objects.stream()
+                .filter(e -> e.getValue() instanceof ActorBaseEntry)
+                .map(e -> (ActorBaseEntry<?>) e.getValue())
+                .collect(Collectors.toList());
+    }
+
+    private long getTtlMillis(final ActorBaseEntry<?> actorEntry)
+    {
+        final long ttl = actorEntry.getTtlMillis();
+        return ttl >= 0 ? ttl : defaultActorTTL;
+    }
+
+    /**
+     * Deactivates the idle actors, visiting only the activations whose time to live might have expired.
+     */
+    private Task<Void> sweepIdleActors()
+    {
+        if (idleIndex == null)
+        {
+            return Task.done();
+        }
+        final long start = System.nanoTime();
+        final List<ActorBaseEntry<?>> candidates = idleIndex.pollExpired(clock().millis());
+        await(deactivateActors(candidates.iterator(), false));
+        lastSweepSize = candidates.size();
+        lastSweepMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        return Task.done();
+    }
+
+    /**
+     * Checks the heap usage and the number of activations, deactivates the least recently used actors
+     * and tells the other nodes to avoid this one while it is short of memory.
+     */
+    private Task<Void> governMemory()
+    {
+        final MemoryGovernor governor = memoryGovernor;
+        if (governor == null || mode != StageMode.HOST || !governingMemory.compareAndSet(false, true))
+        {
+            return Task.done();
+        }
+        try
+        {
+            final int toShed = governor.evaluate(getLocalActorCount());
+            hosting.setUnderPressure(governor.isUnderPressure());
+            if (toShed > 0)
+            {
+                final List<ActorBaseEntry<?>> victims = leastRecentlyUsed(toShed);
+                if (logger.isDebugEnabled())
+                {
+                    logger.debug("Deactivating {} least recently used actors", victims.size());
+                }
+                await(deactivateActors(victims.iterator(), true));
+                shedActors.add(victims.size());
+            }
+        }
+        finally
+        {
+            governingMemory.set(false);
+        }
+        return Task.done();
+    }
+
+    private List<ActorBaseEntry<?>> leastRecentlyUsed(final int count)
     {
-        // avoid sorting since lastAccess changes
-        // and O(N) is still smaller than O(N Log N)
-        final Iterator<Map.Entry<Object, LocalObjects.LocalObjectEntry>> iterator = objects.stream()
+        // keeps the most recent of the selected at the head, to be replaced by older ones
+        final PriorityQueue<ActorBaseEntry<?>> selected = new PriorityQueue<>(count,
+                (a, b) -> Long.compare(b.getLastAccess(), a.getLastAccess()));
+        objects.stream()
                 .filter(e -> e.getValue() instanceof ActorBaseEntry)
-                .iterator();
+                .map(e -> (ActorBaseEntry<?>) e.getValue())
+                // actors that must stay active are not shed
+                .filter(e -> !e.isDeactivated() && e.getTtlMillis() != Long.MAX_VALUE)
+                .forEach(e -> {
+                    if (selected.size() < count)
+                    {
+                        selected.add(e);
+                    }
+                    else if (e.getLastAccess() < selected.peek().getLastAccess())
+                    {
+                        selected.poll();
+                        selected.add(e);
+                    }
+                });
+        return new ArrayList<>(selected);
+    }
 
+    private Task<Void> deactivateActors(final Iterator<ActorBaseEntry<?>> iterator, final boolean all)
+    {
         final List<Task<Void>> pending = new ArrayList<>();
+        final long now = clock().millis();
 
         // ensure that certain number of concurrent deactivations is happening at each moment
         while (iterator.hasNext())
         {
             while (pending.size() < concurrentDeactivations && iterator.hasNext())
             {
-                final Map.Entry<Object, LocalObjects.LocalObjectEntry> entryEntry = iterator.next();
-                final ActorBaseEntry<?> actorEntry = (ActorBaseEntry<?>) entryEntry.getValue();
+                final ActorBaseEntry<?> actorEntry = iterator.next();
+                final RemoteReference<?> key = actorEntry.getRemoteReference();
                 if (actorEntry.isDeactivated())
                 {
                     // this might happen if the deactivation is called outside this loop,
                     // for instance by the stateless worker that owns the objects
-                    objects.remove(entryEntry.getKey(), entryEntry.getValue());
+                    objects.remove(key, actorEntry);
+                    continue;
                 }
-                if (clock().millis() - actorEntry.getLastAccess() > maxAge)
+                final long expiresAt = IdleIndex.expiresAt(actorEntry.getLastAccess(), getTtlMillis(actorEntry));
+                if (!all && now <= expiresAt)
                 {
-                    if (logger.isTraceEnabled())
-                    {
-                        logger.trace("deactivating {}", actorEntry.getRemoteReference());
-                    }
-                    pending.add(actorEntry.deactivate().failAfter(deactivationTimeoutMillis, TimeUnit.MILLISECONDS)
-                            .whenComplete((r, e) -> {
-                                // ensures removal
-                                if (e != null)
-                                {
-                                    // error occurred
-                                    if (logger.isErrorEnabled())
-                                    {
-                                        logger.error("Error during the deactivation of " + actorEntry.getRemoteReference(), e);
-                                    }
-                                    // forcefully setting the entry to deactivated
-                                    actorEntry.setDeactivated(true);
-                                }
-                                objects.remove(entryEntry.getKey(), entryEntry.getValue());
-                                if (entryEntry.getKey() == actorEntry.getRemoteReference())
+                    // used since it was indexed
+                    idleIndex.add(actorEntry, expiresAt);
+                    continue;
+                }
+                if (logger.isTraceEnabled())
+                {
+                    logger.trace("deactivating {}", key);
+                }
+                pending.add(actorEntry.deactivate().failAfter(deactivationTimeoutMillis, TimeUnit.MILLISECONDS)
+                        .whenComplete((r, e) -> {
+                            // ensures removal
+                            if (e != null)
+                            {
+                                // error occurred
+                                if (logger.isErrorEnabled())
                                 {
-                                    // removing non stateless actor from the distributed directory
-                                    getHosting().actorDeactivated(actorEntry.getRemoteReference());
+                                    logger.error("Error during the deactivation of " + key, e);
                                 }
-                            }));
-                }
+                                // forcefully setting the entry to deactivated
+                                actorEntry.setDeactivated(true);
+                            }
+                            deactivatedActors.increment();
+                            objects.remove(key, actorEntry);
+                            // removing the actor from the distributed directory
+                            getHosting().actorDeactivated(key);
+                        }));
             }
             if (pending.size() > 0)
             {
@@ -829,6 +1138,14 @@ public class Stage implements Startable, ActorRuntime
         try
         {
             timer.cancel();
+            if (timerWheel != null)
+            {
+                timerWheel.stop();
+            }
+            if (memoryGovernor != null)
+            {
+                memoryGovernor.stop();
+            }
         }
         catch (Throwable ex)
         {
@@ -858,6 +1175,11 @@ public class Stage implements Startable, ActorRuntime
         return hosting;
     }
 
+    public ResponseCaching getResponseCaching()
+    {
+        return cacheManager;
+    }
+
     public ClusterPeer getClusterPeer()
     {
         return clusterPeer != null ? clusterPeer : (clusterPeer = new JGroupsClusterPeer());
@@ -866,9 +1188,15 @@ public class Stage implements Startable, ActorRuntime
     public Task cleanup()
     {
         await(execution.cleanup());
-        await(cleanupActors(defaultActorTTL));
+        await(sweepIdleActors());
+        await(governMemory());
         await(cleanupObservers());
         await(messaging.cleanup());
+        if (inboundDispatcher != null)
+        {
+            inboundDispatcher.pruneIdleLanes();
+        }
+        hosting.notifyLoad();
         return Task.done();
     }
 
@@ -942,20 +1270,28 @@ public class Stage implements Startable, ActorRuntime
         final ActorTaskContext context = ActorTaskContext.current();
         if (context != null)
         {
-            LinkedHashMap<Object, Object> headers = null;
-            for (String key : stickyHeaders)
+            // avoids the iterator allocation when there is nothing to copy
+            if (context.hasProperties())
             {
-                final Object value = context.getProperty(key);
-                if (value != null)
+                LinkedHashMap<Object, Object> headers = null;
+                for (String key : stickyHeaders)
                 {
-                    if (headers == null)
+                    final Object value = context.getProperty(key);
+                    if (value != null)
                     {
-                        headers = new LinkedHashMap<>();
+                        if (headers == null)
+                        {
+                            headers = new LinkedHashMap<>();
+                        }
+                        headers.put(key, value);
                     }
-                    headers.put(key, value);
                 }
+                invocation.setHeaders(headers);
+            }
+            if (context.getResponseTimeoutMillis() > 0 && !oneWay)
+            {
+                invocation.setTimeoutAt(clock.millis() + context.getResponseTimeoutMillis());
             }
-            invocation.setHeaders(headers);
         }
 
         final Task<Void> result = pipeline.write(invocation);
@@ -968,9 +1304,6 @@ public class Stage implements Startable, ActorRuntime
                                       final long dueTime, final long period,
                                       final TimeUnit timeUnit)
     {
-        final Object key = actor.getClass().isAnnotationPresent(StatelessWorker.class)
-                ? actor : RemoteReference.from(actor);
-
         final ActorEntry localActor = (ActorEntry) objects.findLocalActor((Actor) actor);
 
         if (localActor == null || localActor.isDeactivated())
@@ -978,39 +1311,25 @@ public class Stage implements Startable, ActorRuntime
             throw new IllegalStateException("Actor is deactivated");
         }
 
-        class MyRegistration implements Registration
+        class ActorTimer implements Runnable, Registration
         {
-            TimerTask task;
-
-            @Override
-            public void dispose()
-            {
-                if (task != null)
-                {
-                    task.cancel();
-                }
-                task = null;
-            }
-        }
-
-        final TimerTask timerTask = new TimerTask()
-        {
-            boolean canceled;
+            volatile TimingWheel.Timeout timeout;
+            volatile boolean canceled;
 
             @Override
             public void run()
             {
                 if (localActor.isDeactivated())
                 {
-                    cancel();
+                    dispose();
                     return;
                 }
 
-                executionSerializer.offerJob(key,
+                localActor.executeSerialized(
                         () -> {
                             if (localActor.isDeactivated())
                             {
-                                cancel();
+                                dispose();
                             }
                             else
                             {
@@ -1027,33 +1346,32 @@ public class Stage implements Startable, ActorRuntime
                                 }
                             }
                             return (Task) Task.done();
-                        }, 1000);
+                        }, 1000, Priority.Level.SYSTEM);
             }
 
             @Override
-            public boolean cancel()
+            public void dispose()
             {
                 canceled = true;
-                return super.cancel();
+                final TimingWheel.Timeout t = timeout;
+                if (t != null)
+                {
+                    t.cancel();
+                }
             }
-        };
+        }
 
-        MyRegistration registration = new MyRegistration();
-        registration.task = timerTask;
+        final ActorTimer actorTimer = new ActorTimer();
 
         // this ensures that the timers get removed during deactivation
-        localActor.addTimer(registration);
+        localActor.addTimer(actorTimer);
 
-        if (period > 0)
-        {
-            timer.schedule(timerTask, timeUnit.toMillis(dueTime), timeUnit.toMillis(period));
-        }
-        else
+        actorTimer.timeout = timerWheel.schedule(actorTimer, dueTime, period, timeUnit);
+        if (actorTimer.canceled)
         {
-            timer.schedule(timerTask, timeUnit.toMillis(dueTime));
+            actorTimer.timeout.cancel();
         }
-
-        return registration;
+        return actorTimer;
     }
 
 
@@ -1063,16 +1381,33 @@ public class Stage implements Startable, ActorRuntime
         return clock;
     }
 
+    @Override
+    public boolean deferStateWrite(final AbstractActor<?> actor)
+    {
+        return writeBehindFlusher.defer(actor, clock.millis());
+    }
+
+    @Override
+    public Task<Void> flushState(final AbstractActor<?> actor)
+    {
+        return writeBehindFlusher.flush(actor);
+    }
+
     @Override
     public Task<?> registerReminder(final Remindable actor, final String reminderName, final long dueTime, final long period, final TimeUnit timeUnit)
     {
-        return getReference(ReminderController.class, "0").registerOrUpdateReminder(actor, reminderName, new Date(clock.millis() + timeUnit.toMillis(dueTime)), period, timeUnit);
+        return getReminderController(actor).registerOrUpdateReminder(actor, reminderName, new Date(clock.millis() + timeUnit.toMillis(dueTime)), period, timeUnit);
     }
 
     @Override
     public Task<?> unregisterReminder(final Remindable actor, final String reminderName)
     {
-        return getReference(ReminderController.class, "0").unregisterReminder(actor, reminderName);
+        return getReminderController(actor).unregisterReminder(actor, reminderName);
+    }
+
+    private ReminderController getReminderController(final Remindable actor)
+    {
+        return getReference(ReminderController.class, ReminderControllerActor.getShardId(actor, reminderShards));
     }
 
     @Override
@@ -1213,7 +1548,7 @@ public class Stage implements Startable, ActorRuntime
             actorEntry.setRuntime(this);
             final Class actorImplementation = finder.findActorImplementation((Class) interfaceClass);
             actorEntry.setConcreteClass(actorImplementation);
-            actorEntry.setStorageExtension(getStorageExtensionFor(actorImplementation));
+            actorEntry.setStorageExtension(batchReads(getStorageExtensionFor(actorImplementation)));
             return actorEntry;
         }
         if (ActorObserver.class.isAssignableFrom(interfaceClass))
@@ -1225,6 +1560,31 @@ public class Stage implements Startable, ActorRuntime
         throw new IllegalArgumentException("Invalid object type: " + object.getClass());
     }
 
+    private com.ea.orbit.actors.extensions.StorageExtension batchReads(final com.ea.orbit.actors.extensions.StorageExtension storageExtension)
+    {
+        if (storageExtension == null || stateReadBatchSize <= 1 || !hasBatchReads(storageExtension))
+        {
+            return storageExtension;
+        }
+        return batchingStorageExtensions.computeIfAbsent(storageExtension,
+                s -> new BatchingStorageExtension(s, executionPool, stateReadBatchSize));
+    }
+
+    /**
+     * The default readStates reads one by one, batching those would only make each read wait for the slowest one.
+     */
+    private static boolean hasBatchReads(final com.ea.orbit.actors.extensions.StorageExtension storageExtension)
+    {
+        try
+        {
+            return !storageExtension.getClass().getMethod("readStates", List.class, List.class).isDefault();
+        }
+        catch (NoSuchMethodException e)
+        {
+            return false;
+        }
+    }
+
     @SuppressWarnings("unchecked")
     public <T extends ActorExtension> T getStorageExtensionFor(Class actorClass)
     {
@@ -1292,4 +1652,179 @@ public class Stage implements Startable, ActorRuntime
     {
         return objects.getLocalObjectCount();
     }
+
+    @ExportMetric(name = "deactivatedActors")
+    public long getDeactivatedActors()
+    {
+        return deactivatedActors.sum();
+    }
+
+    /**
+     * Duration of the last idle actor sweep, including the deactivations.
+     */
+    @ExportMetric(name = "lastSweepMillis")
+    public long getLastSweepMillis()
+    {
+        return lastSweepMillis;
+    }
+
+    /**
+     * Number of activations visited by the last idle actor sweep.
+     */
+    @ExportMetric(name = "lastSweepSize")
+    public int getLastSweepSize()
+    {
+        return lastSweepSize;
+    }
+
+    @ExportMetric(name = "shedActors")
+    public long getShedActors()
+    {
+        return shedActors.sum();
+    }
+
+    @ExportMetric(name = "heapUsagePercent")
+    public int getHeapUsagePercent()
+    {
+        return memoryGovernor != null ? (int) (memoryGovernor.getHeapUsage() * 100) : 0;
+    }
+
+    @ExportMetric(name = "underMemoryPressure")
+    public int getUnderMemoryPressure()
+    {
+        return memoryGovernor != null && memoryGovernor.isUnderPressure() ? 1 : 0;
+    }
+
+    @ExportMetric(name = "deferredStateWrites")
+    public long getDeferredStateWrites()
+    {
+        return writeBehindFlusher.getDeferredWrites();
+    }
+
+    @ExportMetric(name = "flushedStateWrites")
+    public long getFlushedStateWrites()
+    {
+        return writeBehindFlusher.getFlushedWrites();
+    }
+
+    @ExportMetric(name = "dirtyActors")
+    public int getDirtyActors()
+    {
+        return writeBehindFlusher.getDirtyCount();
+    }
+
+    /**
+     * Number of state read batches sent to the storage extensions.
+     */
+    @ExportMetric(name = "stateReadBatches")
+    public long getStateReadBatches()
+    {
+        return batchingStorageExtensions.values().stream().mapToLong(BatchingStorageExtension::getBatches).sum();
+    }
+
+    @ExportMetric(name = "batchedStateReads")
+    public long getBatchedStateReads()
+    {
+        return batchingStorageExtensions.values().stream().mapToLong(BatchingStorageExtension::getBatchedReads).sum();
+    }
+
+    /**
+     * Number of blocking storage calls refused because a storage extension's I/O pool was full.
+     */
+    @ExportMetric(name = "storageIoRejected")
+    public long getStorageIoRejected()
+    {
+        return getStorageExtensions().mapToLong(AbstractStorageExtension::getIoRejected).sum();
+    }
+
+    /**
+     * Total time the blocking storage calls spent waiting for a storage I/O thread.
+     */
+    @ExportMetric(name = "storageIoQueueTimeMillis")
+    public long getStorageIoQueueTimeMillis()
+    {
+        return getStorageExtensions().mapToLong(AbstractStorageExtension::getIoQueueTimeMillis).sum();
+    }
+
+    /**
+     * Total time the blocking storage calls spent running.
+     */
+    @ExportMetric(name = "storageIoServiceTimeMillis")
+    public long getStorageIoServiceTimeMillis()
+    {
+        return getStorageExtensions().mapToLong(AbstractStorageExtension::getIoServiceTimeMillis).sum();
+    }
+
+    private Stream<AbstractStorageExtension> getStorageExtensions()
+    {
+        return extensions.stream()
+                .filter(extension -> extension instanceof AbstractStorageExtension)
+                .map(extension -> (AbstractStorageExtension) extension);
+    }
+
+    /**
+     * Number of {@literal @}Coalesce calls that were merged with a request already waiting for its response.
+     */
+    @ExportMetric(name = "coalescedRequests")
+    public long getCoalescedRequests()
+    {
+        return cacheManager != null ? cacheManager.getCoalescedRequests() : 0;
+    }
+
+    /**
+     * Number of received frames waiting to be processed.
+     */
+    @ExportMetric(name = "inboundQueueSize")
+    public int getInboundQueueLength()
+    {
+        return inboundDispatcher != null ? inboundDispatcher.getQueueSize() : 0;
+    }
+
+    @ExportMetric(name = "inboundDispatched")
+    public long getInboundDispatched()
+    {
+        return inboundDispatcher != null ? inboundDispatcher.getDispatchedCount() : 0;
+    }
+
+    /**
+     * How many times the transport had to wait because the inbound queue was full.
+     */
+    @ExportMetric(name = "inboundBackpressureWaits")
+    public long getInboundBackpressureWaits()
+    {
+        return inboundDispatcher != null ? inboundDispatcher.getBackpressureWaits() : 0;
+    }
+
+    @ExportMetric(name = "inboundBackpressureWaitMillis")
+    public long getInboundBackpressureWaitMillis()
+    {
+        return inboundDispatcher != null ? inboundDispatcher.getBackpressureWaitMillis() : 0;
+    }
+
+    @ExportMetric(name = "pendingTimers")
+    public int getPendingTimers()
+    {
+        return timerWheel != null ? timerWheel.getPendingCount() : 0;
+    }
+
+    @ExportMetric(name = "firedTimers")
+    public long getFiredTimers()
+    {
+        return timerWheel != null ? timerWheel.getFiredCount() : 0;
+    }
+
+    /**
+     * How late the timer ticks are being processed, a growing lag means the timer thread can't keep up.
+     */
+    @ExportMetric(name = "timerLagMillis")
+    public long getTimerLagMillis()
+    {
+        return timerWheel != null ? TimeUnit.NANOSECONDS.toMillis(timerWheel.getLagNanos()) : 0;
+    }
+
+    @ExportMetric(name = "maxTimerLagMillis")
+    public long getMaxTimerLagMillis()
+    {
+        return timerWheel != null ? TimeUnit.NANOSECONDS.toMillis(timerWheel.getMaxLagNanos()) : 0;
+    }
 }
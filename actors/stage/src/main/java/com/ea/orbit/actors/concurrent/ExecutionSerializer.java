@@ -28,13 +28,39 @@
 
 package com.ea.orbit.actors.concurrent;
 
+import com.ea.orbit.actors.annotation.Priority;
 import com.ea.orbit.concurrent.Task;
 
 import java.util.function.Supplier;
 
 public interface ExecutionSerializer
 {
-    <R> Task<R> executeSerialized(Supplier<Task<R>> taskSupplier, int maxQueueSize);
+    /**
+     * Queues a task with normal priority.
+     *
+     * @throws com.ea.orbit.actors.exceptions.MailboxFullException if the queue is full
+     */
+    default <R> Task<R> executeSerialized(Supplier<Task<R>> taskSupplier, int maxQueueSize)
+    {
+        return executeSerialized(taskSupplier, maxQueueSize, Priority.Level.NORMAL);
+    }
+
+    /**
+     * Queues a task in the lane of the given priority.
+     *
+     * @throws com.ea.orbit.actors.exceptions.MailboxFullException if the queue is full
+     */
+    <R> Task<R> executeSerialized(Supplier<Task<R>> taskSupplier, int maxQueueSize, Priority.Level priority);
+
+    /**
+     * Queues a one way task. If the queue is full the oldest one way tasks of the normal lane,
+     * queued by this method, are discarded to make room; the futures of the discarded tasks complete with
+     * a {@link com.ea.orbit.actors.exceptions.MailboxFullException}.
+     * Requests and higher priority tasks are never discarded.
+     *
+     * @throws com.ea.orbit.actors.exceptions.MailboxFullException if the queue is full and there is nothing to discard
+     */
+    <R> Task<R> executeSerializedDropOldest(Supplier<Task<R>> taskSupplier, int maxQueueSize, Priority.Level priority);
 
     /**
      * Checks if the executor is currently running any tasks.
@@ -44,6 +44,16 @@ public interface MultiExecutionSerializer<T>
      */
     <R> Task<R> offerJob(T key, Supplier<Task<R>> job, int maxQueueSize);
 
+    /**
+     * Creates a serializer to be owned by the caller, sharing this instance's executor.
+     * <p>
+     * Used by objects that outlive their queue, like the actor activations,
+     * to skip the per key lookup. The serializer stays reachable for as long as its owner does.
+     * Its activity is accounted by {@link #isBusy()}.
+     * </p>
+     */
+    ExecutionSerializer newSerializer();
+
     void shutdown();
 
     boolean isBusy();
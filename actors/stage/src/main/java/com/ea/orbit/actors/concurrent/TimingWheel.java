@@ -0,0 +1,482 @@
+/*
+Copyright (C) 2015 Electronic Arts Inc.  All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions
+are met:
+
+1.  Redistributions of source code must retain the above copyright
+    notice, this list of conditions and the following disclaimer.
+2.  Redistributions in binary form must reproduce the above copyright
+    notice, this list of conditions and the following disclaimer in the
+    documentation and/or other materials provided with the distribution.
+3.  Neither the name of Electronic Arts, Inc. ("EA") nor the names of
+    its contributors may be used to endorse or promote products derived
+    from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY ELECTRONIC ARTS AND ITS CONTRIBUTORS "AS IS" AND ANY
+EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL ELECTRONIC ARTS OR ITS CONTRIBUTORS BE LIABLE FOR ANY
+DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package com.ea.orbit.actors.concurrent;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Hashed hierarchical timing wheel.
+ * <p>
+ * The timeouts are kept in {@link #LEVELS} wheels of {@link #WHEEL_SIZE} slots.
+ * Each slot of the first wheel holds the timeouts of a single tick,
+ * each slot of the following wheels spans a full revolution of the previous one.
+ * A single thread advances the wheels one tick at a time, moving the timeouts of the higher wheels
+ * down as their slots are reached, and hands the expired timeouts to the executor in batches.
+ * </p>
+ * <p>
+ * Scheduling and cancelling are O(1) and never block: the requests are queued and applied by the wheel thread
+ * before each tick. Timeouts never fire early, but may fire up to one tick late.
+ * </p>
+ */
+public class TimingWheel
+{
+    private static final Logger logger = LoggerFactory.getLogger(TimingWheel.class);
+
+    public static final long DEFAULT_TICK_MILLIS = 10;
+    public static final int DEFAULT_DISPATCH_BATCH_SIZE = 256;
+
+    static final int WHEEL_BITS = 8;
+    static final int WHEEL_SIZE = 1 << WHEEL_BITS;
+    static final int LEVELS = 4;
+    private static final int WHEEL_MASK = WHEEL_SIZE - 1;
+    // timeouts farther than this are parked in the top wheel and placed again when their slot is reached
+    private static final long MAX_TICKS = (1L << (WHEEL_BITS * LEVELS)) - 1;
+
+    private final String name;
+    private final long tickNanos;
+    private final Executor executor;
+    private final int dispatchBatchSize;
+    private final long startNanos = System.nanoTime();
+    private final Bucket[][] wheels = new Bucket[LEVELS][WHEEL_SIZE];
+
+    private final ConcurrentLinkedQueue<Timeout> added = new ConcurrentLinkedQueue<>();
+    private final ConcurrentLinkedQueue<Timeout> cancelled = new ConcurrentLinkedQueue<>();
+
+    // only accessed by the wheel thread
+    private long currentTick;
+    private List<Timeout> expired = new ArrayList<>();
+
+    private volatile Thread thread;
+    private volatile boolean running;
+    private volatile int pendingCount;
+    private volatile long lagNanos;
+    private volatile long maxLagNanos;
+    private final LongAdder firedCount = new LongAdder();
+
+    /**
+     * @param name       name of the wheel thread.
+     * @param tickMillis duration of a tick, the timer resolution.
+     * @param executor   receives the batches of expired timeouts, the timeout tasks run there.
+     */
+    public TimingWheel(final String name, final long tickMillis, final Executor executor)
+    {
+        this(name, tickMillis, executor, DEFAULT_DISPATCH_BATCH_SIZE);
+    }
+
+    public TimingWheel(final String name, final long tickMillis, final Executor executor, final int dispatchBatchSize)
+    {
+        if (tickMillis <= 0)
+        {
+            throw new IllegalArgumentException("Invalid tick: " + tickMillis);
+        }
+        this.name = name;
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+        this.executor = executor;
+        this.dispatchBatchSize = Math.max(1, dispatchBatchSize);
+        for (int level = 0; level < LEVELS; level++)
+        {
+            for (int slot = 0; slot < WHEEL_SIZE; slot++)
+            {
+                wheels[level][slot] = new Bucket();
+            }
+        }
+    }
+
+    public synchronized void start()
+    {
+        if (thread != null)
+        {
+            return;
+        }
+        running = true;
+        thread = new Thread(this::run, name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stops the wheel thread, the pending timeouts are discarded.
+     */
+    public synchronized void stop()
+    {
+        running = false;
+        final Thread t = thread;
+        if (t != null)
+        {
+            LockSupport.unpark(t);
+        }
+    }
+
+    /**
+     * Schedules a one shot timeout.
+     */
+    public Timeout schedule(final Runnable task, final long delay, final TimeUnit timeUnit)
+    {
+        return schedule(task, delay, 0, timeUnit);
+    }
+
+    /**
+     * Schedules a timeout.
+     *
+     * @param period if positive the task is repeated with this delay between the firings.
+     */
+    public Timeout schedule(final Runnable task, final long delay, final long period, final TimeUnit timeUnit)
+    {
+        final Timeout timeout = new Timeout(this, task, System.nanoTime() + timeUnit.toNanos(Math.max(0, delay)),
+                period > 0 ? timeUnit.toNanos(period) : 0);
+        added.add(timeout);
+        return timeout;
+    }
+
+    private void run()
+    {
+        while (running)
+        {
+            try
+            {
+                final long now = System.nanoTime();
+                final long targetTick = (now - startNanos) / tickNanos;
+                if (targetTick > currentTick)
+                {
+                    // how late the oldest due tick is being processed
+                    final long lag = now - (startNanos + (currentTick + 1) * tickNanos);
+                    lagNanos = lag;
+                    if (lag > maxLagNanos)
+                    {
+                        maxLagNanos = lag;
+                    }
+                }
+                applyCancelled();
+                applyAdded(now);
+                while (currentTick < targetTick)
+                {
+                    currentTick++;
+                    advance(now);
+                }
+                dispatch();
+            }
+            catch (Throwable ex)
+            {
+                logger.error("Error in the timing wheel", ex);
+            }
+            final long sleep = startNanos + (currentTick + 1) * tickNanos - System.nanoTime();
+            if (sleep > 0)
+            {
+                LockSupport.parkNanos(this, sleep);
+            }
+        }
+    }
+
+    private void applyAdded(final long now)
+    {
+        Timeout timeout;
+        while ((timeout = added.poll()) != null)
+        {
+            if (timeout.state == Timeout.ACTIVE)
+            {
+                place(timeout, now);
+            }
+        }
+    }
+
+    private void applyCancelled()
+    {
+        Timeout timeout;
+        while ((timeout = cancelled.poll()) != null)
+        {
+            if (timeout.bucket != null)
+            {
+                timeout.bucket.remove(timeout);
+                pendingCount--;
+            }
+        }
+    }
+
+    private void place(final Timeout timeout, final long now)
+    {
+        final long deadlineTick = ceilDiv(timeout.deadlineNanos - startNanos, tickNanos);
+        final long remaining = deadlineTick - currentTick;
+        if (remaining <= 0)
+        {
+            expire(timeout, now);
+            return;
+        }
+        final long placement = remaining > MAX_TICKS ? currentTick + MAX_TICKS : deadlineTick;
+        final long distance = placement - currentTick;
+        int level = 0;
+        while (level < LEVELS - 1 && distance >= (1L << (WHEEL_BITS * (level + 1))))
+        {
+            level++;
+        }
+        wheels[level][(int) ((placement >>> (WHEEL_BITS * level)) & WHEEL_MASK)].add(timeout);
+        pendingCount++;
+    }
+
+    private void advance(final long now)
+    {
+        // the higher wheels first, their timeouts may land in the lower slots being reached now
+        for (int level = LEVELS - 1; level > 0; level--)
+        {
+            if ((currentTick & ((1L << (WHEEL_BITS * level)) - 1)) == 0)
+            {
+                final Bucket bucket = wheels[level][(int) ((currentTick >>> (WHEEL_BITS * level)) & WHEEL_MASK)];
+                for (Timeout timeout = bucket.clear(); timeout != null; )
+                {
+                    final Timeout next = timeout.next;
+                    timeout.next = null;
+                    pendingCount--;
+                    place(timeout, now);
+                    timeout = next;
+                }
+            }
+        }
+        final Bucket bucket = wheels[0][(int) (currentTick & WHEEL_MASK)];
+        for (Timeout timeout = bucket.clear(); timeout != null; )
+        {
+            final Timeout next = timeout.next;
+            timeout.next = null;
+            pendingCount--;
+            expire(timeout, now);
+            timeout = next;
+        }
+    }
+
+    private void expire(final Timeout timeout, final long now)
+    {
+        if (timeout.periodNanos > 0)
+        {
+            if (timeout.state == Timeout.ACTIVE)
+            {
+                expired.add(timeout);
+                // fixed delay, the next deadline always falls after the current tick
+                timeout.deadlineNanos = now + timeout.periodNanos;
+                place(timeout, now);
+            }
+        }
+        else if (Timeout.STATE.compareAndSet(timeout, Timeout.ACTIVE, Timeout.EXPIRED))
+        {
+            expired.add(timeout);
+        }
+    }
+
+    private void dispatch()
+    {
+        final List<Timeout> list = expired;
+        if (list.isEmpty())
+        {
+            return;
+        }
+        expired = new ArrayList<>();
+        firedCount.add(list.size());
+        for (int i = 0; i < list.size(); i += dispatchBatchSize)
+        {
+            final List<Timeout> batch = list.subList(i, Math.min(list.size(), i + dispatchBatchSize));
+            try
+            {
+                executor.execute(() -> fire(batch));
+            }
+            catch (RejectedExecutionException ex)
+            {
+                logger.error("Timeouts rejected by the executor: " + batch.size(), ex);
+            }
+        }
+    }
+
+    private static void fire(final List<Timeout> batch)
+    {
+        for (int i = 0; i < batch.size(); i++)
+        {
+            final Timeout timeout = batch.get(i);
+            if (timeout.state != Timeout.CANCELLED)
+            {
+                try
+                {
+                    timeout.task.run();
+                }
+                catch (Throwable ex)
+                {
+                    logger.error("Error running timeout", ex);
+                }
+            }
+        }
+    }
+
+    private static long ceilDiv(final long value, final long divisor)
+    {
+        return value <= 0 ? 0 : (value + divisor - 1) / divisor;
+    }
+
+    /**
+     * Number of timeouts waiting in the wheels.
+     */
+    public int getPendingCount()
+    {
+        return pendingCount;
+    }
+
+    /**
+     * Number of timeouts handed to the executor so far.
+     */
+    public long getFiredCount()
+    {
+        return firedCount.sum();
+    }
+
+    /**
+     * How late the wheel thread was when it last processed a tick.
+     */
+    public long getLagNanos()
+    {
+        return lagNanos;
+    }
+
+    public long getMaxLagNanos()
+    {
+        return maxLagNanos;
+    }
+
+    public long getTickNanos()
+    {
+        return tickNanos;
+    }
+
+    public static class Timeout
+    {
+        static final int ACTIVE = 0;
+        static final int EXPIRED = 1;
+        static final int CANCELLED = 2;
+        static final AtomicIntegerFieldUpdater<Timeout> STATE = AtomicIntegerFieldUpdater.newUpdater(Timeout.class, "state");
+
+        private final Runnable task;
+        private final long periodNanos;
+        private final TimingWheel wheel;
+        private volatile int state;
+
+        // only accessed by the wheel thread
+        private long deadlineNanos;
+        private Bucket bucket;
+        private Timeout prev;
+        private Timeout next;
+
+        Timeout(final TimingWheel wheel, final Runnable task, final long deadlineNanos, final long periodNanos)
+        {
+            this.wheel = wheel;
+            this.task = task;
+            this.deadlineNanos = deadlineNanos;
+            this.periodNanos = periodNanos;
+        }
+
+        /**
+         * Prevents further firings, the timeout is removed from the wheel before the next tick.
+         *
+         * @return false if the timeout was already cancelled or has already fired (one shot timeouts).
+         */
+        public boolean cancel()
+        {
+            if (STATE.compareAndSet(this, ACTIVE, CANCELLED))
+            {
+                wheel.cancelled.add(this);
+                return true;
+            }
+            return false;
+        }
+
+        public boolean isCancelled()
+        {
+            return state == CANCELLED;
+        }
+
+        public boolean isExpired()
+        {
+            return state == EXPIRED;
+        }
+    }
+
+    private static class Bucket
+    {
+        private Timeout head;
+
+        void add(final Timeout timeout)
+        {
+            timeout.bucket = this;
+            timeout.prev = null;
+            timeout.next = head;
+            if (head != null)
+            {
+                head.prev = timeout;
+            }
+            head = timeout;
+        }
+
+        void remove(final Timeout timeout)
+        {
+            if (timeout.prev != null)
+            {
+                timeout.prev.next = timeout.next;
+            }
+            else
+            {
+                head = timeout.next;
+            }
+            if (timeout.next != null)
+            {
+                timeout.next.prev = timeout.prev;
+            }
+            timeout.bucket = null;
+            timeout.prev = null;
+            timeout.next = null;
+        }
+
+        /**
+         * Detaches all the timeouts, returns the first one, the others are reachable through {@code next}.
+         */
+        Timeout clear()
+        {
+            final Timeout first = head;
+            head = null;
+            for (Timeout timeout = first; timeout != null; timeout = timeout.next)
+            {
+                timeout.bucket = null;
+                timeout.prev = null;
+            }
+            return first;
+        }
+    }
+}
@@ -28,6 +28,8 @@
 
 package com.ea.orbit.actors.concurrent;
 
+import com.ea.orbit.actors.annotation.Priority;
+import com.ea.orbit.actors.exceptions.MailboxFullException;
 import com.ea.orbit.actors.runtime.InternalUtils;
 import com.ea.orbit.concurrent.Task;
 
@@ -37,138 +39,304 @@ import org.slf4j.LoggerFactory;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
 import java.util.function.Supplier;
 
 /**
  * Ensures that only a single task is executed at each time.
+ * <p>
+ * The queue is drained in turns, each turn runs in one executor thread.
+ * A turn processes the tasks that complete synchronously one after the other,
+ * until the queue is empty, a task returns an incomplete future,
+ * or the turn budget (task count or time) is exhausted.
+ * In the last two cases the drain continues in a new turn, and the thread goes back to the executor.
+ * </p>
+ * <p>
+ * Tasks are queued in three lanes, by {@link Priority.Level}. The higher lanes are drained first,
+ * but after {@link #STARVATION_LIMIT} consecutive tasks taken from a higher lane while a lower one had tasks
+ * waiting, a task from the lowest waiting lane is executed.
+ * The lanes other than the normal one are only created when used.
+ * </p>
  *
  * @author Daniel Sperry
  */
 public class WaitFreeExecutionSerializer implements ExecutionSerializer, Executor
 {
     private static final Logger logger = LoggerFactory.getLogger(WaitFreeExecutionSerializer.class);
+
+    public static final int DEFAULT_BATCH_SIZE = 64;
+    public static final long DEFAULT_BATCH_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
     private ExecutorService executorService;
-    private ConcurrentLinkedQueue<Supplier<Task<?>>> queue = new ConcurrentLinkedQueue<>();
+    public static final int STARVATION_LIMIT = 8;
+
+    @SuppressWarnings("rawtypes")
+    private static final AtomicReferenceFieldUpdater<WaitFreeExecutionSerializer, ConcurrentLinkedQueue> SYSTEM_QUEUE =
+            AtomicReferenceFieldUpdater.newUpdater(WaitFreeExecutionSerializer.class, ConcurrentLinkedQueue.class, "systemQueue");
+    @SuppressWarnings("rawtypes")
+    private static final AtomicReferenceFieldUpdater<WaitFreeExecutionSerializer, ConcurrentLinkedQueue> HIGH_QUEUE =
+            AtomicReferenceFieldUpdater.newUpdater(WaitFreeExecutionSerializer.class, ConcurrentLinkedQueue.class, "highQueue");
+
+    private ConcurrentLinkedQueue<Job<?>> queue = new ConcurrentLinkedQueue<>();
+    private volatile ConcurrentLinkedQueue<Job<?>> systemQueue;
+    private volatile ConcurrentLinkedQueue<Job<?>> highQueue;
+    // consecutive tasks taken from a higher lane while a lower lane was waiting, only accessed holding the lock
+    private int preferredInRow;
     private AtomicBoolean lock = new AtomicBoolean();
     private AtomicInteger size = new AtomicInteger();
+    // queued one way tasks of the normal lane, the ones that executeSerializedDropOldest may discard
+    private final AtomicInteger discardableCount = new AtomicInteger();
+    // optional, shared with other serializers, counts the ones holding the lock
+    private final LongAdder lockedCounter;
+    private final int batchSize;
+    private final long batchNanos;
+
+    // allocated once, they are used for every turn
+    private final Runnable drainTask = this::drain;
+    private final BiConsumer<Object, Throwable> continuation = (r, e) -> schedule();
 
 
     public WaitFreeExecutionSerializer(final ExecutorService executorService)
+    {
+        this(executorService, null);
+    }
+
+    /**
+     * @param lockedCounter incremented while this serializer is running tasks,
+     *                      allows a group of serializers to be checked for activity without visiting each one.
+     */
+    public WaitFreeExecutionSerializer(final ExecutorService executorService, final LongAdder lockedCounter)
+    {
+        this(executorService, lockedCounter, DEFAULT_BATCH_SIZE, DEFAULT_BATCH_NANOS);
+    }
+
+    /**
+     * @param lockedCounter incremented while this serializer is running tasks, may be null.
+     * @param batchSize     maximum number of tasks executed in a single turn.
+     * @param batchNanos    maximum time of a single turn, checked after each task.
+     */
+    public WaitFreeExecutionSerializer(final ExecutorService executorService, final LongAdder lockedCounter, final int batchSize, final long batchNanos)
     {
         this.executorService = executorService;
+        this.lockedCounter = lockedCounter;
+        this.batchSize = Math.max(1, batchSize);
+        this.batchNanos = batchNanos;
     }
 
     @Override
-    public <R> Task<R> executeSerialized(Supplier<Task<R>> taskSupplier, int maxQueueSize)
+    public <R> Task<R> executeSerialized(final Supplier<Task<R>> taskSupplier, final int maxQueueSize, final Priority.Level priority)
     {
-        Task<R> completion = new Task<>();
-        if (size.get() >= maxQueueSize || !queue.add(() -> {
-                    Task<R> source = InternalUtils.safeInvoke(taskSupplier);
-                    InternalUtils.linkFutures(source, completion);
-                    return source;
-                }
-        ))
+        if (size.get() >= maxQueueSize)
         {
-            throw new IllegalStateException(String.format("Queue full %d > %d", queue.size(), maxQueueSize));
+            throw new MailboxFullException(String.format("Queue full %d >= %d", size.get(), maxQueueSize));
         }
-        // managing the size like this to avoid using ConcurrentLinkedQueue.size()
-        size.incrementAndGet();
-        tryExecute(false);
-        return completion;
+        return enqueue(new Job<>(taskSupplier, false), priority);
     }
 
     @Override
-    public boolean isBusy()
+    public <R> Task<R> executeSerializedDropOldest(final Supplier<Task<R>> taskSupplier, final int maxQueueSize, final Priority.Level priority)
     {
-        return lock.get() || !queue.isEmpty();
+        while (size.get() >= maxQueueSize)
+        {
+            if (discardableCount.get() == 0 || !discardOldest())
+            {
+                throw new MailboxFullException(String.format("Queue full %d >= %d", size.get(), maxQueueSize));
+            }
+        }
+        return enqueue(new Job<>(taskSupplier, priority == Priority.Level.NORMAL), priority);
     }
 
     /**
-     * @param local defines if can execute in the current thread
+     * Removes the oldest discardable task, only one way tasks of the normal lane are discarded.
+     *
+     * @return false if there was none
      */
-    private void tryExecute(boolean local)
+    private boolean discardOldest()
     {
-        do
+        for (final Job<?> job : queue)
         {
-            if (!lock())
+            // remove fails if the job was taken meanwhile
+            if (job.discardable && queue.remove(job))
             {
-                // some other thread has the lock and it is now responsible for draining the queue.
-                return;
+                discardableCount.decrementAndGet();
+                size.decrementAndGet();
+                job.completion.completeExceptionally(new MailboxFullException("Discarded to make room for newer messages"));
+                return true;
             }
+        }
+        return false;
+    }
 
-            // while there is something in the queue
-            final Supplier<Task<?>> toRun = queue.poll();
-            if (toRun != null)
-            {
-                size.decrementAndGet();
-                try
+    private <R> Task<R> enqueue(final Job<R> job, final Priority.Level priority)
+    {
+        if (job.discardable)
+        {
+            discardableCount.incrementAndGet();
+        }
+        lane(priority).add(job);
+        // managing the size like this to avoid using ConcurrentLinkedQueue.size()
+        size.incrementAndGet();
+        if (lock())
+        {
+            schedule();
+        }
+        // else: some other thread has the lock and it is now responsible for draining the queue.
+        return job.completion;
+    }
+
+    @SuppressWarnings("unchecked")
+    private ConcurrentLinkedQueue<Job<?>> lane(final Priority.Level priority)
+    {
+        switch (priority)
+        {
+            case SYSTEM:
+                if (systemQueue == null)
                 {
-                    Task<?> taskFuture;
-                    if (local)
-                    {
-                        taskFuture = toRun.get();
-                    }
-                    else
-                    {
-                        // execute in another thread
-                        final Task<?> task = taskFuture = new Task<>();
-                        executorService.execute(() -> wrapExecution(toRun, task));
-                    }
-                    if (taskFuture != null && !taskFuture.isDone())
-                    {
-                        // this will run whenComplete in another thread
-                        taskFuture.whenCompleteAsync(this::whenCompleteAsync, executorService);
-                        // returning without unlocking, onComplete will do it;
-                        return;
-                    }
+                    SYSTEM_QUEUE.compareAndSet(this, null, new ConcurrentLinkedQueue<>());
                 }
-                catch (Throwable error)
+                return systemQueue;
+            case HIGH:
+                if (highQueue == null)
                 {
-                    try
-                    {
-                        logger.error("Error executing action", error);
-                    }
-                    catch (Throwable ex)
-                    {
-                        // just to be on the safe side... loggers can fail...
-                        ex.printStackTrace();
-                    }
+                    HIGH_QUEUE.compareAndSet(this, null, new ConcurrentLinkedQueue<>());
                 }
-                // was executed immediately
-                // unlock
+                return highQueue;
+            default:
+                return queue;
+        }
+    }
+
+    /**
+     * Takes the next task, must be called holding the lock.
+     */
+    private Job<?> poll()
+    {
+        final ConcurrentLinkedQueue<Job<?>> system = systemQueue;
+        final ConcurrentLinkedQueue<Job<?>> high = highQueue;
+        if (system == null && high == null)
+        {
+            return queue.poll();
+        }
+        Job<?> job;
+        if (preferredInRow >= STARVATION_LIMIT)
+        {
+            // the lower lanes' turn
+            preferredInRow = 0;
+            if ((job = queue.poll()) != null || (high != null && (job = high.poll()) != null))
+            {
+                return job;
             }
-            unlock();
-        } while (!queue.isEmpty());
+            return system != null ? system.poll() : null;
+        }
+        if (system != null && (job = system.poll()) != null)
+        {
+            preferredInRow = (high == null || high.isEmpty()) && queue.isEmpty() ? 0 : preferredInRow + 1;
+            return job;
+        }
+        if (high != null && (job = high.poll()) != null)
+        {
+            preferredInRow = queue.isEmpty() ? 0 : preferredInRow + 1;
+            return job;
+        }
+        preferredInRow = 0;
+        return queue.poll();
+    }
+
+    private boolean isEmpty()
+    {
+        final ConcurrentLinkedQueue<Job<?>> system = systemQueue;
+        final ConcurrentLinkedQueue<Job<?>> high = highQueue;
+        return queue.isEmpty() && (system == null || system.isEmpty()) && (high == null || high.isEmpty());
+    }
+
+    @Override
+    public boolean isBusy()
+    {
+        return lock.get() || !isEmpty();
     }
 
-    private void wrapExecution(final Supplier<Task<?>> toRun, final Task<?> taskFuture)
+    /**
+     * Starts a new turn in the executor, must be called holding the lock.
+     */
+    private void schedule()
     {
         try
         {
-            final Task<?> task = (Task) toRun.get();
-            if (task == null)
+            executorService.execute(drainTask);
+        }
+        catch (Throwable error)
+        {
+            try
             {
-                taskFuture.complete(null);
+                logger.error("Error scheduling execution", error);
             }
-            else
+            catch (Throwable ex)
             {
-                task.whenComplete((r, e) -> {
-                    if (e != null)
-                    {
-                        taskFuture.completeExceptionally(e);
-                    }
-                    else
-                    {
-                        taskFuture.complete(null);
-                    }
-                });
+                // just to be on the safe side... loggers can fail...
+                ex.printStackTrace();
             }
+            unlock();
         }
-        catch (Exception e)
+    }
+
+    /**
+     * Executes one turn, must be called holding the lock.
+     */
+    private void drain()
+    {
+        final long start = System.nanoTime();
+        int count = 0;
+        while (true)
         {
-            taskFuture.completeExceptionally(e);
+            final Job<?> toRun = poll();
+            if (toRun == null)
+            {
+                unlock();
+                // double take: something might have arrived before the unlock, without getting the lock
+                if (isEmpty() || !lock())
+                {
+                    return;
+                }
+                continue;
+            }
+            size.decrementAndGet();
+            if (toRun.discardable)
+            {
+                discardableCount.decrementAndGet();
+            }
+            try
+            {
+                final Task<?> taskFuture = toRun.run();
+                if (taskFuture != null && !taskFuture.isDone())
+                {
+                    // returning without unlocking, the next turn starts when the task completes
+                    taskFuture.whenComplete(continuation);
+                    return;
+                }
+            }
+            catch (Throwable error)
+            {
+                try
+                {
+                    logger.error("Error executing action", error);
+                }
+                catch (Throwable ex)
+                {
+                    // just to be on the safe side... loggers can fail...
+                    ex.printStackTrace();
+                }
+            }
+            if ((++count >= batchSize || System.nanoTime() - start >= batchNanos) && !isEmpty())
+            {
+                // turn budget exhausted, lets the other serializers use this thread
+                schedule();
+                return;
+            }
         }
     }
 
@@ -178,20 +346,47 @@ public class WaitFreeExecutionSerializer implements ExecutionSerializer, Executo
         {
             logger.error("Unlocking without having the lock");
         }
+        else if (lockedCounter != null)
+        {
+            lockedCounter.decrement();
+        }
     }
 
     private boolean lock()
     {
-        return lock.compareAndSet(false, true);
+        if (lock.compareAndSet(false, true))
+        {
+            if (lockedCounter != null)
+            {
+                lockedCounter.increment();
+            }
+            return true;
+        }
+        return false;
     }
 
-    private <T> void whenCompleteAsync(T result, Throwable error)
+    /**
+     * A queued task and the future given to whoever queued it.
+     */
+    private static class Job<R>
     {
-        // unlock
-        unlock();
-        // double take:
-        // try executing again, in case some new data arrived
-        tryExecute(true);
+        final Supplier<Task<R>> taskSupplier;
+        final Task<R> completion = new Task<>();
+        // a one way task of the normal lane
+        final boolean discardable;
+
+        Job(final Supplier<Task<R>> taskSupplier, final boolean discardable)
+        {
+            this.taskSupplier = taskSupplier;
+            this.discardable = discardable;
+        }
+
+        Task<R> run()
+        {
+            Task<R> source = InternalUtils.safeInvoke(taskSupplier);
+            InternalUtils.linkFutures(source, completion);
+            return source;
+        }
     }
 
     @Override
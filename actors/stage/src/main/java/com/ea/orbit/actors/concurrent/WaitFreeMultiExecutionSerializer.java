@@ -44,6 +44,7 @@ import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.Supplier;
 
 /**
@@ -58,7 +59,11 @@ public class WaitFreeMultiExecutionSerializer<T> implements MultiExecutionSerial
 
     // while running, the WaitFreeExecutionSerializer is held alive by references from the executorService
     // and from anyone holding the promises (Tasks) it returns.
+    // only the keyed offers go through here, the actor activations own their serializers.
     private Cache<T, WaitFreeExecutionSerializer> serializers = CacheBuilder.newBuilder().weakValues().build();
+    // serializers currently running tasks, both the keyed and the owned ones
+    private final LongAdder lockedSerializers = new LongAdder();
+    private int batchSize = WaitFreeExecutionSerializer.DEFAULT_BATCH_SIZE;
 
     public WaitFreeMultiExecutionSerializer()
     {
@@ -77,7 +82,7 @@ public class WaitFreeMultiExecutionSerializer<T> implements MultiExecutionSerial
         {
             try
             {
-                return serializers.get(key, () -> new WaitFreeExecutionSerializer(executorService));
+                return serializers.get(key, () -> new WaitFreeExecutionSerializer(executorService, lockedSerializers, batchSize, WaitFreeExecutionSerializer.DEFAULT_BATCH_NANOS));
             }
             catch (ExecutionException e)
             {
@@ -102,6 +107,25 @@ public class WaitFreeMultiExecutionSerializer<T> implements MultiExecutionSerial
         return getSerializer(key).executeSerialized(() -> InternalUtils.safeInvoke(job), maxQueueSize);
     }
 
+    public int getBatchSize()
+    {
+        return batchSize;
+    }
+
+    /**
+     * Sets the maximum number of tasks a serializer executes in one turn, affects only the serializers created afterwards.
+     */
+    public void setBatchSize(final int batchSize)
+    {
+        this.batchSize = batchSize;
+    }
+
+    @Override
+    public WaitFreeExecutionSerializer newSerializer()
+    {
+        return new WaitFreeExecutionSerializer(executorService, lockedSerializers, batchSize, WaitFreeExecutionSerializer.DEFAULT_BATCH_NANOS);
+    }
+
     public void shutdown()
     {
         executorService.shutdown(); // Disable new tasks from being submitted
@@ -126,15 +150,15 @@ public class WaitFreeMultiExecutionSerializer<T> implements MultiExecutionSerial
         logger.info("Thread pool shutdown complete");
     }
 
+    /**
+     * Checks if any of the serializers is running tasks, without visiting them.
+     * <p>
+     * A serializer with queued tasks holds its lock until the queue is empty, the lock is taken
+     * by the same call that queues the task, so counting the locked serializers is enough.
+     * </p>
+     */
     public boolean isBusy()
     {
-        for (WaitFreeExecutionSerializer serializer : serializers.asMap().values())
-        {
-            if (serializer.isBusy())
-            {
-                return true;
-            }
-        }
-        return false;
+        return lockedSerializers.sum() > 0;
     }
 }
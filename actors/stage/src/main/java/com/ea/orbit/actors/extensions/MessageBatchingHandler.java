@@ -0,0 +1,399 @@
+/*
+Copyright (C) 2015 Electronic Arts Inc.  All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions
+are met:
+
+1.  Redistributions of source code must retain the above copyright
+    notice, this list of conditions and the following disclaimer.
+2.  Redistributions in binary form must reproduce the above copyright
+    notice, this list of conditions and the following disclaimer in the
+    documentation and/or other materials provided with the distribution.
+3.  Neither the name of Electronic Arts, Inc. ("EA") nor the names of
+    its contributors may be used to endorse or promote products derived
+    from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY ELECTRONIC ARTS AND ITS CONTRIBUTORS "AS IS" AND ANY
+EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL ELECTRONIC ARTS OR ITS CONTRIBUTORS BE LIABLE FOR ANY
+DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package com.ea.orbit.actors.extensions;
+
+import com.ea.orbit.actors.net.HandlerContext;
+import com.ea.orbit.actors.runtime.DefaultHandlers;
+import com.ea.orbit.concurrent.Task;
+import com.ea.orbit.metrics.annotations.ExportMetric;
+import com.ea.orbit.tuples.Pair;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Groups the serialized messages going to the same node into a single network packet.
+ * <p/>
+ * Messages are held for up to {@code maxBatchDelayMicros} or until {@code maxBatchBytes} are pending
+ * for the destination, then sent together.
+ * <p/>
+ * Every packet starts with a type byte, the serialized messages have no fixed prefix that
+ * could tell them apart from a batch. Formats (big endian):
+ * <pre>
+ *     single: | 00 | message
+ *     batch:  | 01 | count       | length      | message | length | message | ...
+ *             | 01 | 00 00 00 02 | 00 00 00 05 | ...     |
+ * </pre>
+ * All the nodes of the cluster must install this handler.
+ */
+public class MessageBatchingHandler extends NamedPipelineExtension
+{
+    public static final String MESSAGE_BATCHING = "message-batching";
+
+    private static final Logger logger = LoggerFactory.getLogger(MessageBatchingHandler.class);
+
+    static final byte SINGLE = 0;
+    static final byte BATCH = 1;
+    private static final int HEADER_SIZE = 5;
+
+    private int maxBatchDelayMicros = 200;
+    private int maxBatchBytes = 32 * 1024;
+
+    private final ConcurrentMap<Object, Batch> batches = new ConcurrentHashMap<>();
+    private volatile ScheduledExecutorService scheduler;
+
+    private final LongAdder batchesSent = new LongAdder();
+    private final LongAdder messagesBatched = new LongAdder();
+
+    private static class Batch
+    {
+        final Object destination;
+        List<byte[]> frames = new ArrayList<>();
+        int size = HEADER_SIZE;
+        boolean flushScheduled;
+        // removed from the map, the writers must get a new one
+        boolean retired;
+        // completed when the pending frames are handed to the next handler
+        Task<Void> sent = new Task<>();
+
+        Batch(final Object destination)
+        {
+            this.destination = destination;
+        }
+    }
+
+    public MessageBatchingHandler()
+    {
+        super(MESSAGE_BATCHING, null, DefaultHandlers.SERIALIZATION);
+    }
+
+    public MessageBatchingHandler(final String name, final String beforeHandlerName, final String afterHandlerName)
+    {
+        super(name, beforeHandlerName, afterHandlerName);
+    }
+
+    @Override
+    public Task write(final HandlerContext ctx, final Object msg) throws Exception
+    {
+        if (!(msg instanceof Pair) || !(((Pair) msg).getRight() instanceof byte[]))
+        {
+            return ctx.write(msg);
+        }
+        final Pair pair = (Pair) msg;
+        final byte[] frame = (byte[]) pair.getRight();
+        while (true)
+        {
+            final Batch batch = batches.computeIfAbsent(pair.getLeft(), Batch::new);
+            synchronized (batch)
+            {
+                if (batch.retired)
+                {
+                    continue;
+                }
+                final Task<Void> sent = batch.sent;
+                batch.frames.add(frame);
+                batch.size += 4 + frame.length;
+                if (batch.size >= maxBatchBytes || maxBatchDelayMicros <= 0)
+                {
+                    flush(ctx, batch);
+                    if (!batch.flushScheduled)
+                    {
+                        retire(batch);
+                    }
+                }
+                else if (!batch.flushScheduled)
+                {
+                    batch.flushScheduled = true;
+                    getScheduler().schedule(() -> flushScheduled(ctx, batch), maxBatchDelayMicros, TimeUnit.MICROSECONDS);
+                }
+                return sent;
+            }
+        }
+    }
+
+    /**
+     * Drops an empty batch, so there are only batches for the destinations with pending messages.
+     * Must be called holding the batch lock.
+     */
+    private void retire(final Batch batch)
+    {
+        batch.retired = true;
+        batches.remove(batch.destination, batch);
+    }
+
+    private void flushScheduled(final HandlerContext ctx, final Batch batch)
+    {
+        try
+        {
+            synchronized (batch)
+            {
+                batch.flushScheduled = false;
+                try
+                {
+                    flush(ctx, batch);
+                }
+                finally
+                {
+                    retire(batch);
+                }
+            }
+        }
+        catch (Throwable ex)
+        {
+            logger.error("Error sending message batch to " + batch.destination, ex);
+        }
+    }
+
+    /**
+     * Must be called holding the batch lock, sending while holding it keeps the per destination order.
+     */
+    private void flush(final HandlerContext ctx, final Batch batch)
+    {
+        final List<byte[]> frames = batch.frames;
+        if (frames.isEmpty())
+        {
+            return;
+        }
+        final int size = batch.size;
+        final Task<Void> sent = batch.sent;
+        batch.frames = new ArrayList<>();
+        batch.size = HEADER_SIZE;
+        batch.sent = new Task<>();
+        final byte[] packet;
+        if (frames.size() == 1)
+        {
+            final byte[] frame = frames.get(0);
+            packet = new byte[1 + frame.length];
+            packet[0] = SINGLE;
+            System.arraycopy(frame, 0, packet, 1, frame.length);
+        }
+        else
+        {
+            packet = new byte[size];
+            packet[0] = BATCH;
+            writeInt(packet, 1, frames.size());
+            int offset = HEADER_SIZE;
+            for (final byte[] frame : frames)
+            {
+                writeInt(packet, offset, frame.length);
+                System.arraycopy(frame, 0, packet, offset + 4, frame.length);
+                offset += 4 + frame.length;
+            }
+            batchesSent.increment();
+            messagesBatched.add(frames.size());
+        }
+        try
+        {
+            final Task<?> written = ctx.write(Pair.of(batch.destination, packet));
+            if (written == null)
+            {
+                sent.complete(null);
+            }
+            else
+            {
+                written.whenComplete((r, e) -> {
+                    if (e != null)
+                    {
+                        sent.completeExceptionally(e);
+                    }
+                    else
+                    {
+                        sent.complete(null);
+                    }
+                });
+            }
+        }
+        catch (RuntimeException ex)
+        {
+            sent.completeExceptionally(ex);
+            throw ex;
+        }
+    }
+
+    @Override
+    public void onRead(final HandlerContext ctx, final Object msg) throws Exception
+    {
+        if (!(msg instanceof Pair) || !(((Pair) msg).getRight() instanceof byte[]))
+        {
+            ctx.fireRead(msg);
+            return;
+        }
+        final Pair pair = (Pair) msg;
+        final byte[] packet = (byte[]) pair.getRight();
+        if (packet.length > 0 && packet[0] == SINGLE)
+        {
+            final byte[] frame = new byte[packet.length - 1];
+            System.arraycopy(packet, 1, frame, 0, frame.length);
+            ctx.fireRead(Pair.of(pair.getLeft(), frame));
+            return;
+        }
+        if (packet.length < HEADER_SIZE || packet[0] != BATCH)
+        {
+            throw new IllegalArgumentException("Invalid message packet from " + pair.getLeft() + ", is the batching handler installed on all nodes?");
+        }
+        final int count = readInt(packet, 1);
+        // checking the whole packet before delivering any of its messages
+        int offset = HEADER_SIZE;
+        for (int i = 0; i < count; i++)
+        {
+            final int length = packet.length - offset >= 4 ? readInt(packet, offset) : -1;
+            if (length < 0 || length > packet.length - offset - 4)
+            {
+                throw new IllegalArgumentException("Truncated or corrupt message batch from " + pair.getLeft()
+                        + ", message " + i + " of " + count + " at offset " + offset + " of " + packet.length);
+            }
+            offset += 4 + length;
+        }
+        if (count < 0 || offset != packet.length)
+        {
+            throw new IllegalArgumentException("Corrupt message batch from " + pair.getLeft()
+                    + ", " + count + " messages end at offset " + offset + " of " + packet.length);
+        }
+        offset = HEADER_SIZE;
+        for (int i = 0; i < count; i++)
+        {
+            final int length = readInt(packet, offset);
+            final byte[] frame = new byte[length];
+            System.arraycopy(packet, offset + 4, frame, 0, length);
+            offset += 4 + length;
+            ctx.fireRead(Pair.of(pair.getLeft(), frame));
+        }
+    }
+
+    @Override
+    public Task close(final HandlerContext ctx) throws Exception
+    {
+        for (final Batch batch : batches.values())
+        {
+            synchronized (batch)
+            {
+                flush(ctx, batch);
+            }
+        }
+        final ScheduledExecutorService scheduler = this.scheduler;
+        if (scheduler != null)
+        {
+            scheduler.shutdown();
+        }
+        return ctx.close();
+    }
+
+    private ScheduledExecutorService getScheduler()
+    {
+        ScheduledExecutorService scheduler = this.scheduler;
+        if (scheduler == null)
+        {
+            synchronized (this)
+            {
+                scheduler = this.scheduler;
+                if (scheduler == null)
+                {
+                    scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+                        final Thread thread = new Thread(r, "Orbit message batching");
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+                    this.scheduler = scheduler;
+                }
+            }
+        }
+        return scheduler;
+    }
+
+    private static void writeInt(final byte[] bytes, final int offset, final int value)
+    {
+        bytes[offset] = (byte) ((value >> 24) & 0xff);
+        bytes[offset + 1] = (byte) ((value >> 16) & 0xff);
+        bytes[offset + 2] = (byte) ((value >> 8) & 0xff);
+        bytes[offset + 3] = (byte) ((value) & 0xff);
+    }
+
+    private static int readInt(final byte[] bytes, final int offset)
+    {
+        return ((bytes[offset] & 0xff) << 24)
+                | ((bytes[offset + 1] & 0xff) << 16)
+                | ((bytes[offset + 2] & 0xff) << 8)
+                | (bytes[offset + 3] & 0xff);
+    }
+
+    public int getMaxBatchDelayMicros()
+    {
+        return maxBatchDelayMicros;
+    }
+
+    /**
+     * How long a message may wait for others going to the same node. Zero disables the batching.
+     */
+    public void setMaxBatchDelayMicros(final int maxBatchDelayMicros)
+    {
+        this.maxBatchDelayMicros = maxBatchDelayMicros;
+    }
+
+    public int getMaxBatchBytes()
+    {
+        return maxBatchBytes;
+    }
+
+    /**
+     * Pending size that causes the batch to be sent immediately.
+     */
+    public void setMaxBatchBytes(final int maxBatchBytes)
+    {
+        this.maxBatchBytes = maxBatchBytes;
+    }
+
+    /**
+     * Number of destinations with messages waiting to be sent.
+     */
+    public int getPendingDestinations()
+    {
+        return batches.size();
+    }
+
+    @ExportMetric(name = "batchesSent")
+    public long getBatchesSent()
+    {
+        return batchesSent.sum();
+    }
+
+    @ExportMetric(name = "messagesBatched")
+    public long getMessagesBatched()
+    {
+        return messagesBatched.sum();
+    }
+}
@@ -28,6 +28,7 @@
 
 package com.ea.orbit.actors.runtime;
 
+import com.ea.orbit.actors.annotation.ActorTTL;
 import com.ea.orbit.actors.concurrent.MultiExecutionSerializer;
 import com.ea.orbit.actors.extensions.LoggerExtension;
 import com.ea.orbit.actors.extensions.StorageExtension;
@@ -48,6 +49,8 @@ public abstract class ActorBaseEntry<T extends AbstractActor> implements LocalOb
     private boolean deactivated;
     private Logger logger;
     protected long lastAccess;
+    // negative when the actor uses the stage default
+    private long ttlMillis = -1;
 
     public ActorBaseEntry(final RemoteReference reference)
     {
@@ -74,6 +77,15 @@ public abstract class ActorBaseEntry<T extends AbstractActor> implements LocalOb
     public void setConcreteClass(final Class<T> concreteClass)
     {
         this.concreteClass = concreteClass;
+        ActorTTL ttl = concreteClass != null ? concreteClass.getAnnotation(ActorTTL.class) : null;
+        if (ttl == null)
+        {
+            ttl = reference._interfaceClass().getAnnotation(ActorTTL.class);
+        }
+        if (ttl != null)
+        {
+            ttlMillis = ttl.timeUnit().toMillis(ttl.value());
+        }
     }
 
     public void setRuntime(final ActorRuntime runtime)
@@ -118,4 +130,12 @@ public abstract class ActorBaseEntry<T extends AbstractActor> implements LocalOb
     {
         return lastAccess;
     }
+
+    /**
+     * The idle time after which this activation is deactivated, from {@link ActorTTL}, or negative for the stage default.
+     */
+    public long getTtlMillis()
+    {
+        return ttlMillis;
+    }
 }
@@ -28,6 +28,11 @@
 
 package com.ea.orbit.actors.runtime;
 
+import com.ea.orbit.actors.annotation.MailboxCapacity;
+import com.ea.orbit.actors.annotation.Priority;
+import com.ea.orbit.actors.annotation.WriteBehind;
+import com.ea.orbit.actors.concurrent.ExecutionSerializer;
+import com.ea.orbit.actors.concurrent.MultiExecutionSerializer;
 import com.ea.orbit.actors.extensions.LifetimeExtension;
 import com.ea.orbit.actors.streams.AsyncStream;
 import com.ea.orbit.actors.streams.StreamSubscriptionHandle;
@@ -40,15 +45,28 @@ import java.util.HashMap;
 import java.util.Map;
 import java.util.Objects;
 import java.util.WeakHashMap;
+import java.util.function.Supplier;
 
 import static com.ea.orbit.async.Await.await;
 
 public class ActorEntry<T extends AbstractActor> extends ActorBaseEntry<T>
 {
+    public static final int DEFAULT_MAILBOX_CAPACITY = 1000;
+
     private T actor;
     private Object key;
+    private ExecutionSerializer mailbox;
+    private int mailboxCapacity = DEFAULT_MAILBOX_CAPACITY;
+    private boolean dropOldest;
     private WeakHashMap<Registration, Object> timers;
     private Map<StreamSubscriptionHandle, AsyncStream> streamSubscriptions;
+    // negative when the state writes aren't deferred
+    private long writeBehindDelay = -1;
+    private long writeBehindMaxDirty;
+    // only changed from the actor context, read by the flusher
+    private volatile boolean dirty;
+    private volatile long dirtySince;
+    private volatile long lastDirty;
 
     public ActorEntry(final RemoteReference reference)
     {
@@ -63,11 +81,63 @@ public class ActorEntry<T extends AbstractActor> extends ActorBaseEntry<T>
         return actor;
     }
 
+    @Override
+    public void setExecutionSerializer(final MultiExecutionSerializer<Object> executionSerializer)
+    {
+        super.setExecutionSerializer(executionSerializer);
+        // the activation owns its queue, no per message lookup and it goes away with the entry
+        this.mailbox = executionSerializer.newSerializer();
+    }
+
+    @Override
+    public void setConcreteClass(final Class<T> concreteClass)
+    {
+        super.setConcreteClass(concreteClass);
+        MailboxCapacity capacity = concreteClass != null ? concreteClass.getAnnotation(MailboxCapacity.class) : null;
+        if (capacity == null)
+        {
+            capacity = reference._interfaceClass().getAnnotation(MailboxCapacity.class);
+        }
+        if (capacity != null)
+        {
+            mailboxCapacity = capacity.value();
+            dropOldest = capacity.overflow() == MailboxCapacity.OverflowPolicy.DROP_OLDEST;
+        }
+        WriteBehind writeBehind = concreteClass != null ? concreteClass.getAnnotation(WriteBehind.class) : null;
+        if (writeBehind == null)
+        {
+            writeBehind = reference._interfaceClass().getAnnotation(WriteBehind.class);
+        }
+        if (writeBehind != null)
+        {
+            writeBehindDelay = Math.max(0, writeBehind.maxDelayMs());
+            writeBehindMaxDirty = Math.max(writeBehindDelay, writeBehind.maxDirtyMs());
+        }
+    }
+
     @Override
     public <R> Task<R> run(final TaskFunction<LocalObjects.LocalObjectEntry<T>, R> function)
+    {
+        return run(function, false, Priority.Level.NORMAL);
+    }
+
+    @Override
+    public <R> Task<R> run(final TaskFunction<LocalObjects.LocalObjectEntry<T>, R> function, final boolean oneWay, final Priority.Level priority)
     {
         lastAccess = runtime.clock().millis();
-        return executionSerializer.offerJob(key, () -> doRun(function), 1000);
+        if (oneWay && dropOldest)
+        {
+            return mailbox.executeSerializedDropOldest(() -> doRun(function), mailboxCapacity, priority);
+        }
+        return mailbox.executeSerialized(() -> doRun(function), mailboxCapacity, priority);
+    }
+
+    /**
+     * Queues a job in this activation's queue, without binding the actor to the task context.
+     */
+    public <R> Task<R> executeSerialized(final Supplier<Task<R>> job, final int maxQueueSize, final Priority.Level priority)
+    {
+        return mailbox.executeSerialized(job, maxQueueSize, priority);
     }
 
     private <R> Task<R> doRun(final TaskFunction<LocalObjects.LocalObjectEntry<T>, R> function)
@@ -164,7 +234,8 @@ public class ActorEntry<T extends AbstractActor> extends ActorBaseEntry<T>
             {
                 return Task.done();
             }
-            return executionSerializer.offerJob(key, () -> doDeactivate(), 1000);
+            // never rejected, the messages still in the mailbox will find the actor deactivated
+            return mailbox.executeSerialized(() -> doDeactivate(), Integer.MAX_VALUE, Priority.Level.SYSTEM);
         }
         catch (Throwable ex)
         {
@@ -211,12 +282,75 @@ public class ActorEntry<T extends AbstractActor> extends ActorBaseEntry<T>
         {
             getLogger().error("Error on actor " + reference + " deactivation", ex);
         }
+        try
+        {
+            await(flushState());
+        }
+        catch (Throwable ex)
+        {
+            getLogger().error("Error writing the deferred state of " + reference + " on deactivation", ex);
+        }
         clearTimers();
         await(clearStreamSubscriptions());
         await(Task.allOf(runtime.getAllExtensions(LifetimeExtension.class).stream().map(v -> v.postDeactivation(actor))));
         return Task.done();
     }
 
+    public boolean isWriteBehind()
+    {
+        return writeBehindDelay >= 0;
+    }
+
+    public boolean isDirty()
+    {
+        return dirty;
+    }
+
+    /**
+     * Marks the state as dirty, from the actor context.
+     *
+     * @return true if the state was clean before.
+     */
+    boolean markDirty(final long now)
+    {
+        lastDirty = now;
+        if (dirty)
+        {
+            return false;
+        }
+        dirtySince = now;
+        dirty = true;
+        return true;
+    }
+
+    boolean isFlushDue(final long now)
+    {
+        return dirty && (now - lastDirty >= writeBehindDelay || now - dirtySince >= writeBehindMaxDirty);
+    }
+
+    /**
+     * Writes the deferred state changes, from the actor context.
+     */
+    Task<Void> flushState()
+    {
+        final T actor = this.actor;
+        if (!dirty || actor == null || actor.stateExtension == null)
+        {
+            return Task.done();
+        }
+        dirty = false;
+        final Task<Void> write = actor.stateExtension.writeState(reference, actor.state);
+        return write.whenComplete((r, e) -> {
+            if (e != null && !dirty)
+            {
+                // retried by the flusher, unless the activation is gone
+                final long now = runtime.clock().millis();
+                dirtySince = now;
+                lastDirty = now;
+                dirty = true;
+            }
+        });
+    }
 
     public Object getKey()
     {
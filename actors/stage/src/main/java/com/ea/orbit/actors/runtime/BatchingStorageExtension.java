@@ -0,0 +1,324 @@
+/*
+Copyright (C) 2015 Electronic Arts Inc.  All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions
+are met:
+
+1.  Redistributions of source code must retain the above copyright
+    notice, this list of conditions and the following disclaimer.
+2.  Redistributions in binary form must reproduce the above copyright
+    notice, this list of conditions and the following disclaimer in the
+    documentation and/or other materials provided with the distribution.
+3.  Neither the name of Electronic Arts, Inc. ("EA") nor the names of
+    its contributors may be used to endorse or promote products derived
+    from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY ELECTRONIC ARTS AND ITS CONTRIBUTORS "AS IS" AND ANY
+EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL ELECTRONIC ARTS OR ITS CONTRIBUTORS BE LIABLE FOR ANY
+DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package com.ea.orbit.actors.runtime;
+
+import com.ea.orbit.actors.extensions.StorageExtension;
+import com.ea.orbit.concurrent.Task;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Groups the concurrent state reads, usually from actor activations, into calls to {@link StorageExtension#readStates(List, List)}.
+ * <p>
+ * The reads are queued and a single drain task takes them from the queue, up to {@code maxBatchSize} at a time.
+ * There is no waiting window: a read that finds the queue empty is sent on its own as soon as the drain runs,
+ * the reads arriving meanwhile are sent together in the next batch.
+ * </p>
+ * <p>
+ * Each batch is sent from its own executor task, so an extension that blocks while reading doesn't
+ * serialize all the reads behind one thread. At most {@code maxConcurrentBatches} are in flight,
+ * the reads arriving while all of them are pending wait for the next batch.
+ * </p>
+ * <p>
+ * When a batch fails its reads are sent again one by one, so a record that can't be read
+ * only fails its own activation.
+ * </p>
+ * <p>
+ * All the other operations go straight to the wrapped extension.
+ * </p>
+ */
+public class BatchingStorageExtension implements StorageExtension
+{
+    public static final int DEFAULT_MAX_CONCURRENT_BATCHES = 4;
+
+    private final StorageExtension storage;
+    private final Executor executor;
+    private final int maxBatchSize;
+    private final int maxConcurrentBatches;
+
+    private final ConcurrentLinkedQueue<PendingRead> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean draining = new AtomicBoolean();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder batchedReads = new LongAdder();
+    private final LongAdder retriedBatches = new LongAdder();
+
+    private static class PendingRead
+    {
+        final RemoteReference<?> reference;
+        final Object state;
+        final Task<Boolean> result = new Task<>();
+
+        PendingRead(final RemoteReference<?> reference, final Object state)
+        {
+            this.reference = reference;
+            this.state = state;
+        }
+    }
+
+    public BatchingStorageExtension(final StorageExtension storage, final Executor executor, final int maxBatchSize)
+    {
+        this(storage, executor, maxBatchSize, DEFAULT_MAX_CONCURRENT_BATCHES);
+    }
+
+    /**
+     * @param maxConcurrentBatches how many batches may be pending in the wrapped extension at once.
+     */
+    public BatchingStorageExtension(final StorageExtension storage, final Executor executor, final int maxBatchSize, final int maxConcurrentBatches)
+    {
+        this.storage = storage;
+        this.executor = executor;
+        this.maxBatchSize = maxBatchSize;
+        this.maxConcurrentBatches = Math.max(1, maxConcurrentBatches);
+    }
+
+    public StorageExtension getStorage()
+    {
+        return storage;
+    }
+
+    @Override
+    public String getName()
+    {
+        return storage.getName();
+    }
+
+    @Override
+    public Task<Boolean> readState(final RemoteReference<?> reference, final Object state)
+    {
+        final PendingRead read = new PendingRead(reference, state);
+        pending.add(read);
+        scheduleDrain();
+        return read.result;
+    }
+
+    private void scheduleDrain()
+    {
+        if (draining.compareAndSet(false, true))
+        {
+            try
+            {
+                executor.execute(this::drain);
+            }
+            catch (RuntimeException ex)
+            {
+                draining.set(false);
+                // the executor is gone, fails everything still queued
+                for (PendingRead read; null != (read = pending.poll()); )
+                {
+                    read.result.completeExceptionally(ex);
+                }
+            }
+        }
+    }
+
+    private void drain()
+    {
+        try
+        {
+            List<PendingRead> batch;
+            while (inFlight.get() < maxConcurrentBatches && !(batch = poll()).isEmpty())
+            {
+                // sent from another task, a blocking extension must not hold the drain
+                final List<PendingRead> toSend = batch;
+                inFlight.incrementAndGet();
+                try
+                {
+                    executor.execute(() -> send(toSend));
+                }
+                catch (RuntimeException ex)
+                {
+                    inFlight.decrementAndGet();
+                    toSend.forEach(read -> read.result.completeExceptionally(ex));
+                }
+            }
+        }
+        finally
+        {
+            draining.set(false);
+            // a read might have been queued after the last poll, or a batch finished meanwhile
+            if (!pending.isEmpty() && inFlight.get() < maxConcurrentBatches)
+            {
+                scheduleDrain();
+            }
+        }
+    }
+
+    /**
+     * Frees the batch slot, the reads waiting for it go in the next batch.
+     */
+    private void batchDone()
+    {
+        inFlight.decrementAndGet();
+        if (!pending.isEmpty())
+        {
+            scheduleDrain();
+        }
+    }
+
+    private List<PendingRead> poll()
+    {
+        final List<PendingRead> batch = new ArrayList<>();
+        for (PendingRead read; batch.size() < maxBatchSize && null != (read = pending.poll()); )
+        {
+            batch.add(read);
+        }
+        return batch;
+    }
+
+    private void send(final List<PendingRead> batch)
+    {
+        batches.increment();
+        batchedReads.add(batch.size());
+        if (batch.size() == 1)
+        {
+            readOne(batch.get(0)).whenComplete((r, e) -> batchDone());
+            return;
+        }
+        final List<RemoteReference<?>> references = new ArrayList<>(batch.size());
+        final List<Object> states = new ArrayList<>(batch.size());
+        for (PendingRead read : batch)
+        {
+            references.add(read.reference);
+            states.add(read.state);
+        }
+        Task<List<Boolean>> found;
+        try
+        {
+            found = storage.readStates(references, states);
+        }
+        catch (Throwable ex)
+        {
+            found = Task.fromException(ex);
+        }
+        found.whenComplete((r, e) -> {
+            if (e != null)
+            {
+                // the error might come from a single record, only the reads that fail on their own fail
+                readOneByOne(batch);
+                return;
+            }
+            for (int i = 0; i < batch.size(); i++)
+            {
+                complete(batch.get(i), r.get(i), null);
+            }
+            batchDone();
+        });
+    }
+
+    private void readOneByOne(final List<PendingRead> batch)
+    {
+        retriedBatches.increment();
+        final List<Task<Boolean>> reads = new ArrayList<>(batch.size());
+        for (PendingRead read : batch)
+        {
+            reads.add(readOne(read));
+        }
+        Task.allOf(reads).whenComplete((r, e) -> batchDone());
+    }
+
+    private Task<Boolean> readOne(final PendingRead read)
+    {
+        Task<Boolean> found;
+        try
+        {
+            found = storage.readState(read.reference, read.state);
+        }
+        catch (Throwable ex)
+        {
+            found = Task.fromException(ex);
+        }
+        found.whenComplete((r, e) -> complete(read, r, e));
+        return found;
+    }
+
+    private static void complete(final PendingRead read, final Boolean found, final Throwable error)
+    {
+        if (error != null)
+        {
+            read.result.completeExceptionally(error);
+        }
+        else
+        {
+            read.result.complete(found);
+        }
+    }
+
+    @Override
+    public Task<List<Boolean>> readStates(final List<RemoteReference<?>> references, final List<Object> states)
+    {
+        return storage.readStates(references, states);
+    }
+
+    @Override
+    public Task<Void> writeState(final RemoteReference<?> reference, final Object state)
+    {
+        return storage.writeState(reference, state);
+    }
+
+    @Override
+    public Task<Void> writeStates(final Map<RemoteReference<?>, Object> states)
+    {
+        return storage.writeStates(states);
+    }
+
+    @Override
+    public Task<Void> clearState(final RemoteReference<?> reference, final Object state)
+    {
+        return storage.clearState(reference, state);
+    }
+
+    /**
+     * Number of calls made to the wrapped extension, the difference to {@link #getBatchedReads()} was saved by the batching.
+     */
+    public long getBatches()
+    {
+        return batches.sum();
+    }
+
+    public long getBatchedReads()
+    {
+        return batchedReads.sum();
+    }
+
+    /**
+     * Number of failed batches whose reads were sent again one by one.
+     */
+    public long getRetriedBatches()
+    {
+        return retriedBatches.sum();
+    }
+}
@@ -44,6 +44,7 @@ public class ClusterHandler extends HandlerAdapter
     private ClusterPeer clusterPeer;
     private String clusterName;
     private String nodeName;
+    private InboundDispatcher inboundDispatcher;
 
     public ClusterHandler(final ClusterPeer clusterPeer, final String clusterName, final String nodeName)
     {
@@ -67,7 +68,14 @@ public class ClusterHandler extends HandlerAdapter
     @Override
     public Task connect(final HandlerContext ctx, final Object param) throws Exception
     {
-        clusterPeer.registerMessageReceiver((n, m) -> ctx.fireRead(Pair.of(n, m)));
+        if (inboundDispatcher != null)
+        {
+            clusterPeer.registerMessageReceiver((n, m) -> inboundDispatcher.dispatch(n, () -> ctx.fireRead(Pair.of(n, m))));
+        }
+        else
+        {
+            clusterPeer.registerMessageReceiver((n, m) -> ctx.fireRead(Pair.of(n, m)));
+        }
         return clusterPeer.join(clusterName, nodeName).thenRun(() ->
                 {
                     try
@@ -82,6 +90,20 @@ public class ClusterHandler extends HandlerAdapter
         );
     }
 
+    /**
+     * Sets the dispatcher that processes the received messages out of the transport threads,
+     * if not set they are processed by the thread receiving them.
+     */
+    public void setInboundDispatcher(final InboundDispatcher inboundDispatcher)
+    {
+        this.inboundDispatcher = inboundDispatcher;
+    }
+
+    public InboundDispatcher getInboundDispatcher()
+    {
+        return inboundDispatcher;
+    }
+
     @Override
     public Task close(final HandlerContext ctx) throws Exception
     {
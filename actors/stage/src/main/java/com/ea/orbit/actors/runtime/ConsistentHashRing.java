@@ -0,0 +1,191 @@
+/*
+Copyright (C) 2015 Electronic Arts Inc.  All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions
+are met:
+
+1.  Redistributions of source code must retain the above copyright
+    notice, this list of conditions and the following disclaimer.
+2.  Redistributions in binary form must reproduce the above copyright
+    notice, this list of conditions and the following disclaimer in the
+    documentation and/or other materials provided with the distribution.
+3.  Neither the name of Electronic Arts, Inc. ("EA") nor the names of
+    its contributors may be used to endorse or promote products derived
+    from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY ELECTRONIC ARTS AND ITS CONTRIBUTORS "AS IS" AND ANY
+EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL ELECTRONIC ARTS OR ITS CONTRIBUTORS BE LIABLE FOR ANY
+DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package com.ea.orbit.actors.runtime;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Immutable consistent hash ring.
+ * <p>
+ * The virtual node positions are kept in a sorted {@code long[]} and looked up with a binary search,
+ * so finding the owner of a key doesn't allocate.
+ * Keys and virtual nodes are hashed with a 64 bit murmur hash of the string characters.
+ * </p>
+ *
+ * @param <T> the node type
+ */
+public class ConsistentHashRing<T>
+{
+    private static final long M = 0xc6a4a7935bd1e995L;
+    private static final int R = 47;
+    private static final long SEED = 0x9747b28cL;
+
+    private final long[] hashes;
+    private final Object[] nodes;
+
+    /**
+     * Creates a ring placing {@code virtualNodes} points for each node.
+     *
+     * @param nodes        the ring members
+     * @param nodeKey      function returning a stable string key for a node
+     * @param virtualNodes the number of points per node
+     */
+    public ConsistentHashRing(final Collection<T> nodes, final Function<T, String> nodeKey, final int virtualNodes)
+    {
+        final int perNode = Math.max(1, virtualNodes);
+        final int size = nodes.size() * perNode;
+        final long[] unsorted = new long[size];
+        final Object[] owners = new Object[size];
+        final Integer[] order = new Integer[size];
+        int p = 0;
+        for (final T node : nodes)
+        {
+            final String key = nodeKey.apply(node);
+            for (int i = 0; i < perNode; i++)
+            {
+                unsorted[p] = hash(key + ":" + i);
+                owners[p] = node;
+                order[p] = p;
+                p++;
+            }
+        }
+        Arrays.sort(order, (a, b) -> Long.compare(unsorted[a], unsorted[b]));
+        this.hashes = new long[size];
+        this.nodes = new Object[size];
+        for (int i = 0; i < size; i++)
+        {
+            this.hashes[i] = unsorted[order[i]];
+            this.nodes[i] = owners[order[i]];
+        }
+    }
+
+    /**
+     * @return the number of points in the ring.
+     */
+    public int size()
+    {
+        return hashes.length;
+    }
+
+    /**
+     * Finds the node owning a key.
+     *
+     * @param key the key
+     * @return the owner, or null if the ring is empty.
+     */
+    @SuppressWarnings("unchecked")
+    public T getOwner(final String key)
+    {
+        if (hashes.length == 0)
+        {
+            return null;
+        }
+        return (T) nodes[ceilingIndex(hash(key))];
+    }
+
+    /**
+     * Finds the first accepted node walking the ring from the key position.
+     * This way the keys owned by the rejected nodes are spread among the others.
+     *
+     * @param key    the key
+     * @param accept filter for the nodes allowed to own the key
+     * @return the owner, or null if no node in the ring is accepted.
+     */
+    @SuppressWarnings("unchecked")
+    public T getOwner(final String key, final Predicate<T> accept)
+    {
+        final int size = hashes.length;
+        if (size == 0)
+        {
+            return null;
+        }
+        final int start = ceilingIndex(hash(key));
+        for (int i = 0; i < size; i++)
+        {
+            final T node = (T) nodes[(start + i) % size];
+            if (accept.test(node))
+            {
+                return node;
+            }
+        }
+        return null;
+    }
+
+    private int ceilingIndex(final long keyHash)
+    {
+        int idx = Arrays.binarySearch(hashes, keyHash);
+        if (idx < 0)
+        {
+            idx = -idx - 1;
+        }
+        return idx < hashes.length ? idx : 0;
+    }
+
+    /**
+     * 64 bit MurmurHash (MurmurHash64A) of the string characters, four chars per block.
+     *
+     * @param key the string to be hashed
+     * @return the hash
+     */
+    public static long hash(final CharSequence key)
+    {
+        final int length = key.length();
+        long h = SEED ^ (length * 2L * M);
+        final int blockEnd = length & ~3;
+        for (int i = 0; i < blockEnd; i += 4)
+        {
+            long k = key.charAt(i)
+                    | ((long) key.charAt(i + 1) << 16)
+                    | ((long) key.charAt(i + 2) << 32)
+                    | ((long) key.charAt(i + 3) << 48);
+            k *= M;
+            k ^= k >>> R;
+            k *= M;
+            h ^= k;
+            h *= M;
+        }
+        if (blockEnd < length)
+        {
+            long k = 0;
+            for (int i = length - 1; i >= blockEnd; i--)
+            {
+                k = (k << 16) | key.charAt(i);
+            }
+            h ^= k;
+            h *= M;
+        }
+        h ^= h >>> R;
+        h *= M;
+        h ^= h >>> R;
+        return h;
+    }
+}
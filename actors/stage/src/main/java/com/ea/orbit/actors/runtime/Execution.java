@@ -30,17 +30,25 @@ package com.ea.orbit.actors.runtime;
 
 import com.ea.orbit.actors.Actor;
 import com.ea.orbit.actors.Stage;
+import com.ea.orbit.actors.annotation.Priority;
 import com.ea.orbit.actors.exceptions.ObserverNotFound;
 import com.ea.orbit.actors.net.HandlerContext;
 import com.ea.orbit.concurrent.Task;
 import com.ea.orbit.container.Startable;
+import com.ea.orbit.metrics.annotations.ExportMetric;
+import com.ea.orbit.util.AnnotationCache;
 
+import java.lang.reflect.Method;
 import java.util.Map;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
 
 public class Execution extends AbstractExecution implements Startable
 {
     private Stage runtime;
     private LocalObjects objects;
+    private final LongAdder expiredInvocations = new LongAdder();
+    private final AnnotationCache<Priority> priorityCache = new AnnotationCache<>(Priority.class);
 
     @Override
     public Task<Void> cleanup()
@@ -81,7 +89,7 @@ public class Execution extends AbstractExecution implements Startable
         if (entry != null)
         {
             final Task<Object> result = InternalUtils.safeInvoke(() -> entry.run(
-                    target -> performInvocation(ctx, invocation, entry, target)));
+                    target -> performInvocation(ctx, invocation, entry, target), invocation.isOneWay(), getPriority(invocation)));
             // this has to be done here because of exceptions that can occur before performInvocation is even called.
             if (invocation.getCompletion() != null)
             {
@@ -93,8 +101,13 @@ public class Execution extends AbstractExecution implements Startable
             if (toReference instanceof Actor)
             {
                 // on activate will handle the completion;
-                InternalUtils.safeInvoke(() -> executionSerializer.offerJob(toReference,
+                final Task<Void> result = InternalUtils.safeInvoke(() -> executionSerializer.offerJob(toReference,
                         () -> onActivate(ctx, invocation), maxQueueSize));
+                // the activation queue might be full
+                if (invocation.getCompletion() != null)
+                {
+                    InternalUtils.linkFuturesOnError(result, invocation.getCompletion());
+                }
             }
             else
             {
@@ -108,6 +121,27 @@ public class Execution extends AbstractExecution implements Startable
         }
     }
 
+    private Priority.Level getPriority(final Invocation invocation)
+    {
+        Method method = invocation.getMethod();
+        if (method == null)
+        {
+            // received from the network
+            try
+            {
+                method = DefaultDescriptorFactory.get().getInvoker(RemoteReference.getInterfaceId(invocation.getToReference()))
+                        .getMethod(invocation.getMethodId());
+            }
+            catch (Exception ex)
+            {
+                // the invocation itself will fail
+                return Priority.Level.NORMAL;
+            }
+        }
+        final Priority priority = priorityCache.getAnnotation(method);
+        return priority != null ? priority.value() : Priority.Level.NORMAL;
+    }
+
     private Task<Void> onActivate(HandlerContext ctx, final Invocation invocation)
     {
         // this must run serialized by the remote reference key.
@@ -119,7 +153,7 @@ public class Execution extends AbstractExecution implements Startable
         }
         // queues the invocation
         final LocalObjects.LocalObjectEntry<Object> theEntry = entry;
-        final Task result = entry.run(target -> performInvocation(ctx, invocation, theEntry, target));
+        final Task result = entry.run(target -> performInvocation(ctx, invocation, theEntry, target), invocation.isOneWay(), getPriority(invocation));
         if (invocation.getCompletion() != null)
         {
             InternalUtils.linkFuturesOnError(result, invocation.getCompletion());
@@ -156,6 +190,17 @@ public class Execution extends AbstractExecution implements Startable
                 ctx.write(invocation);
                 return Task.fromValue(null);
             }
+            if (invocation.getTimeoutAt() != 0 && invocation.getTimeoutAt() < runtime.clock().millis())
+            {
+                // the caller is no longer waiting for this response
+                expiredInvocations.increment();
+                final TimeoutException timeout = new TimeoutException("Invocation expired before execution: " + invocation);
+                if (invocation.getCompletion() != null)
+                {
+                    invocation.getCompletion().completeExceptionally(timeout);
+                }
+                return Task.fromException(timeout);
+            }
             final ObjectInvoker invoker = DefaultDescriptorFactory.get().getInvoker(target.getObject().getClass());
 
             final ActorTaskContext context = ActorTaskContext.current();
@@ -206,4 +251,13 @@ public class Execution extends AbstractExecution implements Startable
         this.objects = objects;
     }
 
+    /**
+     * @return the number of invocations dropped because their deadline had passed before they could be executed.
+     */
+    @ExportMetric(name = "expiredInvocations")
+    public long getExpiredInvocations()
+    {
+        return expiredInvocations.sum();
+    }
+
 }
@@ -30,6 +30,7 @@ THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
 package com.ea.orbit.actors.runtime;
 
 import com.ea.orbit.actors.Stage;
+import com.ea.orbit.actors.annotation.Placement;
 import com.ea.orbit.actors.annotation.PreferLocalPlacement;
 import com.ea.orbit.actors.annotation.StatelessWorker;
 import com.ea.orbit.actors.cluster.ClusterPeer;
@@ -37,18 +38,26 @@ import com.ea.orbit.actors.cluster.NodeAddress;
 import com.ea.orbit.actors.exceptions.ObserverNotFound;
 import com.ea.orbit.actors.extensions.PipelineExtension;
 import com.ea.orbit.actors.net.HandlerContext;
+import com.ea.orbit.actors.runtime.placement.ConsistentHashPlacement;
+import com.ea.orbit.actors.runtime.placement.LeastLoadedPlacement;
+import com.ea.orbit.actors.runtime.placement.PlacementStrategy;
+import com.ea.orbit.actors.runtime.placement.PowerOfTwoChoicesPlacement;
+import com.ea.orbit.actors.runtime.placement.RandomPlacement;
 import com.ea.orbit.annotation.Config;
 import com.ea.orbit.annotation.OnlyIfActivated;
 import com.ea.orbit.concurrent.Task;
 import com.ea.orbit.container.Startable;
 import com.ea.orbit.exception.UncheckedException;
+import com.ea.orbit.metrics.annotations.ExportMetric;
 import com.ea.orbit.util.AnnotationCache;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
 import java.lang.reflect.Method;
-import java.security.MessageDigest;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
@@ -57,10 +66,10 @@ import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Random;
-import java.util.TreeMap;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
 import static com.ea.orbit.async.Await.await;
@@ -73,11 +82,21 @@ public class Hosting implements NodeCapabilities, Startable, PipelineExtension
 
     private volatile Map<NodeAddress, NodeInfo> activeNodes = new HashMap<>(0);
     private volatile List<NodeInfo> serverNodes = new ArrayList<>(0);
+    // whether this node told the others that it is short of memory
+    private volatile boolean underPressure;
     private final Object serverNodesUpdateMutex = new Object();
     private Stage stage;
 
+    @Config("orbit.actors.maxLocalAddressCacheCount")
+    private int maxLocalAddressCacheCount = 10_000;
+
     // according to the micro benchmarks, a guava cache is much slower than using a ConcurrentHashMap here.
-    private Map<RemoteReference<?>, Task<NodeAddress>> localAddressCache = new ConcurrentHashMap<>();
+    // caffeine is close enough to a ConcurrentHashMap for reads, and its W-TinyLFU eviction
+    // is amortized O(1) and keeps the frequently used addresses instead of dropping a random half.
+    private final Cache<RemoteReference<?>, Task<NodeAddress>> localAddressCache = Caffeine.newBuilder()
+            .maximumSize(maxLocalAddressCacheCount)
+            .recordStats()
+            .build();
 
     // don't use RemoteReferences, better to restrict keys to a small set of classes.
     private volatile ConcurrentMap<RemoteKey, NodeAddress> distributedDirectory;
@@ -86,21 +105,40 @@ public class Hosting implements NodeCapabilities, Startable, PipelineExtension
     private long timeToWaitForServersMillis = 30000;
     private Random random = new Random();
 
-    private TreeMap<String, NodeInfo> consistentHashNodeTree = new TreeMap<>();
+    @Config("orbit.actors.consistentHashVirtualNodes")
+    private int consistentHashVirtualNodes = 10;
+
+    private volatile ConsistentHashRing<NodeInfo> consistentHashRing = new ConsistentHashRing<>(Collections.emptyList(), n -> "", 1);
     private AnnotationCache<OnlyIfActivated> onlyIfActivateCache = new AnnotationCache<>(OnlyIfActivated.class);
 
     private CompletableFuture<Void> hostingActive = new Task<>();
 
-    @Config("orbit.actors.maxLocalAddressCacheCount")
-    private int maxLocalAddressCacheCount = 10_000;
-
     private final Task<NodeAddress> nullAddress = Task.fromValue(null);
 
+    @Config("orbit.actors.defaultPlacementStrategy")
+    private String defaultPlacementStrategy = RandomPlacement.NAME;
+
+    private final Map<String, PlacementStrategy> placementStrategies = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Class<?>, PlacementStrategy> placementByInterface = new ConcurrentHashMap<>();
+
     public Hosting()
     {
         //
     }
 
+    public int getConsistentHashVirtualNodes()
+    {
+        return consistentHashVirtualNodes;
+    }
+
+    /**
+     * Number of points each node gets in the consistent hash ring, applied on the next cluster view change.
+     */
+    public void setConsistentHashVirtualNodes(final int consistentHashVirtualNodes)
+    {
+        this.consistentHashVirtualNodes = consistentHashVirtualNodes;
+    }
+
     public long getTimeToWaitForServersMillis()
     {
         return timeToWaitForServersMillis;
@@ -156,6 +194,9 @@ public class Hosting implements NodeCapabilities, Startable, PipelineExtension
         NodeCapabilities nodeCapabilities;
         boolean cannotHostActors;
         final ConcurrentHashMap<String, Integer> canActivate = new ConcurrentHashMap<>();
+        // last reported activation count plus the placements done since the report
+        final AtomicInteger activationCount = new AtomicInteger();
+        volatile boolean underPressure;
 
         public NodeInfo(final NodeAddress address)
         {
@@ -190,6 +231,119 @@ public class Hosting implements NodeCapabilities, Startable, PipelineExtension
         return Task.done();
     }
 
+    @Override
+    public Task<Void> nodeLoadChanged(final NodeAddress nodeAddress, final int activationCount)
+    {
+        final NodeInfo node = activeNodes.get(nodeAddress);
+        if (node != null)
+        {
+            node.activationCount.set(activationCount);
+        }
+        return Task.done();
+    }
+
+    @Override
+    public Task<Void> nodePressureChanged(final NodeAddress nodeAddress, final boolean underPressure)
+    {
+        final NodeInfo node = activeNodes.get(nodeAddress);
+        if (node != null)
+        {
+            node.underPressure = underPressure;
+        }
+        return Task.done();
+    }
+
+    /**
+     * Tells the other nodes whether this node is short of memory, so that they avoid placing new activations here.
+     * While under pressure the state is sent at every call, so that the nodes that joined since also learn it.
+     */
+    public void setUnderPressure(final boolean underPressure)
+    {
+        if (nodeType != NodeTypeEnum.SERVER || (this.underPressure == underPressure && !underPressure))
+        {
+            return;
+        }
+        this.underPressure = underPressure;
+        final NodeAddress localAddress = clusterPeer.localAddress();
+        for (NodeInfo info : activeNodes.values())
+        {
+            if (localAddress.equals(info.address))
+            {
+                info.underPressure = underPressure;
+            }
+            else if (info.nodeCapabilities != null)
+            {
+                info.nodeCapabilities.nodePressureChanged(localAddress, underPressure);
+            }
+        }
+    }
+
+    public boolean isUnderPressure()
+    {
+        return underPressure;
+    }
+
+    /**
+     * Whether a node said it is short of memory.
+     */
+    public boolean isUnderPressure(final NodeAddress nodeAddress)
+    {
+        final NodeInfo node = activeNodes.get(nodeAddress);
+        return node != null && node.underPressure;
+    }
+
+    /**
+     * Sends the local activation count to the other nodes, used by the load aware placement strategies.
+     */
+    public Task<?> notifyLoad()
+    {
+        if (nodeType != NodeTypeEnum.SERVER || stage.getState() != NodeState.RUNNING)
+        {
+            return Task.done();
+        }
+        final NodeAddress localAddress = clusterPeer.localAddress();
+        final int activationCount = stage.getLocalActorCount();
+        for (NodeInfo info : activeNodes.values())
+        {
+            if (localAddress.equals(info.address))
+            {
+                info.activationCount.set(activationCount);
+            }
+            else if (!info.cannotHostActors)
+            {
+                info.nodeCapabilities.nodeLoadChanged(localAddress, activationCount);
+            }
+        }
+        return Task.done();
+    }
+
+    /**
+     * Gets the estimated number of activations of a node:
+     * its last load report plus the activations placed there by this node since then.
+     *
+     * @return the estimated activation count, or zero if the node is unknown.
+     */
+    public int getActivationCount(final NodeAddress nodeAddress)
+    {
+        if (nodeType == NodeTypeEnum.SERVER && nodeAddress.equals(clusterPeer.localAddress()))
+        {
+            return stage.getLocalActorCount();
+        }
+        final NodeInfo node = activeNodes.get(nodeAddress);
+        return node != null ? node.activationCount.get() : 0;
+    }
+
+    public String getDefaultPlacementStrategy()
+    {
+        return defaultPlacementStrategy;
+    }
+
+    public void setDefaultPlacementStrategy(final String defaultPlacementStrategy)
+    {
+        this.defaultPlacementStrategy = defaultPlacementStrategy;
+        placementByInterface.clear();
+    }
+
     public Task<Void> moved(RemoteReference remoteReference, NodeAddress oldAddress, NodeAddress newAddress)
     {
         setCachedAddress(remoteReference, Task.fromValue(newAddress));
@@ -203,6 +357,15 @@ public class Hosting implements NodeCapabilities, Startable, PipelineExtension
 
     public Task<Void> start()
     {
+        // the configured value might have been injected after the cache was created.
+        setMaxLocalAddressCacheCount(maxLocalAddressCacheCount);
+        for (PlacementStrategy strategy : new PlacementStrategy[]{ new RandomPlacement(), new LeastLoadedPlacement(),
+                new PowerOfTwoChoicesPlacement(), new ConsistentHashPlacement() })
+        {
+            placementStrategies.put(strategy.getName(), strategy);
+        }
+        // installed extensions take precedence over the built-in strategies
+        stage.getAllExtensions(PlacementStrategy.class).forEach(s -> placementStrategies.put(s.getName(), s));
         clusterPeer.registerViewListener(v -> onClusterViewChanged(v));
         return Task.done();
     }
@@ -217,8 +380,6 @@ public class Hosting implements NodeCapabilities, Startable, PipelineExtension
         HashMap<NodeAddress, NodeInfo> newNodes = new HashMap<>(nodes.size());
         List<NodeInfo> justAddedNodes = new ArrayList<>(Math.max(1, nodes.size() - oldNodes.size()));
 
-        final TreeMap<String, NodeInfo> newHashes = new TreeMap<>();
-
         for (final NodeAddress a : nodes)
         {
             NodeInfo nodeInfo = oldNodes.remove(a);
@@ -231,13 +392,6 @@ public class Hosting implements NodeCapabilities, Startable, PipelineExtension
                 justAddedNodes.add(nodeInfo);
             }
             newNodes.put(a, nodeInfo);
-
-            final String addrHexStr = a.asUUID().toString();
-            for (int i = 0; i < 10; i++)
-            {
-                final String hash = getHash(addrHexStr + ":" + i);
-                newHashes.put(hash, nodeInfo);
-            }
         }
         // nodes that were removed
         for (NodeInfo oldNodeInfo : oldNodes.values())
@@ -245,7 +399,7 @@ public class Hosting implements NodeCapabilities, Startable, PipelineExtension
             oldNodeInfo.active = false;
         }
         activeNodes = newNodes;
-        consistentHashNodeTree = newHashes;
+        consistentHashRing = new ConsistentHashRing<>(newNodes.values(), n -> n.address.asUUID().toString(), consistentHashVirtualNodes);
         updateServerNodes();
         // TODO notify someone? (NodeInfo oldNodeInfo : oldNodes.values()) { ... }
     }
@@ -290,14 +444,14 @@ public class Hosting implements NodeCapabilities, Startable, PipelineExtension
 
     private Task<NodeAddress> getCachedAddressTask(final RemoteReference<?> actorReference)
     {
-        final Task<NodeAddress> addressTask = localAddressCache.get(actorReference);
+        final Task<NodeAddress> addressTask = localAddressCache.getIfPresent(actorReference);
         return (addressTask == null || addressTask.isCompletedExceptionally()) ? nullAddress : addressTask;
     }
 
     public void actorDeactivated(RemoteReference remoteReference)
     {
         // removing the reference form the cluster directory
-        localAddressCache.remove(remoteReference);
+        localAddressCache.invalidate(remoteReference);
         getDistributedDirectory().remove(createRemoteKey(remoteReference), clusterPeer.localAddress());
     }
 
@@ -317,8 +471,7 @@ public class Hosting implements NodeCapabilities, Startable, PipelineExtension
             }
             else
             {
-                final String interfaceClassName = interfaceClass.getName();
-                return selectNode(interfaceClassName, true);
+                return selectNode(actorReference, true);
             }
         }
 
@@ -369,8 +522,8 @@ public class Hosting implements NodeCapabilities, Startable, PipelineExtension
             // Do we have a target node yet?
             if (nodeAddress == null)
             {
-                // If not, select randomly
-                nodeAddress = await(selectNode(interfaceClass.getName(), true));
+                // If not, ask the placement strategy
+                nodeAddress = await(selectNode(actorReference, true));
             }
 
             // Push our selection to the distributed cache (if possible)
@@ -396,7 +549,6 @@ public class Hosting implements NodeCapabilities, Startable, PipelineExtension
 
     private void setCachedAddress(final RemoteReference<?> actorReference, final Task<NodeAddress> nodeAddress)
     {
-        cleanup();
         localAddressCache.put(actorReference, nodeAddress);
     }
 
@@ -421,8 +573,61 @@ public class Hosting implements NodeCapabilities, Startable, PipelineExtension
                 String.valueOf(actorReference.id));
     }
 
-    private Task<NodeAddress> selectNode(final String interfaceClassName, boolean allowToBlock)
+    private PlacementStrategy getPlacementStrategy(final Class<?> interfaceClass)
+    {
+        PlacementStrategy strategy = placementByInterface.get(interfaceClass);
+        if (strategy == null)
+        {
+            final Placement placement = interfaceClass.getAnnotation(Placement.class);
+            final String name = placement != null ? placement.value() : defaultPlacementStrategy;
+            strategy = placementStrategies.get(name);
+            if (strategy == null)
+            {
+                logger.warn("Placement strategy '{}' not found for {}, using random placement", name, interfaceClass.getName());
+                strategy = placementStrategies.get(RandomPlacement.NAME);
+            }
+            placementByInterface.put(interfaceClass, strategy);
+        }
+        return strategy;
+    }
+
+    private NodeInfo choosePlacement(final RemoteReference<?> actorReference, final List<NodeInfo> potentialNodes)
+    {
+        if (potentialNodes.size() > 1)
+        {
+            final PlacementStrategy strategy = getPlacementStrategy(actorReference._interfaceClass());
+            if (!(strategy instanceof RandomPlacement))
+            {
+                final List<NodeAddress> candidates = new ArrayList<>(potentialNodes.size());
+                for (NodeInfo n : potentialNodes)
+                {
+                    candidates.add(n.address);
+                }
+                final NodeAddress selected;
+                try
+                {
+                    selected = strategy.selectNode(this, actorReference, candidates);
+                }
+                catch (Exception ex)
+                {
+                    logger.error("Error selecting node with " + strategy.getName() + " placement for " + actorReference, ex);
+                    return potentialNodes.get(random.nextInt(potentialNodes.size()));
+                }
+                for (NodeInfo n : potentialNodes)
+                {
+                    if (n.address.equals(selected))
+                    {
+                        return n;
+                    }
+                }
+            }
+        }
+        return potentialNodes.get(random.nextInt(potentialNodes.size()));
+    }
+
+    private Task<NodeAddress> selectNode(final RemoteReference<?> actorReference, boolean allowToBlock)
     {
+        final String interfaceClassName = actorReference._interfaceClass().getName();
         List<NodeInfo> potentialNodes;
         long start = System.currentTimeMillis();
 
@@ -442,6 +647,13 @@ public class Hosting implements NodeCapabilities, Startable, PipelineExtension
                             && NodeCapabilities.actorSupported_no != n.canActivate.getOrDefault(interfaceClassName, NodeCapabilities.actorSupported_yes))
                     .collect(Collectors.toList());
 
+            final List<NodeInfo> relievedNodes = potentialNodes.stream().filter(n -> !n.underPressure).collect(Collectors.toList());
+            if (relievedNodes.size() > 0)
+            {
+                // the nodes short of memory are only used when there is no other choice
+                potentialNodes = relievedNodes;
+            }
+
             if (potentialNodes.size() == 0)
             {
                 if (!allowToBlock)
@@ -452,7 +664,7 @@ public class Hosting implements NodeCapabilities, Startable, PipelineExtension
             }
             else
             {
-                NodeInfo nodeInfo = potentialNodes.get(random.nextInt(potentialNodes.size()));
+                NodeInfo nodeInfo = choosePlacement(actorReference, potentialNodes);
 
                 Integer canActivate = nodeInfo.canActivate.get(interfaceClassName);
                 if (canActivate == null)
@@ -480,6 +692,8 @@ public class Hosting implements NodeCapabilities, Startable, PipelineExtension
                 }
                 if (canActivate == actorSupported_yes)
                 {
+                    // accounts for this placement until the next load report arrives
+                    nodeInfo.activationCount.incrementAndGet();
                     return Task.fromValue(nodeInfo.address);
                 }
             }
@@ -510,7 +724,7 @@ public class Hosting implements NodeCapabilities, Startable, PipelineExtension
         final String interfaceClassName = interfaceClass.getName();
 
         if (interfaceClass.isAnnotationPresent(PreferLocalPlacement.class) &&
-                nodeType == NodeTypeEnum.SERVER && stage.canActivateActor(interfaceClassName))
+                nodeType == NodeTypeEnum.SERVER && !underPressure && stage.canActivateActor(interfaceClassName))
         {
             final int percentile = interfaceClass.getAnnotation(PreferLocalPlacement.class).percentile();
             if (random.nextInt(100) < percentile)
@@ -522,21 +736,6 @@ public class Hosting implements NodeCapabilities, Startable, PipelineExtension
         return false;
     }
 
-    private String getHash(final String key)
-    {
-        try
-        {
-            MessageDigest md = MessageDigest.getInstance("SHA-256");
-            md.update(key.getBytes("UTF-8"));
-            byte[] digest = md.digest();
-            return String.format("%064x", new java.math.BigInteger(1, digest));
-        }
-        catch (Exception e)
-        {
-            throw new UncheckedException(e);
-        }
-    }
-
     /**
      * Uses consistent hashing to determine the "owner" of a certain key.
      *
@@ -545,14 +744,25 @@ public class Hosting implements NodeCapabilities, Startable, PipelineExtension
      */
     public NodeAddress getConsistentHashOwner(final String key)
     {
-        final String keyHash = getHash(key);
-        final TreeMap<String, NodeInfo> currentHashes = consistentHashNodeTree;
-        Map.Entry<String, NodeInfo> info = currentHashes.ceilingEntry(keyHash);
-        if (info == null)
-        {
-            info = currentHashes.firstEntry();
-        }
-        return info.getValue().address;
+        final NodeInfo info = consistentHashRing.getOwner(key);
+        return info != null ? info.address : null;
+    }
+
+    /**
+     * Uses consistent hashing to determine which of the candidate nodes "owns" a certain key.
+     * <p>
+     * Walks the ring from the key position until a candidate node is found.
+     * This way the keys owned by the nodes that are not candidates are spread among the others.
+     * </p>
+     *
+     * @param key        the key
+     * @param candidates the nodes allowed to own the key
+     * @return the NodeAddress of the candidate that owns the key, or null if none of the candidates is in the ring.
+     */
+    public NodeAddress getConsistentHashOwner(final String key, final Collection<NodeAddress> candidates)
+    {
+        final NodeInfo info = consistentHashRing.getOwner(key, n -> candidates.contains(n.address));
+        return info != null ? info.address : null;
     }
 
     /**
@@ -604,7 +814,19 @@ public class Hosting implements NodeCapabilities, Startable, PipelineExtension
             ctx.fireRead(invocation);
             return;
         }
-        final NodeAddress cachedAddress = await(getCachedAddressTask(toReference));
+        final Task<NodeAddress> cachedAddressTask = getCachedAddressTask(toReference);
+        if (!cachedAddressTask.isDone())
+        {
+            // the actor is being located, not blocking the inbound messages while waiting for it
+            cachedAddressTask.whenComplete((r, e) -> onInvocation(ctx, invocation, localAddress, e == null ? r : null));
+            return;
+        }
+        onInvocation(ctx, invocation, localAddress, cachedAddressTask.isCompletedExceptionally() ? null : cachedAddressTask.join());
+    }
+
+    private void onInvocation(final HandlerContext ctx, final Invocation invocation, final NodeAddress localAddress, final NodeAddress cachedAddress)
+    {
+        final RemoteReference toReference = invocation.getToReference();
         if (Objects.equals(cachedAddress, localAddress))
         {
             ctx.fireRead(invocation);
@@ -741,16 +963,9 @@ public class Hosting implements NodeCapabilities, Startable, PipelineExtension
 
     public void cleanup()
     {
-        if (localAddressCache.size() > maxLocalAddressCacheCount)
-        {
-            // randomly removes local references
-            List<RemoteReference<?>> remoteReferences = new ArrayList<>(localAddressCache.keySet());
-            Collections.shuffle(remoteReferences);
-            for (int c = remoteReferences.size() - maxLocalAddressCacheCount / 2; --c >= 0; )
-            {
-                localAddressCache.remove(remoteReferences.get(c));
-            }
-        }
+        // the eviction is done incrementally by the cache itself,
+        // this only forces any pending maintenance work.
+        localAddressCache.cleanUp();
     }
 
     public int getMaxLocalAddressCacheCount()
@@ -761,5 +976,30 @@ public class Hosting implements NodeCapabilities, Startable, PipelineExtension
     public void setMaxLocalAddressCacheCount(final int maxLocalAddressCacheCount)
     {
         this.maxLocalAddressCacheCount = maxLocalAddressCacheCount;
+        localAddressCache.policy().eviction().ifPresent(e -> e.setMaximum(maxLocalAddressCacheCount));
+    }
+
+    @ExportMetric(name = "localAddressCacheSize")
+    public long getLocalAddressCacheSize()
+    {
+        return localAddressCache.estimatedSize();
+    }
+
+    @ExportMetric(name = "localAddressCacheHits")
+    public long getLocalAddressCacheHits()
+    {
+        return localAddressCache.stats().hitCount();
+    }
+
+    @ExportMetric(name = "localAddressCacheMisses")
+    public long getLocalAddressCacheMisses()
+    {
+        return localAddressCache.stats().missCount();
+    }
+
+    @ExportMetric(name = "localAddressCacheEvictions")
+    public long getLocalAddressCacheEvictions()
+    {
+        return localAddressCache.stats().evictionCount();
     }
 }
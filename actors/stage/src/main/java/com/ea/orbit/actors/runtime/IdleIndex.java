@@ -0,0 +1,127 @@
+/*
+Copyright (C) 2015 Electronic Arts Inc.  All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions
+are met:
+
+1.  Redistributions of source code must retain the above copyright
+    notice, this list of conditions and the following disclaimer.
+2.  Redistributions in binary form must reproduce the above copyright
+    notice, this list of conditions and the following disclaimer in the
+    documentation and/or other materials provided with the distribution.
+3.  Neither the name of Electronic Arts, Inc. ("EA") nor the names of
+    its contributors may be used to endorse or promote products derived
+    from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY ELECTRONIC ARTS AND ITS CONTRIBUTORS "AS IS" AND ANY
+EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL ELECTRONIC ARTS OR ITS CONTRIBUTORS BE LIABLE FOR ANY
+DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package com.ea.orbit.actors.runtime;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Coarse index of the local activations by the time they might become idle.
+ * <p>
+ * The activations are kept in time buckets by their expiration as known when they were indexed.
+ * The accesses don't move them, they only update the activation last access time.
+ * Instead, the cleanup takes the buckets that have expired, deactivates the activations that are really idle,
+ * and indexes the others again with their new expiration.
+ * Each activation is visited at most once per time to live, and the activations that are in use are never visited
+ * more often than that, regardless of how many local activations exist.
+ * </p>
+ * <p>
+ * Activations that never expire are not indexed.
+ * Activations deactivated by other means (stateless workers, the memory governor, explicit deactivation)
+ * are not removed, they stay referenced until their bucket is due and the cleanup drops them.
+ * </p>
+ */
+public class IdleIndex
+{
+    private final long bucketMillis;
+    // guarded by this
+    private final TreeMap<Long, List<ActorBaseEntry<?>>> buckets = new TreeMap<>();
+    private int size;
+
+    /**
+     * @param bucketMillis the bucket width, the activations are returned up to this late.
+     */
+    public IdleIndex(final long bucketMillis)
+    {
+        if (bucketMillis <= 0)
+        {
+            throw new IllegalArgumentException("Invalid bucket width: " + bucketMillis);
+        }
+        this.bucketMillis = bucketMillis;
+    }
+
+    /**
+     * Indexes an activation.
+     *
+     * @param expiresAt the time when the activation becomes idle if it is not used again,
+     *                  {@code Long.MAX_VALUE} if never.
+     */
+    public void add(final ActorBaseEntry<?> entry, final long expiresAt)
+    {
+        if (expiresAt == Long.MAX_VALUE)
+        {
+            // infinite time to live, there is nothing to check
+            return;
+        }
+        // the bucket is due after its end, so entries are never returned before their expiration
+        final long bucket = expiresAt / bucketMillis + 1;
+        synchronized (this)
+        {
+            buckets.computeIfAbsent(bucket, b -> new ArrayList<>()).add(entry);
+            size++;
+        }
+    }
+
+    /**
+     * Removes and returns the activations whose indexed expiration is before {@code now}.
+     * Those may have been used since and must be checked again.
+     */
+    public List<ActorBaseEntry<?>> pollExpired(final long now)
+    {
+        final List<ActorBaseEntry<?>> expired = new ArrayList<>();
+        synchronized (this)
+        {
+            Map.Entry<Long, List<ActorBaseEntry<?>>> first;
+            final long due = now / bucketMillis;
+            // comparing bucket numbers, multiplying them back might overflow
+            while ((first = buckets.firstEntry()) != null && first.getKey() <= due)
+            {
+                buckets.pollFirstEntry();
+                expired.addAll(first.getValue());
+            }
+            size -= expired.size();
+        }
+        return expired;
+    }
+
+    public synchronized int size()
+    {
+        return size;
+    }
+
+    /**
+     * The time when an activation becomes idle, saturated to {@code Long.MAX_VALUE}.
+     */
+    public static long expiresAt(final long lastAccess, final long ttlMillis)
+    {
+        return ttlMillis > Long.MAX_VALUE - lastAccess ? Long.MAX_VALUE : lastAccess + ttlMillis;
+    }
+}
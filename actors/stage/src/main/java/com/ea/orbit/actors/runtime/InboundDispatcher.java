@@ -0,0 +1,305 @@
+/*
+Copyright (C) 2015 Electronic Arts Inc.  All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions
+are met:
+
+1.  Redistributions of source code must retain the above copyright
+    notice, this list of conditions and the following disclaimer.
+2.  Redistributions in binary form must reproduce the above copyright
+    notice, this list of conditions and the following disclaimer in the
+    documentation and/or other materials provided with the distribution.
+3.  Neither the name of Electronic Arts, Inc. ("EA") nor the names of
+    its contributors may be used to endorse or promote products derived
+    from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY ELECTRONIC ARTS AND ITS CONTRIBUTORS "AS IS" AND ANY
+EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL ELECTRONIC ARTS OR ITS CONTRIBUTORS BE LIABLE FOR ANY
+DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package com.ea.orbit.actors.runtime;
+
+import com.ea.orbit.exception.UncheckedException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Moves the processing of the received network frames out of the transport threads.
+ * <p>
+ * The frames are queued per sender and each sender queue is drained by at most one executor thread at a time,
+ * so the frames from the same sender are processed in the order they were received.
+ * </p>
+ * <p>
+ * The number of queued frames is bounded, once the limit is reached the transport thread
+ * delivering the frame waits for room, pushing back on the transport.
+ * </p>
+ * <p>
+ * The queues of the senders that stopped sending, like nodes that left the cluster,
+ * are dropped by {@link #pruneIdleLanes()}.
+ * </p>
+ */
+public class InboundDispatcher
+{
+    private static final Logger logger = LoggerFactory.getLogger(InboundDispatcher.class);
+
+    private final Executor executor;
+    private final int maxQueueSize;
+    private final int maxBatchSize;
+    private final Semaphore permits;
+    private final ConcurrentMap<Object, Lane> lanes = new ConcurrentHashMap<>();
+
+    private final LongAdder dispatched = new LongAdder();
+    private final LongAdder backpressureWaits = new LongAdder();
+    private final LongAdder backpressureWaitNanos = new LongAdder();
+
+    /**
+     * The queue of one sender.
+     */
+    private class Lane implements Runnable
+    {
+        private final Queue<Runnable> queue = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        // guarded by this, a retired lane is no longer in the map and takes no tasks
+        private boolean retired;
+        private volatile boolean used;
+
+        /**
+         * @return false if the lane was retired, the task must go to a new one.
+         */
+        boolean add(final Runnable task)
+        {
+            synchronized (this)
+            {
+                if (retired)
+                {
+                    return false;
+                }
+                queue.add(task);
+                used = true;
+            }
+            schedule();
+            return true;
+        }
+
+        /**
+         * Retires the lane if it had no tasks since the last call.
+         */
+        synchronized boolean retireIfIdle()
+        {
+            if (used)
+            {
+                used = false;
+                return false;
+            }
+            if (!queue.isEmpty() || scheduled.get())
+            {
+                return false;
+            }
+            retired = true;
+            return true;
+        }
+
+        private void schedule()
+        {
+            if (scheduled.compareAndSet(false, true))
+            {
+                try
+                {
+                    executor.execute(this);
+                }
+                catch (RejectedExecutionException ex)
+                {
+                    // shutting down, draining in the caller thread
+                    run();
+                }
+            }
+        }
+
+        @Override
+        public void run()
+        {
+            // bounded, to let the other senders have their turn
+            for (int i = 0; i < maxBatchSize; i++)
+            {
+                final Runnable task = queue.poll();
+                if (task == null)
+                {
+                    break;
+                }
+                permits.release();
+                dispatched.increment();
+                try
+                {
+                    task.run();
+                }
+                catch (Throwable ex)
+                {
+                    logger.error("Error processing inbound message", ex);
+                }
+            }
+            scheduled.set(false);
+            if (!queue.isEmpty())
+            {
+                schedule();
+            }
+        }
+    }
+
+    public InboundDispatcher(final Executor executor, final int maxQueueSize)
+    {
+        this(executor, maxQueueSize, 64);
+    }
+
+    public InboundDispatcher(final Executor executor, final int maxQueueSize, final int maxBatchSize)
+    {
+        this.executor = executor;
+        this.maxQueueSize = maxQueueSize;
+        this.maxBatchSize = maxBatchSize;
+        this.permits = new Semaphore(maxQueueSize);
+    }
+
+    /**
+     * Queues a task, the tasks of the same sender run in order.
+     * Blocks the calling thread while the queue is full.
+     *
+     * @param sender the sender of the frame, the ordering key
+     * @param task   the frame processing
+     */
+    public void dispatch(final Object sender, final Runnable task)
+    {
+        if (!permits.tryAcquire())
+        {
+            backpressureWaits.increment();
+            final long start = System.nanoTime();
+            try
+            {
+                // managed, to let a fork join pool compensate if the caller is one of its threads
+                ForkJoinPool.managedBlock(new ForkJoinPool.ManagedBlocker()
+                {
+                    boolean acquired;
+
+                    @Override
+                    public boolean block() throws InterruptedException
+                    {
+                        permits.acquire();
+                        acquired = true;
+                        return true;
+                    }
+
+                    @Override
+                    public boolean isReleasable()
+                    {
+                        return acquired || (acquired = permits.tryAcquire());
+                    }
+                });
+            }
+            catch (InterruptedException ex)
+            {
+                Thread.currentThread().interrupt();
+                throw new UncheckedException(ex);
+            }
+            finally
+            {
+                backpressureWaitNanos.add(System.nanoTime() - start);
+            }
+        }
+        while (true)
+        {
+            Lane lane = lanes.get(sender);
+            if (lane == null)
+            {
+                lane = new Lane();
+                final Lane previous = lanes.putIfAbsent(sender, lane);
+                if (previous != null)
+                {
+                    lane = previous;
+                }
+            }
+            if (lane.add(task))
+            {
+                return;
+            }
+            // retired meanwhile, its tasks are all done, so the order is kept with a new lane
+            lanes.remove(sender, lane);
+        }
+    }
+
+    /**
+     * Drops the queues of the senders that sent nothing since the previous call.
+     */
+    public void pruneIdleLanes()
+    {
+        lanes.forEach((sender, lane) -> {
+            if (lane.retireIfIdle())
+            {
+                lanes.remove(sender, lane);
+            }
+        });
+    }
+
+    /**
+     * @return the number of senders with a queue.
+     */
+    public int getLaneCount()
+    {
+        return lanes.size();
+    }
+
+    /**
+     * @return the number of frames waiting to be processed.
+     */
+    public int getQueueSize()
+    {
+        return maxQueueSize - permits.availablePermits();
+    }
+
+    public int getMaxQueueSize()
+    {
+        return maxQueueSize;
+    }
+
+    /**
+     * @return the number of frames taken from the queue.
+     */
+    public long getDispatchedCount()
+    {
+        return dispatched.sum();
+    }
+
+    /**
+     * @return how many times the transport had to wait because the queue was full.
+     */
+    public long getBackpressureWaits()
+    {
+        return backpressureWaits.sum();
+    }
+
+    /**
+     * @return the total time the transport spent waiting because the queue was full.
+     */
+    public long getBackpressureWaitMillis()
+    {
+        return backpressureWaitNanos.sum() / 1_000_000;
+    }
+}
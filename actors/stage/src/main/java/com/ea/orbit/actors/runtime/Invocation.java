@@ -41,12 +41,14 @@ public class Invocation
     private boolean oneWay;
     private int methodId;
     private Object[] params;
+    private SerializedPayload serializedParams;
     private Map<?, ?> headers;
     private Task completion;
     private NodeAddress toNode;
     private NodeAddress fromNode;
     private int hops;
     private int messageId;
+    private long timeoutAt;
 
     public Invocation()
     {
@@ -83,11 +85,34 @@ public class Invocation
         return methodId;
     }
 
+    /**
+     * Gets the invocation parameters, decoding them if they are still serialized.
+     */
     public Object[] getParams()
     {
+        final SerializedPayload serialized = serializedParams;
+        if (serialized != null)
+        {
+            params = (Object[]) serialized.decode();
+            serializedParams = null;
+        }
         return params;
     }
 
+    /**
+     * @return the parameters still in their serialized form, or null if they were already decoded.
+     */
+    public SerializedPayload getSerializedParams()
+    {
+        return serializedParams;
+    }
+
+    public void setSerializedParams(final SerializedPayload serializedParams)
+    {
+        this.serializedParams = serializedParams;
+        this.params = null;
+    }
+
     public Task getCompletion()
     {
         return completion;
@@ -166,6 +191,19 @@ public class Invocation
         this.fromNode = fromNode;
     }
 
+    /**
+     * @return the time, in the local clock millis, after which the caller no longer waits for the response. Zero if not set.
+     */
+    public long getTimeoutAt()
+    {
+        return timeoutAt;
+    }
+
+    public void setTimeoutAt(final long timeoutAt)
+    {
+        this.timeoutAt = timeoutAt;
+    }
+
     public Invocation withToReference(final RemoteReference toReference)
     {
         this.toReference = toReference;
@@ -193,6 +231,7 @@ public class Invocation
     public Invocation withParams(final Object[] params)
     {
         this.params = params;
+        this.serializedParams = null;
         return this;
     }
 
@@ -33,6 +33,8 @@ public class JavaMessageSerializer implements MessageSerializer
         message.setMethodId(in.readInt());
         message.setObjectId(in.readObject());
         message.setHeaders((Map) in.readObject());
+        final long timeToLive = in.readLong();
+        message.setTimeoutAt(timeToLive != 0 ? runtime.clock().millis() + timeToLive : 0);
         message.setFromNode((NodeAddress) in.readObject());
         message.setPayload(in.readObject());
         return message;
@@ -58,6 +60,8 @@ public class JavaMessageSerializer implements MessageSerializer
         out.writeInt(message.getMethodId());
         out.writeObject(message.getObjectId());
         out.writeObject(message.getHeaders());
+        // the deadline is sent as the remaining time, the node clocks are not synchronized
+        out.writeLong(message.getTimeoutAt() != 0 ? Math.max(1, message.getTimeoutAt() - runtime.clock().millis()) : 0);
         out.writeObject(message.getFromNode());
         out.writeObject(message.getPayload());
     }
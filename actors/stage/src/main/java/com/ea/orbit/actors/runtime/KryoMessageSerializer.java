@@ -0,0 +1,583 @@
+/*
+Copyright (C) 2015 Electronic Arts Inc.  All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions
+are met:
+
+1.  Redistributions of source code must retain the above copyright
+    notice, this list of conditions and the following disclaimer.
+2.  Redistributions in binary form must reproduce the above copyright
+    notice, this list of conditions and the following disclaimer in the
+    documentation and/or other materials provided with the distribution.
+3.  Neither the name of Electronic Arts, Inc. ("EA") nor the names of
+    its contributors may be used to endorse or promote products derived
+    from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY ELECTRONIC ARTS AND ITS CONTRIBUTORS "AS IS" AND ANY
+EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL ELECTRONIC ARTS OR ITS CONTRIBUTORS BE LIABLE FOR ANY
+DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package com.ea.orbit.actors.runtime;
+
+import com.ea.orbit.actors.ActorObserver;
+import com.ea.orbit.actors.cluster.NodeAddress;
+import com.ea.orbit.actors.cluster.NodeAddressImpl;
+import com.ea.orbit.actors.extensions.MessageSerializer;
+
+import org.objenesis.strategy.StdInstantiatorStrategy;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.Registration;
+import com.esotericsoftware.kryo.Serializer;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import com.esotericsoftware.kryo.serializers.JavaSerializer;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Compact binary message serializer based on kryo.
+ * <p>
+ * Message headers are written as varints, actor and observer references as
+ * (interfaceId, id, address) using the {@link DefaultClassDictionary} class ids,
+ * and method arguments whose declared type is final are written without type information.
+ * The argument codecs are cached per interfaceId and methodId.
+ * </p>
+ * <p>
+ * The payload is written as a self contained, length prefixed, section.
+ * The request arguments are only decoded when first used, by the object execution,
+ * and requests forwarded to another node are written back without being decoded.
+ * </p>
+ * All the nodes in the cluster, and the clients, must use the same message serializer.
+ */
+public class KryoMessageSerializer implements MessageSerializer
+{
+    private static final int PAYLOAD_OBJECT = 0;
+    private static final int PAYLOAD_ARGUMENTS = 1;
+
+    private static final int BUFFER_SIZE = 4096;
+    private static final int MAX_RETAINED_BUFFER_SIZE = 1024 * 1024;
+    private static final Object RUNTIME_KEY = BasicRuntime.class;
+
+    private static final ClassValue<Boolean> IS_REFERENCE = new ClassValue<Boolean>()
+    {
+        @Override
+        protected Boolean computeValue(final Class<?> type)
+        {
+            return RemoteReference.class.isAssignableFrom(type)
+                    || AbstractActor.class.isAssignableFrom(type)
+                    || ActorObserver.class.isAssignableFrom(type);
+        }
+    };
+
+    /**
+     * Collections that kryo can't rebuild (no usable add or put) are read back as plain collections.
+     * Same as the KryoCloner, this turns unmodifiable collections into modifiable ones.
+     */
+    private static final ClassValue<Class<?>> COLLECTION_REPLACEMENT = new ClassValue<Class<?>>()
+    {
+        @Override
+        protected Class<?> computeValue(final Class<?> type)
+        {
+            final String name = type.getName();
+            if (!name.startsWith("java.util.Collections$")
+                    && !name.startsWith("java.util.Arrays$")
+                    && !name.startsWith("com.google.common.collect."))
+            {
+                return null;
+            }
+            if (List.class.isAssignableFrom(type))
+            {
+                return ArrayList.class;
+            }
+            if (Set.class.isAssignableFrom(type))
+            {
+                return LinkedHashSet.class;
+            }
+            if (Map.class.isAssignableFrom(type))
+            {
+                return LinkedHashMap.class;
+            }
+            if (Collection.class.isAssignableFrom(type))
+            {
+                return ArrayList.class;
+            }
+            return null;
+        }
+    };
+
+    private static final byte[] EMPTY = new byte[0];
+
+    private static final MethodCodec NO_CODEC = new MethodCodec(null);
+
+    private final ConcurrentMap<Long, MethodCodec> methodCodecs = new ConcurrentHashMap<>();
+    private final ArrayBlockingQueue<Codec> pool = new ArrayBlockingQueue<>(Runtime.getRuntime().availableProcessors() * 4);
+
+    /**
+     * Marker type, all the references are written with its registration.
+     */
+    private static final class Reference
+    {
+    }
+
+    /**
+     * Kryo instance and its io buffers, these are not thread safe, they are pooled.
+     */
+    private static class Codec
+    {
+        final Kryo kryo;
+        final Output output = new Output(BUFFER_SIZE);
+        final Input input = new Input(BUFFER_SIZE);
+        // not bound to streams, used for the payload sections
+        Output payloadOutput = new Output(BUFFER_SIZE, -1);
+        final Input payloadInput = new Input();
+
+        Codec(final Kryo kryo)
+        {
+            this.kryo = kryo;
+        }
+    }
+
+    private static class MethodCodec
+    {
+        // the final parameter types, or null for the parameters that require type information
+        final Class<?>[] exactTypes;
+
+        MethodCodec(final Class<?>[] exactTypes)
+        {
+            this.exactTypes = exactTypes;
+        }
+
+        void write(final Kryo kryo, final Output output, final Object[] args)
+        {
+            for (int i = 0; i < args.length; i++)
+            {
+                if (exactTypes[i] != null)
+                {
+                    kryo.writeObjectOrNull(output, args[i], exactTypes[i]);
+                }
+                else
+                {
+                    kryo.writeClassAndObject(output, args[i]);
+                }
+            }
+        }
+
+        Object[] read(final Kryo kryo, final Input input)
+        {
+            final Object[] args = new Object[exactTypes.length];
+            for (int i = 0; i < args.length; i++)
+            {
+                args[i] = exactTypes[i] != null
+                        ? kryo.readObjectOrNull(input, exactTypes[i])
+                        : kryo.readClassAndObject(input);
+            }
+            return args;
+        }
+    }
+
+    private static class ReferenceSerializer extends Serializer<Object>
+    {
+        @SuppressWarnings({ "unchecked", "rawtypes" })
+        @Override
+        public void write(final Kryo kryo, final Output output, final Object object)
+        {
+            RemoteReference<?> reference = object instanceof com.ea.orbit.actors.Actor
+                    ? RemoteReference.from((com.ea.orbit.actors.Actor) object)
+                    : object instanceof RemoteReference ? (RemoteReference<?>) object : null;
+            if (reference == null)
+            {
+                final BasicRuntime runtime = (BasicRuntime) kryo.getContext().get(RUNTIME_KEY);
+                reference = (RemoteReference<?>) runtime.registerObserver(null, (ActorObserver) object);
+            }
+            output.writeVarInt(DefaultClassDictionary.get().getClassId(RemoteReference.getInterfaceClass(reference)), false);
+            kryo.writeClassAndObject(output, RemoteReference.getId(reference));
+            writeAddress(output, RemoteReference.getAddress(reference));
+        }
+
+        @SuppressWarnings({ "unchecked", "rawtypes" })
+        @Override
+        public Object read(final Kryo kryo, final Input input, final Class<Object> type)
+        {
+            final Class interfaceClass = DefaultClassDictionary.get().getClassById(input.readVarInt(false));
+            final Object id = kryo.readClassAndObject(input);
+            final NodeAddress address = readAddress(input);
+            final BasicRuntime runtime = (BasicRuntime) kryo.getContext().get(RUNTIME_KEY);
+            if (address != null)
+            {
+                return runtime.getRemoteObserverReference(address, interfaceClass, id);
+            }
+            return runtime.getReference(interfaceClass, id);
+        }
+    }
+
+    private Codec createCodec()
+    {
+        final Kryo kryo = new Kryo()
+        {
+            private Registration referenceRegistration;
+
+            @Override
+            public Registration getRegistration(final Class type)
+            {
+                if (type != null && IS_REFERENCE.get(type))
+                {
+                    if (referenceRegistration == null)
+                    {
+                        referenceRegistration = super.getRegistration(Reference.class);
+                    }
+                    return referenceRegistration;
+                }
+                final Class<?> replacement = type != null ? COLLECTION_REPLACEMENT.get(type) : null;
+                return super.getRegistration(replacement != null ? replacement : type);
+            }
+        };
+        kryo.setAutoReset(false);
+        kryo.setInstantiatorStrategy(new Kryo.DefaultInstantiatorStrategy(new StdInstantiatorStrategy()));
+        kryo.addDefaultSerializer(Throwable.class, JavaSerializer.class);
+        // the registration order defines the ids, it must not change
+        int id = 50;
+        kryo.register(Reference.class, new ReferenceSerializer(), id++);
+        kryo.register(Object[].class, id++);
+        kryo.register(ArrayList.class, id++);
+        kryo.register(HashMap.class, id++);
+        kryo.register(LinkedHashMap.class, id++);
+        kryo.register(HashSet.class, id++);
+        kryo.register(LinkedHashSet.class, id++);
+        kryo.register(UUID.class, new Serializer<UUID>()
+        {
+            @Override
+            public void write(final Kryo kryo, final Output output, final UUID uuid)
+            {
+                output.writeLong(uuid.getMostSignificantBits());
+                output.writeLong(uuid.getLeastSignificantBits());
+            }
+
+            @Override
+            public UUID read(final Kryo kryo, final Input input, final Class<UUID> type)
+            {
+                return new UUID(input.readLong(), input.readLong());
+            }
+        }, id++);
+        return new Codec(kryo);
+    }
+
+    private Codec acquire(final BasicRuntime runtime)
+    {
+        Codec codec = pool.poll();
+        if (codec == null)
+        {
+            codec = createCodec();
+        }
+        codec.kryo.getContext().put(RUNTIME_KEY, runtime);
+        return codec;
+    }
+
+    private void release(final Codec codec)
+    {
+        codec.kryo.reset();
+        codec.kryo.getContext().remove(RUNTIME_KEY);
+        codec.output.setOutputStream(null);
+        codec.input.setInputStream(null);
+        codec.payloadInput.setBuffer(EMPTY);
+        if (codec.payloadOutput.getBuffer().length > MAX_RETAINED_BUFFER_SIZE)
+        {
+            codec.payloadOutput = new Output(BUFFER_SIZE, -1);
+        }
+        pool.offer(codec);
+    }
+
+    @Override
+    public void serializeMessage(final BasicRuntime runtime, final OutputStream out, final Message message) throws Exception
+    {
+        final Codec codec = acquire(runtime);
+        try
+        {
+            final Kryo kryo = codec.kryo;
+            final Output output = codec.output;
+            output.setOutputStream(out);
+
+            output.writeByte(message.getMessageType());
+            output.writeVarInt(message.getMessageId(), false);
+            output.writeVarInt(message.getInterfaceId(), false);
+            output.writeVarInt(message.getMethodId(), false);
+            writeAddress(output, message.getReferenceAddress());
+            kryo.writeClassAndObject(output, message.getObjectId());
+            writeHeaders(kryo, output, message.getHeaders());
+            writeAddress(output, message.getFromNode());
+            // the deadline is sent as the remaining time, the node clocks are not synchronized
+            output.writeVarLong(message.getTimeoutAt() != 0 ? Math.max(1, message.getTimeoutAt() - runtime.clock().millis()) : 0, true);
+
+            final SerializedPayload serializedPayload = message.getSerializedPayload();
+            if (serializedPayload instanceof KryoPayload)
+            {
+                // never decoded, the received bytes are sent as they are
+                final byte[] bytes = ((KryoPayload) serializedPayload).bytes;
+                output.writeVarInt(bytes.length, true);
+                output.writeBytes(bytes);
+            }
+            else
+            {
+                kryo.reset();
+                final Output payloadOutput = codec.payloadOutput;
+                payloadOutput.clear();
+                writePayload(kryo, payloadOutput, message.getInterfaceId(), message.getMethodId(), message.getPayload());
+                output.writeVarInt(payloadOutput.position(), true);
+                output.writeBytes(payloadOutput.getBuffer(), 0, payloadOutput.position());
+            }
+            output.flush();
+        }
+        finally
+        {
+            release(codec);
+        }
+    }
+
+    @Override
+    public Message deserializeMessage(final BasicRuntime runtime, final InputStream in) throws Exception
+    {
+        final Codec codec = acquire(runtime);
+        try
+        {
+            final Kryo kryo = codec.kryo;
+            final Input input = codec.input;
+            input.setInputStream(in);
+
+            final Message message = new Message();
+            message.setMessageType(input.readByte());
+            message.setMessageId(input.readVarInt(false));
+            message.setInterfaceId(input.readVarInt(false));
+            message.setMethodId(input.readVarInt(false));
+            message.setReferenceAddress(readAddress(input));
+            message.setObjectId(kryo.readClassAndObject(input));
+            message.setHeaders(readHeaders(kryo, input));
+            message.setFromNode(readAddress(input));
+            final long timeToLive = input.readVarLong(true);
+            message.setTimeoutAt(timeToLive != 0 ? runtime.clock().millis() + timeToLive : 0);
+
+            final byte[] bytes = input.readBytes(input.readVarInt(true));
+            final KryoPayload payload = new KryoPayload(runtime, message.getInterfaceId(), message.getMethodId(), bytes);
+            switch (message.getMessageType())
+            {
+                case MessageDefinitions.REQUEST_MESSAGE:
+                case MessageDefinitions.ONE_WAY_MESSAGE:
+                    message.setSerializedPayload(payload);
+                    break;
+                default:
+                    message.setPayload(payload.decode(codec));
+            }
+            return message;
+        }
+        finally
+        {
+            release(codec);
+        }
+    }
+
+    /**
+     * Payload section as received, decoded on demand.
+     */
+    private class KryoPayload extends SerializedPayload
+    {
+        final BasicRuntime runtime;
+        final int interfaceId;
+        final int methodId;
+        final byte[] bytes;
+
+        KryoPayload(final BasicRuntime runtime, final int interfaceId, final int methodId, final byte[] bytes)
+        {
+            this.runtime = runtime;
+            this.interfaceId = interfaceId;
+            this.methodId = methodId;
+            this.bytes = bytes;
+        }
+
+        @Override
+        public Object decode()
+        {
+            final Codec codec = acquire(runtime);
+            try
+            {
+                return decode(codec);
+            }
+            finally
+            {
+                release(codec);
+            }
+        }
+
+        Object decode(final Codec codec)
+        {
+            final Kryo kryo = codec.kryo;
+            final Input input = codec.payloadInput;
+            kryo.reset();
+            input.setBuffer(bytes);
+            if (input.readByte() == PAYLOAD_ARGUMENTS)
+            {
+                final MethodCodec methodCodec = getMethodCodec(interfaceId, methodId);
+                if (methodCodec == NO_CODEC)
+                {
+                    throw new IllegalArgumentException("Method not found, interfaceId: " + interfaceId + " methodId: " + methodId);
+                }
+                return methodCodec.read(kryo, input);
+            }
+            return kryo.readClassAndObject(input);
+        }
+    }
+
+    private void writePayload(final Kryo kryo, final Output output, final int interfaceId, final int methodId, final Object payload)
+    {
+        final MethodCodec methodCodec = payload instanceof Object[] ? getMethodCodec(interfaceId, methodId) : NO_CODEC;
+        if (methodCodec != NO_CODEC && methodCodec.exactTypes.length == ((Object[]) payload).length)
+        {
+            output.writeByte(PAYLOAD_ARGUMENTS);
+            methodCodec.write(kryo, output, (Object[]) payload);
+        }
+        else
+        {
+            output.writeByte(PAYLOAD_OBJECT);
+            kryo.writeClassAndObject(output, payload);
+        }
+    }
+
+    private MethodCodec getMethodCodec(final int interfaceId, final int methodId)
+    {
+        if (interfaceId == 0)
+        {
+            return NO_CODEC;
+        }
+        final long key = ((long) interfaceId << 32) | (methodId & 0xffffffffL);
+        MethodCodec methodCodec = methodCodecs.get(key);
+        if (methodCodec == null)
+        {
+            methodCodec = createMethodCodec(interfaceId, methodId);
+            methodCodecs.putIfAbsent(key, methodCodec);
+        }
+        return methodCodec;
+    }
+
+    private MethodCodec createMethodCodec(final int interfaceId, final int methodId)
+    {
+        final Method method;
+        try
+        {
+            method = DefaultDescriptorFactory.get().getInvoker(interfaceId).getMethod(methodId);
+        }
+        catch (Exception | Error ex)
+        {
+            // not an actor or observer method, the arguments will be written with their types
+            return NO_CODEC;
+        }
+        final Class<?>[] parameterTypes = method.getParameterTypes();
+        final Class<?>[] exactTypes = new Class<?>[parameterTypes.length];
+        for (int i = 0; i < parameterTypes.length; i++)
+        {
+            final Class<?> type = parameterTypes[i];
+            if (type.isPrimitive())
+            {
+                exactTypes[i] = boxed(type);
+            }
+            else if (Modifier.isFinal(type.getModifiers()) && !type.isArray() && !IS_REFERENCE.get(type))
+            {
+                exactTypes[i] = type;
+            }
+        }
+        return new MethodCodec(exactTypes);
+    }
+
+    private static Class<?> boxed(final Class<?> type)
+    {
+        if (type == int.class) return Integer.class;
+        if (type == long.class) return Long.class;
+        if (type == boolean.class) return Boolean.class;
+        if (type == double.class) return Double.class;
+        if (type == float.class) return Float.class;
+        if (type == short.class) return Short.class;
+        if (type == byte.class) return Byte.class;
+        if (type == char.class) return Character.class;
+        return null;
+    }
+
+    private static void writeHeaders(final Kryo kryo, final Output output, final Map<Object, Object> headers)
+    {
+        if (headers == null)
+        {
+            output.writeVarInt(0, true);
+            return;
+        }
+        output.writeVarInt(headers.size() + 1, true);
+        for (final Map.Entry<Object, Object> e : headers.entrySet())
+        {
+            kryo.writeClassAndObject(output, e.getKey());
+            kryo.writeClassAndObject(output, e.getValue());
+        }
+    }
+
+    private static Map<Object, Object> readHeaders(final Kryo kryo, final Input input)
+    {
+        final int size = input.readVarInt(true) - 1;
+        if (size < 0)
+        {
+            return null;
+        }
+        if (size == 0)
+        {
+            return Collections.emptyMap();
+        }
+        final Map<Object, Object> headers = new LinkedHashMap<>(size * 2);
+        for (int i = 0; i < size; i++)
+        {
+            final Object key = kryo.readClassAndObject(input);
+            headers.put(key, kryo.readClassAndObject(input));
+        }
+        return headers;
+    }
+
+    private static void writeAddress(final Output output, final NodeAddress address)
+    {
+        if (address == null)
+        {
+            output.writeBoolean(false);
+            return;
+        }
+        final UUID uuid = address.asUUID();
+        output.writeBoolean(true);
+        output.writeLong(uuid.getMostSignificantBits());
+        output.writeLong(uuid.getLeastSignificantBits());
+    }
+
+    private static NodeAddress readAddress(final Input input)
+    {
+        if (!input.readBoolean())
+        {
+            return null;
+        }
+        return new NodeAddressImpl(new UUID(input.readLong(), input.readLong()));
+    }
+}
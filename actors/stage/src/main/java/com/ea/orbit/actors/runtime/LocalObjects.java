@@ -30,6 +30,7 @@ package com.ea.orbit.actors.runtime;
 
 import com.ea.orbit.actors.Actor;
 import com.ea.orbit.actors.ActorObserver;
+import com.ea.orbit.actors.annotation.Priority;
 import com.ea.orbit.actors.cluster.NodeAddress;
 import com.ea.orbit.actors.transactions.IdUtils;
 import com.ea.orbit.concurrent.Task;
@@ -102,6 +103,15 @@ public class LocalObjects
         T getObject();
 
         <R> Task<R> run(TaskFunction<LocalObjectEntry<T>, R> function);
+
+        /**
+         * Same as {@link #run(TaskFunction)}, queueing the function in the mailbox lane of the given priority.
+         * One way messages might be discarded by the mailbox overflow policy.
+         */
+        default <R> Task<R> run(TaskFunction<LocalObjectEntry<T>, R> function, boolean oneWay, Priority.Level priority)
+        {
+            return run(function);
+        }
     }
 
     public static class NormalObjectEntry<T> implements LocalObjectEntry<T>
@@ -273,6 +283,7 @@ public class LocalObjects
             }
             return (RemoteReference) previous.getRemoteReference();
         }
+        onEntryRegistered(reference, localObject);
         return reference;
     }
 
@@ -312,6 +323,13 @@ public class LocalObjects
         return localObject;
     }
 
+    /**
+     * Called after a new entry is added to the local objects.
+     */
+    protected void onEntryRegistered(final Object key, final LocalObjectEntry entry)
+    {
+    }
+
     private void onRemoval(final RemovalNotification<Object, LocalObjectEntry> objectObjectRemovalNotification)
     {
         if (objectObjectRemovalNotification.getCause() == RemovalCause.COLLECTED)
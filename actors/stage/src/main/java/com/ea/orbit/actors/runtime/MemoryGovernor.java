@@ -0,0 +1,312 @@
+/*
+Copyright (C) 2015 Electronic Arts Inc.  All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions
+are met:
+
+1.  Redistributions of source code must retain the above copyright
+    notice, this list of conditions and the following disclaimer.
+2.  Redistributions in binary form must reproduce the above copyright
+    notice, this list of conditions and the following disclaimer in the
+    documentation and/or other materials provided with the distribution.
+3.  Neither the name of Electronic Arts, Inc. ("EA") nor the names of
+    its contributors may be used to endorse or promote products derived
+    from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY ELECTRONIC ARTS AND ITS CONTRIBUTORS "AS IS" AND ANY
+EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL ELECTRONIC ARTS OR ITS CONTRIBUTORS BE LIABLE FOR ANY
+DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package com.ea.orbit.actors.runtime;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.ListenerNotFoundException;
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryNotificationInfo;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Decides when a node is short of memory and how many activations it should shed.
+ * <p>
+ * The heap usage is measured after the garbage collections, through the collection usage of the heap memory pools,
+ * so that uncollected garbage doesn't count. A collection usage threshold is set at the high watermark
+ * to react to the pressure as soon as it's noticed by the collector, without waiting for the next periodic check.
+ * </p>
+ * <p>
+ * The thresholds belong to the jvm wide memory pools. While several governors are started, like the stages
+ * sharing a jvm, the lowest of their high watermarks is used; the thresholds found before the first start
+ * are restored when the last one stops.
+ * </p>
+ * <p>
+ * The node is under pressure when the heap usage reaches the high watermark or the activation count exceeds
+ * {@link #getMaxActivations()}, and stays under pressure until the heap usage is below the low watermark
+ * and the activation count is within the limit.
+ * </p>
+ */
+public class MemoryGovernor
+{
+    private static final Logger logger = LoggerFactory.getLogger(MemoryGovernor.class);
+
+    // guarded by the class lock
+    private static final List<MemoryGovernor> started = new ArrayList<>();
+    private static final Map<String, Long> previousThresholds = new HashMap<>();
+
+    private double highWatermark = 0.85;
+    private double lowWatermark = 0.70;
+    private int maxActivations;
+    private double shedFraction = 0.1;
+
+    private final List<MemoryPoolMXBean> pools;
+    private volatile boolean underPressure;
+    private volatile double heapUsage;
+    // garbage collections counted at the last heap driven shedding
+    private long collectionsAtLastShed = -1;
+    private NotificationListener listener;
+
+    public MemoryGovernor()
+    {
+        pools = ManagementFactory.getMemoryPoolMXBeans().stream()
+                .filter(p -> p.getType() == MemoryType.HEAP && p.isCollectionUsageThresholdSupported() && p.getUsage().getMax() > 0)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Sets the collection usage thresholds.
+     *
+     * @param onThresholdExceeded called, from a jvm thread, when a garbage collection ends above the high watermark.
+     */
+    public synchronized void start(final Runnable onThresholdExceeded)
+    {
+        synchronized (MemoryGovernor.class)
+        {
+            if (started.isEmpty())
+            {
+                for (MemoryPoolMXBean pool : pools)
+                {
+                    previousThresholds.put(pool.getName(), pool.getCollectionUsageThreshold());
+                }
+            }
+            if (!started.contains(this))
+            {
+                started.add(this);
+            }
+            updateThresholds();
+        }
+        listener = (Notification notification, Object handback) -> {
+            if (MemoryNotificationInfo.MEMORY_COLLECTION_THRESHOLD_EXCEEDED.equals(notification.getType()))
+            {
+                onThresholdExceeded.run();
+            }
+        };
+        ((NotificationEmitter) ManagementFactory.getMemoryMXBean()).addNotificationListener(listener, null, null);
+    }
+
+    public synchronized void stop()
+    {
+        if (listener != null)
+        {
+            try
+            {
+                ((NotificationEmitter) ManagementFactory.getMemoryMXBean()).removeNotificationListener(listener);
+            }
+            catch (ListenerNotFoundException ex)
+            {
+                // already removed
+            }
+            listener = null;
+        }
+        synchronized (MemoryGovernor.class)
+        {
+            if (started.remove(this))
+            {
+                updateThresholds();
+                if (started.isEmpty())
+                {
+                    previousThresholds.clear();
+                }
+            }
+        }
+    }
+
+    /**
+     * Sets the thresholds for the started governors, or restores the previous ones if there is none.
+     * Must be called holding the class lock.
+     */
+    private void updateThresholds()
+    {
+        final double watermark = started.stream().mapToDouble(g -> g.highWatermark).min().orElse(-1);
+        for (MemoryPoolMXBean pool : pools)
+        {
+            try
+            {
+                pool.setCollectionUsageThreshold(watermark >= 0
+                        ? (long) (pool.getUsage().getMax() * watermark)
+                        : previousThresholds.getOrDefault(pool.getName(), 0L));
+            }
+            catch (RuntimeException ex)
+            {
+                logger.warn("Can't set the collection usage threshold of " + pool.getName(), ex);
+            }
+        }
+    }
+
+    /**
+     * Updates the pressure state.
+     *
+     * @param activationCount the current number of local activations.
+     * @return the number of least recently used activations that should be deactivated now.
+     */
+    public synchronized int evaluate(final int activationCount)
+    {
+        final double usage = measureHeapUsage();
+        heapUsage = usage;
+        final boolean tooManyActivations = maxActivations > 0 && activationCount > maxActivations;
+        final boolean heapHigh = usage >= highWatermark;
+        if (heapHigh || tooManyActivations)
+        {
+            if (!underPressure)
+            {
+                logger.warn("Under memory pressure, heap usage: {}%, activations: {}", (int) (usage * 100), activationCount);
+            }
+            underPressure = true;
+        }
+        else if (usage < lowWatermark && (maxActivations <= 0 || activationCount <= maxActivations))
+        {
+            if (underPressure)
+            {
+                logger.info("Memory pressure relieved, heap usage: {}%, activations: {}", (int) (usage * 100), activationCount);
+            }
+            underPressure = false;
+        }
+
+        int toShed = 0;
+        if (tooManyActivations)
+        {
+            // making room for a while, instead of shedding one activation for each new one
+            toShed = activationCount - (int) (maxActivations * (1 - shedFraction));
+        }
+        if (heapHigh)
+        {
+            // the usage after collection only changes after another collection
+            final long collections = collectionCount();
+            if (collections != collectionsAtLastShed)
+            {
+                collectionsAtLastShed = collections;
+                toShed = Math.max(toShed, (int) Math.ceil(activationCount * shedFraction));
+            }
+        }
+        return toShed;
+    }
+
+    private double measureHeapUsage()
+    {
+        double usage = 0;
+        for (MemoryPoolMXBean pool : pools)
+        {
+            final MemoryUsage collectionUsage = pool.getCollectionUsage();
+            if (collectionUsage != null && collectionUsage.getMax() > 0)
+            {
+                usage = Math.max(usage, (double) collectionUsage.getUsed() / collectionUsage.getMax());
+            }
+        }
+        if (pools.isEmpty())
+        {
+            final MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+            usage = heap.getMax() > 0 ? (double) heap.getUsed() / heap.getMax() : 0;
+        }
+        return usage;
+    }
+
+    private static long collectionCount()
+    {
+        long count = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans())
+        {
+            count += Math.max(0, gc.getCollectionCount());
+        }
+        return count;
+    }
+
+    public boolean isUnderPressure()
+    {
+        return underPressure;
+    }
+
+    /**
+     * The heap usage after the last garbage collection, as a fraction of the maximum, measured by the last evaluation.
+     */
+    public double getHeapUsage()
+    {
+        return heapUsage;
+    }
+
+    public double getHighWatermark()
+    {
+        return highWatermark;
+    }
+
+    public void setHighWatermark(final double highWatermark)
+    {
+        this.highWatermark = highWatermark;
+    }
+
+    public double getLowWatermark()
+    {
+        return lowWatermark;
+    }
+
+    public void setLowWatermark(final double lowWatermark)
+    {
+        this.lowWatermark = lowWatermark;
+    }
+
+    /**
+     * The maximum number of local activations, zero for no limit.
+     */
+    public int getMaxActivations()
+    {
+        return maxActivations;
+    }
+
+    public void setMaxActivations(final int maxActivations)
+    {
+        this.maxActivations = maxActivations;
+    }
+
+    public double getShedFraction()
+    {
+        return shedFraction;
+    }
+
+    /**
+     * The fraction of the activations deactivated at each check while the heap is above the high watermark.
+     * Above the activation limit, the activations are shed down to this fraction below the limit.
+     */
+    public void setShedFraction(final double shedFraction)
+    {
+        this.shedFraction = shedFraction;
+    }
+}
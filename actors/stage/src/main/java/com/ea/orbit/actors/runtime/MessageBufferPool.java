@@ -0,0 +1,120 @@
+/*
+Copyright (C) 2015 Electronic Arts Inc.  All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions
+are met:
+
+1.  Redistributions of source code must retain the above copyright
+    notice, this list of conditions and the following disclaimer.
+2.  Redistributions in binary form must reproduce the above copyright
+    notice, this list of conditions and the following disclaimer in the
+    documentation and/or other materials provided with the distribution.
+3.  Neither the name of Electronic Arts, Inc. ("EA") nor the names of
+    its contributors may be used to endorse or promote products derived
+    from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY ELECTRONIC ARTS AND ITS CONTRIBUTORS "AS IS" AND ANY
+EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL ELECTRONIC ARTS OR ITS CONTRIBUTORS BE LIABLE FOR ANY
+DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package com.ea.orbit.actors.runtime;
+
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Pool of reusable buffers for message serialization.
+ * <p>
+ * The network layers keep the byte arrays they are given (jgroups holds them for retransmission),
+ * so the pooled buffers are only used as serialization scratch space
+ * and released as soon as the message bytes are copied out of them.
+ * This replaces the per message {@code ByteArrayOutputStream} with its growth copies
+ * with a single exact size copy.
+ * </p>
+ */
+public class MessageBufferPool
+{
+    private final ArrayBlockingQueue<Buffer> pool;
+    private final int initialCapacity;
+    private final int maxRetainedCapacity;
+
+    private final LongAdder acquired = new LongAdder();
+    private final LongAdder created = new LongAdder();
+
+    public static class Buffer extends ByteArrayOutputStream
+    {
+        Buffer(final int capacity)
+        {
+            super(capacity);
+        }
+
+        int capacity()
+        {
+            return buf.length;
+        }
+    }
+
+    public MessageBufferPool()
+    {
+        this(Runtime.getRuntime().availableProcessors() * 4, 1024, 1024 * 1024);
+    }
+
+    /**
+     * @param maxPooled           maximum number of idle buffers kept
+     * @param initialCapacity     initial size of new buffers
+     * @param maxRetainedCapacity buffers that grew beyond this are discarded instead of returned to the pool
+     */
+    public MessageBufferPool(final int maxPooled, final int initialCapacity, final int maxRetainedCapacity)
+    {
+        this.pool = new ArrayBlockingQueue<>(Math.max(1, maxPooled));
+        this.initialCapacity = initialCapacity;
+        this.maxRetainedCapacity = maxRetainedCapacity;
+    }
+
+    public Buffer acquire()
+    {
+        acquired.increment();
+        final Buffer buffer = pool.poll();
+        if (buffer != null)
+        {
+            return buffer;
+        }
+        created.increment();
+        return new Buffer(initialCapacity);
+    }
+
+    public void release(final Buffer buffer)
+    {
+        if (buffer.capacity() > maxRetainedCapacity)
+        {
+            return;
+        }
+        buffer.reset();
+        pool.offer(buffer);
+    }
+
+    public int getPooledCount()
+    {
+        return pool.size();
+    }
+
+    public long getAcquiredCount()
+    {
+        return acquired.sum();
+    }
+
+    public long getCreatedCount()
+    {
+        return created.sum();
+    }
+}
@@ -29,22 +29,31 @@ THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
 package com.ea.orbit.actors.runtime;
 
 import com.ea.orbit.actors.Addressable;
+import com.ea.orbit.actors.annotation.Timeout;
 import com.ea.orbit.actors.cluster.NodeAddress;
+import com.ea.orbit.actors.exceptions.MailboxFullException;
 import com.ea.orbit.actors.net.HandlerAdapter;
 import com.ea.orbit.actors.net.HandlerContext;
 import com.ea.orbit.annotation.Config;
 import com.ea.orbit.concurrent.Task;
 import com.ea.orbit.container.Startable;
 import com.ea.orbit.exception.UncheckedException;
+import com.ea.orbit.metrics.annotations.ExportMetric;
+import com.ea.orbit.util.AnnotationCache;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.LinkedHashMap;
+import java.lang.reflect.Method;
 import java.util.Map;
+import java.util.Set;
 import java.util.Timer;
 import java.util.TimerTask;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.LongAdder;
@@ -60,13 +69,27 @@ public class Messaging extends HandlerAdapter implements Startable
     private final AtomicInteger messageIdGen = new AtomicInteger();
     private final Map<Integer, PendingResponse> pendingResponseMap = new ConcurrentHashMap<>();
 
+    /**
+     * Pending responses bucketed by timeout tick, the cleanup only visits the expired buckets.
+     */
+    private final ConcurrentSkipListMap<Long, Set<PendingResponse>> timeoutBuckets = new ConcurrentSkipListMap<>();
+
+    private final AnnotationCache<Timeout> timeoutCache = new AnnotationCache<>(Timeout.class);
+
     @Config("orbit.actors.defaultMessageTimeout")
     private long responseTimeoutMillis = 30_000;
 
+    @Config("orbit.actors.messageTimeoutTickMillis")
+    private long timeoutTickMillis = 100;
+
     private final LongAdder networkMessagesReceived = new LongAdder();
     private final LongAdder responsesReceived = new LongAdder();
+    private final LongAdder busyResponsesSent = new LongAdder();
+    private final LongAdder busyResponsesReceived = new LongAdder();
     private static Timer timer = new Timer("Messaging timer");
+    private TimerTask cleanupTask;
     private BasicRuntime runtime;
+    private Executor executor;
 
 
     /**
@@ -80,6 +103,7 @@ public class Messaging extends HandlerAdapter implements Startable
     {
         final int messageId;
         final long timeoutAt;
+        volatile Set<PendingResponse> timeoutBucket;
 
         public PendingResponse(final int messageId, final long timeoutAt)
         {
@@ -125,21 +149,53 @@ public class Messaging extends HandlerAdapter implements Startable
         this.responseTimeoutMillis = responseTimeoutMillis;
     }
 
+    public long getTimeoutTickMillis()
+    {
+        return timeoutTickMillis;
+    }
+
+    /**
+     * Sets the granularity of the response timeouts, the timeout check runs once per tick.
+     */
+    public void setTimeoutTickMillis(final long timeoutTickMillis)
+    {
+        this.timeoutTickMillis = timeoutTickMillis;
+    }
+
+    /**
+     * Sets the executor used to complete the timed out responses, they are completed by the timer thread if not set.
+     */
+    public void setExecutor(final Executor executor)
+    {
+        this.executor = executor;
+    }
+
     @Override
     public Task connect(final HandlerContext ctx, final Object param) throws Exception
     {
-        timer.schedule(new TimerTask()
+        cleanupTask = new TimerTask()
         {
             @Override
             public void run()
             {
                 cleanup();
             }
-        }, 1000, 1000);
+        };
+        timer.schedule(cleanupTask, timeoutTickMillis, timeoutTickMillis);
 
         return super.connect(ctx, param);
     }
 
+    @Override
+    public Task close(final HandlerContext ctx) throws Exception
+    {
+        if (cleanupTask != null)
+        {
+            cleanupTask.cancel();
+        }
+        return super.close(ctx);
+    }
+
     @Override
     public void onRead(HandlerContext ctx, Object message)
     {
@@ -175,14 +231,20 @@ public class Messaging extends HandlerAdapter implements Startable
                             message.getReferenceAddress(),
                             classById, message.getObjectId());
 
-                    // todo: defer the payload decoding, in the object thread, preferably
                     int methodId = message.getMethodId();
+                    final SerializedPayload serializedParams = message.getSerializedPayload();
                     final Invocation invocation = new Invocation(reference, null,
                             messageType == MessageDefinitions.ONE_WAY_MESSAGE,
-                            methodId, (Object[]) message.getPayload(), null);
+                            methodId, serializedParams == null ? (Object[]) message.getPayload() : null, null);
+                    if (serializedParams != null)
+                    {
+                        // the parameters are decoded by the object execution, or never if the invocation is forwarded
+                        invocation.setSerializedParams(serializedParams);
+                    }
                     invocation.setHeaders(message.getHeaders());
                     invocation.setFromNode(message.getFromNode());
                     invocation.setMessageId(messageId);
+                    invocation.setTimeoutAt(message.getTimeoutAt());
 
                     if (!invocation.isOneWay())
                     {
@@ -196,9 +258,14 @@ public class Messaging extends HandlerAdapter implements Startable
                 case MessageDefinitions.RESPONSE_OK:
                 case MessageDefinitions.RESPONSE_ERROR:
                 case MessageDefinitions.RESPONSE_PROTOCOL_ERROR:
+                case MessageDefinitions.RESPONSE_BUSY:
                 {
                     responsesReceived.increment();
                     PendingResponse pendingResponse = pendingResponseMap.remove(messageId);
+                    if (pendingResponse != null)
+                    {
+                        cancelTimeout(pendingResponse);
+                    }
                     if (logger.isTraceEnabled())
                     {
                         logger.trace("response received: " + message.getMessageId() + " " + message.getPayload() + "\r\n" + pendingResponse);
@@ -235,6 +302,10 @@ public class Messaging extends HandlerAdapter implements Startable
                                 pendingResponse.internalCompleteExceptionally(
                                         new UncheckedException("Error invoking but no exception provided. Response: " + res));
                                 return;
+                            case MessageDefinitions.RESPONSE_BUSY:
+                                busyResponsesReceived.increment();
+                                pendingResponse.internalCompleteExceptionally(new MailboxFullException("Target actor is busy"));
+                                return;
                             default:
                                 // should be impossible
                                 logger.error("Illegal protocol, invalid response message type: {}",
@@ -267,12 +338,27 @@ public class Messaging extends HandlerAdapter implements Startable
         {
             sendResponse(ctx, from, MessageDefinitions.RESPONSE_OK, messageId, classId, methodId, result);
         }
+        else if (unwrap(exception) instanceof MailboxFullException)
+        {
+            // a short answer, the exception is recreated on the caller side
+            busyResponsesSent.increment();
+            sendResponse(ctx, from, MessageDefinitions.RESPONSE_BUSY, messageId, classId, methodId, null);
+        }
         else
         {
             sendResponse(ctx, from, MessageDefinitions.RESPONSE_ERROR, messageId, classId, methodId, exception);
         }
     }
 
+    private static Throwable unwrap(Throwable exception)
+    {
+        while (exception instanceof CompletionException && exception.getCause() != null)
+        {
+            exception = exception.getCause();
+        }
+        return exception;
+    }
+
     private Task sendResponse(HandlerContext ctx, NodeAddress to, int messageType, int messageId, final int classId, final int methodId, Object res)
     {
         return ctx.write(new Message()
@@ -304,23 +390,35 @@ public class Messaging extends HandlerAdapter implements Startable
         RemoteReference<?> actorReference = (RemoteReference<?>) toReference;
         NodeAddress toNode = invocation.getToNode();
 
-        final LinkedHashMap<Object, Object> actualHeaders = new LinkedHashMap<>();
-        if (invocation.getHeaders() != null)
-        {
-            actualHeaders.putAll(invocation.getHeaders());
-        }
+        // the invocation owns its headers and doesn't change them after this point, no need for a copy
+        @SuppressWarnings("unchecked")
+        final Map<Object, Object> headers = (Map<Object, Object>) invocation.getHeaders();
 
         final Message message = new Message()
                 .withMessageType(invocation.isOneWay() ? MessageDefinitions.ONE_WAY_MESSAGE : MessageDefinitions.REQUEST_MESSAGE)
                 .withToNode(toNode)
                 .withFromNode(invocation.getFromNode())
-                .withHeaders(actualHeaders)
+                .withHeaders(headers)
                 .withInterfaceId(actorReference._interfaceId())
                 .withMessageId(invocation.getMessageId())
                 .withMethodId(invocation.getMethodId())
                 .withObjectId(RemoteReference.getId(actorReference))
-                .withPayload(invocation.getParams())
                 .withReferenceAddress(invocation.getToReference().address);
+        if (!invocation.isOneWay())
+        {
+            // forwarded invocations keep the original deadline
+            message.setTimeoutAt(invocation.getTimeoutAt() != 0 ? invocation.getTimeoutAt()
+                    : runtime.clock().millis() + getResponseTimeoutMillis(invocation.getMethod()));
+        }
+        if (invocation.getSerializedParams() != null)
+        {
+            // forwarded invocation, sending the parameters as they were received
+            message.setSerializedPayload(invocation.getSerializedParams());
+        }
+        else
+        {
+            message.setPayload(invocation.getParams());
+        }
 
 
         if (logger.isTraceEnabled())
@@ -358,11 +456,13 @@ public class Messaging extends HandlerAdapter implements Startable
             return Task.done();
         }
         message.setMessageId(messageId);
-        PendingResponse pendingResponse = new PendingResponse(messageId, runtime.clock().millis() + responseTimeoutMillis);
+        final long timeoutAt = message.getTimeoutAt() != 0 ? message.getTimeoutAt() : runtime.clock().millis() + responseTimeoutMillis;
+        PendingResponse pendingResponse = new PendingResponse(messageId, timeoutAt);
         final boolean oneWay = message.getMessageType() == MessageDefinitions.ONE_WAY_MESSAGE;
         if (!oneWay)
         {
             pendingResponseMap.put(messageId, pendingResponse);
+            scheduleTimeout(pendingResponse);
         }
         try
         {
@@ -375,36 +475,109 @@ public class Messaging extends HandlerAdapter implements Startable
         catch (Exception ex)
         {
             pendingResponseMap.remove(messageId);
+            cancelTimeout(pendingResponse);
             pendingResponse.internalCompleteExceptionally(ex);
         }
         return pendingResponse;
     }
 
-    public Task cleanup()
+    private long getResponseTimeoutMillis(final Method method)
     {
-        // The benchmarks showed that it's faster to iterate over all pending messages
-        // than to keep a priority queue ordered by timeout.
+        final Timeout timeout = timeoutCache.getAnnotation(method);
+        return timeout != null ? timeout.timeUnit().toMillis(timeout.value()) : responseTimeoutMillis;
+    }
 
-        // The priority queue forces the application to pay the price of keeping the queue ordered
-        // plus the synchronization cost of adding and removing elements.
+    private void scheduleTimeout(final PendingResponse pendingResponse)
+    {
+        // rounding up, the bucket expires once all its responses have timed out
+        final Long tick = (pendingResponse.timeoutAt + timeoutTickMillis - 1) / timeoutTickMillis;
+        while (true)
+        {
+            final Set<PendingResponse> bucket = timeoutBuckets.computeIfAbsent(tick, t -> ConcurrentHashMap.newKeySet());
+            bucket.add(pendingResponse);
+            pendingResponse.timeoutBucket = bucket;
+            if (timeoutBuckets.get(tick) == bucket || !bucket.remove(pendingResponse))
+            {
+                // either the bucket is still there or the cleanup already took the response
+                return;
+            }
+            // the bucket was expired concurrently, and the response missed by the cleanup
+        }
+    }
 
-        pendingResponseMap.values()
-                .forEach(top -> {
-                    if (top.timeoutAt > runtime.clock().millis())
-                    {
-                        // return the message, if there was a concurrent reception the message will be removed on the next cycle.
-                        return;
-                    }
-                    if (!top.isDone())
+    private void cancelTimeout(final PendingResponse pendingResponse)
+    {
+        final Set<PendingResponse> bucket = pendingResponse.timeoutBucket;
+        if (bucket != null)
+        {
+            bucket.remove(pendingResponse);
+        }
+    }
+
+    public Task cleanup()
+    {
+        // Only the expired buckets are visited, the responses received in time were already removed from their buckets.
+        final long currentTick = runtime.clock().millis() / timeoutTickMillis;
+        Map.Entry<Long, Set<PendingResponse>> entry;
+        while ((entry = timeoutBuckets.firstEntry()) != null && entry.getKey() <= currentTick)
+        {
+            final Set<PendingResponse> bucket = entry.getValue();
+            if (!timeoutBuckets.remove(entry.getKey(), bucket))
+            {
+                continue;
+            }
+            for (final PendingResponse pendingResponse : bucket)
+            {
+                // removing to make sure that the response is not missed by a concurrent scheduleTimeout
+                if (bucket.remove(pendingResponse))
+                {
+                    pendingResponseMap.remove(pendingResponse.messageId, pendingResponse);
+                    if (!pendingResponse.isDone())
                     {
-                        // todo: do this in the application executor, not critical as hosting is already taking care of it
-                        top.internalCompleteExceptionally(new TimeoutException("Response timeout"));
+                        completeWithTimeout(pendingResponse);
                     }
-                    pendingResponseMap.remove(top.messageId);
-                });
+                }
+            }
+        }
         return Task.done();
     }
 
+    private void completeWithTimeout(final PendingResponse pendingResponse)
+    {
+        final Runnable timeout = () -> pendingResponse.internalCompleteExceptionally(new TimeoutException("Response timeout"));
+        if (executor != null)
+        {
+            try
+            {
+                executor.execute(timeout);
+                return;
+            }
+            catch (RejectedExecutionException ex)
+            {
+                // the executor is shutting down
+            }
+        }
+        timeout.run();
+    }
+
+    /**
+     * @return the number of requests refused by this node because the target actor mailbox was full.
+     */
+    @ExportMetric(name = "busyResponsesSent")
+    public long getBusyResponsesSent()
+    {
+        return busyResponsesSent.sum();
+    }
+
+    /**
+     * @return the number of requests sent from this node that were refused because the target actor was busy.
+     */
+    @ExportMetric(name = "busyResponsesReceived")
+    public long getBusyResponsesReceived()
+    {
+        return busyResponsesReceived.sum();
+    }
+
     public BasicRuntime getRuntime()
     {
         return runtime;
@@ -58,6 +58,20 @@ public interface NodeCapabilities extends ActorObserver
 
     Task<Void> nodeModeChanged(NodeAddress nodeAddress, NodeState newMode);
 
+    /**
+     * Periodically sent by the server nodes to inform the others of their current load.
+     * Used by the load aware placement strategies.
+     */
+    @OneWay
+    Task<Void> nodeLoadChanged(NodeAddress nodeAddress, int activationCount);
+
+    /**
+     * Sent by the server nodes when they start or stop being short of memory.
+     * The nodes under pressure only receive new activations if all the candidate nodes are under pressure.
+     */
+    @OneWay
+    Task<Void> nodePressureChanged(NodeAddress nodeAddress, boolean underPressure);
+
     @OneWay
     Task<Void> moved(RemoteReference<?> actorKey, NodeAddress oldAddress, NodeAddress newAddress);
 }
@@ -25,28 +25,89 @@ ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
 (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
 THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
 */
-
 package com.ea.orbit.actors.runtime;
 
+import com.ea.orbit.actors.Actor;
 import com.ea.orbit.actors.Remindable;
+import com.ea.orbit.actors.Stage;
+import com.ea.orbit.actors.annotation.ActorTTL;
 import com.ea.orbit.concurrent.ConcurrentHashSet;
 import com.ea.orbit.concurrent.Task;
 
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.Set;
+import java.util.TreeMap;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
+/**
+ * One shard of the cluster reminders.
+ * <p>
+ * The reminders are split across the controllers {@code "0"} to {@code "N-1"} by the hash of the remindable reference,
+ * see {@link #getShardId(Remindable, int)}.
+ * Each shard persists its reminders in {@link #PAGES} separate records, so a registration only rewrites
+ * the page holding that reminder instead of all the reminders of the shard.
+ * </p>
+ * <p>
+ * The reminders are fired by a single actor timer per shard, armed for the earliest time bucket.
+ * Reminders fire at the end of their bucket, so they are never early but may be up to
+ * {@link #BUCKET_MILLIS} late.
+ * The shards are never deactivated for being idle, as nothing else would activate them again.
+ * </p>
+ */
+@ActorTTL(Long.MAX_VALUE)
 public class ReminderControllerActor extends AbstractActor<ReminderControllerActor.State> implements ReminderController
 {
+    public static final int PAGES = 16;
+    public static final long BUCKET_MILLIS = 1000;
+
     public static class State
+    {
+        // reminders saved before the controllers were sharded, moved to the shards on activation
+        public ConcurrentHashSet<ReminderEntry> reminders = new ConcurrentHashSet<>();
+    }
+
+    public static class Page
     {
         public ConcurrentHashSet<ReminderEntry> reminders = new ConcurrentHashSet<>();
     }
 
-    private Map<ReminderEntry, Registration> local = new ConcurrentHashMap<>();
+    private Page[] pages;
+    // reminder -> bucket where it is scheduled
+    private Map<ReminderEntry, Long> scheduled = new HashMap<>();
+    private TreeMap<Long, Set<ReminderEntry>> buckets = new TreeMap<>();
+    private Registration tick;
+    private long tickBucket;
+
+    /**
+     * Picks the controller responsible for the reminders of an actor, must be the same in all the cluster nodes.
+     */
+    public static String getShardId(final Remindable actor, final int shards)
+    {
+        return String.valueOf(Math.floorMod(hash(actor), shards));
+    }
+
+    private static int hash(final Remindable actor)
+    {
+        final RemoteReference<?> reference = RemoteReference.from(actor);
+        // the reference hashCode is avoided as the ids might not have stable hashes across the nodes
+        return 31 * RemoteReference.getInterfaceId(reference) + String.valueOf(RemoteReference.getId(reference)).hashCode();
+    }
+
+    private int pageOf(final ReminderEntry reminderEntry)
+    {
+        return Math.floorMod(31 * hash(reminderEntry.getReference()) + reminderEntry.getReminderName().hashCode(), PAGES);
+    }
+
+    private RemoteReference<?> pageReference(final int page)
+    {
+        return (RemoteReference<?>) Actor.getReference(ReminderController.class, RemoteReference.getId(reference) + ":" + page);
+    }
 
     @Override
     public Task<String> registerOrUpdateReminder(final Remindable actor, final String reminderName, final Date startAt, final long period, final TimeUnit timeUnit)
@@ -56,37 +117,15 @@ public class ReminderControllerActor extends AbstractActor<ReminderControllerAct
         newReminder.setStartAt(startAt);
         newReminder.setReminderName(reminderName);
         newReminder.setReference(actor);
-        final Registration oldReminderData = local.remove(newReminder);
-        if (oldReminderData != null)
-        {
-            oldReminderData.dispose();
-        }
-        registerLocalTimer(newReminder);
+        unschedule(newReminder);
+        schedule(newReminder, ActorRuntime.getRuntime().clock().millis());
+        final int page = pageOf(newReminder);
         // removes the previous reminder (reference,reminderName)
-        state().reminders.remove(newReminder);
+        pages[page].reminders.remove(newReminder);
         // adds the new one.
-        state().reminders.add(newReminder);
-        // saves the state and returns the data
-        return writeState().thenReturn(() -> reminderName);
-    }
-
-    private void registerLocalTimer(final ReminderEntry reminderEntry)
-    {
-        // adjusting start date.
-        long dueTime = reminderEntry.getStartAt().getTime() - ActorRuntime.getRuntime().clock().millis();
-        if (dueTime < 0)
-        {
-            dueTime = reminderEntry.getPeriod() + (dueTime % reminderEntry.getPeriod());
-        }
-        final Registration localData = registerTimer(() -> callRemainder(reminderEntry), dueTime, reminderEntry.getPeriod(), TimeUnit.MILLISECONDS);
-        local.put(reminderEntry, localData);
-    }
-
-    private Task<?> callRemainder(final ReminderEntry reminderEntry)
-    {
-        reminderEntry.getReference().receiveReminder(reminderEntry.getReminderName(), null);
-        // ignoring the return, reminders are fire and forget.
-        return Task.done();
+        pages[page].reminders.add(newReminder);
+        // saves the page and returns the data
+        return writePage(page).thenReturn(() -> reminderName);
     }
 
     @Override
@@ -95,22 +134,20 @@ public class ReminderControllerActor extends AbstractActor<ReminderControllerAct
         final ReminderEntry newReminder = new ReminderEntry();
         newReminder.setReminderName(reminderName);
         newReminder.setReference(actor);
-        final Registration oldReminderData = local.remove(newReminder);
-        if (oldReminderData != null)
+        unschedule(newReminder);
+        final int page = pageOf(newReminder);
+        if (!pages[page].reminders.remove(newReminder))
         {
-            oldReminderData.dispose();
+            return Task.fromValue(reminderName);
         }
-        // removes the previous reminder (reference,reminderName)
-        state().reminders.remove(newReminder);
-        // saves the state and returns the data
-        return writeState().thenReturn(() -> reminderName);
+        return writePage(page).thenReturn(() -> reminderName);
     }
 
     @Override
     public Task<List<String>> getReminders(final Remindable actor)
     {
-        final List<String> list = state.reminders.stream()
-                .filter(r -> reference.equals(actor))
+        final List<String> list = scheduled.keySet().stream()
+                .filter(r -> r.getReference().equals(actor))
                 .map(r -> r.getReminderName())
                 .collect(Collectors.toList());
         return Task.fromValue(list);
@@ -122,18 +159,174 @@ public class ReminderControllerActor extends AbstractActor<ReminderControllerAct
         return Task.done();
     }
 
+    private Task<Void> writePage(final int page)
+    {
+        if (stateExtension == null)
+        {
+            throw new IllegalStateException("Storage extension not available");
+        }
+        return stateExtension.writeState(pageReference(page), pages[page]);
+    }
+
+    private void schedule(final ReminderEntry reminderEntry, final long now)
+    {
+        final long fireAt = nextFireTime(reminderEntry, now);
+        // the bucket fires at its end
+        final long bucket = (fireAt + BUCKET_MILLIS - 1) / BUCKET_MILLIS;
+        scheduled.put(reminderEntry, bucket);
+        buckets.computeIfAbsent(bucket, b -> new HashSet<>()).add(reminderEntry);
+        if (tick == null || bucket < tickBucket)
+        {
+            armTick(bucket, now);
+        }
+    }
+
+    private void unschedule(final ReminderEntry reminderEntry)
+    {
+        final Long bucket = scheduled.remove(reminderEntry);
+        if (bucket != null)
+        {
+            final Set<ReminderEntry> set = buckets.get(bucket);
+            set.remove(reminderEntry);
+            if (set.isEmpty())
+            {
+                buckets.remove(bucket);
+            }
+        }
+    }
+
+    private static long nextFireTime(final ReminderEntry reminderEntry, final long now)
+    {
+        final long startAt = reminderEntry.getStartAt().getTime();
+        final long period = reminderEntry.getPeriod();
+        if (startAt >= now || period <= 0)
+        {
+            return startAt;
+        }
+        return startAt + ((now - startAt) / period + 1) * period;
+    }
+
+    private void armTick(final long bucket, final long now)
+    {
+        if (tick != null)
+        {
+            tick.dispose();
+        }
+        tickBucket = bucket;
+        tick = registerTimer(this::fireDueBuckets, Math.max(0, bucket * BUCKET_MILLIS - now), TimeUnit.MILLISECONDS);
+    }
+
+    private Task<?> fireDueBuckets()
+    {
+        tick = null;
+        final long now = ActorRuntime.getRuntime().clock().millis();
+        final List<ReminderEntry> due = new ArrayList<>();
+        while (!buckets.isEmpty() && buckets.firstKey() * BUCKET_MILLIS <= now)
+        {
+            due.addAll(buckets.pollFirstEntry().getValue());
+        }
+        for (ReminderEntry reminderEntry : due)
+        {
+            scheduled.remove(reminderEntry);
+            callRemainder(reminderEntry);
+            if (reminderEntry.getPeriod() > 0)
+            {
+                schedule(reminderEntry, now);
+            }
+        }
+        if (tick == null && !buckets.isEmpty())
+        {
+            armTick(buckets.firstKey(), now);
+        }
+        return Task.done();
+    }
+
+    private void callRemainder(final ReminderEntry reminderEntry)
+    {
+        try
+        {
+            // ignoring the return, reminders are fire and forget.
+            reminderEntry.getReference().receiveReminder(reminderEntry.getReminderName(), null);
+        }
+        catch (Exception ex)
+        {
+            getLogger().warn("Error calling reminder " + reminderEntry, ex);
+        }
+    }
+
     public Task<?> activateAsync()
     {
         getLogger().debug("activated");
-        // registering the local timers.
-        return super.activateAsync().thenRun(
-                () -> state.reminders.forEach(r -> registerLocalTimer(r)));
+        pages = new Page[PAGES];
+        final List<Task<Boolean>> reads = new ArrayList<>();
+        for (int i = 0; i < PAGES; i++)
+        {
+            pages[i] = new Page();
+            if (stateExtension != null)
+            {
+                reads.add(stateExtension.readState(pageReference(i), pages[i]));
+            }
+        }
+        return super.activateAsync()
+                .thenCompose(() -> Task.allOf(reads))
+                .thenCompose(() -> {
+                    // registering the local timers.
+                    final long now = ActorRuntime.getRuntime().clock().millis();
+                    for (Page page : pages)
+                    {
+                        page.reminders.forEach(r -> schedule(r, now));
+                    }
+                    return migrateLegacyReminders();
+                });
+    }
+
+    private Task<?> migrateLegacyReminders()
+    {
+        if (state().reminders.isEmpty())
+        {
+            return Task.done();
+        }
+        getLogger().info("Moving {} reminders to the reminder shards", state().reminders.size());
+        final int shards = ActorRuntime.getRuntime() instanceof Stage ? ((Stage) ActorRuntime.getRuntime()).getReminderShards() : 1;
+        final String shardId = String.valueOf(RemoteReference.getId(reference));
+        final long now = ActorRuntime.getRuntime().clock().millis();
+        final Set<Integer> dirtyPages = new HashSet<>();
+        final List<Task<?>> moved = new ArrayList<>();
+        for (ReminderEntry r : state().reminders)
+        {
+            final String targetShard = getShardId(r.getReference(), shards);
+            if (shardId.equals(targetShard))
+            {
+                // calling this shard would wait for the end of this activation
+                unschedule(r);
+                schedule(r, now);
+                final int page = pageOf(r);
+                pages[page].reminders.remove(r);
+                pages[page].reminders.add(r);
+                dirtyPages.add(page);
+            }
+            else
+            {
+                moved.add(Actor.getReference(ReminderController.class, targetShard)
+                        .registerOrUpdateReminder(r.getReference(), r.getReminderName(), r.getStartAt(), r.getPeriod(), TimeUnit.MILLISECONDS));
+            }
+        }
+        dirtyPages.forEach(page -> moved.add(writePage(page)));
+        return Task.allOf(moved).thenCompose(() -> {
+            state().reminders.clear();
+            return writeState();
+        });
     }
 
     public Task<?> deactivateAsync()
     {
-        local.values().forEach(r -> r.dispose());
-        local.clear();
+        if (tick != null)
+        {
+            tick.dispose();
+            tick = null;
+        }
+        scheduled.clear();
+        buckets.clear();
         return super.deactivateAsync();
     }
 }
@@ -30,6 +30,7 @@ package com.ea.orbit.actors.runtime;
 
 import com.ea.orbit.actors.Actor;
 import com.ea.orbit.actors.Addressable;
+import com.ea.orbit.actors.annotation.Coalesce;
 import com.ea.orbit.actors.extensions.MessageSerializer;
 import com.ea.orbit.actors.net.HandlerAdapter;
 import com.ea.orbit.actors.net.HandlerContext;
@@ -53,7 +54,13 @@ import java.lang.reflect.Method;
 import java.math.BigInteger;
 import java.security.DigestOutputStream;
 import java.security.MessageDigest;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.stream.Collectors;
 
 public class ResponseCaching
@@ -65,6 +72,13 @@ public class ResponseCaching
     private MessageSerializer messageSerializer;
     private BasicRuntime runtime;
     private AnnotationCache<CacheResponse> cacheResponseCache = new AnnotationCache<>(CacheResponse.class);
+    private AnnotationCache<Coalesce> coalesceCache = new AnnotationCache<>(Coalesce.class);
+
+    /**
+     * The requests of {@literal @}Coalesce methods waiting for a response.
+     */
+    private final ConcurrentMap<CoalesceKey, Task<Object>> inFlight = new ConcurrentHashMap<>();
+    private final LongAdder coalescedRequests = new LongAdder();
 
     private static class NullOutputStream extends OutputStream
     {
@@ -76,6 +90,56 @@ public class ResponseCaching
 
     private ExecutionObjectCloner objectCloner;
 
+    /**
+     * Identifies a request by target, method, arguments, headers and deadline.
+     * Calls with different headers or deadlines are not merged, they would get each other's timeout or context.
+     */
+    private static final class CoalesceKey
+    {
+        private final Addressable reference;
+        private final int methodId;
+        private final Object[] params;
+        private final Map<?, ?> headers;
+        private final long timeoutAt;
+        private final int hash;
+
+        CoalesceKey(final Invocation invocation)
+        {
+            this.reference = invocation.getToReference();
+            this.methodId = invocation.getMethodId();
+            this.params = invocation.getParams();
+            this.headers = invocation.getHeaders() != null && !invocation.getHeaders().isEmpty() ? invocation.getHeaders() : null;
+            this.timeoutAt = invocation.getTimeoutAt();
+            this.hash = ((reference.hashCode() * 31 + methodId) * 31 + Arrays.deepHashCode(params)) * 31 + Long.hashCode(timeoutAt);
+        }
+
+        @Override
+        public boolean equals(final Object o)
+        {
+            if (this == o)
+            {
+                return true;
+            }
+            if (!(o instanceof CoalesceKey))
+            {
+                return false;
+            }
+            final CoalesceKey other = (CoalesceKey) o;
+            return hash == other.hash
+                    && methodId == other.methodId
+                    && timeoutAt == other.timeoutAt
+                    && reference.equals(other.reference)
+                    && Arrays.deepEquals(params, other.params)
+                    && Objects.equals(headers, other.headers);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return hash;
+        }
+    }
+
     /**
      * masterCache is a mapping of caches for each CacheResponse annotated method.
      * The individual caches are defined with a maximum item size and TTL based on the annotation.
@@ -201,6 +265,41 @@ public class ResponseCaching
         return cached.thenApply(objectCloner::clone);
     }
 
+    private Task<?> coalesceInvoke(HandlerContext ctx, Invocation invocation) throws Exception
+    {
+        final CoalesceKey key = new CoalesceKey(invocation);
+        final Task<Object> response = new Task<>();
+        final Task<Object> pending = inFlight.putIfAbsent(key, response);
+        if (pending != null)
+        {
+            coalescedRequests.increment();
+            return pending.thenApply(objectCloner::clone);
+        }
+        final Task<?> sent;
+        try
+        {
+            sent = ctx.write(invocation);
+        }
+        catch (Exception ex)
+        {
+            inFlight.remove(key, response);
+            throw ex;
+        }
+        sent.whenComplete((r, e) -> {
+            // removing first, the calls made after the response arrives must send a new request
+            inFlight.remove(key, response);
+            if (e != null)
+            {
+                response.completeExceptionally(e);
+            }
+            else
+            {
+                response.complete(r);
+            }
+        });
+        return response.thenApply(objectCloner::clone);
+    }
+
     private String generateParameterHash(Object[] params)
     {
         if (params == null || params.length == 0)
@@ -232,6 +331,10 @@ public class ResponseCaching
             {
                 return cacheResponseInvoke(ctx, invocation);
             }
+            if (!invocation.isOneWay() && coalesceCache.isAnnotated(invocation.getMethod()))
+            {
+                return coalesceInvoke(ctx, invocation);
+            }
         }
         return super.write(ctx, msg);
     }
@@ -243,6 +346,14 @@ public class ResponseCaching
         super.onActive(ctx);
     }
 
+    /**
+     * @return the number of {@literal @}Coalesce calls that were merged with a request already waiting for its response.
+     */
+    public long getCoalescedRequests()
+    {
+        return coalescedRequests.sum();
+    }
+
     public void setMessageSerializer(MessageSerializer messageSerializer)
     {
         this.messageSerializer = messageSerializer;
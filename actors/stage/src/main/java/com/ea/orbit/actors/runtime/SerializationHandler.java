@@ -40,18 +40,24 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 
 public class SerializationHandler extends HandlerAdapter
 {
     private static Logger logger = LoggerFactory.getLogger(SerializationHandler.class);
     private BasicRuntime runtime;
     private MessageSerializer messageSerializer;
+    private MessageBufferPool bufferPool;
 
     public SerializationHandler(final BasicRuntime runtime, final MessageSerializer messageSerializer)
+    {
+        this(runtime, messageSerializer, new MessageBufferPool());
+    }
+
+    public SerializationHandler(final BasicRuntime runtime, final MessageSerializer messageSerializer, final MessageBufferPool bufferPool)
     {
         this.runtime = runtime;
         this.messageSerializer = messageSerializer;
+        this.bufferPool = bufferPool;
     }
 
     @Override
@@ -63,7 +69,22 @@ public class SerializationHandler extends HandlerAdapter
         }
         Message message = (Message) msg;
 
-        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        final MessageBufferPool.Buffer baos = bufferPool.acquire();
+        final byte[] bytes;
+        try
+        {
+            serialize(message, baos);
+            bytes = baos.toByteArray();
+        }
+        finally
+        {
+            bufferPool.release(baos);
+        }
+        return ctx.write(Pair.of(message.getToNode(), bytes));
+    }
+
+    private void serialize(final Message message, final MessageBufferPool.Buffer baos)
+    {
         try
         {
             messageSerializer.serializeMessage(runtime, baos, message);
@@ -117,8 +138,6 @@ public class SerializationHandler extends HandlerAdapter
                 }
             }
         }
-
-        return ctx.write(Pair.of(message.getToNode(), baos.toByteArray()));
     }
 
     private Throwable toSerializationSafeException(final Throwable notSerializable, final Throwable secondaryException)
@@ -28,6 +28,7 @@
 
 package com.ea.orbit.actors.runtime;
 
+import com.ea.orbit.actors.annotation.Priority;
 import com.ea.orbit.concurrent.Task;
 import com.ea.orbit.concurrent.TaskFunction;
 
@@ -58,6 +59,12 @@ public class StatelessActorEntry<T extends AbstractActor> extends ActorBaseEntry
 
     @Override
     public <R> Task<R> run(final TaskFunction<LocalObjects.LocalObjectEntry<T>, R> function)
+    {
+        return run(function, false, Priority.Level.NORMAL);
+    }
+
+    @Override
+    public <R> Task<R> run(final TaskFunction<LocalObjects.LocalObjectEntry<T>, R> function, final boolean oneWay, final Priority.Level priority)
     {
         lastAccess = runtime.clock().millis();
         ActorEntry<T> actorEntry = tryPop();
@@ -74,7 +81,7 @@ public class StatelessActorEntry<T extends AbstractActor> extends ActorBaseEntry
             localObjects.registerEntry(actorEntry, actorEntry);
         }
         final ActorEntry<T> theEntry = actorEntry;
-        return actorEntry.run(entry -> doRunInternal(theEntry, entry, function));
+        return actorEntry.run(entry -> doRunInternal(theEntry, entry, function), oneWay, priority);
     }
 
     private <R> Task<R> doRunInternal(
@@ -94,7 +101,8 @@ public class StatelessActorEntry<T extends AbstractActor> extends ActorBaseEntry
         {
             if (isDeactivated() || entry1 != entry2)
             {
-                await(entry1.deactivate());
+                // not waiting, this runs in entry1's mailbox and the deactivation is queued right behind it
+                entry1.deactivate();
             }
             else
             {
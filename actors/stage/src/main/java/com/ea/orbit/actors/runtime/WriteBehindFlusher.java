@@ -0,0 +1,184 @@
+/*
+Copyright (C) 2015 Electronic Arts Inc.  All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions
+are met:
+
+1.  Redistributions of source code must retain the above copyright
+    notice, this list of conditions and the following disclaimer.
+2.  Redistributions in binary form must reproduce the above copyright
+    notice, this list of conditions and the following disclaimer in the
+    documentation and/or other materials provided with the distribution.
+3.  Neither the name of Electronic Arts, Inc. ("EA") nor the names of
+    its contributors may be used to endorse or promote products derived
+    from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY ELECTRONIC ARTS AND ITS CONTRIBUTORS "AS IS" AND ANY
+EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL ELECTRONIC ARTS OR ITS CONTRIBUTORS BE LIABLE FOR ANY
+DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package com.ea.orbit.actors.runtime;
+
+import com.ea.orbit.actors.annotation.Priority;
+import com.ea.orbit.concurrent.Task;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Tracks the activations with deferred state writes and writes their state when it's due.
+ * <p>
+ * Only the dirty activations are visited by {@link #flushDue(long)}, the entry is added
+ * when it first becomes dirty, the following writes only update its timestamps.
+ * The writes are queued in the activation mailbox, so they never overlap with the actor's own messages.
+ * </p>
+ *
+ * @see com.ea.orbit.actors.annotation.WriteBehind
+ */
+public class WriteBehindFlusher
+{
+    private static final Logger logger = LoggerFactory.getLogger(WriteBehindFlusher.class);
+
+    private final Set<ActorEntry<?>> dirty = ConcurrentHashMap.newKeySet();
+    private final LongAdder deferredWrites = new LongAdder();
+    private final LongAdder flushedWrites = new LongAdder();
+
+    /**
+     * Marks the actor state as dirty.
+     * Must be called from the actor context.
+     *
+     * @return false if the actor doesn't use write-behind and its state must be written now.
+     */
+    public boolean defer(final AbstractActor<?> actor, final long now)
+    {
+        final ActorEntry<?> entry = entryOf(actor);
+        if (entry == null || !entry.isWriteBehind() || entry.isDeactivated())
+        {
+            return false;
+        }
+        deferredWrites.increment();
+        if (entry.markDirty(now))
+        {
+            dirty.add(entry);
+        }
+        return true;
+    }
+
+    /**
+     * Writes the deferred state of the actor now.
+     * Must be called from the actor context.
+     */
+    public Task<Void> flush(final AbstractActor<?> actor)
+    {
+        final ActorEntry<?> entry = entryOf(actor);
+        return entry != null ? flush(entry) : Task.done();
+    }
+
+    /**
+     * Queues the due writes in the activation mailboxes.
+     *
+     * @param now the current time from the stage clock.
+     */
+    public void flushDue(final long now)
+    {
+        for (Iterator<ActorEntry<?>> iterator = dirty.iterator(); iterator.hasNext(); )
+        {
+            final ActorEntry<?> entry = iterator.next();
+            if (!entry.isDirty() || entry.isDeactivated())
+            {
+                // flushed explicitly or by the deactivation
+                iterator.remove();
+                // removing before checking again, the actor might have written meanwhile,
+                // and markDirty only reports the first write
+                requeueIfDirty(entry);
+            }
+            else if (entry.isFlushDue(now))
+            {
+                iterator.remove();
+                try
+                {
+                    entry.executeSerialized(() -> flush(entry), Integer.MAX_VALUE, Priority.Level.HIGH)
+                            .whenComplete((r, e) -> {
+                                if (e != null)
+                                {
+                                    // the write never ran or failed
+                                    requeueIfDirty(entry);
+                                }
+                            });
+                }
+                catch (Exception ex)
+                {
+                    logger.error("Error queueing the state write of " + entry.getRemoteReference(), ex);
+                    dirty.add(entry);
+                }
+            }
+        }
+    }
+
+    private void requeueIfDirty(final ActorEntry<?> entry)
+    {
+        if (entry.isDirty() && !entry.isDeactivated())
+        {
+            dirty.add(entry);
+        }
+    }
+
+    private Task<Void> flush(final ActorEntry<?> entry)
+    {
+        if (!entry.isDirty())
+        {
+            return Task.done();
+        }
+        return entry.flushState().whenComplete((r, e) -> {
+            if (e == null)
+            {
+                flushedWrites.increment();
+            }
+            // the write failed or the actor changed the state again meanwhile
+            requeueIfDirty(entry);
+        });
+    }
+
+    private static ActorEntry<?> entryOf(final AbstractActor<?> actor)
+    {
+        return actor.activation instanceof ActorEntry ? (ActorEntry<?>) actor.activation : null;
+    }
+
+    /**
+     * Number of activations with deferred state writes.
+     */
+    public int getDirtyCount()
+    {
+        return dirty.size();
+    }
+
+    /**
+     * Number of calls to {@code writeState()} that were deferred.
+     */
+    public long getDeferredWrites()
+    {
+        return deferredWrites.sum();
+    }
+
+    /**
+     * Number of deferred state writes done by the flusher or by {@code flushState()}.
+     */
+    public long getFlushedWrites()
+    {
+        return flushedWrites.sum();
+    }
+}
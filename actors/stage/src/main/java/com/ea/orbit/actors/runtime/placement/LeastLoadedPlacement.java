@@ -0,0 +1,74 @@
+/*
+Copyright (C) 2015 Electronic Arts Inc.  All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions
+are met:
+
+1.  Redistributions of source code must retain the above copyright
+    notice, this list of conditions and the following disclaimer.
+2.  Redistributions in binary form must reproduce the above copyright
+    notice, this list of conditions and the following disclaimer in the
+    documentation and/or other materials provided with the distribution.
+3.  Neither the name of Electronic Arts, Inc. ("EA") nor the names of
+    its contributors may be used to endorse or promote products derived
+    from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY ELECTRONIC ARTS AND ITS CONTRIBUTORS "AS IS" AND ANY
+EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL ELECTRONIC ARTS OR ITS CONTRIBUTORS BE LIABLE FOR ANY
+DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+package com.ea.orbit.actors.runtime.placement;
+
+import com.ea.orbit.actors.cluster.NodeAddress;
+import com.ea.orbit.actors.runtime.Hosting;
+import com.ea.orbit.actors.runtime.RemoteReference;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Places new activations on the node with the fewest activations,
+ * according to the load reports the nodes exchange periodically.
+ * <p>
+ * Ties are broken randomly to avoid sending every placement to the same node between two reports.
+ * </p>
+ */
+public class LeastLoadedPlacement implements PlacementStrategy
+{
+    public static final String NAME = "least-loaded";
+
+    @Override
+    public String getName()
+    {
+        return NAME;
+    }
+
+    @Override
+    public NodeAddress selectNode(final Hosting hosting, final RemoteReference<?> reference, final List<NodeAddress> candidates)
+    {
+        final int size = candidates.size();
+        // starts at a random position so that ties don't always favor the same node
+        final int start = ThreadLocalRandom.current().nextInt(size);
+        NodeAddress best = null;
+        int bestCount = Integer.MAX_VALUE;
+        for (int i = 0; i < size; i++)
+        {
+            final NodeAddress address = candidates.get((start + i) % size);
+            final int count = hosting.getActivationCount(address);
+            if (count < bestCount)
+            {
+                best = address;
+                bestCount = count;
+            }
+        }
+        return best;
+    }
+}
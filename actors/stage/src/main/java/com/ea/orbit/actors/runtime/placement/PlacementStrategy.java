@@ -0,0 +1,63 @@
+/*
+Copyright (C) 2015 Electronic Arts Inc.  All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions
+are met:
+
+1.  Redistributions of source code must retain the above copyright
+    notice, this list of conditions and the following disclaimer.
+2.  Redistributions in binary form must reproduce the above copyright
+    notice, this list of conditions and the following disclaimer in the
+    documentation and/or other materials provided with the distribution.
+3.  Neither the name of Electronic Arts, Inc. ("EA") nor the names of
+    its contributors may be used to endorse or promote products derived
+    from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY ELECTRONIC ARTS AND ITS CONTRIBUTORS "AS IS" AND ANY
+EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL ELECTRONIC ARTS OR ITS CONTRIBUTORS BE LIABLE FOR ANY
+DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+package com.ea.orbit.actors.runtime.placement;
+
+import com.ea.orbit.actors.cluster.NodeAddress;
+import com.ea.orbit.actors.extensions.ActorExtension;
+import com.ea.orbit.actors.runtime.Hosting;
+import com.ea.orbit.actors.runtime.RemoteReference;
+
+import java.util.List;
+
+/**
+ * Chooses the node where a new actor activation will be placed.
+ * <p>
+ * Custom strategies can be installed as stage extensions and selected
+ * with the {@link com.ea.orbit.actors.annotation.Placement} annotation on the actor interface.
+ * </p>
+ */
+public interface PlacementStrategy extends ActorExtension
+{
+    /**
+     * Returns the name used to select this strategy.
+     *
+     * @return the strategy name
+     */
+    String getName();
+
+    /**
+     * Chooses one of the candidate nodes to host a new activation.
+     * Called frequently, must not block.
+     *
+     * @param hosting    the local hosting, gives access to the node load reports and to the consistent hash ring
+     * @param reference  the actor being placed
+     * @param candidates the running nodes that are able to activate the actor, never empty
+     * @return one of the candidates, or null to let the hosting pick one randomly
+     */
+    NodeAddress selectNode(Hosting hosting, RemoteReference<?> reference, List<NodeAddress> candidates);
+}
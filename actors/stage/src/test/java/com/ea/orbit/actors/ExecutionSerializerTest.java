@@ -1,15 +1,27 @@
 package com.ea.orbit.actors;
 
+import com.ea.orbit.actors.annotation.Priority;
+import com.ea.orbit.actors.concurrent.ExecutionSerializer;
 import com.ea.orbit.actors.concurrent.WaitFreeExecutionSerializer;
 import com.ea.orbit.actors.concurrent.WaitFreeMultiExecutionSerializer;
+import com.ea.orbit.actors.exceptions.MailboxFullException;
 import com.ea.orbit.concurrent.Task;
 
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Supplier;
 
 import static org.jgroups.util.Util.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 public class ExecutionSerializerTest
 {
@@ -51,5 +63,218 @@ public class ExecutionSerializerTest
         hello.join();
     }
 
+    @Test
+    public void testOwnedSerializerIsBusy()
+    {
+        WaitFreeMultiExecutionSerializer<String> executionSerializer = new WaitFreeMultiExecutionSerializer<>(ForkJoinPool.commonPool());
+        ExecutionSerializer owned = executionSerializer.newSerializer();
+        Task<String> gate = new Task<>();
+        Task<String> hello = owned.executeSerialized(() -> gate, 1000);
+        assertTrue(executionSerializer.isBusy());
+        gate.complete("hello");
+        assertEquals("hello", hello.join());
+        long start = System.currentTimeMillis();
+        while (executionSerializer.isBusy() && System.currentTimeMillis() - start < 5000)
+        {
+            Thread.yield();
+        }
+        assertFalse(executionSerializer.isBusy());
+    }
+
+    @Test
+    public void testBatchedDrain()
+    {
+        AtomicInteger turns = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        ExecutorService countingExecutor = new ForwardingExecutorService(executor)
+        {
+            @Override
+            public void execute(final Runnable command)
+            {
+                turns.incrementAndGet();
+                super.execute(command);
+            }
+        };
+        try
+        {
+            WaitFreeExecutionSerializer executionSerializer = new WaitFreeExecutionSerializer(countingExecutor, null, 10, TimeUnit.SECONDS.toNanos(10));
+            Task<String> gate = new Task<>();
+            executionSerializer.executeSerialized(() -> gate, 1000);
+            List<Integer> order = new ArrayList<>();
+            List<Task<Integer>> results = new ArrayList<>();
+            for (int i = 0; i < 100; i++)
+            {
+                final int n = i;
+                results.add(executionSerializer.executeSerialized(() -> {
+                    order.add(n);
+                    return Task.fromValue(n);
+                }, 1000));
+            }
+            gate.complete("go");
+            Task.allOf(results).join();
+            for (int i = 0; i < 100; i++)
+            {
+                assertEquals(i, (int) order.get(i));
+            }
+            // one turn for the gate, then 10 turns of 10
+            assertTrue(turns.get() <= 12);
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testPriorityLanes()
+    {
+        WaitFreeExecutionSerializer executionSerializer = new WaitFreeExecutionSerializer(ForkJoinPool.commonPool());
+        Task<String> gate = new Task<>();
+        Task<Void> started = new Task<>();
+        executionSerializer.executeSerialized(() -> {
+            started.complete(null);
+            return gate;
+        }, 1000);
+        // the lanes are only checked when the next task is taken
+        started.join();
+        List<String> order = new ArrayList<>();
+        List<Task<String>> results = new ArrayList<>();
+        for (int i = 0; i < 20; i++)
+        {
+            final String normal = "n" + i;
+            results.add(executionSerializer.executeSerialized(() -> {
+                order.add(normal);
+                return Task.fromValue(normal);
+            }, 1000));
+        }
+        for (int i = 0; i < 20; i++)
+        {
+            final String high = "h" + i;
+            results.add(executionSerializer.executeSerialized(() -> {
+                order.add(high);
+                return Task.fromValue(high);
+            }, 1000, Priority.Level.HIGH));
+        }
+        gate.complete("go");
+        Task.allOf(results).join();
+
+        // the high lane goes first, but it can't starve the normal lane
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 20; i++)
+        {
+            expected.add("h" + i);
+            if (i == 7)
+            {
+                expected.add("n0");
+            }
+            else if (i == 15)
+            {
+                expected.add("n1");
+            }
+        }
+        for (int i = 2; i < 20; i++)
+        {
+            expected.add("n" + i);
+        }
+        assertEquals(expected, order);
+    }
+
+    @Test
+    public void testDropOldestOnlyDiscardsOneWay()
+    {
+        WaitFreeExecutionSerializer executionSerializer = new WaitFreeExecutionSerializer(ForkJoinPool.commonPool());
+        Task<String> gate = new Task<>();
+        Task<Void> started = new Task<>();
+        executionSerializer.executeSerialized(() -> {
+            started.complete(null);
+            return gate;
+        }, 1000);
+        started.join();
+        Task<String> request = executionSerializer.executeSerialized(() -> Task.fromValue("request"), 3);
+        Task<String> high = executionSerializer.executeSerializedDropOldest(() -> Task.fromValue("high"), 3, Priority.Level.HIGH);
+        Task<String> first = executionSerializer.executeSerializedDropOldest(() -> Task.fromValue("first"), 3, Priority.Level.NORMAL);
+        // full, the only one way message of the normal lane makes room
+        Task<String> second = executionSerializer.executeSerializedDropOldest(() -> Task.fromValue("second"), 3, Priority.Level.NORMAL);
+        assertTrue(first.isCompletedExceptionally());
+        // nothing left to discard but the newest
+        Task<String> third = executionSerializer.executeSerializedDropOldest(() -> Task.fromValue("third"), 3, Priority.Level.NORMAL);
+        assertTrue(second.isCompletedExceptionally());
+
+        gate.complete("go");
+        assertEquals("request", request.join());
+        assertEquals("high", high.join());
+        assertEquals("third", third.join());
+    }
+
+    @Test(expected = MailboxFullException.class)
+    public void testDropOldestRejectsWhenNothingToDiscard()
+    {
+        WaitFreeExecutionSerializer executionSerializer = new WaitFreeExecutionSerializer(ForkJoinPool.commonPool());
+        Task<String> gate = new Task<>();
+        Task<Void> started = new Task<>();
+        executionSerializer.executeSerialized(() -> {
+            started.complete(null);
+            return gate;
+        }, 1000);
+        started.join();
+        try
+        {
+            executionSerializer.executeSerialized(() -> Task.fromValue("request"), 2);
+            executionSerializer.executeSerializedDropOldest(() -> Task.fromValue("high"), 2, Priority.Level.HIGH);
+            executionSerializer.executeSerializedDropOldest(() -> Task.fromValue("oneWay"), 2, Priority.Level.NORMAL);
+        }
+        finally
+        {
+            gate.complete("go");
+        }
+    }
 
+    /**
+     * Delegates all calls to another executor service.
+     */
+    private static class ForwardingExecutorService extends AbstractExecutorService
+    {
+        private final ExecutorService delegate;
+
+        ForwardingExecutorService(final ExecutorService delegate)
+        {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void execute(final Runnable command)
+        {
+            delegate.execute(command);
+        }
+
+        @Override
+        public void shutdown()
+        {
+            delegate.shutdown();
+        }
+
+        @Override
+        public List<Runnable> shutdownNow()
+        {
+            return delegate.shutdownNow();
+        }
+
+        @Override
+        public boolean isShutdown()
+        {
+            return delegate.isShutdown();
+        }
+
+        @Override
+        public boolean isTerminated()
+        {
+            return delegate.isTerminated();
+        }
+
+        @Override
+        public boolean awaitTermination(final long timeout, final TimeUnit unit) throws InterruptedException
+        {
+            return delegate.awaitTermination(timeout, unit);
+        }
+    }
 }
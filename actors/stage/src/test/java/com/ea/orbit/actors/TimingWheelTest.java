@@ -0,0 +1,118 @@
+package com.ea.orbit.actors;
+
+import com.ea.orbit.actors.concurrent.TimingWheel;
+import com.ea.orbit.concurrent.Task;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TimingWheelTest
+{
+    private TimingWheel wheel;
+
+    @After
+    public void stop()
+    {
+        if (wheel != null)
+        {
+            wheel.stop();
+        }
+    }
+
+    @Test(timeout = 10_000L)
+    public void testNeverFiresEarly()
+    {
+        wheel = new TimingWheel("test wheel", 1, ForkJoinPool.commonPool());
+        wheel.start();
+        // the longer delays go through the higher wheels
+        final long[] delays = { 0, 1, 5, 100, 255, 256, 257, 600, 1500 };
+        final List<Task<Long>> fired = new ArrayList<>();
+        final long start = System.nanoTime();
+        for (long delay : delays)
+        {
+            final Task<Long> task = new Task<>();
+            fired.add(task);
+            wheel.schedule(() -> task.complete(System.nanoTime()), delay, TimeUnit.MILLISECONDS);
+        }
+        for (int i = 0; i < delays.length; i++)
+        {
+            final long elapsed = TimeUnit.NANOSECONDS.toMillis(fired.get(i).join() - start);
+            assertTrue("fired after " + elapsed + "ms, expected " + delays[i] + "ms", elapsed >= delays[i]);
+        }
+        assertEquals(0, wheel.getPendingCount());
+        assertEquals(delays.length, wheel.getFiredCount());
+    }
+
+    @Test(timeout = 10_000L)
+    public void testCancel() throws InterruptedException
+    {
+        wheel = new TimingWheel("test wheel", 1, ForkJoinPool.commonPool());
+        wheel.start();
+        final AtomicInteger count = new AtomicInteger();
+        final TimingWheel.Timeout timeout = wheel.schedule(count::incrementAndGet, 50, TimeUnit.MILLISECONDS);
+        final TimingWheel.Timeout periodic = wheel.schedule(count::incrementAndGet, 50, 10, TimeUnit.MILLISECONDS);
+        assertTrue(timeout.cancel());
+        assertTrue(periodic.cancel());
+        assertFalse(timeout.cancel());
+        Thread.sleep(200);
+        assertEquals(0, count.get());
+        assertEquals(0, wheel.getPendingCount());
+    }
+
+    @Test(timeout = 10_000L)
+    public void testPeriodic() throws InterruptedException
+    {
+        wheel = new TimingWheel("test wheel", 1, ForkJoinPool.commonPool());
+        wheel.start();
+        final AtomicInteger count = new AtomicInteger();
+        final Task<Void> done = new Task<>();
+        final TimingWheel.Timeout timeout = wheel.schedule(() -> {
+            if (count.incrementAndGet() == 5)
+            {
+                done.complete(null);
+            }
+        }, 0, 5, TimeUnit.MILLISECONDS);
+        done.join();
+        timeout.cancel();
+        Thread.sleep(50);
+        final int after = count.get();
+        Thread.sleep(50);
+        assertEquals(after, count.get());
+        assertFalse(timeout.isExpired());
+    }
+
+    @Test(timeout = 10_000L)
+    public void testBatchedDispatch()
+    {
+        final AtomicInteger batches = new AtomicInteger();
+        wheel = new TimingWheel("test wheel", 20, command -> {
+            batches.incrementAndGet();
+            ForkJoinPool.commonPool().execute(command);
+        }, 100);
+        final AtomicInteger count = new AtomicInteger();
+        final Task<Void> done = new Task<>();
+        for (int i = 0; i < 1000; i++)
+        {
+            wheel.schedule(() -> {
+                if (count.incrementAndGet() == 1000)
+                {
+                    done.complete(null);
+                }
+            }, 10, TimeUnit.MILLISECONDS);
+        }
+        // the timeouts are due in the same tick, or two if the loop crossed a tick boundary
+        wheel.start();
+        done.join();
+        assertTrue("batches: " + batches.get(), batches.get() >= 10 && batches.get() <= 11);
+    }
+}
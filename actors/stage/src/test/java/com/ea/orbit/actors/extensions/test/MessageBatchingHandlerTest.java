@@ -0,0 +1,251 @@
+/*
+Copyright (C) 2015 Electronic Arts Inc.  All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions
+are met:
+
+1.  Redistributions of source code must retain the above copyright
+    notice, this list of conditions and the following disclaimer.
+2.  Redistributions in binary form must reproduce the above copyright
+    notice, this list of conditions and the following disclaimer in the
+    documentation and/or other materials provided with the distribution.
+3.  Neither the name of Electronic Arts, Inc. ("EA") nor the names of
+    its contributors may be used to endorse or promote products derived
+    from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY ELECTRONIC ARTS AND ITS CONTRIBUTORS "AS IS" AND ANY
+EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL ELECTRONIC ARTS OR ITS CONTRIBUTORS BE LIABLE FOR ANY
+DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package com.ea.orbit.actors.extensions.test;
+
+import com.ea.orbit.actors.extensions.MessageBatchingHandler;
+import com.ea.orbit.actors.net.DefaultHandlerContext;
+import com.ea.orbit.actors.net.HandlerContext;
+import com.ea.orbit.concurrent.Task;
+import com.ea.orbit.tuples.Pair;
+
+import org.junit.Test;
+
+import java.util.LinkedList;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class MessageBatchingHandlerTest
+{
+    @Test
+    public void testSingleMessageIsTagged() throws Exception
+    {
+        final MessageBatchingHandler handler = new MessageBatchingHandler();
+        handler.setMaxBatchDelayMicros(0);
+        final MockContext context = new MockContext();
+
+        handler.write(context, Pair.of("a", new byte[]{ 1, 2, 3 }));
+        final Pair<String, byte[]> packet = context.writes.remove();
+        assertArrayEquals(new byte[]{ 0, 1, 2, 3 }, packet.getRight());
+        assertEquals(0, handler.getBatchesSent());
+
+        handler.onRead(context, packet);
+        assertArrayEquals(new byte[]{ 1, 2, 3 }, context.reads.remove().getRight());
+    }
+
+    @Test
+    public void testSingleMessageThatLooksLikeABatch() throws Exception
+    {
+        final MessageBatchingHandler handler = new MessageBatchingHandler();
+        handler.setMaxBatchDelayMicros(0);
+        final MockContext context = new MockContext();
+
+        // a payload with the layout of a batch header
+        final byte[] frame = { 1, 0, 0, 0, 2, 0, 0, 0, 7 };
+        handler.write(context, Pair.of("a", frame));
+        handler.onRead(context, context.writes.remove());
+        assertArrayEquals(frame, context.reads.remove().getRight());
+        assertEquals(0, context.reads.size());
+    }
+
+    @Test
+    public void testSizeLimitFlushes() throws Exception
+    {
+        final MessageBatchingHandler handler = new MessageBatchingHandler();
+        handler.setMaxBatchDelayMicros((int) TimeUnit.SECONDS.toMicros(60));
+        handler.setMaxBatchBytes(5 + 3 * (4 + 10));
+        final MockContext context = new MockContext();
+
+        handler.write(context, Pair.of("a", new byte[10]));
+        handler.write(context, Pair.of("b", new byte[10]));
+        handler.write(context, Pair.of("a", new byte[10]));
+        assertEquals(0, context.writes.size());
+        handler.write(context, Pair.of("a", new byte[10]));
+        assertEquals(1, context.writes.size());
+        assertEquals("a", context.writes.peek().getLeft());
+        assertEquals(1, handler.getBatchesSent());
+        assertEquals(3, handler.getMessagesBatched());
+
+        // the other destination is flushed on close
+        handler.close(context);
+        assertEquals(2, context.writes.size());
+    }
+
+    @Test
+    public void testDelayFlushes() throws Exception
+    {
+        final MessageBatchingHandler handler = new MessageBatchingHandler();
+        handler.setMaxBatchDelayMicros((int) TimeUnit.MILLISECONDS.toMicros(50));
+        final MockContext context = new MockContext();
+
+        handler.write(context, Pair.of("a", new byte[]{ 1 }));
+        handler.write(context, Pair.of("a", new byte[]{ 2 }));
+        final long start = System.currentTimeMillis();
+        while (context.writes.isEmpty() && System.currentTimeMillis() - start < 5000)
+        {
+            Thread.sleep(1);
+        }
+        assertEquals(1, context.writes.size());
+        assertEquals(1, handler.getBatchesSent());
+        handler.close(context);
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception
+    {
+        final MessageBatchingHandler handler = new MessageBatchingHandler();
+        handler.setMaxBatchDelayMicros((int) TimeUnit.SECONDS.toMicros(60));
+        final MockContext context = new MockContext();
+
+        handler.write(context, Pair.of("a", new byte[]{ 99 }));
+        handler.write(context, Pair.of("a", new byte[]{}));
+        handler.write(context, Pair.of("a", new byte[]{ 100, 101 }));
+        handler.close(context);
+
+        handler.onRead(context, context.writes.remove());
+        assertArrayEquals(new byte[]{ 99 }, context.reads.remove().getRight());
+        assertArrayEquals(new byte[]{}, context.reads.remove().getRight());
+        assertArrayEquals(new byte[]{ 100, 101 }, context.reads.remove().getRight());
+        assertEquals(0, context.reads.size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUntaggedPacketIsRejected() throws Exception
+    {
+        final MessageBatchingHandler handler = new MessageBatchingHandler();
+        final MockContext context = new MockContext();
+
+        handler.onRead(context, Pair.of("a", new byte[]{ (byte) 0xac, (byte) 0xed, 0, 5, 1, 2, 3, 4 }));
+    }
+
+    @Test
+    public void testCorruptBatchesAreRejected() throws Exception
+    {
+        final MessageBatchingHandler handler = new MessageBatchingHandler();
+        final MockContext context = new MockContext();
+
+        final byte[][] packets = {
+                // the second message is truncated
+                { 1, 0, 0, 0, 2, 0, 0, 0, 1, 9, 0, 0, 0, 5, 1 },
+                // no room for the second length
+                { 1, 0, 0, 0, 2, 0, 0, 0, 1, 9, 0, 0 },
+                // negative length
+                { 1, 0, 0, 0, 1, (byte) 0xff, (byte) 0xff, (byte) 0xff, (byte) 0xff },
+                // negative count
+                { 1, (byte) 0xff, (byte) 0xff, (byte) 0xff, (byte) 0xff },
+                // trailing bytes
+                { 1, 0, 0, 0, 1, 0, 0, 0, 1, 9, 9 },
+        };
+        for (final byte[] packet : packets)
+        {
+            try
+            {
+                handler.onRead(context, Pair.of("a", packet));
+                fail("accepted a corrupt packet");
+            }
+            catch (IllegalArgumentException expected)
+            {
+                // none of its messages are delivered
+                assertEquals(0, context.reads.size());
+            }
+        }
+    }
+
+    @Test
+    public void testFlushedBatchesAreDropped() throws Exception
+    {
+        final MessageBatchingHandler handler = new MessageBatchingHandler();
+        handler.setMaxBatchDelayMicros((int) TimeUnit.MILLISECONDS.toMicros(10));
+        final MockContext context = new MockContext();
+
+        handler.write(context, Pair.of("a", new byte[]{ 1 }));
+        handler.write(context, Pair.of("b", new byte[]{ 2 }));
+        assertEquals(2, handler.getPendingDestinations());
+        final long start = System.currentTimeMillis();
+        while (handler.getPendingDestinations() > 0 && System.currentTimeMillis() - start < 5000)
+        {
+            Thread.sleep(1);
+        }
+        assertEquals(0, handler.getPendingDestinations());
+        assertEquals(2, context.writes.size());
+
+        // a destination that comes back gets a new batch
+        handler.setMaxBatchDelayMicros(0);
+        handler.write(context, Pair.of("a", new byte[]{ 3 }));
+        assertEquals(3, context.writes.size());
+        assertEquals(0, handler.getPendingDestinations());
+        handler.close(context);
+    }
+
+    @Test
+    public void testWriteFailureIsPropagated() throws Exception
+    {
+        final MessageBatchingHandler handler = new MessageBatchingHandler();
+        handler.setMaxBatchDelayMicros((int) TimeUnit.SECONDS.toMicros(60));
+        final MockContext context = new MockContext();
+        context.failure = new IllegalStateException("disconnected");
+
+        final Task<?> first = handler.write(context, Pair.of("a", new byte[]{ 1 }));
+        final Task<?> second = handler.write(context, Pair.of("a", new byte[]{ 2 }));
+        assertFalse(first.isDone());
+        handler.close(context);
+        assertTrue(first.isCompletedExceptionally());
+        assertTrue(second.isCompletedExceptionally());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static class MockContext extends DefaultHandlerContext
+    {
+        private final Queue<Pair<String, byte[]>> writes = new ConcurrentLinkedQueue<>();
+        private final Queue<Pair<String, byte[]>> reads = new LinkedList<>();
+        private Exception failure;
+
+        @Override
+        public Task write(final Object msg)
+        {
+            writes.add((Pair<String, byte[]>) msg);
+            return failure == null ? Task.done() : Task.fromException(failure);
+        }
+
+        @Override
+        public HandlerContext fireRead(final Object msg)
+        {
+            reads.add((Pair<String, byte[]>) msg);
+            return this;
+        }
+
+        @Override
+        public Task close()
+        {
+            return Task.done();
+        }
+    }
+}
@@ -0,0 +1,106 @@
+/*
+Copyright (C) 2015 Electronic Arts Inc.  All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions
+are met:
+
+1.  Redistributions of source code must retain the above copyright
+    notice, this list of conditions and the following disclaimer.
+2.  Redistributions in binary form must reproduce the above copyright
+    notice, this list of conditions and the following disclaimer in the
+    documentation and/or other materials provided with the distribution.
+3.  Neither the name of Electronic Arts, Inc. ("EA") nor the names of
+    its contributors may be used to endorse or promote products derived
+    from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY ELECTRONIC ARTS AND ITS CONTRIBUTORS "AS IS" AND ANY
+EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL ELECTRONIC ARTS OR ITS CONTRIBUTORS BE LIABLE FOR ANY
+DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package com.ea.orbit.actors.runtime;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class ConsistentHashRingTest
+{
+    @Test
+    public void emptyRing()
+    {
+        ConsistentHashRing<String> ring = new ConsistentHashRing<>(Collections.emptyList(), n -> n, 10);
+        assertEquals(0, ring.size());
+        assertNull(ring.getOwner("test"));
+        assertNull(ring.getOwner("test", n -> true));
+    }
+
+    @Test
+    public void virtualNodes()
+    {
+        ConsistentHashRing<String> ring = new ConsistentHashRing<>(Arrays.asList("a", "b", "c"), n -> n, 50);
+        assertEquals(150, ring.size());
+    }
+
+    @Test
+    public void stableHash()
+    {
+        // the hash must not depend on the jvm instance, all the nodes have to agree on it
+        assertEquals(ConsistentHashRing.hash("test1"), ConsistentHashRing.hash(new StringBuilder("test").append(1)));
+        assertNotEquals(ConsistentHashRing.hash("test1"), ConsistentHashRing.hash("test2"));
+        assertNotEquals(ConsistentHashRing.hash("abcd"), ConsistentHashRing.hash("abcde"));
+    }
+
+    @Test
+    public void keysAreSpread()
+    {
+        List<String> nodes = new ArrayList<>();
+        for (int i = 0; i < 10; i++)
+        {
+            nodes.add("node" + i);
+        }
+        ConsistentHashRing<String> ring = new ConsistentHashRing<>(nodes, n -> n, 100);
+        Map<String, Integer> counts = new HashMap<>();
+        for (int i = 0; i < 10000; i++)
+        {
+            counts.merge(ring.getOwner("key" + i), 1, Integer::sum);
+        }
+        assertEquals(10, counts.size());
+        counts.values().forEach(c -> assertTrue("unbalanced: " + counts, c > 500 && c < 1500));
+    }
+
+    @Test
+    public void onlyRemovedNodeKeysMove()
+    {
+        List<String> nodes = new ArrayList<>(Arrays.asList("a", "b", "c", "d", "e"));
+        ConsistentHashRing<String> ring = new ConsistentHashRing<>(nodes, n -> n, 10);
+        nodes.remove("c");
+        ConsistentHashRing<String> smaller = new ConsistentHashRing<>(nodes, n -> n, 10);
+        for (int i = 0; i < 1000; i++)
+        {
+            String key = "key" + i;
+            String owner = ring.getOwner(key);
+            if (!"c".equals(owner))
+            {
+                assertEquals(owner, smaller.getOwner(key));
+            }
+            // walking past the rejected node gives the same answer as removing it
+            assertEquals(smaller.getOwner(key), ring.getOwner(key, n -> !"c".equals(n)));
+        }
+    }
+}
@@ -0,0 +1,96 @@
+/*
+Copyright (C) 2015 Electronic Arts Inc.  All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions
+are met:
+
+1.  Redistributions of source code must retain the above copyright
+    notice, this list of conditions and the following disclaimer.
+2.  Redistributions in binary form must reproduce the above copyright
+    notice, this list of conditions and the following disclaimer in the
+    documentation and/or other materials provided with the distribution.
+3.  Neither the name of Electronic Arts, Inc. ("EA") nor the names of
+    its contributors may be used to endorse or promote products derived
+    from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY ELECTRONIC ARTS AND ITS CONTRIBUTORS "AS IS" AND ANY
+EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL ELECTRONIC ARTS OR ITS CONTRIBUTORS BE LIABLE FOR ANY
+DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package com.ea.orbit.actors.runtime;
+
+import com.ea.orbit.concurrent.Task;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+
+public class IdleIndexTest
+{
+    @SuppressWarnings("unchecked")
+    private static ActorBaseEntry<?> entry()
+    {
+        return new ActorBaseEntry(null)
+        {
+            @Override
+            public Task<Void> deactivate()
+            {
+                return Task.done();
+            }
+
+            @Override
+            public Object getObject()
+            {
+                return null;
+            }
+        };
+    }
+
+    @Test
+    public void entriesAreReturnedAfterTheirExpiration()
+    {
+        final IdleIndex index = new IdleIndex(100);
+        final ActorBaseEntry<?> first = entry();
+        final ActorBaseEntry<?> second = entry();
+        index.add(first, 150);
+        index.add(second, 250);
+        assertEquals(2, index.size());
+        assertEquals(Collections.emptyList(), index.pollExpired(150));
+        assertEquals(Collections.singletonList(first), index.pollExpired(200));
+        assertEquals(Collections.singletonList(second), index.pollExpired(1000));
+        assertEquals(0, index.size());
+    }
+
+    @Test
+    public void infiniteTtlIsNotIndexed()
+    {
+        final IdleIndex index = new IdleIndex(100);
+        index.add(entry(), IdleIndex.expiresAt(1000, Long.MAX_VALUE));
+        assertEquals(0, index.size());
+        assertEquals(Collections.emptyList(), index.pollExpired(2000));
+    }
+
+    @Test
+    public void farExpirationDoesNotOverflow()
+    {
+        final IdleIndex index = new IdleIndex(1000);
+        final ActorBaseEntry<?> far = entry();
+        final ActorBaseEntry<?> near = entry();
+        index.add(far, Long.MAX_VALUE - 1);
+        index.add(near, 10);
+        assertEquals(Arrays.asList(near), index.pollExpired(5000));
+        assertEquals(1, index.size());
+    }
+}
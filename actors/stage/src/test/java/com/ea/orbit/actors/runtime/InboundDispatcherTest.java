@@ -0,0 +1,142 @@
+/*
+Copyright (C) 2015 Electronic Arts Inc.  All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions
+are met:
+
+1.  Redistributions of source code must retain the above copyright
+    notice, this list of conditions and the following disclaimer.
+2.  Redistributions in binary form must reproduce the above copyright
+    notice, this list of conditions and the following disclaimer in the
+    documentation and/or other materials provided with the distribution.
+3.  Neither the name of Electronic Arts, Inc. ("EA") nor the names of
+    its contributors may be used to endorse or promote products derived
+    from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY ELECTRONIC ARTS AND ITS CONTRIBUTORS "AS IS" AND ANY
+EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL ELECTRONIC ARTS OR ITS CONTRIBUTORS BE LIABLE FOR ANY
+DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package com.ea.orbit.actors.runtime;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class InboundDispatcherTest
+{
+    @Test
+    public void ordersBySender() throws Exception
+    {
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try
+        {
+            final InboundDispatcher dispatcher = new InboundDispatcher(executor, 100, 4);
+            final Map<Integer, List<Integer>> received = new ConcurrentHashMap<>();
+            final CountDownLatch done = new CountDownLatch(4 * 1000);
+            for (int i = 0; i < 1000; i++)
+            {
+                for (int sender = 0; sender < 4; sender++)
+                {
+                    final int s = sender;
+                    final int seq = i;
+                    dispatcher.dispatch(s, () -> {
+                        received.computeIfAbsent(s, k -> Collections.synchronizedList(new ArrayList<>())).add(seq);
+                        done.countDown();
+                    });
+                }
+            }
+            assertTrue(done.await(10, TimeUnit.SECONDS));
+            for (List<Integer> list : received.values())
+            {
+                for (int i = 0; i < list.size(); i++)
+                {
+                    assertEquals(Integer.valueOf(i), list.get(i));
+                }
+            }
+            assertEquals(4000, dispatcher.getDispatchedCount());
+            assertEquals(0, dispatcher.getQueueSize());
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void blocksWhenFull() throws Exception
+    {
+        final List<Runnable> pending = Collections.synchronizedList(new ArrayList<>());
+        // an executor that only runs the tasks when asked to
+        final InboundDispatcher dispatcher = new InboundDispatcher(pending::add, 2);
+        dispatcher.dispatch("a", () -> {
+        });
+        dispatcher.dispatch("b", () -> {
+        });
+        assertEquals(2, dispatcher.getQueueSize());
+
+        final CountDownLatch dispatched = new CountDownLatch(1);
+        final Thread thread = new Thread(() -> {
+            dispatcher.dispatch("c", () -> {
+            });
+            dispatched.countDown();
+        });
+        thread.start();
+        assertFalse(dispatched.await(100, TimeUnit.MILLISECONDS));
+
+        pending.remove(0).run();
+        assertTrue(dispatched.await(10, TimeUnit.SECONDS));
+        assertEquals(1, dispatcher.getBackpressureWaits());
+        assertEquals(2, dispatcher.getQueueSize());
+    }
+
+    @Test
+    public void idleLanesArePruned()
+    {
+        final List<Runnable> pending = new ArrayList<>();
+        final InboundDispatcher dispatcher = new InboundDispatcher(pending::add, 10);
+        final List<String> received = new ArrayList<>();
+        dispatcher.dispatch("a", () -> received.add("a1"));
+        dispatcher.dispatch("b", () -> received.add("b1"));
+        assertEquals(2, dispatcher.getLaneCount());
+
+        // b still has a queued frame, a is done but was used since the last pruning
+        pending.remove(0).run();
+        dispatcher.pruneIdleLanes();
+        assertEquals(2, dispatcher.getLaneCount());
+        dispatcher.pruneIdleLanes();
+        assertEquals(1, dispatcher.getLaneCount());
+
+        // a sender that comes back gets a new lane
+        dispatcher.dispatch("a", () -> received.add("a2"));
+        assertEquals(2, dispatcher.getLaneCount());
+        while (!pending.isEmpty())
+        {
+            pending.remove(0).run();
+        }
+        assertEquals(Arrays.asList("a1", "b1", "a2"), received);
+        dispatcher.pruneIdleLanes();
+        dispatcher.pruneIdleLanes();
+        assertEquals(0, dispatcher.getLaneCount());
+    }
+}
@@ -0,0 +1,77 @@
+/*
+Copyright (C) 2015 Electronic Arts Inc.  All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions
+are met:
+
+1.  Redistributions of source code must retain the above copyright
+    notice, this list of conditions and the following disclaimer.
+2.  Redistributions in binary form must reproduce the above copyright
+    notice, this list of conditions and the following disclaimer in the
+    documentation and/or other materials provided with the distribution.
+3.  Neither the name of Electronic Arts, Inc. ("EA") nor the names of
+    its contributors may be used to endorse or promote products derived
+    from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY ELECTRONIC ARTS AND ITS CONTRIBUTORS "AS IS" AND ANY
+EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL ELECTRONIC ARTS OR ITS CONTRIBUTORS BE LIABLE FOR ANY
+DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package com.ea.orbit.actors.runtime;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.Optional;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assume.assumeTrue;
+
+public class MemoryGovernorTest
+{
+    @Test
+    public void thresholdsAreSharedAndRestored()
+    {
+        final Optional<MemoryPoolMXBean> found = ManagementFactory.getMemoryPoolMXBeans().stream()
+                .filter(p -> p.getType() == MemoryType.HEAP && p.isCollectionUsageThresholdSupported() && p.getUsage().getMax() > 0)
+                .findFirst();
+        assumeTrue(found.isPresent());
+        final MemoryPoolMXBean pool = found.get();
+        final long max = pool.getUsage().getMax();
+        final long previous = pool.getCollectionUsageThreshold();
+
+        final MemoryGovernor first = new MemoryGovernor();
+        first.setHighWatermark(0.9);
+        final MemoryGovernor second = new MemoryGovernor();
+        second.setHighWatermark(0.8);
+        try
+        {
+            first.start(() -> {
+            });
+            assertEquals((long) (max * 0.9), pool.getCollectionUsageThreshold());
+            second.start(() -> {
+            });
+            // the lowest wins
+            assertEquals((long) (max * 0.8), pool.getCollectionUsageThreshold());
+            second.stop();
+            assertEquals((long) (max * 0.9), pool.getCollectionUsageThreshold());
+        }
+        finally
+        {
+            second.stop();
+            first.stop();
+        }
+        assertEquals(previous, pool.getCollectionUsageThreshold());
+    }
+}
@@ -0,0 +1,73 @@
+/*
+Copyright (C) 2015 Electronic Arts Inc.  All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions
+are met:
+
+1.  Redistributions of source code must retain the above copyright
+    notice, this list of conditions and the following disclaimer.
+2.  Redistributions in binary form must reproduce the above copyright
+    notice, this list of conditions and the following disclaimer in the
+    documentation and/or other materials provided with the distribution.
+3.  Neither the name of Electronic Arts, Inc. ("EA") nor the names of
+    its contributors may be used to endorse or promote products derived
+    from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY ELECTRONIC ARTS AND ITS CONTRIBUTORS "AS IS" AND ANY
+EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL ELECTRONIC ARTS OR ITS CONTRIBUTORS BE LIABLE FOR ANY
+DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package com.ea.orbit.actors.runtime;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class MessageBufferPoolTest
+{
+    @Test
+    public void buffersAreReused()
+    {
+        final MessageBufferPool pool = new MessageBufferPool(2, 16, 1024);
+        final MessageBufferPool.Buffer buffer = pool.acquire();
+        buffer.write(1);
+        pool.release(buffer);
+        final MessageBufferPool.Buffer again = pool.acquire();
+        assertSame(buffer, again);
+        assertEquals(0, again.size());
+        assertEquals(2, pool.getAcquiredCount());
+        assertEquals(1, pool.getCreatedCount());
+    }
+
+    @Test
+    public void poolIsBounded()
+    {
+        final MessageBufferPool pool = new MessageBufferPool(2, 16, 1024);
+        final MessageBufferPool.Buffer b1 = pool.acquire();
+        final MessageBufferPool.Buffer b2 = pool.acquire();
+        final MessageBufferPool.Buffer b3 = pool.acquire();
+        pool.release(b1);
+        pool.release(b2);
+        pool.release(b3);
+        assertEquals(2, pool.getPooledCount());
+    }
+
+    @Test
+    public void largeBuffersAreDiscarded()
+    {
+        final MessageBufferPool pool = new MessageBufferPool(2, 16, 1024);
+        final MessageBufferPool.Buffer buffer = pool.acquire();
+        buffer.write(new byte[2048], 0, 2048);
+        pool.release(buffer);
+        assertEquals(0, pool.getPooledCount());
+    }
+}
@@ -509,7 +509,9 @@ public class ActorBaseTest
     @After
     public void tearDown()
     {
-        Task.runAsync(() -> stages.stream()
+        // copying the list, the other @After method may clear it before the task runs
+        final List<Stage> toStop = new ArrayList<>(stages);
+        Task.runAsync(() -> toStop.stream()
                 .filter(s -> s.getState() == NodeCapabilities.NodeState.RUNNING)
                 .forEach(s -> {
                     try
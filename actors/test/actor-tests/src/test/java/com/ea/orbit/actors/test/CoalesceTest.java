@@ -0,0 +1,151 @@
+/*
+Copyright (C) 2015 Electronic Arts Inc.  All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions
+are met:
+
+1.  Redistributions of source code must retain the above copyright
+    notice, this list of conditions and the following disclaimer.
+2.  Redistributions in binary form must reproduce the above copyright
+    notice, this list of conditions and the following disclaimer in the
+    documentation and/or other materials provided with the distribution.
+3.  Neither the name of Electronic Arts, Inc. ("EA") nor the names of
+    its contributors may be used to endorse or promote products derived
+    from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY ELECTRONIC ARTS AND ITS CONTRIBUTORS "AS IS" AND ANY
+EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL ELECTRONIC ARTS OR ITS CONTRIBUTORS BE LIABLE FOR ANY
+DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package com.ea.orbit.actors.test;
+
+import com.ea.orbit.actors.Actor;
+import com.ea.orbit.actors.Stage;
+import com.ea.orbit.actors.annotation.Coalesce;
+import com.ea.orbit.actors.runtime.AbstractActor;
+import com.ea.orbit.actors.runtime.ActorTaskContext;
+import com.ea.orbit.concurrent.Task;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+
+public class CoalesceTest extends ActorBaseTest
+{
+    private static Task<Void> gate;
+    private static final AtomicInteger executions = new AtomicInteger();
+
+    public interface Leaderboard extends Actor
+    {
+        @Coalesce
+        Task<List<String>> top(int count);
+    }
+
+    public static class LeaderboardActor extends AbstractActor implements Leaderboard
+    {
+        @Override
+        public Task<List<String>> top(final int count)
+        {
+            executions.incrementAndGet();
+            final List<String> list = new ArrayList<>();
+            for (int i = 0; i < count; i++)
+            {
+                list.add("p" + i);
+            }
+            return gate.thenApply(v -> list);
+        }
+    }
+
+    @Test
+    public void concurrentCallsAreMerged()
+    {
+        createStage();
+        Stage client = createClient();
+        gate = new Task<>();
+        executions.set(0);
+
+        // the responses wait for the gate
+        final Leaderboard leaderboard = client.getReference(Leaderboard.class, "1");
+        final List<Task<List<String>>> calls = new ArrayList<>();
+        for (int i = 0; i < 10; i++)
+        {
+            calls.add(leaderboard.top(2));
+        }
+        final Task<List<String>> other = leaderboard.top(3);
+        gate.complete(null);
+
+        for (Task<List<String>> call : calls)
+        {
+            assertEquals(Arrays.asList("p0", "p1"), call.join());
+        }
+        // each caller receives its own copy
+        assertNotSame(calls.get(0).join(), calls.get(1).join());
+        assertEquals(3, other.join().size());
+        assertEquals(2, executions.get());
+        assertEquals(9, client.getCoalescedRequests());
+    }
+
+    @Test
+    public void responsesAreNotCached()
+    {
+        createStage();
+        Stage client = createClient();
+        gate = Task.done();
+        executions.set(0);
+
+        final Leaderboard leaderboard = client.getReference(Leaderboard.class, "1");
+        leaderboard.top(2).join();
+        leaderboard.top(2).join();
+        assertEquals(2, executions.get());
+    }
+
+    @Test
+    public void callsWithOtherDeadlinesOrHeadersAreNotMerged()
+    {
+        createStage();
+        Stage client = createClient();
+        gate = new Task<>();
+        executions.set(0);
+
+        final Leaderboard leaderboard = client.getReference(Leaderboard.class, "1");
+        final Task<List<String>> plain = leaderboard.top(2);
+        final Task<List<String>> longer;
+        final Task<List<String>> traced;
+        final ActorTaskContext context = ActorTaskContext.pushNew();
+        try
+        {
+            context.setResponseTimeout(1, TimeUnit.MINUTES);
+            longer = leaderboard.top(2);
+            context.setResponseTimeout(0, TimeUnit.MILLISECONDS);
+            context.setProperty("orbit.traceId", "trace-1");
+            traced = leaderboard.top(2);
+        }
+        finally
+        {
+            context.pop();
+        }
+        gate.complete(null);
+
+        assertEquals(2, plain.join().size());
+        assertEquals(2, longer.join().size());
+        assertEquals(2, traced.join().size());
+        assertEquals(3, executions.get());
+        assertEquals(0, client.getCoalescedRequests());
+    }
+}
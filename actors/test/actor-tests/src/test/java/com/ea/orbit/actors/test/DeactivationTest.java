@@ -31,8 +31,11 @@ package com.ea.orbit.actors.test;
 
 import com.ea.orbit.actors.Actor;
 import com.ea.orbit.actors.Stage;
+import com.ea.orbit.actors.annotation.ActorTTL;
+import com.ea.orbit.actors.runtime.AbstractActor;
 import com.ea.orbit.actors.test.actors.SomeActor;
 import com.ea.orbit.actors.test.actors.StatelessThing;
+import com.ea.orbit.concurrent.Task;
 
 import org.junit.Ignore;
 import org.junit.Test;
@@ -112,6 +115,69 @@ public class DeactivationTest extends ClientTest
         assertEquals(2, set.size());
     }
 
+    public interface ShortLived extends Actor
+    {
+        Task<UUID> getUniqueActivationId();
+    }
+
+    @ActorTTL(value = 30, timeUnit = TimeUnit.SECONDS)
+    public static class ShortLivedActor extends AbstractActor implements ShortLived
+    {
+        private final UUID id = UUID.randomUUID();
+
+        @Override
+        public Task<UUID> getUniqueActivationId()
+        {
+            return Task.fromValue(id);
+        }
+    }
+
+    @Test
+    public void actorTTLTest() throws ExecutionException, InterruptedException
+    {
+        clock.stop();
+        Stage stage = createStage();
+        ShortLived shortLived = Actor.getReference(ShortLived.class, "1");
+        SomeActor someActor = Actor.getReference(SomeActor.class, "1");
+        final UUID shortId = shortLived.getUniqueActivationId().join();
+        final UUID someId = someActor.getUniqueActivationId().join();
+
+        clock.incrementTime(1, TimeUnit.MINUTES);
+        stage.cleanup().join();
+        assertNotEquals(shortId, shortLived.getUniqueActivationId().join());
+        assertEquals(someId, someActor.getUniqueActivationId().join());
+    }
+
+    @Test
+    public void sweepVisitsOnlyExpiredActors() throws ExecutionException, InterruptedException
+    {
+        clock.stop();
+        Stage stage = createStage();
+        final List<SomeActor> actors = new ArrayList<>();
+        for (int i = 0; i < 20; i++)
+        {
+            actors.add(Actor.getReference(SomeActor.class, "sweep" + i));
+        }
+        final UUID usedId = actors.get(0).getUniqueActivationId().join();
+        for (SomeActor actor : actors)
+        {
+            actor.getUniqueActivationId().join();
+        }
+
+        stage.cleanup().join();
+        assertEquals(0, stage.getLastSweepSize());
+
+        clock.incrementTime(8, TimeUnit.MINUTES);
+        actors.get(0).getUniqueActivationId().join();
+        clock.incrementTime(8, TimeUnit.MINUTES);
+        final long deactivatedBefore = stage.getDeactivatedActors();
+        stage.cleanup().join();
+        // all were visited, the one used since its activation was kept
+        assertTrue(stage.getLastSweepSize() >= 20);
+        assertEquals(19, stage.getDeactivatedActors() - deactivatedBefore);
+        assertEquals(usedId, actors.get(0).getUniqueActivationId().join());
+    }
+
     @SuppressWarnings("unused")
     @Test
     @Ignore
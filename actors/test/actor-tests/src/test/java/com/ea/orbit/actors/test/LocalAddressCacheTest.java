@@ -0,0 +1,76 @@
+/*
+Copyright (C) 2015 Electronic Arts Inc.  All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions
+are met:
+
+1.  Redistributions of source code must retain the above copyright
+    notice, this list of conditions and the following disclaimer.
+2.  Redistributions in binary form must reproduce the above copyright
+    notice, this list of conditions and the following disclaimer in the
+    documentation and/or other materials provided with the distribution.
+3.  Neither the name of Electronic Arts, Inc. ("EA") nor the names of
+    its contributors may be used to endorse or promote products derived
+    from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY ELECTRONIC ARTS AND ITS CONTRIBUTORS "AS IS" AND ANY
+EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL ELECTRONIC ARTS OR ITS CONTRIBUTORS BE LIABLE FOR ANY
+DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+package com.ea.orbit.actors.test;
+
+
+import com.ea.orbit.actors.Stage;
+import com.ea.orbit.actors.test.actors.SomeActor;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@SuppressWarnings("unused")
+public class LocalAddressCacheTest extends ActorBaseTest
+{
+    @Test
+    public void cacheIsBounded()
+    {
+        Stage stage1 = createStage();
+        Stage client = createClient();
+        client.getHosting().setMaxLocalAddressCacheCount(10);
+
+        for (int i = 0; i < 200; i++)
+        {
+            client.getReference(SomeActor.class, "a" + i).sayHello("bla").join();
+        }
+        client.getHosting().cleanup();
+        assertTrue(client.getHosting().getLocalAddressCacheSize() <= 10);
+        assertTrue(client.getHosting().getLocalAddressCacheEvictions() > 0);
+    }
+
+    @Test
+    public void hitsAndMisses()
+    {
+        Stage stage1 = createStage();
+        Stage client = createClient();
+
+        SomeActor someActor = client.getReference(SomeActor.class, "1");
+        final long misses = client.getHosting().getLocalAddressCacheMisses();
+        assertEquals("bla", someActor.sayHello("bla").join());
+        assertTrue(client.getHosting().getLocalAddressCacheMisses() > misses);
+
+        final long hits = client.getHosting().getLocalAddressCacheHits();
+        for (int i = 0; i < 10; i++)
+        {
+            assertEquals("bla", someActor.sayHello("bla").join());
+        }
+        assertTrue(client.getHosting().getLocalAddressCacheHits() >= hits + 10);
+    }
+}
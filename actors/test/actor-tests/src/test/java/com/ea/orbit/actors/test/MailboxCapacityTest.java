@@ -0,0 +1,169 @@
+/*
+Copyright (C) 2015 Electronic Arts Inc.  All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions
+are met:
+
+1.  Redistributions of source code must retain the above copyright
+    notice, this list of conditions and the following disclaimer.
+2.  Redistributions in binary form must reproduce the above copyright
+    notice, this list of conditions and the following disclaimer in the
+    documentation and/or other materials provided with the distribution.
+3.  Neither the name of Electronic Arts, Inc. ("EA") nor the names of
+    its contributors may be used to endorse or promote products derived
+    from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY ELECTRONIC ARTS AND ITS CONTRIBUTORS "AS IS" AND ANY
+EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL ELECTRONIC ARTS OR ITS CONTRIBUTORS BE LIABLE FOR ANY
+DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package com.ea.orbit.actors.test;
+
+import com.ea.orbit.actors.Actor;
+import com.ea.orbit.actors.Stage;
+import com.ea.orbit.actors.annotation.MailboxCapacity;
+import com.ea.orbit.actors.annotation.OneWay;
+import com.ea.orbit.actors.exceptions.MailboxFullException;
+import com.ea.orbit.actors.runtime.AbstractActor;
+import com.ea.orbit.concurrent.Task;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class MailboxCapacityTest extends ActorBaseTest
+{
+    private static Task<Void> gate;
+    private static final AtomicBoolean blocked = new AtomicBoolean();
+    private static final List<Integer> received = new CopyOnWriteArrayList<>();
+
+    public interface Small extends Actor
+    {
+        Task<Void> block();
+
+        Task<Integer> call(int i);
+    }
+
+    @MailboxCapacity(2)
+    public static class SmallActor extends AbstractActor implements Small
+    {
+        @Override
+        public Task<Void> block()
+        {
+            blocked.set(true);
+            return gate;
+        }
+
+        @Override
+        public Task<Integer> call(final int i)
+        {
+            return Task.fromValue(i);
+        }
+    }
+
+    public interface Tracker extends Actor
+    {
+        Task<Void> block();
+
+        @OneWay
+        Task<Void> position(int i);
+    }
+
+    @MailboxCapacity(value = 2, overflow = MailboxCapacity.OverflowPolicy.DROP_OLDEST)
+    public static class TrackerActor extends AbstractActor implements Tracker
+    {
+        @Override
+        public Task<Void> block()
+        {
+            blocked.set(true);
+            return gate;
+        }
+
+        @Override
+        public Task<Void> position(final int i)
+        {
+            received.add(i);
+            return Task.done();
+        }
+    }
+
+    @Test(timeout = 30_000L)
+    public void remoteCallerGetsBusy()
+    {
+        Stage stage = createStage();
+        Stage client = createClient();
+        gate = new Task<>();
+        blocked.set(false);
+
+        final Small small = client.getReference(Small.class, "1");
+        final Task<Void> block = small.block();
+        eventuallyTrue(blocked::get);
+
+        // the mailbox holds two, no matter the order in which they arrive one of the three is refused
+        final List<Task<Integer>> calls = new ArrayList<>();
+        for (int i = 0; i < 3; i++)
+        {
+            calls.add(small.call(i));
+        }
+        eventuallyTrue(() -> calls.stream().anyMatch(Task::isDone));
+        gate.complete(null);
+        block.join();
+
+        int refused = 0;
+        for (Task<Integer> call : calls)
+        {
+            try
+            {
+                call.join();
+            }
+            catch (CompletionException ex)
+            {
+                assertTrue(ex.getCause() instanceof MailboxFullException);
+                refused++;
+            }
+        }
+        assertEquals(1, refused);
+        assertEquals(1, stage.getMessaging().getBusyResponsesSent());
+        assertEquals(1, client.getMessaging().getBusyResponsesReceived());
+    }
+
+    @Test(timeout = 30_000L)
+    public void oneWayDropsOldest()
+    {
+        Stage stage = createStage();
+        gate = new Task<>();
+        blocked.set(false);
+        received.clear();
+
+        // local calls, the messages reach the mailbox in the order they are sent
+        final Tracker tracker = stage.getReference(Tracker.class, "1");
+        final Task<Void> block = tracker.block();
+        eventuallyTrue(blocked::get);
+        for (int i = 0; i < 5; i++)
+        {
+            tracker.position(i);
+        }
+        gate.complete(null);
+        block.join();
+
+        eventuallyTrue(() -> received.size() == 2);
+        assertEquals(Arrays.asList(3, 4), received);
+    }
+}
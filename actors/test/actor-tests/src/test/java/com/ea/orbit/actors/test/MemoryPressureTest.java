@@ -0,0 +1,117 @@
+/*
+Copyright (C) 2015 Electronic Arts Inc.  All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions
+are met:
+
+1.  Redistributions of source code must retain the above copyright
+    notice, this list of conditions and the following disclaimer.
+2.  Redistributions in binary form must reproduce the above copyright
+    notice, this list of conditions and the following disclaimer in the
+    documentation and/or other materials provided with the distribution.
+3.  Neither the name of Electronic Arts, Inc. ("EA") nor the names of
+    its contributors may be used to endorse or promote products derived
+    from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY ELECTRONIC ARTS AND ITS CONTRIBUTORS "AS IS" AND ANY
+EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL ELECTRONIC ARTS OR ITS CONTRIBUTORS BE LIABLE FOR ANY
+DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+package com.ea.orbit.actors.test;
+
+import com.ea.orbit.actors.Actor;
+import com.ea.orbit.actors.Stage;
+import com.ea.orbit.actors.runtime.AbstractActor;
+import com.ea.orbit.concurrent.Task;
+
+import org.junit.Test;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class MemoryPressureTest extends ActorBaseTest
+{
+    public interface Tracked extends Actor
+    {
+        Task<UUID> getActivationId();
+
+        Task<String> getNodeId();
+    }
+
+    public static class TrackedActor extends AbstractActor implements Tracked
+    {
+        private final UUID id = UUID.randomUUID();
+
+        @Override
+        public Task<UUID> getActivationId()
+        {
+            return Task.fromValue(id);
+        }
+
+        @Override
+        public Task<String> getNodeId()
+        {
+            return Task.fromValue(runtimeIdentity());
+        }
+    }
+
+    @Test
+    public void activationLimitShedsLeastRecentlyUsed()
+    {
+        clock.stop();
+        Stage stage = createStage();
+        final int baseline = stage.getLocalActorCount();
+        final UUID oldest = Actor.getReference(Tracked.class, "0").getActivationId().join();
+        for (int i = 1; i < 30; i++)
+        {
+            clock.incrementTime(100, TimeUnit.MILLISECONDS);
+            Actor.getReference(Tracked.class, String.valueOf(i)).getActivationId().join();
+        }
+        clock.incrementTime(100, TimeUnit.MILLISECONDS);
+        final UUID newest = Actor.getReference(Tracked.class, "29").getActivationId().join();
+
+        stage.setMaxActivations(baseline + 20);
+        stage.cleanup().join();
+
+        assertTrue(stage.getShedActors() >= 10);
+        assertTrue(stage.getLocalActorCount() <= baseline + 20);
+        assertTrue(stage.getHosting().isUnderPressure());
+        assertEquals(newest, Actor.getReference(Tracked.class, "29").getActivationId().join());
+        assertNotEquals(oldest, Actor.getReference(Tracked.class, "0").getActivationId().join());
+
+        stage.setMaxActivations(0);
+        stage.cleanup().join();
+        assertTrue(!stage.getHosting().isUnderPressure() || stage.getHeapUsagePercent() >= stage.getMemoryLowWatermark() * 100);
+    }
+
+    @Test
+    public void noPlacementOnNodeUnderPressure()
+    {
+        Stage stage1 = createStage();
+        Stage stage2 = createStage();
+        Stage client = createClient();
+
+        stage1.setMaxActivations(1);
+        stage1.cleanup().join();
+        // the pressure notifications are one way messages
+        eventuallyTrue(() -> client.getHosting().isUnderPressure(stage1.getLocalAddress()));
+
+        client.bind();
+        for (int i = 0; i < 10; i++)
+        {
+            assertEquals(stage2.runtimeIdentity(), Actor.getReference(Tracked.class, "p" + i).getNodeId().join());
+        }
+    }
+}
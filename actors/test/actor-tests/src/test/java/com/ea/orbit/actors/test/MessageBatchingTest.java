@@ -0,0 +1,90 @@
+/*
+Copyright (C) 2015 Electronic Arts Inc.  All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions
+are met:
+
+1.  Redistributions of source code must retain the above copyright
+    notice, this list of conditions and the following disclaimer.
+2.  Redistributions in binary form must reproduce the above copyright
+    notice, this list of conditions and the following disclaimer in the
+    documentation and/or other materials provided with the distribution.
+3.  Neither the name of Electronic Arts, Inc. ("EA") nor the names of
+    its contributors may be used to endorse or promote products derived
+    from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY ELECTRONIC ARTS AND ITS CONTRIBUTORS "AS IS" AND ANY
+EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL ELECTRONIC ARTS OR ITS CONTRIBUTORS BE LIABLE FOR ANY
+DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package com.ea.orbit.actors.test;
+
+import com.ea.orbit.actors.Actor;
+import com.ea.orbit.actors.Stage;
+import com.ea.orbit.actors.extensions.MessageBatchingHandler;
+import com.ea.orbit.actors.runtime.AbstractActor;
+import com.ea.orbit.concurrent.Task;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class MessageBatchingTest extends ActorBaseTest
+{
+    private final List<MessageBatchingHandler> handlers = new ArrayList<>();
+
+    public interface Echo extends Actor
+    {
+        Task<Integer> echo(int value);
+    }
+
+    public static class EchoActor extends AbstractActor implements Echo
+    {
+        @Override
+        public Task<Integer> echo(final int value)
+        {
+            return Task.fromValue(value);
+        }
+    }
+
+    @Override
+    protected void installExtensions(final Stage stage)
+    {
+        super.installExtensions(stage);
+        final MessageBatchingHandler handler = new MessageBatchingHandler();
+        handler.setMaxBatchDelayMicros(500);
+        handlers.add(handler);
+        stage.addExtension(handler);
+    }
+
+    @Test
+    public void batchedRequestsAndResponses()
+    {
+        createStage();
+        Stage client = createClient();
+        client.bind();
+
+        final List<Task<Integer>> results = new ArrayList<>();
+        for (int i = 0; i < 200; i++)
+        {
+            results.add(Actor.getReference(Echo.class, String.valueOf(i % 10)).echo(i));
+        }
+        for (int i = 0; i < results.size(); i++)
+        {
+            assertEquals(Integer.valueOf(i), results.get(i).join());
+        }
+        assertTrue(handlers.stream().mapToLong(MessageBatchingHandler::getBatchesSent).sum() > 0);
+    }
+}
@@ -37,11 +37,14 @@ import com.ea.orbit.concurrent.Task;
 import org.junit.Test;
 
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
 
 @SuppressWarnings("unused")
 public class MessageTimeoutTest extends ActorBaseTest
@@ -126,4 +129,27 @@ public class MessageTimeoutTest extends ActorBaseTest
         eventuallyTrue(() -> timeoutCall.isCompletedExceptionally());
     }
 
+    @Test
+    public void timeoutCompletedByTheExecutionPool() throws Exception
+    {
+        clock.stop();
+        Stage stage1 = createStage();
+        Stage client = createClient();
+
+        SomeActor someActor = client.getReference(SomeActor.class, "1");
+        someActor.getUniqueActivationId(0).join();
+
+        final Task<UUID> call = someActor.getUniqueActivationId(TimeUnit.SECONDS.toNanos(200));
+        final CompletableFuture<Thread> completionThread = new CompletableFuture<>();
+        call.whenComplete((r, e) -> completionThread.complete(Thread.currentThread()));
+
+        clock.incrementTime(60, TimeUnit.MINUTES);
+        client.cleanup().join();
+
+        final Thread thread = completionThread.get(10, TimeUnit.SECONDS);
+        assertTrue(call.isCompletedExceptionally());
+        assertNotEquals(Thread.currentThread(), thread);
+        assertNotEquals("Messaging timer", thread.getName());
+    }
+
 }
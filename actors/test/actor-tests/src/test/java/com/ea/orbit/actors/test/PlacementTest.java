@@ -0,0 +1,123 @@
+/*
+Copyright (C) 2015 Electronic Arts Inc.  All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions
+are met:
+
+1.  Redistributions of source code must retain the above copyright
+    notice, this list of conditions and the following disclaimer.
+2.  Redistributions in binary form must reproduce the above copyright
+    notice, this list of conditions and the following disclaimer in the
+    documentation and/or other materials provided with the distribution.
+3.  Neither the name of Electronic Arts, Inc. ("EA") nor the names of
+    its contributors may be used to endorse or promote products derived
+    from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY ELECTRONIC ARTS AND ITS CONTRIBUTORS "AS IS" AND ANY
+EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL ELECTRONIC ARTS OR ITS CONTRIBUTORS BE LIABLE FOR ANY
+DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+package com.ea.orbit.actors.test;
+
+
+import com.ea.orbit.actors.Actor;
+import com.ea.orbit.actors.Stage;
+import com.ea.orbit.actors.annotation.Placement;
+import com.ea.orbit.actors.cluster.NodeAddress;
+import com.ea.orbit.actors.runtime.AbstractActor;
+import com.ea.orbit.concurrent.Task;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+
+@SuppressWarnings("unused")
+public class PlacementTest extends ActorBaseTest
+{
+    @Placement("least-loaded")
+    public interface LeastLoaded extends Actor
+    {
+        Task<String> getNodeId();
+    }
+
+    public static class LeastLoadedActor extends AbstractActor implements LeastLoaded
+    {
+        @Override
+        public Task<String> getNodeId()
+        {
+            return Task.fromValue(runtimeIdentity());
+        }
+    }
+
+    @Placement("consistent-hash")
+    public interface Hashed extends Actor
+    {
+        Task<String> getNodeId();
+    }
+
+    public static class HashedActor extends AbstractActor implements Hashed
+    {
+        @Override
+        public Task<String> getNodeId()
+        {
+            return Task.fromValue(runtimeIdentity());
+        }
+    }
+
+    @Test
+    public void leastLoadedPlacement()
+    {
+        Stage stage1 = createStage();
+        for (int i = 0; i < 20; i++)
+        {
+            Actor.getReference(LeastLoaded.class, "a" + i).getNodeId().join();
+        }
+        Stage stage2 = createStage();
+        Stage client = createClient();
+        stage1.cleanup().join();
+        stage2.cleanup().join();
+        // the load reports are one way messages
+        eventuallyTrue(() -> client.getHosting().getActivationCount(stage1.getLocalAddress()) >= 20);
+
+        client.bind();
+        // stage2 is empty, it should get all the new activations until it catches up with stage1
+        for (int i = 0; i < 10; i++)
+        {
+            assertEquals(stage2.runtimeIdentity(), Actor.getReference(LeastLoaded.class, "b" + i).getNodeId().join());
+        }
+    }
+
+    @Test
+    public void consistentHashPlacement()
+    {
+        List<Stage> stages = new ArrayList<>();
+        for (int i = 0; i < 4; i++)
+        {
+            stages.add(createStage());
+        }
+        Stage client = createClient();
+        client.bind();
+        // clients are part of the ring, but can't own actors
+        final List<NodeAddress> servers = stages.stream().map(Stage::getLocalAddress).collect(Collectors.toList());
+        for (int i = 0; i < 20; i++)
+        {
+            final String nodeId = Actor.getReference(Hashed.class, "h" + i).getNodeId().join();
+            final String key = Hashed.class.getName() + ":h" + i;
+            final NodeAddress ownerAddress = client.getHosting().getConsistentHashOwner(key, servers);
+            final Stage owner = stages.stream().filter(s -> s.getLocalAddress().equals(ownerAddress)).findFirst().get();
+            assertEquals(owner.runtimeIdentity(), nodeId);
+        }
+    }
+}
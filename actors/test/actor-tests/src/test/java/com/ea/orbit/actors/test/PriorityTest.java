@@ -0,0 +1,111 @@
+/*
+Copyright (C) 2015 Electronic Arts Inc.  All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions
+are met:
+
+1.  Redistributions of source code must retain the above copyright
+    notice, this list of conditions and the following disclaimer.
+2.  Redistributions in binary form must reproduce the above copyright
+    notice, this list of conditions and the following disclaimer in the
+    documentation and/or other materials provided with the distribution.
+3.  Neither the name of Electronic Arts, Inc. ("EA") nor the names of
+    its contributors may be used to endorse or promote products derived
+    from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY ELECTRONIC ARTS AND ITS CONTRIBUTORS "AS IS" AND ANY
+EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL ELECTRONIC ARTS OR ITS CONTRIBUTORS BE LIABLE FOR ANY
+DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package com.ea.orbit.actors.test;
+
+import com.ea.orbit.actors.Actor;
+import com.ea.orbit.actors.Stage;
+import com.ea.orbit.actors.annotation.Priority;
+import com.ea.orbit.actors.runtime.AbstractActor;
+import com.ea.orbit.concurrent.Task;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+
+public class PriorityTest extends ActorBaseTest
+{
+    private static Task<Void> gate;
+    private static final AtomicBoolean blocked = new AtomicBoolean();
+    private static final List<String> executed = new CopyOnWriteArrayList<>();
+
+    public interface Worker extends Actor
+    {
+        Task<Void> block();
+
+        Task<Void> work(String name);
+
+        @Priority(Priority.Level.HIGH)
+        Task<Void> urgent(String name);
+    }
+
+    public static class WorkerActor extends AbstractActor implements Worker
+    {
+        @Override
+        public Task<Void> block()
+        {
+            blocked.set(true);
+            return gate;
+        }
+
+        @Override
+        public Task<Void> work(final String name)
+        {
+            executed.add(name);
+            return Task.done();
+        }
+
+        @Override
+        public Task<Void> urgent(final String name)
+        {
+            executed.add(name);
+            return Task.done();
+        }
+    }
+
+    @Test(timeout = 30_000L)
+    public void highPriorityGoesFirst()
+    {
+        Stage stage = createStage();
+        gate = new Task<>();
+        blocked.set(false);
+        executed.clear();
+
+        // local calls, the messages reach the mailbox in the order they are sent
+        final Worker worker = stage.getReference(Worker.class, "1");
+        final Task<Void> block = worker.block();
+        eventuallyTrue(blocked::get);
+        final List<Task<Void>> calls = new ArrayList<>();
+        for (int i = 0; i < 5; i++)
+        {
+            calls.add(worker.work("work" + i));
+        }
+        calls.add(worker.urgent("urgent"));
+        gate.complete(null);
+        block.join();
+        Task.allOf(calls).join();
+
+        assertEquals("urgent", executed.get(0));
+        assertEquals(6, executed.size());
+    }
+}
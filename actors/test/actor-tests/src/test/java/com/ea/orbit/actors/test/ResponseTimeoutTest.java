@@ -0,0 +1,230 @@
+/*
+Copyright (C) 2015 Electronic Arts Inc.  All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions
+are met:
+
+1.  Redistributions of source code must retain the above copyright
+    notice, this list of conditions and the following disclaimer.
+2.  Redistributions in binary form must reproduce the above copyright
+    notice, this list of conditions and the following disclaimer in the
+    documentation and/or other materials provided with the distribution.
+3.  Neither the name of Electronic Arts, Inc. ("EA") nor the names of
+    its contributors may be used to endorse or promote products derived
+    from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY ELECTRONIC ARTS AND ITS CONTRIBUTORS "AS IS" AND ANY
+EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL ELECTRONIC ARTS OR ITS CONTRIBUTORS BE LIABLE FOR ANY
+DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package com.ea.orbit.actors.test;
+
+import com.ea.orbit.actors.Actor;
+import com.ea.orbit.actors.Stage;
+import com.ea.orbit.actors.annotation.Timeout;
+import com.ea.orbit.actors.runtime.AbstractActor;
+import com.ea.orbit.actors.runtime.ActorTaskContext;
+import com.ea.orbit.actors.runtime.JavaMessageSerializer;
+import com.ea.orbit.actors.runtime.Message;
+import com.ea.orbit.actors.runtime.MessageDefinitions;
+import com.ea.orbit.concurrent.Task;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ResponseTimeoutTest extends ActorBaseTest
+{
+    private static Task<Void> gate;
+    private static final AtomicInteger executions = new AtomicInteger();
+
+    public interface Slow extends Actor
+    {
+        Task<Void> ping();
+
+        Task<Void> block();
+
+        @Timeout(value = 2, timeUnit = TimeUnit.SECONDS)
+        Task<Integer> shortCall();
+
+        Task<Integer> call();
+    }
+
+    public static class SlowActor extends AbstractActor implements Slow
+    {
+        @Override
+        public Task<Void> ping()
+        {
+            return Task.done();
+        }
+
+        @Override
+        public Task<Void> block()
+        {
+            return gate;
+        }
+
+        @Override
+        public Task<Integer> shortCall()
+        {
+            return gate.thenApply(v -> executions.incrementAndGet());
+        }
+
+        @Override
+        public Task<Integer> call()
+        {
+            return gate.thenApply(v -> executions.incrementAndGet());
+        }
+    }
+
+    @Test
+    public void methodTimeout()
+    {
+        clock.stop();
+        createStage();
+        Stage client = createClient();
+        gate = new Task<>();
+        executions.set(0);
+
+        final Slow slow = client.getReference(Slow.class, "1");
+        slow.ping().join();
+        final Task<Integer> shortCall = slow.shortCall();
+        final Task<Integer> call = slow.call();
+
+        clock.incrementTime(5, TimeUnit.SECONDS);
+        client.cleanup().join();
+        eventuallyTrue(() -> shortCall.isCompletedExceptionally());
+        assertTrue(getCause(shortCall) instanceof TimeoutException);
+        // still within the default timeout
+        assertFalse(call.isDone());
+
+        gate.complete(null);
+        call.join();
+    }
+
+    @Test
+    public void contextTimeout()
+    {
+        clock.stop();
+        createStage();
+        Stage client = createClient();
+        gate = new Task<>();
+        executions.set(0);
+
+        final Slow slow = client.getReference(Slow.class, "1");
+        slow.ping().join();
+
+        final ActorTaskContext context = ActorTaskContext.pushNew();
+        final Task<Integer> call;
+        try
+        {
+            context.setResponseTimeout(1, TimeUnit.SECONDS);
+            call = slow.call();
+        }
+        finally
+        {
+            context.pop();
+        }
+        final Task<Integer> otherCall = slow.call();
+
+        clock.incrementTime(5, TimeUnit.SECONDS);
+        client.cleanup().join();
+        eventuallyTrue(() -> call.isCompletedExceptionally());
+        assertFalse(otherCall.isDone());
+
+        gate.complete(null);
+        otherCall.join();
+    }
+
+    @Test
+    public void expiredRequestsAreNotExecuted()
+    {
+        clock.stop();
+        Stage stage = createStage();
+        gate = new Task<>();
+        executions.set(0);
+
+        // local calls, to be sure that they are queued in this order before the clock moves
+        final Slow slow = stage.getReference(Slow.class, "1");
+        slow.ping().join();
+        final Task<Void> blocked = slow.block();
+        final Task<Integer> shortCall = slow.shortCall();
+        final Task<Integer> call = slow.call();
+
+        // the short call deadline passes while it waits behind the blocking call
+        clock.incrementTime(5, TimeUnit.SECONDS);
+        gate.complete(null);
+        blocked.join();
+
+        // the short call was dropped
+        assertEquals(Integer.valueOf(1), call.join());
+        assertEquals(1, executions.get());
+        eventuallyTrue(() -> shortCall.isCompletedExceptionally());
+    }
+
+    private Throwable getCause(final Task<?> task)
+    {
+        Throwable cause = expectException(task::join);
+        while (cause.getCause() != null && !(cause instanceof TimeoutException))
+        {
+            cause = cause.getCause();
+        }
+        return cause;
+    }
+
+    @Test
+    public void javaSerializerCarriesTheDeadline() throws Exception
+    {
+        final Stage stage = createStage();
+        final JavaMessageSerializer serializer = new JavaMessageSerializer();
+        final Message untimed = new Message()
+                .withMessageType(MessageDefinitions.REQUEST_MESSAGE)
+                .withMessageId(1)
+                .withObjectId("1")
+                .withPayload(new Object[]{ "a" });
+        final Message timed = new Message()
+                .withMessageType(MessageDefinitions.REQUEST_MESSAGE)
+                .withMessageId(2)
+                .withObjectId("1")
+                .withPayload(new Object[]{ "a" })
+                .withHeaders(Collections.<Object, Object>singletonMap("h", "v"))
+                .withTimeoutAt(stage.clock().millis() + 5000);
+
+        // the deadline travels in its own field, the headers are left untouched
+        final Message readUntimed = roundTrip(serializer, stage, untimed);
+        assertEquals(0, readUntimed.getTimeoutAt());
+        assertNull(readUntimed.getHeaders());
+
+        final Message readTimed = roundTrip(serializer, stage, timed);
+        assertTrue(readTimed.getTimeoutAt() > stage.clock().millis());
+        assertTrue(readTimed.getTimeoutAt() <= stage.clock().millis() + 5000);
+        assertEquals(Collections.singletonMap("h", "v"), readTimed.getHeaders());
+        assertEquals(Collections.singletonMap("h", "v"), timed.getHeaders());
+    }
+
+    private static Message roundTrip(final JavaMessageSerializer serializer, final Stage stage, final Message message) throws Exception
+    {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        serializer.serializeMessage(stage, out, message);
+        return serializer.deserializeMessage(stage, new ByteArrayInputStream(out.toByteArray()));
+    }
+}
@@ -0,0 +1,253 @@
+/*
+Copyright (C) 2015 Electronic Arts Inc.  All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions
+are met:
+
+1.  Redistributions of source code must retain the above copyright
+    notice, this list of conditions and the following disclaimer.
+2.  Redistributions in binary form must reproduce the above copyright
+    notice, this list of conditions and the following disclaimer in the
+    documentation and/or other materials provided with the distribution.
+3.  Neither the name of Electronic Arts, Inc. ("EA") nor the names of
+    its contributors may be used to endorse or promote products derived
+    from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY ELECTRONIC ARTS AND ITS CONTRIBUTORS "AS IS" AND ANY
+EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL ELECTRONIC ARTS OR ITS CONTRIBUTORS BE LIABLE FOR ANY
+DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+package com.ea.orbit.actors.test;
+
+import com.ea.orbit.actors.Actor;
+import com.ea.orbit.actors.Stage;
+import com.ea.orbit.actors.annotation.MailboxCapacity;
+import com.ea.orbit.actors.annotation.OneWay;
+import com.ea.orbit.actors.annotation.WriteBehind;
+import com.ea.orbit.actors.runtime.AbstractActor;
+import com.ea.orbit.concurrent.Task;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class WriteBehindTest extends ActorBaseTest
+{
+    private static Task<Void> gate;
+    private static final AtomicBoolean blocked = new AtomicBoolean();
+
+    public interface Counter extends Actor
+    {
+        Task<Integer> increment();
+
+        Task<Void> save();
+    }
+
+    public static class CounterState
+    {
+        int count;
+    }
+
+    public interface SlowCounter extends Actor
+    {
+        Task<Integer> increment();
+
+        Task<Void> save();
+    }
+
+    public abstract static class AbstractCounter extends AbstractActor<CounterState>
+    {
+        public Task<Integer> increment()
+        {
+            state().count++;
+            writeState();
+            return Task.fromValue(state().count);
+        }
+
+        public Task<Void> save()
+        {
+            return flushState();
+        }
+    }
+
+    @WriteBehind(maxDelayMs = 1000, maxDirtyMs = 3000)
+    public static class CounterActor extends AbstractCounter implements Counter
+    {
+    }
+
+    @WriteBehind(maxDelayMs = 3_600_000, maxDirtyMs = 3_600_000)
+    public static class SlowCounterActor extends AbstractCounter implements SlowCounter
+    {
+    }
+
+    public interface BusyCounter extends Actor
+    {
+        Task<Integer> increment();
+
+        Task<Void> block();
+
+        @OneWay
+        Task<Void> ping();
+    }
+
+    @WriteBehind(maxDelayMs = 1000, maxDirtyMs = 3000)
+    @MailboxCapacity(value = 2, overflow = MailboxCapacity.OverflowPolicy.DROP_OLDEST)
+    public static class BusyCounterActor extends AbstractCounter implements BusyCounter
+    {
+        @Override
+        public Task<Void> block()
+        {
+            blocked.set(true);
+            return gate;
+        }
+
+        @Override
+        public Task<Void> ping()
+        {
+            return Task.done();
+        }
+    }
+
+    private Object stored(Actor counter)
+    {
+        return fakeDatabase.get(counter);
+    }
+
+    @Test
+    public void writesAreCoalesced()
+    {
+        clock.stop();
+        Stage stage = createStage();
+        final Counter counter = Actor.getReference(Counter.class, "1");
+        for (int i = 0; i < 10; i++)
+        {
+            counter.increment().join();
+        }
+        assertNull(stored(counter));
+        assertEquals(10, stage.getDeferredStateWrites());
+        assertEquals(1, stage.getDirtyActors());
+
+        clock.incrementTime(1100, TimeUnit.MILLISECONDS);
+        eventuallyTrue(() -> "{\"count\":10}".equals(stored(counter)));
+        eventuallyTrue(() -> stage.getFlushedStateWrites() == 1);
+        eventuallyTrue(() -> stage.getDirtyActors() == 0);
+    }
+
+    @Test
+    public void continuousWritesAreFlushedAfterMaxDirty()
+    {
+        clock.stop();
+        Stage stage = createStage();
+        final Counter counter = Actor.getReference(Counter.class, "1");
+        for (int i = 0; i < 6; i++)
+        {
+            counter.increment().join();
+            clock.incrementTime(500, TimeUnit.MILLISECONDS);
+        }
+        counter.increment().join();
+        // never idle for maxDelayMs, but dirty for 3000ms
+        eventuallyTrue(() -> stored(counter) != null);
+        eventuallyTrue(() -> stage.getFlushedStateWrites() == 1);
+    }
+
+    @Test
+    public void explicitFlush()
+    {
+        clock.stop();
+        createStage();
+        final SlowCounter counter = Actor.getReference(SlowCounter.class, "1");
+        counter.increment().join();
+        counter.increment().join();
+        assertNull(stored(counter));
+        counter.save().join();
+        assertEquals("{\"count\":2}", stored(counter));
+    }
+
+    @Test
+    public void flushOnDeactivation()
+    {
+        clock.stop();
+        Stage stage = createStage();
+        final SlowCounter counter = Actor.getReference(SlowCounter.class, "1");
+        counter.increment().join();
+        clock.incrementTime(20, TimeUnit.MINUTES);
+        assertNull(stored(counter));
+        stage.cleanup().join();
+        assertEquals("{\"count\":1}", stored(counter));
+        // the new activation reads what was written
+        assertEquals(2, (int) counter.increment().join());
+    }
+
+    @Test
+    public void flushOnStop()
+    {
+        clock.stop();
+        Stage stage = createStage();
+        final SlowCounter counter = Actor.getReference(SlowCounter.class, "1");
+        counter.increment().join();
+        assertNull(stored(counter));
+        stage.stop().join();
+        assertEquals("{\"count\":1}", stored(counter));
+    }
+
+    @Test
+    public void writesAfterAnExplicitFlushAreNotLost()
+    {
+        clock.stop();
+        Stage stage = createStage();
+        final Counter counter = Actor.getReference(Counter.class, "1");
+        counter.increment().join();
+        counter.save().join();
+        // the flusher forgets the clean activation
+        eventuallyTrue(() -> stage.getDirtyActors() == 0);
+        for (int i = 0; i < 100; i++)
+        {
+            counter.increment().join();
+            counter.save().join();
+        }
+        counter.increment().join();
+        assertEquals(1, stage.getDirtyActors());
+
+        clock.incrementTime(1100, TimeUnit.MILLISECONDS);
+        eventuallyTrue(() -> "{\"count\":102}".equals(stored(counter)));
+        eventuallyTrue(() -> stage.getDirtyActors() == 0);
+    }
+
+    @Test
+    public void queuedFlushSurvivesMailboxOverflow()
+    {
+        clock.stop();
+        Stage stage = createStage();
+        gate = new Task<>();
+        blocked.set(false);
+        final BusyCounter counter = Actor.getReference(BusyCounter.class, "1");
+        counter.increment().join();
+        final Task<Void> block = counter.block();
+        eventuallyTrue(blocked::get);
+
+        // the write is queued behind the blocked call
+        clock.incrementTime(1100, TimeUnit.MILLISECONDS);
+        eventuallyTrue(() -> stage.getDirtyActors() == 0);
+        for (int i = 0; i < 5; i++)
+        {
+            counter.ping();
+        }
+        gate.complete(null);
+        block.join();
+
+        eventuallyTrue(() -> "{\"count\":1}".equals(stored(counter)));
+        eventuallyTrue(() -> stage.getFlushedStateWrites() == 1);
+    }
+}
@@ -33,13 +33,20 @@ import com.ea.orbit.actors.Actor;
 import com.ea.orbit.actors.Remindable;
 import com.ea.orbit.actors.Stage;
 import com.ea.orbit.actors.runtime.AbstractActor;
+import com.ea.orbit.actors.runtime.ReminderController;
 import com.ea.orbit.actors.runtime.ReminderControllerActor;
+import com.ea.orbit.actors.runtime.ReminderEntry;
+import com.ea.orbit.actors.runtime.RemoteReference;
 import com.ea.orbit.actors.runtime.TickStatus;
 import com.ea.orbit.actors.test.ActorBaseTest;
+import com.ea.orbit.actors.test.FakeStorageExtension;
 import com.ea.orbit.concurrent.Task;
 
 import org.junit.Test;
 
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Set;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.LinkedBlockingQueue;
@@ -47,6 +54,7 @@ import java.util.concurrent.TimeUnit;
 
 import static junit.framework.TestCase.assertNull;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 @SuppressWarnings("unused")
 public class ReminderTests extends ActorBaseTest
@@ -113,5 +121,64 @@ public class ReminderTests extends ActorBaseTest
         stage2.stop().join();
     }
 
+    @Test
+    public void shardedReminders() throws ExecutionException, InterruptedException
+    {
+        Stage stage1 = createStage();
+
+        for (int i = 0; i < 8; i++)
+        {
+            Actor.getReference(ReminderTest.class, "s" + i).addReminder("r" + i, 0, 50, TimeUnit.MILLISECONDS).join();
+        }
+        // each reminder is saved in a page record of its shard
+        final long shards = fakeDatabase.keySet().stream()
+                .filter(k -> k instanceof ReminderController)
+                .map(k -> String.valueOf(RemoteReference.getId((RemoteReference<?>) k)))
+                .filter(id -> id.contains(":"))
+                .map(id -> id.substring(0, id.indexOf(':')))
+                .distinct().count();
+        assertTrue("shards used: " + shards, shards > 1);
+
+        final Set<String> received = new HashSet<>();
+        while (received.size() < 8)
+        {
+            received.add(remindersReceived.poll(5, TimeUnit.SECONDS));
+        }
+        for (int i = 0; i < 8; i++)
+        {
+            stage1.unregisterReminder(Actor.getReference(ReminderTest.class, "s" + i), "r" + i).join();
+        }
+        Thread.sleep(ReminderControllerActor.BUCKET_MILLIS);
+        remindersReceived.clear();
+        assertNull(remindersReceived.poll(2 * ReminderControllerActor.BUCKET_MILLIS, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void legacyRemindersMovedToShards() throws ExecutionException, InterruptedException
+    {
+        Stage stage1 = createStage();
+        String id = "1";
+        for (int i = 0; "0".equals(ReminderControllerActor.getShardId(Actor.getReference(ReminderTest.class, id), stage1.getReminderShards())); i++)
+        {
+            id = "legacy" + i;
+        }
+        // the reminders used to be all saved in the state of the controller "0"
+        final ReminderEntry entry = new ReminderEntry();
+        entry.setReference(Actor.getReference(ReminderTest.class, id));
+        entry.setReminderName("legacy");
+        entry.setStartAt(new Date(clock.millis()));
+        entry.setPeriod(50);
+        final ReminderControllerActor.State legacy = new ReminderControllerActor.State();
+        legacy.reminders.add(entry);
+        new FakeStorageExtension(fakeDatabase).writeState((RemoteReference<?>) Actor.getReference(ReminderController.class, "0"), legacy).join();
+        stage1.stop().join();
+
+        Stage stage2 = createStage();
+        assertEquals("legacy", remindersReceived.poll(10, TimeUnit.SECONDS));
+        final ReminderControllerActor.State saved = new ReminderControllerActor.State();
+        new FakeStorageExtension(fakeDatabase).readState((RemoteReference<?>) Actor.getReference(ReminderController.class, "0"), saved).join();
+        assertTrue(saved.reminders.isEmpty());
+        stage2.stop().join();
+    }
 
-}
+}
\ No newline at end of file
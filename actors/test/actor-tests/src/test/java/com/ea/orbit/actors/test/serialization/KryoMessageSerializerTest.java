@@ -0,0 +1,297 @@
+/*
+Copyright (C) 2015 Electronic Arts Inc.  All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions
+are met:
+
+1.  Redistributions of source code must retain the above copyright
+    notice, this list of conditions and the following disclaimer.
+2.  Redistributions in binary form must reproduce the above copyright
+    notice, this list of conditions and the following disclaimer in the
+    documentation and/or other materials provided with the distribution.
+3.  Neither the name of Electronic Arts, Inc. ("EA") nor the names of
+    its contributors may be used to endorse or promote products derived
+    from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY ELECTRONIC ARTS AND ITS CONTRIBUTORS "AS IS" AND ANY
+EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL ELECTRONIC ARTS OR ITS CONTRIBUTORS BE LIABLE FOR ANY
+DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package com.ea.orbit.actors.test.serialization;
+
+import com.ea.orbit.actors.Actor;
+import com.ea.orbit.actors.ActorObserver;
+import com.ea.orbit.actors.Stage;
+import com.ea.orbit.actors.annotation.OneWay;
+import com.ea.orbit.actors.cluster.NodeAddressImpl;
+import com.ea.orbit.actors.extensions.MessageSerializer;
+import com.ea.orbit.actors.runtime.AbstractActor;
+import com.ea.orbit.actors.runtime.ActorFactoryGenerator;
+import com.ea.orbit.actors.runtime.JavaMessageSerializer;
+import com.ea.orbit.actors.runtime.KryoMessageSerializer;
+import com.ea.orbit.actors.runtime.Message;
+import com.ea.orbit.actors.runtime.MessageDefinitions;
+import com.ea.orbit.actors.runtime.RemoteReference;
+import com.ea.orbit.actors.test.ActorBaseTest;
+import com.ea.orbit.concurrent.Task;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class KryoMessageSerializerTest extends ActorBaseTest
+{
+    public static class Data
+    {
+        final String name;
+        final int value;
+        Map<String, List<Integer>> map;
+
+        public Data(final String name, final int value)
+        {
+            this.name = name;
+            this.value = value;
+        }
+    }
+
+    public interface Listener extends ActorObserver
+    {
+        @OneWay
+        Task<Void> receive(String message);
+    }
+
+    public static class ListenerImpl implements Listener
+    {
+        final BlockingQueue<String> received = new LinkedBlockingQueue<>();
+
+        @Override
+        public Task<Void> receive(final String message)
+        {
+            received.add(message);
+            return Task.done();
+        }
+    }
+
+    public interface Echo extends Actor
+    {
+        Task<Integer> sum(int a, long b, Integer c);
+
+        Task<String> concat(String a, String b);
+
+        Task<List<String>> list(List<String> list);
+
+        Task<Data> data(Data data);
+
+        Task<Echo> self(Echo self);
+
+        Task<Void> notify(Listener listener, String message);
+
+        Task<Void> fail(String message);
+    }
+
+    public static class EchoActor extends AbstractActor implements Echo
+    {
+        @Override
+        public Task<Integer> sum(final int a, final long b, final Integer c)
+        {
+            return Task.fromValue((int) (a + b + (c != null ? c : 0)));
+        }
+
+        @Override
+        public Task<String> concat(final String a, final String b)
+        {
+            return Task.fromValue(a + b);
+        }
+
+        @Override
+        public Task<List<String>> list(final List<String> list)
+        {
+            return Task.fromValue(list);
+        }
+
+        @Override
+        public Task<Data> data(final Data data)
+        {
+            return Task.fromValue(data);
+        }
+
+        @Override
+        public Task<Echo> self(final Echo self)
+        {
+            return Task.fromValue(self);
+        }
+
+        @Override
+        public Task<Void> notify(final Listener listener, final String message)
+        {
+            return listener.receive(message);
+        }
+
+        @Override
+        public Task<Void> fail(final String message)
+        {
+            throw new IllegalArgumentException(message);
+        }
+    }
+
+    @Override
+    protected void installExtensions(final Stage stage)
+    {
+        super.installExtensions(stage);
+        stage.setMessageSerializer(new KryoMessageSerializer());
+    }
+
+    @Test
+    public void remoteCalls() throws Exception
+    {
+        createStage();
+        Stage client = createClient();
+        final Echo echo = client.getReference(Echo.class, "1");
+
+        assertEquals(Integer.valueOf(6), echo.sum(1, 2L, 3).join());
+        assertEquals(Integer.valueOf(3), echo.sum(1, 2L, null).join());
+        assertEquals("ab", echo.concat("a", "b").join());
+        assertEquals("anull", echo.concat("a", null).join());
+        assertEquals(Arrays.asList("x", "y"), echo.list(Arrays.asList("x", "y")).join());
+        assertEquals(Collections.singletonList("x"), echo.list(Collections.unmodifiableList(Collections.singletonList("x"))).join());
+
+        final Data data = new Data("d", 5);
+        data.map = new HashMap<>();
+        data.map.put("k", Arrays.asList(1, 2));
+        final Data result = echo.data(data).join();
+        assertEquals("d", result.name);
+        assertEquals(5, result.value);
+        assertEquals(Arrays.asList(1, 2), result.map.get("k"));
+
+        assertEquals(echo, echo.self(echo).join());
+    }
+
+    @Test
+    public void observers() throws Exception
+    {
+        createStage();
+        Stage client = createClient();
+        final Echo echo = client.getReference(Echo.class, "1");
+        final ListenerImpl observer = new ListenerImpl();
+        final Listener listener = client.registerObserver(Listener.class, observer);
+        echo.notify(listener, "hi").join();
+        assertEquals("hi", observer.received.poll(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void exceptions() throws Exception
+    {
+        createStage();
+        Stage client = createClient();
+        final Echo echo = client.getReference(Echo.class, "1");
+        final Throwable ex = expectException(() -> echo.fail("boom").join());
+        Throwable cause = ex;
+        while (cause.getCause() != null && !(cause instanceof IllegalArgumentException))
+        {
+            cause = cause.getCause();
+        }
+        assertTrue(cause instanceof IllegalArgumentException);
+        assertEquals("boom", cause.getMessage());
+    }
+
+    @Test
+    public void smallerThanJavaSerialization() throws Exception
+    {
+        final Stage stage = createStage();
+        final Echo echo = stage.getReference(Echo.class, "1");
+        final Message message = new Message()
+                .withMessageType(MessageDefinitions.REQUEST_MESSAGE)
+                .withMessageId(10)
+                .withInterfaceId(RemoteReference.getInterfaceId((RemoteReference<?>) echo))
+                .withMethodId(methodId("concat"))
+                .withObjectId("1")
+                .withFromNode(new NodeAddressImpl(UUID.randomUUID()))
+                .withPayload(new Object[]{ "a", "b" });
+
+        final byte[] kryo = serialize(new KryoMessageSerializer(), stage, message);
+        final byte[] java = serialize(new JavaMessageSerializer(), stage, message);
+        assertTrue("kryo: " + kryo.length + " java: " + java.length, kryo.length * 3 < java.length);
+
+        final Message read = new KryoMessageSerializer().deserializeMessage(stage, new ByteArrayInputStream(kryo));
+        assertEquals(message.getMessageType(), read.getMessageType());
+        assertEquals(message.getMessageId(), read.getMessageId());
+        assertEquals(message.getInterfaceId(), read.getInterfaceId());
+        assertEquals(message.getMethodId(), read.getMethodId());
+        assertEquals("1", read.getObjectId());
+        assertEquals(message.getFromNode(), read.getFromNode());
+        assertArrayEquals((Object[]) message.getPayload(), (Object[]) read.getPayload());
+    }
+
+    @Test
+    public void requestPayloadDecodedOnDemand() throws Exception
+    {
+        final Stage stage = createStage();
+        final Echo echo = stage.getReference(Echo.class, "1");
+        final Message message = new Message()
+                .withMessageType(MessageDefinitions.REQUEST_MESSAGE)
+                .withMessageId(10)
+                .withInterfaceId(RemoteReference.getInterfaceId((RemoteReference<?>) echo))
+                .withMethodId(methodId("concat"))
+                .withObjectId("1")
+                .withPayload(new Object[]{ "a", "b" });
+
+        final KryoMessageSerializer serializer = new KryoMessageSerializer();
+        final byte[] bytes = serialize(serializer, stage, message);
+        final Message read = serializer.deserializeMessage(stage, new ByteArrayInputStream(bytes));
+        assertNotNull(read.getSerializedPayload());
+
+        // forwarding the message sends the same payload bytes without decoding them
+        assertArrayEquals(bytes, serialize(serializer, stage, read));
+        assertNotNull(read.getSerializedPayload());
+
+        assertArrayEquals(new Object[]{ "a", "b" }, (Object[]) read.getPayload());
+        assertNull(read.getSerializedPayload());
+    }
+
+    @Test
+    public void forwardedCalls() throws Exception
+    {
+        createStage();
+        createStage();
+        Stage client = createClient();
+        for (int i = 0; i < 20; i++)
+        {
+            final Echo echo = client.getReference(Echo.class, String.valueOf(i));
+            assertEquals("a" + i, echo.concat("a", String.valueOf(i)).join());
+            assertEquals(echo, echo.self(echo).join());
+        }
+    }
+
+    private static int methodId(final String name) throws Exception
+    {
+        return new ActorFactoryGenerator().getMethodId(Echo.class.getMethod(name, String.class, String.class));
+    }
+
+    private static byte[] serialize(final MessageSerializer serializer, final Stage stage, final Message message) throws Exception
+    {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        serializer.serializeMessage(stage, out, message);
+        return out.toByteArray();
+    }
+}
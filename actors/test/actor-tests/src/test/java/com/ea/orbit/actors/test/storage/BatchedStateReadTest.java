@@ -0,0 +1,218 @@
+/*
+Copyright (C) 2015 Electronic Arts Inc.  All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions
+are met:
+
+1.  Redistributions of source code must retain the above copyright
+    notice, this list of conditions and the following disclaimer.
+2.  Redistributions in binary form must reproduce the above copyright
+    notice, this list of conditions and the following disclaimer in the
+    documentation and/or other materials provided with the distribution.
+3.  Neither the name of Electronic Arts, Inc. ("EA") nor the names of
+    its contributors may be used to endorse or promote products derived
+    from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY ELECTRONIC ARTS AND ITS CONTRIBUTORS "AS IS" AND ANY
+EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL ELECTRONIC ARTS OR ITS CONTRIBUTORS BE LIABLE FOR ANY
+DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+package com.ea.orbit.actors.test.storage;
+
+import com.ea.orbit.actors.Actor;
+import com.ea.orbit.actors.Stage;
+import com.ea.orbit.actors.annotation.StorageExtension;
+import com.ea.orbit.actors.runtime.AbstractActor;
+import com.ea.orbit.actors.runtime.RemoteReference;
+import com.ea.orbit.actors.test.ActorBaseTest;
+import com.ea.orbit.actors.test.FakeStorageExtension;
+import com.ea.orbit.concurrent.Task;
+import com.ea.orbit.exception.UncheckedException;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class BatchedStateReadTest extends ActorBaseTest
+{
+    private static final int ACTORS = 50;
+
+    private ConcurrentHashMap<Object, Object> slowDatabase = new ConcurrentHashMap<>();
+    private AtomicInteger singleReads = new AtomicInteger();
+    private AtomicInteger batchReads = new AtomicInteger();
+    private AtomicInteger concurrentReads = new AtomicInteger();
+    private AtomicInteger maxConcurrentReads = new AtomicInteger();
+    private Set<String> corruptIds = ConcurrentHashMap.newKeySet();
+
+    public interface Stored extends Actor
+    {
+        Task<Void> put(String value);
+
+        Task<String> get();
+    }
+
+    public static class StoredState
+    {
+        String value;
+    }
+
+    @StorageExtension("slow")
+    public static class StoredActor extends AbstractActor<StoredState> implements Stored
+    {
+        @Override
+        public Task<Void> put(final String value)
+        {
+            state().value = value;
+            return writeState();
+        }
+
+        @Override
+        public Task<String> get()
+        {
+            return Task.fromValue(state().value);
+        }
+    }
+
+    /**
+     * Every round trip takes a while, so that the concurrent activations pile up behind it.
+     */
+    private class SlowStorageExtension extends FakeStorageExtension
+    {
+        SlowStorageExtension()
+        {
+            super("slow", slowDatabase);
+        }
+
+        @Override
+        public Task<Boolean> readState(final RemoteReference<?> reference, final Object state)
+        {
+            singleReads.incrementAndGet();
+            roundTrip();
+            if (corruptIds.contains(RemoteReference.getId(reference)))
+            {
+                return Task.fromException(new UncheckedException("Undecodable state of " + reference));
+            }
+            return super.readState(reference, state);
+        }
+
+        @Override
+        public Task<List<Boolean>> readStates(final List<RemoteReference<?>> references, final List<Object> states)
+        {
+            batchReads.incrementAndGet();
+            roundTrip();
+            final List<Boolean> found = new ArrayList<>();
+            for (int i = 0; i < references.size(); i++)
+            {
+                if (corruptIds.contains(RemoteReference.getId(references.get(i))))
+                {
+                    // decoded in one pass, like the native implementations
+                    return Task.fromException(new UncheckedException("Undecodable state of " + references.get(i)));
+                }
+                found.add(super.readState(references.get(i), states.get(i)).join());
+            }
+            return Task.fromValue(found);
+        }
+
+        private void roundTrip()
+        {
+            final int concurrent = concurrentReads.incrementAndGet();
+            maxConcurrentReads.accumulateAndGet(concurrent, Math::max);
+            try
+            {
+                Thread.sleep(20);
+            }
+            catch (InterruptedException e)
+            {
+                throw new UncheckedException(e);
+            }
+            finally
+            {
+                concurrentReads.decrementAndGet();
+            }
+        }
+    }
+
+    @Test
+    public void concurrentActivationsAreBatched()
+    {
+        Stage stage1 = createStage();
+        Task.allOf(IntStream.range(0, ACTORS).mapToObj(i -> Actor.getReference(Stored.class, String.valueOf(i)).put("v" + i))).join();
+        stage1.stop().join();
+
+        singleReads.set(0);
+        batchReads.set(0);
+        Stage stage2 = createStage();
+        final List<Task<String>> values = IntStream.range(0, ACTORS)
+                .mapToObj(i -> Actor.getReference(Stored.class, String.valueOf(i)).get())
+                .collect(Collectors.toList());
+        for (int i = 0; i < ACTORS; i++)
+        {
+            assertEquals("v" + i, values.get(i).join());
+        }
+        final int roundTrips = singleReads.get() + batchReads.get();
+        assertTrue("expected batched reads, got " + roundTrips + " round trips", roundTrips < ACTORS / 2);
+        assertTrue(stage2.getStateReadBatches() < stage2.getBatchedStateReads());
+        // the blocking reads don't wait for each other
+        assertTrue(maxConcurrentReads.get() > 1);
+    }
+
+    @Test
+    public void undecodableRecordOnlyFailsItsOwnActivation()
+    {
+        Stage stage1 = createStage();
+        Task.allOf(IntStream.range(0, ACTORS).mapToObj(i -> Actor.getReference(Stored.class, String.valueOf(i)).put("v" + i))).join();
+        stage1.stop().join();
+
+        corruptIds.add("7");
+        createStage();
+        final List<Task<String>> values = IntStream.range(0, ACTORS)
+                .mapToObj(i -> Actor.getReference(Stored.class, String.valueOf(i)).get())
+                .collect(Collectors.toList());
+        for (int i = 0; i < ACTORS; i++)
+        {
+            if (i == 7)
+            {
+                try
+                {
+                    values.get(i).join();
+                    fail("the corrupt record was read");
+                }
+                catch (CompletionException expected)
+                {
+                    // only this one
+                }
+            }
+            else
+            {
+                assertEquals("v" + i, values.get(i).join());
+            }
+        }
+        assertTrue(batchReads.get() > 0);
+    }
+
+    @Override
+    protected void installExtensions(final Stage stage)
+    {
+        super.installExtensions(stage);
+        stage.addExtension(new SlowStorageExtension());
+    }
+}
@@ -0,0 +1,212 @@
+/*
+Copyright (C) 2015 Electronic Arts Inc.  All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions
+are met:
+
+1.  Redistributions of source code must retain the above copyright
+    notice, this list of conditions and the following disclaimer.
+2.  Redistributions in binary form must reproduce the above copyright
+    notice, this list of conditions and the following disclaimer in the
+    documentation and/or other materials provided with the distribution.
+3.  Neither the name of Electronic Arts, Inc. ("EA") nor the names of
+    its contributors may be used to endorse or promote products derived
+    from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY ELECTRONIC ARTS AND ITS CONTRIBUTORS "AS IS" AND ANY
+EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL ELECTRONIC ARTS OR ITS CONTRIBUTORS BE LIABLE FOR ANY
+DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+package com.ea.orbit.actors.test.storage;
+
+import com.ea.orbit.actors.Actor;
+import com.ea.orbit.actors.Stage;
+import com.ea.orbit.actors.annotation.StorageExtension;
+import com.ea.orbit.actors.extensions.AbstractStorageExtension;
+import com.ea.orbit.actors.runtime.AbstractActor;
+import com.ea.orbit.actors.runtime.RemoteReference;
+import com.ea.orbit.actors.test.ActorBaseTest;
+import com.ea.orbit.concurrent.Task;
+import com.ea.orbit.exception.UncheckedException;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class StorageIoIsolationTest extends ActorBaseTest
+{
+    private static final int ACTORS = 10;
+
+    private CountDownLatch brownout = new CountDownLatch(1);
+    private Set<String> ioThreadNames = ConcurrentHashMap.newKeySet();
+    private BlockingStorageExtension storage = new BlockingStorageExtension();
+
+    public interface Stored extends Actor
+    {
+        Task<String> get();
+    }
+
+    public static class StoredState
+    {
+        String value;
+    }
+
+    @StorageExtension("blocking")
+    public static class StoredActor extends AbstractActor<StoredState> implements Stored
+    {
+        @Override
+        public Task<String> get()
+        {
+            return Task.fromValue("stored");
+        }
+    }
+
+    public interface Plain extends Actor
+    {
+        Task<String> ping();
+    }
+
+    public static class PlainActor extends AbstractActor implements Plain
+    {
+        @Override
+        public Task<String> ping()
+        {
+            return Task.fromValue("pong");
+        }
+    }
+
+    /**
+     * A storage whose calls block until the brownout ends.
+     */
+    private class BlockingStorageExtension extends AbstractStorageExtension
+    {
+        BlockingStorageExtension()
+        {
+            setName("blocking");
+        }
+
+        @Override
+        public Task<Boolean> readState(final RemoteReference<?> reference, final Object state)
+        {
+            return executeBlocking(() -> {
+                ioThreadNames.add(Thread.currentThread().getName());
+                if (!brownout.await(30, TimeUnit.SECONDS))
+                {
+                    throw new UncheckedException("brownout never ended");
+                }
+                return false;
+            });
+        }
+
+        @Override
+        public Task<Void> writeState(final RemoteReference<?> reference, final Object state)
+        {
+            return Task.done();
+        }
+
+        Task<Void> failingCall(final Exception error)
+        {
+            return executeBlocking(() -> {
+                throw error;
+            });
+        }
+
+        @Override
+        public Task<Void> clearState(final RemoteReference<?> reference, final Object state)
+        {
+            return Task.done();
+        }
+    }
+
+    @Test
+    public void blockedStorageDoesNotBlockOtherActors()
+    {
+        storage.setIoThreads(2);
+        createStage();
+        try
+        {
+            final List<Task<String>> activations = IntStream.range(0, ACTORS)
+                    .mapToObj(i -> Actor.getReference(Stored.class, String.valueOf(i)).get())
+                    .collect(Collectors.toList());
+            // the storage calls wait on the storage's own threads, the stage keeps serving
+            assertEquals("pong", Actor.getReference(Plain.class, "0").ping().join());
+            eventuallyTrue(() -> storage.getIoActive() == 2 && storage.getIoQueueLength() == ACTORS - 2);
+
+            brownout.countDown();
+            activations.forEach(Task::join);
+            assertTrue(ioThreadNames.stream().allMatch(name -> name.startsWith("orbit-storage-blocking-")));
+            assertEquals(2, ioThreadNames.size());
+            assertEquals(ACTORS, storage.getIoCompleted());
+            assertTrue(storage.getIoServiceTimeMillis() > 0);
+            assertTrue(storage.getIoQueueTimeMillis() > 0);
+        }
+        finally
+        {
+            brownout.countDown();
+        }
+    }
+
+    @Test
+    public void saturatedStorageFailsFast()
+    {
+        storage.setIoThreads(1);
+        storage.setIoQueueSize(2);
+        Stage stage = createStage();
+        try
+        {
+            final List<Task<String>> activations = IntStream.range(0, ACTORS)
+                    .mapToObj(i -> Actor.getReference(Stored.class, String.valueOf(i)).get())
+                    .collect(Collectors.toList());
+            // one running and two queued, the rest is refused without waiting for the storage
+            eventuallyTrue(() -> storage.getIoRejected() == ACTORS - 3);
+            eventuallyTrue(() -> activations.stream().filter(Task::isCompletedExceptionally).count() == ACTORS - 3);
+            assertEquals(ACTORS - 3, stage.getStorageIoRejected());
+
+            brownout.countDown();
+            assertEquals(3, activations.stream().filter(t -> t.handle((r, e) -> e == null).join()).count());
+        }
+        finally
+        {
+            brownout.countDown();
+        }
+    }
+
+    @Test
+    public void failuresAreReportedTheSameWithoutIoThreads()
+    {
+        for (int ioThreads : new int[]{ 0, 1 })
+        {
+            storage.setIoThreads(ioThreads);
+            // never thrown to the caller, with or without the pool
+            final Task<Void> checked = storage.failingCall(new IOException("down"));
+            final Task<Void> unchecked = storage.failingCall(new IllegalStateException("down"));
+            assertTrue(checked.handle((r, e) -> e != null).join());
+            assertTrue(unchecked.handle((r, e) -> e != null).join());
+        }
+    }
+
+    @Override
+    protected void installExtensions(final Stage stage)
+    {
+        super.installExtensions(stage);
+        stage.addExtension(storage);
+    }
+}
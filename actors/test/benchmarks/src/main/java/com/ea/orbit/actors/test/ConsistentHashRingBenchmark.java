@@ -0,0 +1,133 @@
+/*
+Copyright (C) 2015 Electronic Arts Inc.  All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions
+are met:
+
+1.  Redistributions of source code must retain the above copyright
+    notice, this list of conditions and the following disclaimer.
+2.  Redistributions in binary form must reproduce the above copyright
+    notice, this list of conditions and the following disclaimer in the
+    documentation and/or other materials provided with the distribution.
+3.  Neither the name of Electronic Arts, Inc. ("EA") nor the names of
+    its contributors may be used to endorse or promote products derived
+    from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY ELECTRONIC ARTS AND ITS CONTRIBUTORS "AS IS" AND ANY
+EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL ELECTRONIC ARTS OR ITS CONTRIBUTORS BE LIABLE FOR ANY
+DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package com.ea.orbit.actors.test;
+
+import com.ea.orbit.actors.runtime.ConsistentHashRing;
+import com.ea.orbit.exception.UncheckedException;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares owner lookups in the SHA-256 TreeMap ring previously used by Hosting
+ * with the murmur hash sorted array ring.
+ * <p>
+ * Run with {@code -prof gc} to see the allocation rate of each.
+ * </p>
+ */
+@State(Scope.Benchmark)
+@Fork(2)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ConsistentHashRingBenchmark
+{
+    private static final int KEY_COUNT = 1024;
+
+    @Param({ "10", "100" })
+    int nodeCount;
+
+    @Param({ "10", "100" })
+    int virtualNodes;
+
+    private TreeMap<String, String> treeRing;
+    private ConsistentHashRing<String> arrayRing;
+    private String[] keys;
+    private int next;
+
+    @Setup
+    public void setup()
+    {
+        List<String> nodes = new ArrayList<>();
+        treeRing = new TreeMap<>();
+        for (int i = 0; i < nodeCount; i++)
+        {
+            final String node = UUID.randomUUID().toString();
+            nodes.add(node);
+            for (int v = 0; v < virtualNodes; v++)
+            {
+                treeRing.put(sha256(node + ":" + v), node);
+            }
+        }
+        arrayRing = new ConsistentHashRing<>(nodes, n -> n, virtualNodes);
+        keys = new String[KEY_COUNT];
+        for (int i = 0; i < KEY_COUNT; i++)
+        {
+            keys[i] = "com.ea.orbit.actors.test.SomeActor:" + UUID.randomUUID();
+        }
+    }
+
+    @Benchmark
+    public String sha256TreeMap()
+    {
+        final String key = keys[next++ & (KEY_COUNT - 1)];
+        Map.Entry<String, String> entry = treeRing.ceilingEntry(sha256(key));
+        if (entry == null)
+        {
+            entry = treeRing.firstEntry();
+        }
+        return entry.getValue();
+    }
+
+    @Benchmark
+    public String murmurSortedArray()
+    {
+        return arrayRing.getOwner(keys[next++ & (KEY_COUNT - 1)]);
+    }
+
+    private static String sha256(final String key)
+    {
+        try
+        {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            md.update(key.getBytes("UTF-8"));
+            byte[] digest = md.digest();
+            return String.format("%064x", new BigInteger(1, digest));
+        }
+        catch (Exception e)
+        {
+            throw new UncheckedException(e);
+        }
+    }
+}
@@ -0,0 +1,200 @@
+/*
+Copyright (C) 2015 Electronic Arts Inc.  All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions
+are met:
+
+1.  Redistributions of source code must retain the above copyright
+    notice, this list of conditions and the following disclaimer.
+2.  Redistributions in binary form must reproduce the above copyright
+    notice, this list of conditions and the following disclaimer in the
+    documentation and/or other materials provided with the distribution.
+3.  Neither the name of Electronic Arts, Inc. ("EA") nor the names of
+    its contributors may be used to endorse or promote products derived
+    from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY ELECTRONIC ARTS AND ITS CONTRIBUTORS "AS IS" AND ANY
+EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL ELECTRONIC ARTS OR ITS CONTRIBUTORS BE LIABLE FOR ANY
+DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package com.ea.orbit.actors.test;
+
+import com.ea.orbit.actors.Actor;
+import com.ea.orbit.actors.Stage;
+import com.ea.orbit.actors.net.HandlerContext;
+import com.ea.orbit.actors.runtime.AbstractActor;
+import com.ea.orbit.actors.runtime.Invocation;
+import com.ea.orbit.actors.runtime.Message;
+import com.ea.orbit.actors.runtime.MessageDefinitions;
+import com.ea.orbit.actors.runtime.Messaging;
+import com.ea.orbit.actors.runtime.RemoteReference;
+import com.ea.orbit.concurrent.Task;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures what the request send path allocates, from the invocation to the message given to the network
+ * and back through the response.
+ * <p>
+ * Meant to be run with the gc profiler, the interesting figure is gc.alloc.rate.norm (bytes per operation):
+ * <pre>
+ * java -jar benchmarks.jar InvocationAllocationBenchmark -prof gc
+ * </pre>
+ * </p>
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+public class InvocationAllocationBenchmark
+{
+    private Stage stage;
+    private Messaging messaging;
+    private RemoteReference<?> reference;
+    private Method method;
+    private Object[] params = { "test" };
+
+    // network stand-in, answers every request right away reusing the same response message
+    private final Message response = new Message().withMessageType(MessageDefinitions.RESPONSE_OK).withPayload("test");
+    private HandlerContext ctx;
+
+    public interface Hello extends Actor
+    {
+        Task<String> sayHello(String greeting);
+    }
+
+    public static class HelloActor extends AbstractActor implements Hello
+    {
+        @Override
+        public Task<String> sayHello(final String greeting)
+        {
+            return Task.fromValue(greeting);
+        }
+    }
+
+    @Setup
+    public void setup() throws Exception
+    {
+        stage = new Stage.Builder()
+                .mode(Stage.StageMode.HOST)
+                .clusterPeer(new FakeClusterPeer())
+                .build();
+        stage.start().join();
+        stage.bind();
+
+        reference = (RemoteReference<?>) Actor.getReference(Hello.class, "hello");
+        method = Hello.class.getMethod("sayHello", String.class);
+
+        messaging = new Messaging();
+        messaging.setRuntime(stage);
+        ctx = new ResponderContext();
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        stage.stop().join();
+    }
+
+    @Benchmark
+    @Threads(1)
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public Object writeInvocation()
+    {
+        final Invocation invocation = new Invocation(reference, method, false, 0, params, null);
+        return messaging.writeInvocation(ctx, invocation).join();
+    }
+
+    @Benchmark
+    @Threads(1)
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public Object writeOneWayInvocation()
+    {
+        final Invocation invocation = new Invocation(reference, method, true, 0, params, null);
+        return messaging.writeInvocation(ctx, invocation);
+    }
+
+    private class ResponderContext implements HandlerContext
+    {
+        @Override
+        public Task write(final Object msg)
+        {
+            final Message message = (Message) msg;
+            if (message.getMessageType() == MessageDefinitions.REQUEST_MESSAGE)
+            {
+                response.setMessageId(message.getMessageId());
+                messaging.onRead(this, response);
+            }
+            return Task.done();
+        }
+
+        @Override
+        public HandlerContext fireExceptionCaught(final Throwable cause)
+        {
+            return this;
+        }
+
+        @Override
+        public HandlerContext fireActive()
+        {
+            return this;
+        }
+
+        @Override
+        public HandlerContext fireInactive()
+        {
+            return this;
+        }
+
+        @Override
+        public HandlerContext fireEventTriggered(final Object event)
+        {
+            return this;
+        }
+
+        @Override
+        public HandlerContext fireRead(final Object msg)
+        {
+            return this;
+        }
+
+        @Override
+        public Task connect(final Object param)
+        {
+            return Task.done();
+        }
+
+        @Override
+        public Task disconnect()
+        {
+            return Task.done();
+        }
+
+        @Override
+        public Task close()
+        {
+            return Task.done();
+        }
+    }
+}
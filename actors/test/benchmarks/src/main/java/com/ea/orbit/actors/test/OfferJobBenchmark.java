@@ -0,0 +1,107 @@
+/*
+Copyright (C) 2015 Electronic Arts Inc.  All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions
+are met:
+
+1.  Redistributions of source code must retain the above copyright
+    notice, this list of conditions and the following disclaimer.
+2.  Redistributions in binary form must reproduce the above copyright
+    notice, this list of conditions and the following disclaimer in the
+    documentation and/or other materials provided with the distribution.
+3.  Neither the name of Electronic Arts, Inc. ("EA") nor the names of
+    its contributors may be used to endorse or promote products derived
+    from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY ELECTRONIC ARTS AND ITS CONTRIBUTORS "AS IS" AND ANY
+EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL ELECTRONIC ARTS OR ITS CONTRIBUTORS BE LIABLE FOR ANY
+DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package com.ea.orbit.actors.test;
+
+import com.ea.orbit.actors.concurrent.ExecutionSerializer;
+import com.ea.orbit.actors.concurrent.WaitFreeMultiExecutionSerializer;
+import com.ea.orbit.concurrent.Task;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import com.google.common.util.concurrent.MoreExecutors;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Compares queueing a job by key, through the serializer cache, with queueing it directly
+ * in a serializer owned by the caller, as the actor activations do.
+ * <p>
+ * The jobs run in the calling thread and complete immediately, what is measured is the cost of getting them there.
+ * Run with {@code -prof gc} to also see the garbage produced by each.
+ * </p>
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class OfferJobBenchmark
+{
+    @Param({ "1000000" })
+    private int keyCount;
+
+    private ExecutorService executor;
+    private WaitFreeMultiExecutionSerializer<Object> multiSerializer;
+    private Object[] keys;
+    private ExecutionSerializer[] owned;
+    private final Supplier<Task<Object>> job = () -> Task.fromValue(null);
+
+    @Setup
+    public void setup()
+    {
+        executor = MoreExecutors.newDirectExecutorService();
+        multiSerializer = new WaitFreeMultiExecutionSerializer<>(executor);
+        keys = new Object[keyCount];
+        owned = new ExecutionSerializer[keyCount];
+        for (int i = 0; i < keyCount; i++)
+        {
+            keys[i] = "key" + i;
+            owned[i] = multiSerializer.newSerializer();
+        }
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        executor.shutdown();
+    }
+
+    @Benchmark
+    public Task<Object> keyedOfferJob()
+    {
+        return multiSerializer.offerJob(keys[ThreadLocalRandom.current().nextInt(keyCount)], job, 1000);
+    }
+
+    @Benchmark
+    public Task<Object> ownedSerializer()
+    {
+        return owned[ThreadLocalRandom.current().nextInt(keyCount)].executeSerialized(job, 1000);
+    }
+}
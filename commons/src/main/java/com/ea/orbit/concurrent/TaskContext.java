@@ -322,6 +322,16 @@ public class TaskContext
         }
     }
 
+    /**
+     * Checks if any property is bound to this context, lets callers skip the property lookups.
+     *
+     * @return true if this context has properties
+     */
+    public boolean hasProperties()
+    {
+        return properties != null && !properties.isEmpty();
+    }
+
     protected Map<String, Object> properties()
     {
         return properties;